@@ -0,0 +1,87 @@
+/*
+ * FingerprintDifferenceBenchmark.java
+ *
+ * Created on 2026-10-17, 23:59
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the ways of finding the target messages that no longer exist in the source on
+ * synthetic folder indexes: a {@link FingerprintSet} lookup per target message, used by {@link
+ * FolderUids#missingFrom(java.util.Set)}, and the linear merge of {@link SortedFingerprints} used
+ * by {@link FolderUids#missingFrom(SortedFingerprints)}.
+ *
+ * The merge includes taking and sorting the snapshots of both indexes. A tenth of the target
+ * messages are missing from the source.
+ *
+ * Run with <code>./gradlew jmh</code>
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(jvmArgsAppend = "-Xmx4g")
+public class FingerprintDifferenceBenchmark {
+
+  @Param({"1000000", "10000000"})
+  private int messageCount;
+
+  private FingerprintSet sourceMessages;
+  private FolderUids targetUids;
+
+  @Setup(Level.Trial)
+  public void createIndexes() {
+    final SplittableRandom random = new SplittableRandom(1337L);
+    sourceMessages = new FingerprintSet();
+    targetUids = new FolderUids(1L);
+    for (int it = 0; it < messageCount; it++) {
+      final long high = random.nextLong();
+      final long low = random.nextLong();
+      if (it % 10 != 0) {
+        sourceMessages.add(high, low);
+      } else {
+        sourceMessages.add(random.nextLong(), random.nextLong());
+      }
+      targetUids.add(it + 1L, MessageId.fromFingerprint(high, low));
+    }
+  }
+
+  @Benchmark
+  public int hashLookup() {
+    return targetUids.missingFrom(sourceMessages).length;
+  }
+
+  @Benchmark
+  public int sortedMerge() {
+    return targetUids.missingFrom(SortedFingerprints.of(sourceMessages)).length;
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * FingerprintSetBenchmark.java
+ *
+ * Created on 2026-10-17, 12:30
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the per folder message stores used by {@link Index}: the default {@link
+ * ConcurrentHashMap} backed set of full {@link MessageId} and the {@link FingerprintSet}.
+ *
+ * Emulates the MessageCopier/MessageDeleter access pattern: a lookup per message followed by an
+ * insertion when it wasn't found. Every invocation starts from a fresh half-populated folder so
+ * that half of the lookups miss and are followed by an insertion (otherwise, after the first
+ * invocation every message would be found and only lookups would be measured).
+ *
+ * Run with <code>./gradlew jmh</code>
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FingerprintSetBenchmark {
+
+  @Param({"10000", "1000000"})
+  private int messageCount;
+
+  @Param({"ConcurrentHashMap", "FingerprintSet"})
+  private String store;
+
+  private MessageId[] messageIds;
+  private Set<MessageId> folderMessages;
+
+  @Setup(Level.Trial)
+  public void createMessageIds() throws Exception {
+    messageIds = new MessageId[messageCount];
+    for (int it = 0; it < messageCount; it++) {
+      final MimeMessage message = new MimeMessage((Session) null);
+      message.setHeader("Message-Id", String.format("<%s.%s@mail.example.com>", it, it * 31));
+      message.setHeader("Subject", String.format("Benchmark message number %s", it));
+      message.setHeader("From", String.format("sender%s@example.com", it % 100));
+      message.setHeader("To", "recipient@example.com");
+      messageIds[it] = new MessageId(message);
+    }
+  }
+
+  @Setup(Level.Invocation)
+  public void createFolderMessages() {
+    folderMessages = store.equals("FingerprintSet")
+        ? new FingerprintSet() : ConcurrentHashMap.newKeySet();
+    //Half of the messages are already in the target folder
+    for (int it = 0; it < messageCount; it += 2) {
+      folderMessages.add(messageIds[it]);
+    }
+  }
+
+  @Benchmark
+  public void containsThenAdd(Blackhole blackhole) {
+    for (MessageId messageId : messageIds) {
+      if (!folderMessages.contains(messageId)) {
+        blackhole.consume(folderMessages.add(messageId));
+      }
+    }
+  }
+
+  @Benchmark
+  public void populate(Blackhole blackhole) {
+    final Set<MessageId> populated = store.equals("FingerprintSet")
+        ? new FingerprintSet() : ConcurrentHashMap.newKeySet();
+    for (MessageId messageId : messageIds) {
+      populated.add(messageId);
+    }
+    blackhole.consume(populated);
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * BatchPlanner.java
+ *
+ * Created on 2026-10-17, 15:20
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Splits the messages of a folder into work units of a similar cost.
+ *
+ * The cost of a message is a fixed overhead plus, if known, its RFC822.SIZE. The throughput
+ * observed for completed units is used to size the following ones so that each of them takes
+ * roughly {@link #TARGET_UNIT_DURATION_MS}.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public class BatchPlanner {
+
+  /**
+   * Estimated cost of processing a message regardless of its size (round trips, headers...).
+   */
+  public static final long MESSAGE_OVERHEAD = 4L * 1024L;
+  static final long TARGET_UNIT_DURATION_MS = 10_000L;
+  static final int MAX_UNIT_MESSAGES = 1000;
+  private static final long MIN_UNIT_COST = 10L * MESSAGE_OVERHEAD;
+  private static final long MAX_UNIT_COST = 256L * 1024L * 1024L;
+  //Weight of the latest observation in the throughput estimate
+  private static final double SMOOTHING = 0.2D;
+
+  //Cost units per millisecond
+  private double throughput;
+
+  public BatchPlanner() {
+    //Initial units are equivalent to the previous fixed batches
+    throughput = (double) (MNIMAPSync.BATCH_SIZE * MESSAGE_OVERHEAD) / TARGET_UNIT_DURATION_MS;
+  }
+
+  /**
+   * Plans units for messages in the range [start, end] where every message has the same cost.
+   */
+  public List<Unit> plan(int start, int end) {
+    return plan(start, end, messageNumber -> MESSAGE_OVERHEAD);
+  }
+
+  /**
+   * Plans units for messages in the range [start, end].
+   *
+   * @param messageCost cost of the message with the provided sequence number.
+   */
+  public List<Unit> plan(int start, int end, IntToLongFunction messageCost) {
+    final long targetCost = getTargetUnitCost();
+    final List<Unit> units = new ArrayList<>();
+    int unitStart = start;
+    long unitCost = 0L;
+    for (int messageNumber = start; messageNumber <= end; messageNumber++) {
+      unitCost += messageCost.applyAsLong(messageNumber);
+      if (unitCost >= targetCost || messageNumber - unitStart + 1 >= MAX_UNIT_MESSAGES
+          || messageNumber == end) {
+        units.add(new Unit(unitStart, messageNumber, unitCost));
+        unitStart = messageNumber + 1;
+        unitCost = 0L;
+      }
+    }
+    return units;
+  }
+
+  /**
+   * Wraps the task that processes the provided unit so that its duration updates the throughput
+   * estimate.
+   */
+  public Runnable timed(Unit unit, Runnable task) {
+    return () -> {
+      final long startTime = System.nanoTime();
+      try {
+        task.run();
+      } finally {
+        record(unit.getCost(), System.nanoTime() - startTime);
+      }
+    };
+  }
+
+  synchronized void record(long cost, long elapsedNanos) {
+    final double elapsedMs = Math.max(TimeUnit.NANOSECONDS.toMillis(elapsedNanos), 1L);
+    throughput = (1D - SMOOTHING) * throughput + SMOOTHING * (cost / elapsedMs);
+  }
+
+  synchronized long getTargetUnitCost() {
+    return Math.min(MAX_UNIT_COST,
+        Math.max(MIN_UNIT_COST, (long) (throughput * TARGET_UNIT_DURATION_MS)));
+  }
+
+  /**
+   * Range of message sequence numbers [start, end] processed by a single task.
+   */
+  public static final class Unit {
+
+    private final int start;
+    private final int end;
+    private final long cost;
+
+    Unit(int start, int end, long cost) {
+      this.start = start;
+      this.end = end;
+      this.cost = cost;
+    }
+
+    public int getStart() {
+      return start;
+    }
+
+    public int getEnd() {
+      return end;
+    }
+
+    public long getCost() {
+      return cost;
+    }
+  }
+}
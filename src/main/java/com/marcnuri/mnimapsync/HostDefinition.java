@@ -16,6 +16,7 @@
  */
 package com.marcnuri.mnimapsync;
 
+import com.marcnuri.mnimapsync.index.IdentityFetch;
 import java.io.Serializable;
 import java.util.Objects;
 
@@ -33,6 +34,9 @@ public class HostDefinition implements Serializable {
     private String user;
     private String password;
     private boolean ssl;
+    private IdentityFetch identityFetch = IdentityFetch.HEADERS;
+    private int commandsPerSecond;
+    private long bytesPerSecond;
 
     public String getHost() {
         return host;
@@ -74,6 +78,46 @@ public class HostDefinition implements Serializable {
         this.ssl = ssl;
     }
 
+    public IdentityFetch getIdentityFetch() {
+        return identityFetch;
+    }
+
+    public void setIdentityFetch(IdentityFetch identityFetch) {
+        this.identityFetch = identityFetch;
+    }
+
+    /**
+     * Maximum number of IMAP commands per second sent to the server, 0 for no limit.
+     */
+    public int getCommandsPerSecond() {
+        return commandsPerSecond;
+    }
+
+    public void setCommandsPerSecond(int commandsPerSecond) {
+        this.commandsPerSecond = commandsPerSecond;
+    }
+
+    /**
+     * Maximum number of message bytes per second transferred from or to the server, 0 for no
+     * limit.
+     */
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public void setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Returns true if both definitions point to the same account of the same server, regardless of
+     * the connection settings.
+     */
+    public boolean isSameAccount(HostDefinition other) {
+        return other != null && host != null && host.equalsIgnoreCase(other.host)
+            && port == other.port && user != null && user.equals(other.user);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -87,12 +131,16 @@ public class HostDefinition implements Serializable {
             ssl == that.ssl &&
             Objects.equals(host, that.host) &&
             Objects.equals(user, that.user) &&
-            Objects.equals(password, that.password);
+            Objects.equals(password, that.password) &&
+            identityFetch == that.identityFetch &&
+            commandsPerSecond == that.commandsPerSecond &&
+            bytesPerSecond == that.bytesPerSecond;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(host, port, user, password, ssl);
+        return Objects.hash(host, port, user, password, ssl, identityFetch, commandsPerSecond,
+            bytesPerSecond);
     }
 
 }
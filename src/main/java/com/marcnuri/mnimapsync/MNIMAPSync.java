@@ -16,20 +16,37 @@
  */
 package com.marcnuri.mnimapsync;
 
+import static com.marcnuri.mnimapsync.batch.BatchFileParser.parseBatchFile;
 import static com.marcnuri.mnimapsync.cli.ArgumentParser.parseCliArguments;
+import static com.marcnuri.mnimapsync.cli.CliBatchSummaryReport.getBatchSummaryReportAsText;
+import static com.marcnuri.mnimapsync.cli.CliPlanReport.getPlanReportAsText;
 import static com.marcnuri.mnimapsync.cli.CliSummaryReport.getSummaryReportAsText;
 import static com.marcnuri.mnimapsync.imap.IMAPUtils.openStore;
-import static com.marcnuri.mnimapsync.index.StoreCrawler.populateFromStore;
+import static com.marcnuri.mnimapsync.index.StoreCrawler.awaitPopulateFromStore;
+import static com.marcnuri.mnimapsync.index.StoreCrawler.startPopulateFromStore;
 
+import com.marcnuri.mnimapsync.batch.BatchSync;
 import com.marcnuri.mnimapsync.cli.SyncMonitor;
+import com.marcnuri.mnimapsync.daemon.SyncDaemon;
+import com.marcnuri.mnimapsync.imap.HostThrottle;
 import com.marcnuri.mnimapsync.index.Index;
+import com.marcnuri.mnimapsync.index.IndexSnapshot;
+import com.marcnuri.mnimapsync.index.MappedIndex;
+import com.marcnuri.mnimapsync.store.CheckpointJournal;
+import com.marcnuri.mnimapsync.store.CopyOptions;
 import com.marcnuri.mnimapsync.store.StoreCopier;
 import com.marcnuri.mnimapsync.store.StoreDeleter;
+import com.marcnuri.mnimapsync.store.SyncPlan;
+import com.marcnuri.mnimapsync.store.SyncPlanner;
 import com.sun.mail.imap.IMAPStore;
+import java.io.File;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
 import java.util.Timer;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.mail.MessagingException;
@@ -42,27 +59,85 @@ import javax.mail.MessagingException;
 public class MNIMAPSync {
 
     static final int THREADS = 5;
+    /**
+     * Connections opened to each server on top of the folders limited by the
+     * {@link com.marcnuri.mnimapsync.imap.ConnectionLimit} of its {@link HostThrottle}: a sync
+     * keeps a single store open per server at any time, each with its own store connection.
+     */
+    public static final int STORE_CONNECTIONS = 1;
     public static final int BATCH_SIZE = 200;
+    private static final String TARGET_INDEX_SNAPSHOT = "target.index";
+    private static final String SOURCE_INDEX_SNAPSHOT = "source.index";
+    private static final String SOURCE_MAPPED_INDEX = "source";
+    private static final String TARGET_MAPPED_INDEX = "target";
+    private static final String COPY_CHECKPOINT_JOURNAL = "copy.journal";
     private final SyncOptions syncOptions;
     private final Date startDate;
+    //Throttles are shared by every worker connected to the same server
+    private final WorkerOptions sourceWorkers;
+    private final WorkerOptions targetWorkers;
     private StoreCopier sourceCopier;
     private StoreDeleter targetDeleter;
+    private SyncPlan syncPlan;
     //Used for deleting tasks unnecessary if not deleting
     private final Index sourceIndex;
     private final Index targetIndex;
 
-    public MNIMAPSync(SyncOptions syncOptions) {
+    public MNIMAPSync(SyncOptions syncOptions) throws IOException {
         this.syncOptions = syncOptions;
         startDate = new Date();
+        final ThreadFactory workerThreadFactory =
+            WorkerThreads.threadFactory(syncOptions.isVirtualThreads());
+        sourceWorkers = workerOptions(syncOptions.getSourceHost(),
+            syncOptions.getSourceConnections(), workerThreadFactory);
+        targetWorkers = workerOptions(syncOptions.getTargetHost(),
+            syncOptions.getTargetConnections(), workerThreadFactory);
         sourceCopier = null;
-        sourceIndex = new Index();
-        targetIndex = new Index();
+        //Dry runs don't modify the persisted state
+        if (syncOptions.isMappedIndex() && !syncOptions.isDryRun()) {
+            final MappedIndex mappedSourceIndex = new MappedIndex(
+                new File(syncOptions.getStateDirectory(), SOURCE_MAPPED_INDEX));
+            //Source index must reflect the current source store contents
+            if (!syncOptions.isIncremental()) {
+                mappedSourceIndex.resetFolders();
+            }
+            sourceIndex = mappedSourceIndex;
+            targetIndex = new MappedIndex(
+                new File(syncOptions.getStateDirectory(), TARGET_MAPPED_INDEX));
+        } else {
+            sourceIndex = new Index(syncOptions.isFingerprintIndex());
+            targetIndex = new Index(syncOptions.isFingerprintIndex());
+            //Messages to delete are then planned from the index, mapped indexes stay off-heap.
+            //Daemons delete by crawling: UIDs are only recorded by the initial target crawl, so
+            //messages appended by later cycles would never be planned for deletion
+            targetIndex.setUidTracking(syncOptions.getDelete() && !syncOptions.isDaemon());
+        }
+    }
+
+    private WorkerOptions workerOptions(HostDefinition host, int connections,
+        ThreadFactory threadFactory) {
+
+        final WorkerOptions workerOptions = new WorkerOptions();
+        workerOptions.setConnections(connections);
+        workerOptions.setIdentityFetch(host.getIdentityFetch());
+        workerOptions.setThreadFactory(threadFactory);
+        workerOptions.setThrottle(new HostThrottle(host, connections,
+            syncOptions.isAdaptiveConcurrency()));
+        return workerOptions;
     }
 
     private long getElapsedTime() {
         return System.currentTimeMillis() - startDate.getTime();
     }
 
+    /**
+     * Maximum number of connections that a sync opens to a server configured with the given
+     * number of connections.
+     */
+    public static int maxConnections(int connections) {
+        return connections + STORE_CONNECTIONS;
+    }
+
     public StoreCopier getSourceCopier() {
         return sourceCopier;
     }
@@ -71,6 +146,10 @@ public class MNIMAPSync {
         return targetDeleter;
     }
 
+    public SyncPlan getSyncPlan() {
+        return syncPlan;
+    }
+
     public Index getTargetIndex() {
         return targetIndex;
     }
@@ -79,28 +158,121 @@ public class MNIMAPSync {
         return getElapsedTime() / 1000L;
     }
 
-    private void indexTargetStore()
+    /**
+     * Crawls the target store while the source messages are being copied.
+     *
+     * Source messages are scanned as soon as the target folder tree is known, each copy batch only
+     * waits for its own target folder to be completely indexed before comparing messages.
+     */
+    private void indexTargetStoreAndCopySource()
         throws MessagingException, GeneralSecurityException, InterruptedException {
 
+        //Mapped indexes are already persisted
+        final File snapshot = syncOptions.isMappedIndex() ? null
+            : getStateFile(TARGET_INDEX_SNAPSHOT);
+        loadSnapshot(targetIndex, snapshot);
+        //Target connections are shared by the crawl and the copy
         try (final IMAPStore targetStore = openStore(syncOptions.getTargetHost(),
-            syncOptions.getThreads())) {
-            populateFromStore(targetIndex, targetStore, syncOptions.getThreads());
+            syncOptions.getTargetConnections())) {
+            final CompletableFuture<Index> targetCrawl = startPopulateFromStore(targetIndex,
+                targetStore, targetWorkers);
+            try {
+                copySourceToTarget(targetStore);
+            } finally {
+                awaitPopulateFromStore(targetCrawl);
+            }
         }
+        saveSnapshot(targetIndex, snapshot);
     }
 
-    private void copySourceToTarget()
+    private static void loadSnapshot(Index index, File snapshot) {
+        if (snapshot != null && snapshot.isFile()) {
+            try {
+                IndexSnapshot.load(snapshot, index);
+            } catch (IOException ex) {
+                //Snapshot is only an optimization, the whole store will be processed
+                Logger.getLogger(MNIMAPSync.class.getName()).log(Level.WARNING, null, ex);
+            }
+        }
+    }
+
+    private static void saveSnapshot(Index index, File snapshot) {
+        if (snapshot != null) {
+            try {
+                IndexSnapshot.save(index, snapshot);
+            } catch (IOException ex) {
+                Logger.getLogger(MNIMAPSync.class.getName()).log(Level.WARNING, null, ex);
+            }
+        }
+    }
+
+    private File getStateFile(String name) {
+        final File stateDirectory = syncOptions.getStateDirectory();
+        if (stateDirectory == null) {
+            return null;
+        }
+        if (!stateDirectory.isDirectory() && !stateDirectory.mkdirs()) {
+            Logger.getLogger(MNIMAPSync.class.getName()).log(Level.WARNING,
+                "Couldn't create state directory {0}", stateDirectory);
+            return null;
+        }
+        return new File(stateDirectory, name);
+    }
+
+    private void copySourceToTarget(IMAPStore targetStore)
         throws MessagingException, GeneralSecurityException, InterruptedException {
 
+        final File snapshot = !syncOptions.isIncremental() || syncOptions.isMappedIndex() ? null
+            : getStateFile(SOURCE_INDEX_SNAPSHOT);
+        loadSnapshot(sourceIndex, snapshot);
+        final CheckpointJournal checkpointJournal =
+            openCheckpointJournal(getStateFile(COPY_CHECKPOINT_JOURNAL));
         try (
-            final IMAPStore targetStore = openStore(syncOptions.getTargetHost(),
-                syncOptions.getThreads());
             final IMAPStore sourceStore = openStore(syncOptions.getSourceHost(),
-                syncOptions.getThreads())
+                syncOptions.getSourceConnections())
         ) {
+            final CopyOptions copyOptions = new CopyOptions();
+            copyOptions.setSource(sourceWorkers);
+            copyOptions.setTarget(targetWorkers);
+            copyOptions.setServerSideCopy(syncOptions.isServerSideCopy());
+            copyOptions.setCheckpointJournal(checkpointJournal);
             sourceCopier = new StoreCopier(sourceStore, sourceIndex, targetStore, targetIndex,
-                syncOptions.getThreads());
+                copyOptions);
             sourceCopier.copy();
         }
+        //A partial source index would skip messages that weren't processed in the next run
+        if (!sourceCopier.hasCopyException()) {
+            saveSnapshot(sourceIndex, snapshot);
+        }
+        //Journal is kept so that a failed copy can be resumed
+        closeCheckpointJournal(checkpointJournal, !sourceCopier.hasCopyException());
+    }
+
+    private static CheckpointJournal openCheckpointJournal(File journal) {
+        if (journal != null) {
+            try {
+                return new CheckpointJournal(journal);
+            } catch (IOException ex) {
+                //Journal is only needed to resume, the whole store will be processed
+                Logger.getLogger(MNIMAPSync.class.getName()).log(Level.WARNING, null, ex);
+            }
+        }
+        return null;
+    }
+
+    private static void closeCheckpointJournal(CheckpointJournal checkpointJournal,
+        boolean reset) {
+
+        if (checkpointJournal != null) {
+            try {
+                if (reset) {
+                    checkpointJournal.reset();
+                }
+                checkpointJournal.close();
+            } catch (IOException ex) {
+                Logger.getLogger(MNIMAPSync.class.getName()).log(Level.WARNING, null, ex);
+            }
+        }
     }
 
     private void deleteFromTarget()
@@ -108,20 +280,19 @@ public class MNIMAPSync {
 
         try (
             final IMAPStore targetStore = openStore(syncOptions.getTargetHost(),
-                syncOptions.getThreads())
+                syncOptions.getTargetConnections())
         ) {
             targetDeleter = new StoreDeleter(sourceIndex, targetIndex, targetStore,
-                syncOptions.getThreads());
+                targetWorkers);
             targetDeleter.delete();
         }
     }
 
     public void sync() {
         try {
-            indexTargetStore();
-            copySourceToTarget();
-            //Delete only if source store was completely indexed (this happens if no exceptions where raised)
-            if (syncOptions.getDelete() && !sourceCopier.hasCopyException()) {
+            indexTargetStoreAndCopySource();
+            //Delete only if source store was completely indexed, failed appends don't prevent it
+            if (syncOptions.getDelete() && sourceCopier.isSourceIndexComplete()) {
                 deleteFromTarget();
             }
         } catch (MessagingException | GeneralSecurityException ex) {
@@ -129,6 +300,47 @@ public class MNIMAPSync {
         } catch (InterruptedException ex) {
             Logger.getLogger(MNIMAPSync.class.getName()).log(Level.SEVERE, null, ex);
             Thread.currentThread().interrupt();
+        } finally {
+            if (targetIndex instanceof MappedIndex) {
+                ((MappedIndex) targetIndex).force();
+                ((MappedIndex) sourceIndex).force();
+            }
+        }
+    }
+
+    /**
+     * Keeps mirroring the source after {@link #sync()} until the current thread is interrupted,
+     * see {@link SyncDaemon}.
+     *
+     * @param cycleListener notified after each completed cycle.
+     */
+    public void daemon(Consumer<SyncDaemon> cycleListener) {
+        try {
+            new SyncDaemon(syncOptions, sourceIndex, targetIndex, sourceWorkers, targetWorkers)
+                .run(cycleListener);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Plans the sync without modifying either store, see {@link SyncPlanner}.
+     */
+    public void plan() {
+        try (
+            final IMAPStore sourceStore = openStore(syncOptions.getSourceHost(),
+                syncOptions.getSourceConnections());
+            final IMAPStore targetStore = openStore(syncOptions.getTargetHost(),
+                syncOptions.getTargetConnections())
+        ) {
+            syncPlan = new SyncPlanner(sourceStore, sourceIndex, syncOptions.getSourceHost(),
+                sourceWorkers, targetStore, targetIndex, syncOptions.getTargetHost(),
+                targetWorkers, syncOptions.getDelete()).plan();
+        } catch (MessagingException | GeneralSecurityException ex) {
+            Logger.getLogger(MNIMAPSync.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (InterruptedException ex) {
+            Logger.getLogger(MNIMAPSync.class.getName()).log(Level.SEVERE, null, ex);
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -138,7 +350,19 @@ public class MNIMAPSync {
     @SuppressWarnings({"squid:S106", "UseOfSystemOutOrSystemErr"})
     public static void main(String[] args) {
         try {
-            final MNIMAPSync sync = new MNIMAPSync(parseCliArguments(args));
+            final SyncOptions syncOptions = parseCliArguments(args);
+            if (syncOptions.getBatchFile() != null) {
+                batchSync(syncOptions);
+                return;
+            }
+            final MNIMAPSync sync = new MNIMAPSync(syncOptions);
+            if (syncOptions.isDryRun()) {
+                sync.plan();
+                if (sync.getSyncPlan() != null) {
+                    System.out.println(getPlanReportAsText(sync.getSyncPlan()));
+                }
+                return;
+            }
             final Timer timer = new Timer(true);
             timer.schedule(
                 new SyncMonitor(sync),
@@ -146,10 +370,44 @@ public class MNIMAPSync {
             sync.sync();
             timer.cancel();
             System.out.println(String.format("\r%s", getSummaryReportAsText(sync)));
+            if (syncOptions.isDaemon()) {
+                sync.daemon(daemon -> System.out.println(String.format(
+                    "%tT Sync %d: %d messages copied, %d messages deleted", new Date(),
+                    daemon.getCycles(), daemon.getLastCycleMessagesCopied(),
+                    daemon.getLastCycleMessagesDeleted())));
+            }
         } catch (IllegalArgumentException | IOException ex) {
             System.err.println(ex.getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
         }
     }
 
+    /**
+     * Syncs every account of the batch file reporting each of them as soon as they finish.
+     */
+    @SuppressWarnings({"squid:S106", "UseOfSystemOutOrSystemErr"})
+    private static void batchSync(SyncOptions batchOptions)
+        throws IOException, InterruptedException {
+
+        final BatchSync batchSync = new BatchSync(batchOptions,
+            parseBatchFile(batchOptions.getBatchFile(), batchOptions));
+        batchSync.sync(account -> {
+            final MNIMAPSync sync = batchSync.getSyncs().get(account);
+            if (sync != null) {
+                try {
+                    synchronized (System.out) {
+                        System.out.println(String.format("%s%n%s",
+                            BatchSync.getAccountName(batchSync.getAccounts().get(account)),
+                            getSummaryReportAsText(sync)));
+                    }
+                } catch (IOException ex) {
+                    Logger.getLogger(MNIMAPSync.class.getName()).log(Level.WARNING, null, ex);
+                }
+            }
+        });
+        System.out.println(getBatchSummaryReportAsText(batchSync));
+    }
+
 
 }
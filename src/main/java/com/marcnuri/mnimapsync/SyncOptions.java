@@ -16,6 +16,7 @@
  */
 package com.marcnuri.mnimapsync;
 
+import java.io.File;
 import java.io.Serializable;
 import java.util.Objects;
 
@@ -26,17 +27,58 @@ import java.util.Objects;
 public class SyncOptions implements Serializable {
 
     private static final long serialVersionUID = -4119342475628224319L;
+    private static final int DEFAULT_POLL_INTERVAL = 60;
 
     private final HostDefinition sourceHost;
     private final HostDefinition targetHost;
     private boolean delete;
     private int threads;
+    private int sourceConnections;
+    private int targetConnections;
+    private File stateDirectory;
+    private boolean fingerprintIndex;
+    private boolean mappedIndex;
+    private boolean incremental;
+    private boolean serverSideCopy;
+    private boolean virtualThreads;
+    private boolean adaptiveConcurrency;
+    private boolean dryRun;
+    private boolean daemon;
+    private int pollInterval;
+    private File batchFile;
+    private int maxConnections;
+    private int maxHostConnections;
 
     public SyncOptions() {
         this.sourceHost = new HostDefinition();
         this.targetHost = new HostDefinition();
         delete = false;
         threads = MNIMAPSync.THREADS;
+        pollInterval = DEFAULT_POLL_INTERVAL;
+    }
+
+    /**
+     * Options for a single account of a batch, every setting but the hosts and the state directory
+     * is taken from the provided batch options.
+     */
+    public SyncOptions(SyncOptions batchOptions, HostDefinition sourceHost,
+        HostDefinition targetHost, File stateDirectory) {
+        this.sourceHost = sourceHost;
+        this.targetHost = targetHost;
+        delete = batchOptions.delete;
+        threads = batchOptions.threads;
+        sourceConnections = batchOptions.sourceConnections;
+        targetConnections = batchOptions.targetConnections;
+        this.stateDirectory = stateDirectory;
+        fingerprintIndex = batchOptions.fingerprintIndex;
+        mappedIndex = batchOptions.mappedIndex;
+        incremental = batchOptions.incremental;
+        serverSideCopy = batchOptions.serverSideCopy;
+        virtualThreads = batchOptions.virtualThreads;
+        adaptiveConcurrency = batchOptions.adaptiveConcurrency;
+        dryRun = batchOptions.dryRun;
+        daemon = batchOptions.daemon;
+        pollInterval = batchOptions.pollInterval;
     }
 
     public HostDefinition getSourceHost() {
@@ -63,6 +105,185 @@ public class SyncOptions implements Serializable {
         this.threads = threads;
     }
 
+    /**
+     * Maximum number of concurrent connections (and workers) used against the source server,
+     * defaults to {@link #getThreads()}. Every folder selected by the crawl, copy, append and
+     * delete workers holds one of them, the store connection (LIST, STATUS) is used on top.
+     */
+    public int getSourceConnections() {
+        return sourceConnections > 0 ? sourceConnections : threads;
+    }
+
+    public void setSourceConnections(int sourceConnections) {
+        this.sourceConnections = sourceConnections;
+    }
+
+    /**
+     * Maximum number of concurrent connections (and workers) used against the target server,
+     * defaults to {@link #getThreads()}. Every folder selected by the crawl, copy, append and
+     * delete workers holds one of them, the store connection (LIST, STATUS) is used on top.
+     */
+    public int getTargetConnections() {
+        return targetConnections > 0 ? targetConnections : threads;
+    }
+
+    public void setTargetConnections(int targetConnections) {
+        this.targetConnections = targetConnections;
+    }
+
+    /**
+     * Directory where indexes and sync state are persisted between runs, null to disable.
+     */
+    public File getStateDirectory() {
+        return stateDirectory;
+    }
+
+    public void setStateDirectory(File stateDirectory) {
+        this.stateDirectory = stateDirectory;
+    }
+
+    /**
+     * Index messages by their 128-bit fingerprint instead of their full {@link
+     * com.marcnuri.mnimapsync.index.MessageId} fields.
+     */
+    public boolean isFingerprintIndex() {
+        return fingerprintIndex;
+    }
+
+    public void setFingerprintIndex(boolean fingerprintIndex) {
+        this.fingerprintIndex = fingerprintIndex;
+    }
+
+    /**
+     * Store the indexes off-heap in memory-mapped files within the state directory.
+     */
+    public boolean isMappedIndex() {
+        return mappedIndex;
+    }
+
+    public void setMappedIndex(boolean mappedIndex) {
+        this.mappedIndex = mappedIndex;
+    }
+
+    /**
+     * Persist the source index and folder states so that later runs only process source folders
+     * that changed since the previous run.
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Copy messages with server-side COPY commands instead of downloading and appending them. Only
+     * possible if source and target are the same account.
+     */
+    public boolean isServerSideCopy() {
+        return serverSideCopy || sourceHost.isSameAccount(targetHost);
+    }
+
+    public void setServerSideCopy(boolean serverSideCopy) {
+        this.serverSideCopy = serverSideCopy;
+    }
+
+    /**
+     * Run each IMAP task on its own virtual thread (Java 21+) instead of fixed pools of workers,
+     * concurrency is still bounded by the number of connections of each server.
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Adjust the number of concurrent IMAP commands sent to each server, raising it while the
+     * server responds promptly and backing off when it throttles, up to the number of connections.
+     */
+    public boolean isAdaptiveConcurrency() {
+        return adaptiveConcurrency;
+    }
+
+    public void setAdaptiveConcurrency(boolean adaptiveConcurrency) {
+        this.adaptiveConcurrency = adaptiveConcurrency;
+    }
+
+    /**
+     * Only plan the sync: crawl both servers and report the messages that would be copied and
+     * deleted with an estimate of the duration, without modifying either server.
+     */
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    /**
+     * Keep running after the initial sync, copying the messages that arrive to the source (and
+     * propagating deletes if enabled) as soon as the source server notifies them.
+     */
+    public boolean isDaemon() {
+        return daemon;
+    }
+
+    public void setDaemon(boolean daemon) {
+        this.daemon = daemon;
+    }
+
+    /**
+     * Maximum number of seconds between the syncs of a daemon, folders that aren't watched with
+     * IDLE are only synced at this interval.
+     */
+    public int getPollInterval() {
+        return pollInterval;
+    }
+
+    public void setPollInterval(int pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * CSV file with the source and target accounts to sync in a single process, null to sync the
+     * source and target hosts of these options.
+     */
+    public File getBatchFile() {
+        return batchFile;
+    }
+
+    public void setBatchFile(File batchFile) {
+        this.batchFile = batchFile;
+    }
+
+    /**
+     * Maximum number of concurrent connections for all of the accounts of a batch, 0 for no limit.
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Maximum number of concurrent connections to the same host for all of the accounts of a
+     * batch, 0 for no limit.
+     */
+    public int getMaxHostConnections() {
+        return maxHostConnections;
+    }
+
+    public void setMaxHostConnections(int maxHostConnections) {
+        this.maxHostConnections = maxHostConnections;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -74,13 +295,31 @@ public class SyncOptions implements Serializable {
         SyncOptions that = (SyncOptions) o;
         return delete == that.delete &&
             threads == that.threads &&
+            sourceConnections == that.sourceConnections &&
+            targetConnections == that.targetConnections &&
+            fingerprintIndex == that.fingerprintIndex &&
+            mappedIndex == that.mappedIndex &&
+            incremental == that.incremental &&
+            serverSideCopy == that.serverSideCopy &&
+            virtualThreads == that.virtualThreads &&
+            adaptiveConcurrency == that.adaptiveConcurrency &&
+            dryRun == that.dryRun &&
+            daemon == that.daemon &&
+            pollInterval == that.pollInterval &&
+            maxConnections == that.maxConnections &&
+            maxHostConnections == that.maxHostConnections &&
             Objects.equals(sourceHost, that.sourceHost) &&
-            Objects.equals(targetHost, that.targetHost);
+            Objects.equals(targetHost, that.targetHost) &&
+            Objects.equals(stateDirectory, that.stateDirectory) &&
+            Objects.equals(batchFile, that.batchFile);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(sourceHost, targetHost, delete, threads);
+        return Objects.hash(sourceHost, targetHost, delete, threads, sourceConnections,
+            targetConnections, stateDirectory, fingerprintIndex, mappedIndex, incremental,
+            serverSideCopy, virtualThreads, adaptiveConcurrency, dryRun, daemon, pollInterval,
+            batchFile, maxConnections, maxHostConnections);
     }
 
 }
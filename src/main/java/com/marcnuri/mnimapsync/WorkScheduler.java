@@ -0,0 +1,236 @@
+/*
+ * WorkScheduler.java
+ *
+ * Created on 2026-10-17, 16:30
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync;
+
+import com.marcnuri.mnimapsync.BatchPlanner.Unit;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Executes the units of work planned for the folders of a store, largest folders first.
+ *
+ * Units are executed as soon as their folder is scheduled, so that the first folders are
+ * processed while the rest of the store is still being planned (and sized with the batch sizes
+ * learned from the completed units). Units waiting for a worker are queued in descending order
+ * of the estimated cost of their folder. When a worker picks a
+ * unit while other workers are idle and no more units are queued, the unit is split in halves so
+ * that the tail of the run is shared among every worker.
+ *
+ * With virtual threads (see {@link WorkerThreads}) each unit runs on its own thread as soon as
+ * it's executed, concurrency is then bounded by the connections of the server.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public final class WorkScheduler {
+
+  static final int MIN_SPLIT_MESSAGES = 10;
+
+  private final int threads;
+  private final BatchPlanner batchPlanner;
+  private final ExecutorService executor;
+  //Units (including splits) that haven't completed yet
+  private final AtomicInteger outstanding;
+  private final AtomicLong sequence;
+  private volatile boolean shutdown;
+
+  public WorkScheduler(int threads, BatchPlanner batchPlanner) {
+    this(threads, batchPlanner, Executors.defaultThreadFactory());
+  }
+
+  /**
+   * @param threadFactory factory of the worker threads, see {@link WorkerThreads}.
+   */
+  public WorkScheduler(int threads, BatchPlanner batchPlanner, ThreadFactory threadFactory) {
+    this.threads = threads;
+    this.batchPlanner = batchPlanner;
+    if (WorkerThreads.isVirtual(threadFactory)) {
+      //Units start right away and wait for a connection of their server (ConnectionLimit)
+      executor = WorkerThreads.newWorkerPool(threads, threadFactory);
+    } else {
+      //IMAP calls block, workers must be bounded to the number of connections (no ForkJoinPool)
+      final ThreadPoolExecutor priorityExecutor = new ThreadPoolExecutor(threads, threads, 0L,
+          TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), threadFactory);
+      //Otherwise, the first units would bypass the queue (and its order)
+      priorityExecutor.prestartAllCoreThreads();
+      executor = priorityExecutor;
+    }
+    outstanding = new AtomicInteger();
+    sequence = new AtomicLong();
+    shutdown = false;
+  }
+
+  /**
+   * Schedules the units of a folder, they start executing as soon as a worker is available.
+   *
+   * @param task creates the task that processes the messages in the range [start, end].
+   * @return a future that completes once every unit of the folder has been processed.
+   */
+  public synchronized CompletableFuture<Void> schedule(List<Unit> units, UnitTask task) {
+    if (shutdown) {
+      throw new IllegalStateException("Scheduler is already shut down");
+    }
+    final Group group = new Group(units.stream().mapToLong(Unit::getCost).sum(), task);
+    if (units.isEmpty()) {
+      group.completion.complete(null);
+    }
+    for (Unit unit : units) {
+      group.pending.incrementAndGet();
+      outstanding.incrementAndGet();
+      executor.execute(new Piece(group, unit.getStart(), unit.getEnd(), unit.getCost()));
+    }
+    return group.completion;
+  }
+
+  /**
+   * No more units can be scheduled, the scheduler terminates once every unit completes.
+   */
+  public synchronized void shutdown() {
+    if (shutdown) {
+      return;
+    }
+    shutdown = true;
+    if (outstanding.get() == 0) {
+      executor.shutdown();
+    }
+  }
+
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return executor.awaitTermination(timeout, unit);
+  }
+
+  /**
+   * Whether fewer units than workers are queued or running.
+   */
+  private boolean hasIdleWorkers() {
+    return outstanding.get() < threads;
+  }
+
+  private void completed(Piece piece, RuntimeException exception) {
+    if (exception != null) {
+      piece.group.exception.compareAndSet(null, exception);
+    }
+    if (piece.group.pending.decrementAndGet() == 0) {
+      final RuntimeException groupException = piece.group.exception.get();
+      if (groupException == null) {
+        piece.group.completion.complete(null);
+      } else {
+        piece.group.completion.completeExceptionally(groupException);
+      }
+    }
+    if (outstanding.decrementAndGet() == 0 && shutdown) {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Creates the task that processes the messages of a folder in the range [start, end].
+   */
+  @FunctionalInterface
+  public interface UnitTask {
+
+    Runnable create(int start, int end);
+  }
+
+  private static final class Group {
+
+    private final long cost;
+    private final UnitTask task;
+    private final AtomicInteger pending;
+    private final AtomicReference<RuntimeException> exception;
+    private final CompletableFuture<Void> completion;
+
+    private Group(long cost, UnitTask task) {
+      this.cost = cost;
+      this.task = task;
+      pending = new AtomicInteger();
+      exception = new AtomicReference<>();
+      completion = new CompletableFuture<>();
+    }
+  }
+
+  private final class Piece implements Runnable, Comparable<Piece> {
+
+    private final Group group;
+    private final int start;
+    private int end;
+    private long cost;
+    private final long order;
+
+    private Piece(Group group, int start, int end, long cost) {
+      this.group = group;
+      this.start = start;
+      this.end = end;
+      this.cost = cost;
+      order = sequence.getAndIncrement();
+    }
+
+    @Override
+    public void run() {
+      split();
+      RuntimeException exception = null;
+      try {
+        batchPlanner.timed(new Unit(start, end, cost), group.task.create(start, end)).run();
+      } catch (RuntimeException ex) {
+        exception = ex;
+      } finally {
+        completed(this, exception);
+      }
+    }
+
+    /**
+     * Hands the second half of this unit to idle workers for as long as there are any.
+     */
+    private void split() {
+      while (end - start + 1 >= 2 * MIN_SPLIT_MESSAGES && hasIdleWorkers()) {
+        final int messages = end - start + 1;
+        final int middle = start + messages / 2 - 1;
+        final long splitCost = cost * (end - middle) / messages;
+        final Piece second = new Piece(group, middle + 1, end, splitCost);
+        group.pending.incrementAndGet();
+        outstanding.incrementAndGet();
+        end = middle;
+        cost = cost - splitCost;
+        executor.execute(second);
+      }
+    }
+
+    @Override
+    public int compareTo(Piece other) {
+      int result = Long.compare(other.group.cost, group.cost);
+      if (result == 0) {
+        result = Long.compare(other.cost, cost);
+      }
+      if (result == 0) {
+        result = Long.compare(order, other.order);
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * WorkerOptions.java
+ *
+ * Created on 2026-10-18, 03:10
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync;
+
+import com.marcnuri.mnimapsync.imap.HostThrottle;
+import com.marcnuri.mnimapsync.index.IdentityFetch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Settings of the workers that crawl, copy or delete messages in the same server.
+ *
+ * Defaults to a single worker fetching {@link IdentityFetch#HEADERS} on platform threads without
+ * any limit of the commands sent to the server.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+public final class WorkerOptions {
+
+  private int connections;
+  private IdentityFetch identityFetch;
+  private ThreadFactory threadFactory;
+  private HostThrottle throttle;
+
+  public WorkerOptions() {
+    connections = 1;
+    identityFetch = IdentityFetch.HEADERS;
+    threadFactory = Executors.defaultThreadFactory();
+    throttle = HostThrottle.unlimited();
+  }
+
+  public WorkerOptions(WorkerOptions workerOptions) {
+    connections = workerOptions.connections;
+    identityFetch = workerOptions.identityFetch;
+    threadFactory = workerOptions.threadFactory;
+    throttle = workerOptions.throttle;
+  }
+
+  /**
+   * Number of workers, each of them holds one of the connections of the server.
+   */
+  public int getConnections() {
+    return connections;
+  }
+
+  public void setConnections(int connections) {
+    this.connections = connections;
+  }
+
+  /**
+   * Strategy used to fetch the headers that identify the messages of the server.
+   */
+  public IdentityFetch getIdentityFetch() {
+    return identityFetch;
+  }
+
+  public void setIdentityFetch(IdentityFetch identityFetch) {
+    this.identityFetch = identityFetch;
+  }
+
+  /**
+   * Factory of the worker threads.
+   */
+  public ThreadFactory getThreadFactory() {
+    return threadFactory;
+  }
+
+  public void setThreadFactory(ThreadFactory threadFactory) {
+    this.threadFactory = threadFactory;
+  }
+
+  /**
+   * Limits of the commands sent by the workers to the server, shared by every worker connected
+   * to it.
+   */
+  public HostThrottle getThrottle() {
+    return throttle;
+  }
+
+  public void setThrottle(HostThrottle throttle) {
+    this.throttle = throttle;
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * WorkerThreads.java
+ *
+ * Created on 2026-10-17, 18:20
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Provides the threads that run the IMAP workers.
+ *
+ * Workers are bounded by the number of connections of their server, not by the threads that run
+ * them. Platform threads run in pools of a fixed size. Virtual threads (Java 21+) make idle or
+ * blocked workers almost free, so each task runs on its own virtual thread and waits for a
+ * connection of the {@link com.marcnuri.mnimapsync.imap.ConnectionLimit} of its server instead
+ * of a pool worker, which allows running many syncs in the same JVM. The project targets Java 8,
+ * so virtual threads are created through reflection and platform threads are used when they
+ * aren't available.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public final class WorkerThreads {
+
+  private static final String VIRTUAL_THREAD_PREFIX = "mnimapsync-worker-";
+
+  private WorkerThreads() {
+  }
+
+  /**
+   * Returns a factory of virtual threads if requested and supported by the running JVM, a factory
+   * of platform threads otherwise.
+   */
+  public static ThreadFactory threadFactory(boolean virtualThreads) {
+    if (virtualThreads) {
+      final ThreadFactory virtualThreadFactory = virtualThreadFactory();
+      if (virtualThreadFactory != null) {
+        return new VirtualThreadFactory(virtualThreadFactory);
+      }
+      Logger.getLogger(WorkerThreads.class.getName()).log(Level.WARNING,
+          "Virtual threads require Java 21+, using platform threads");
+    }
+    return Executors.defaultThreadFactory();
+  }
+
+  /**
+   * Whether the factory creates virtual threads.
+   */
+  public static boolean isVirtual(ThreadFactory threadFactory) {
+    return threadFactory instanceof VirtualThreadFactory;
+  }
+
+  /**
+   * Returns an executor of a fixed number of platform threads or, for virtual threads, an
+   * unbounded executor that starts a new thread per task.
+   */
+  public static ExecutorService newWorkerPool(int threads, ThreadFactory threadFactory) {
+    if (isVirtual(threadFactory)) {
+      return newThreadPerTaskExecutor(threadFactory);
+    }
+    return Executors.newFixedThreadPool(threads, threadFactory);
+  }
+
+  /**
+   * Executor that starts a new thread per task (Executors.newThreadPerTaskExecutor in Java 21+).
+   */
+  static ExecutorService newThreadPerTaskExecutor(ThreadFactory threadFactory) {
+    try {
+      return (ExecutorService) Executors.class
+          .getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, threadFactory);
+    } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException ex) {
+      //Idle threads are discarded right away
+      return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 0L, TimeUnit.MILLISECONDS,
+          new SynchronousQueue<>(), threadFactory);
+    }
+  }
+
+  /**
+   * Whether the running JVM supports virtual threads.
+   */
+  public static boolean isVirtualThreadSupported() {
+    return virtualThreadFactory() != null;
+  }
+
+  private static ThreadFactory virtualThreadFactory() {
+    try {
+      final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      builder = builderClass.getMethod("name", String.class, long.class)
+          .invoke(builder, VIRTUAL_THREAD_PREFIX, 0L);
+      return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+    } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException
+        | InvocationTargetException ex) {
+      return null;
+    }
+  }
+
+  private static final class VirtualThreadFactory implements ThreadFactory {
+
+    private final ThreadFactory delegate;
+
+    private VirtualThreadFactory(ThreadFactory delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      return delegate.newThread(runnable);
+    }
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * BatchFileParser.java
+ *
+ * Created on 2026-10-17, 19:05
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.batch;
+
+import com.marcnuri.mnimapsync.HostDefinition;
+import com.marcnuri.mnimapsync.SyncOptions;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the accounts of a batch file.
+ *
+ * Each line is a CSV record with the following columns:
+ * <code>host1,port1,user1,password1,ssl1,host2,port2,user2,password2,ssl2</code>.
+ * Values containing commas or quotes can be enclosed in double quotes (quotes are escaped by
+ * doubling them). Empty lines and lines starting with <code>#</code> are ignored.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public class BatchFileParser {
+
+  private static final int COLUMNS = 10;
+  private static final char SEPARATOR = ',';
+  private static final char QUOTE = '"';
+  private static final String COMMENT = "#";
+
+  private BatchFileParser() {
+  }
+
+  public static List<SyncOptions> parseBatchFile(File batchFile, SyncOptions batchOptions)
+      throws IOException {
+
+    try (final BufferedReader reader = Files.newBufferedReader(batchFile.toPath(),
+        StandardCharsets.UTF_8)) {
+      return parseBatch(reader, batchOptions);
+    }
+  }
+
+  /**
+   * Returns the options of each account, the rest of the settings are taken from the provided
+   * batch options.
+   */
+  public static List<SyncOptions> parseBatch(Reader batch, SyncOptions batchOptions)
+      throws IOException {
+
+    final BufferedReader reader = new BufferedReader(batch);
+    final List<SyncOptions> result = new ArrayList<>();
+    String line;
+    int lineNumber = 0;
+    while ((line = reader.readLine()) != null) {
+      lineNumber++;
+      if (line.trim().isEmpty() || line.trim().startsWith(COMMENT)) {
+        continue;
+      }
+      final List<String> columns = splitColumns(line, lineNumber);
+      if (columns.size() != COLUMNS) {
+        throw new IllegalArgumentException(String.format(
+            "Invalid batch file line %s: expected %s columns but found %s",
+            lineNumber, COLUMNS, columns.size()));
+      }
+      final HostDefinition sourceHost = parseHost(columns.subList(0, 5), lineNumber);
+      sourceHost.setIdentityFetch(batchOptions.getSourceHost().getIdentityFetch());
+      sourceHost.setCommandsPerSecond(batchOptions.getSourceHost().getCommandsPerSecond());
+      sourceHost.setBytesPerSecond(batchOptions.getSourceHost().getBytesPerSecond());
+      final HostDefinition targetHost = parseHost(columns.subList(5, 10), lineNumber);
+      targetHost.setIdentityFetch(batchOptions.getTargetHost().getIdentityFetch());
+      targetHost.setCommandsPerSecond(batchOptions.getTargetHost().getCommandsPerSecond());
+      targetHost.setBytesPerSecond(batchOptions.getTargetHost().getBytesPerSecond());
+      result.add(new SyncOptions(batchOptions, sourceHost, targetHost,
+          stateDirectory(batchOptions.getStateDirectory(), sourceHost)));
+    }
+    return result;
+  }
+
+  /**
+   * Each account keeps its state in its own subdirectory named after the source account.
+   */
+  static File stateDirectory(File batchStateDirectory, HostDefinition sourceHost) {
+    if (batchStateDirectory == null) {
+      return null;
+    }
+    return new File(batchStateDirectory, String.format("%s@%s", sourceHost.getUser(),
+        sourceHost.getHost()).replaceAll("[^A-Za-z0-9._@-]", "_"));
+  }
+
+  private static HostDefinition parseHost(List<String> columns, int lineNumber) {
+    final HostDefinition result = new HostDefinition();
+    result.setHost(columns.get(0));
+    try {
+      result.setPort(Integer.parseInt(columns.get(1).trim()));
+    } catch (NumberFormatException ex) {
+      throw new IllegalArgumentException(String.format(
+          "Invalid batch file line %s: port should be an integer", lineNumber));
+    }
+    result.setUser(columns.get(2));
+    result.setPassword(columns.get(3));
+    result.setSsl(Boolean.parseBoolean(columns.get(4).trim()));
+    return result;
+  }
+
+  private static List<String> splitColumns(String line, int lineNumber) {
+    final List<String> result = new ArrayList<>();
+    final StringBuilder current = new StringBuilder();
+    boolean quoted = false;
+    for (int it = 0; it < line.length(); it++) {
+      final char c = line.charAt(it);
+      if (quoted && c == QUOTE && it + 1 < line.length() && line.charAt(it + 1) == QUOTE) {
+        current.append(QUOTE);
+        it++;
+      } else if (c == QUOTE) {
+        quoted = !quoted;
+      } else if (c == SEPARATOR && !quoted) {
+        result.add(current.toString());
+        current.setLength(0);
+      } else {
+        current.append(c);
+      }
+    }
+    if (quoted) {
+      throw new IllegalArgumentException(String.format(
+          "Invalid batch file line %s: unterminated quoted value", lineNumber));
+    }
+    result.add(current.toString());
+    return result;
+  }
+}
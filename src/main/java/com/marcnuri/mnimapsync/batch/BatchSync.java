@@ -0,0 +1,148 @@
+/*
+ * BatchSync.java
+ *
+ * Created on 2026-10-17, 19:35
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.batch;
+
+import com.marcnuri.mnimapsync.HostDefinition;
+import com.marcnuri.mnimapsync.MNIMAPSync;
+import com.marcnuri.mnimapsync.SyncOptions;
+import com.marcnuri.mnimapsync.WorkerThreads;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Syncs the accounts of a batch concurrently in the same process.
+ *
+ * Accounts are started as soon as the connections they may open fit within the
+ * {@link ConnectionBudget}, each of them runs its own {@link MNIMAPSync}.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public class BatchSync {
+
+  private final List<SyncOptions> accounts;
+  private final List<MNIMAPSync> syncs;
+  private final ConnectionBudget connectionBudget;
+  private final boolean virtualThreads;
+  private long startTime;
+
+  public BatchSync(SyncOptions batchOptions, List<SyncOptions> accounts) {
+    this.accounts = accounts;
+    syncs = Collections.synchronizedList(new ArrayList<>(Collections.nCopies(accounts.size(),
+        (MNIMAPSync) null)));
+    connectionBudget = new ConnectionBudget(batchOptions.getMaxConnections(),
+        batchOptions.getMaxHostConnections());
+    virtualThreads = batchOptions.isVirtualThreads();
+    for (SyncOptions account : accounts) {
+      connectionBudget.validate(getAccountName(account), connectionDemand(account));
+    }
+  }
+
+  public List<SyncOptions> getAccounts() {
+    return accounts;
+  }
+
+  /**
+   * Sync instance of each account, null for accounts that weren't started.
+   */
+  public List<MNIMAPSync> getSyncs() {
+    return syncs;
+  }
+
+  public long getElapsedTimeInSeconds() {
+    return startTime == 0L ? 0L : (System.currentTimeMillis() - startTime) / 1000L;
+  }
+
+  /**
+   * Syncs every account and waits for all of them to finish.
+   *
+   * @param accountFinished invoked with the index of each account once it finishes.
+   */
+  public void sync(Consumer<Integer> accountFinished) throws InterruptedException {
+    startTime = System.currentTimeMillis();
+    //Accounts spend most of the time waiting for connections or IMAP responses
+    final ExecutorService service = Executors.newCachedThreadPool(
+        WorkerThreads.threadFactory(virtualThreads));
+    for (int it = 0; it < accounts.size(); it++) {
+      final int account = it;
+      service.execute(() -> syncAccount(account, accountFinished));
+    }
+    service.shutdown();
+    service.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+  }
+
+  private void syncAccount(int account, Consumer<Integer> accountFinished) {
+    final SyncOptions accountOptions = accounts.get(account);
+    final Map<String, Integer> demand = connectionDemand(accountOptions);
+    try {
+      connectionBudget.acquire(demand);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      accountFinished.accept(account);
+      return;
+    }
+    try {
+      final MNIMAPSync sync = new MNIMAPSync(accountOptions);
+      syncs.set(account, sync);
+      sync.sync();
+    } catch (IOException | RuntimeException ex) {
+      //An account failure must not prevent the rest of the accounts from being reported
+      Logger.getLogger(BatchSync.class.getName()).log(Level.SEVERE,
+          String.format("Couldn't sync account %s", getAccountName(accountOptions)), ex);
+    } finally {
+      connectionBudget.release(demand);
+      accountFinished.accept(account);
+    }
+  }
+
+  public static String getAccountName(SyncOptions account) {
+    return String.format("%s@%s -> %s@%s",
+        account.getSourceHost().getUser(), account.getSourceHost().getHost(),
+        account.getTargetHost().getUser(), account.getTargetHost().getHost());
+  }
+
+  /**
+   * Connections that the account may open per host, as enforced by the connection limit of each
+   * of its servers (see {@link MNIMAPSync#maxConnections(int)}).
+   */
+  static Map<String, Integer> connectionDemand(SyncOptions account) {
+    final Map<String, Integer> result = new HashMap<>();
+    result.merge(hostKey(account.getSourceHost()),
+        MNIMAPSync.maxConnections(account.getSourceConnections()), Integer::sum);
+    result.merge(hostKey(account.getTargetHost()),
+        MNIMAPSync.maxConnections(account.getTargetConnections()), Integer::sum);
+    return result;
+  }
+
+  private static String hostKey(HostDefinition host) {
+    return String.valueOf(host.getHost()).toLowerCase(Locale.ENGLISH);
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * ConnectionBudget.java
+ *
+ * Created on 2026-10-17, 19:20
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.batch;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Global and per-host limits of the connections opened by the accounts of a batch.
+ *
+ * An account is only started once every connection it may open fits within the budget, its
+ * connections are acquired and released all at once so that accounts can't deadlock each other.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public final class ConnectionBudget {
+
+  private final int maxConnections;
+  private final int maxHostConnections;
+  private final Map<String, Integer> hostConnections;
+  private int connections;
+
+  /**
+   * @param maxConnections maximum number of connections, 0 for no limit.
+   * @param maxHostConnections maximum number of connections per host, 0 for no limit.
+   */
+  public ConnectionBudget(int maxConnections, int maxHostConnections) {
+    this.maxConnections = maxConnections;
+    this.maxHostConnections = maxHostConnections;
+    hostConnections = new HashMap<>();
+    connections = 0;
+  }
+
+  /**
+   * Checks that the provided connections (per host) could ever be acquired.
+   *
+   * @throws IllegalArgumentException if the connections exceed any of the limits
+   */
+  public void validate(String account, Map<String, Integer> demand) {
+    final int total = total(demand);
+    if (maxConnections > 0 && total > maxConnections) {
+      throw new IllegalArgumentException(String.format(
+          "Account %s requires %s connections, exceeding --max-connections %s",
+          account, total, maxConnections));
+    }
+    for (Entry<String, Integer> hostDemand : demand.entrySet()) {
+      if (maxHostConnections > 0 && hostDemand.getValue() > maxHostConnections) {
+        throw new IllegalArgumentException(String.format(
+            "Account %s requires %s connections to %s, exceeding --max-host-connections %s",
+            account, hostDemand.getValue(), hostDemand.getKey(), maxHostConnections));
+      }
+    }
+  }
+
+  /**
+   * Blocks until every provided connection (per host) fits within the budget.
+   */
+  public synchronized void acquire(Map<String, Integer> demand) throws InterruptedException {
+    while (!fits(demand)) {
+      wait();
+    }
+    connections += total(demand);
+    demand.forEach((host, count) -> hostConnections.merge(host, count, Integer::sum));
+  }
+
+  public synchronized void release(Map<String, Integer> demand) {
+    connections -= total(demand);
+    demand.forEach((host, count) -> hostConnections.merge(host, -count, Integer::sum));
+    notifyAll();
+  }
+
+  synchronized int getConnections() {
+    return connections;
+  }
+
+  private boolean fits(Map<String, Integer> demand) {
+    if (maxConnections > 0 && connections + total(demand) > maxConnections) {
+      return false;
+    }
+    return maxHostConnections <= 0 || demand.entrySet().stream().allMatch(hostDemand ->
+        hostConnections.getOrDefault(hostDemand.getKey(), 0) + hostDemand.getValue()
+            <= maxHostConnections);
+  }
+
+  private static int total(Map<String, Integer> demand) {
+    return demand.values().stream().mapToInt(Integer::intValue).sum();
+  }
+}
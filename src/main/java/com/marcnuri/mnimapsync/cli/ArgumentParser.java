@@ -21,6 +21,8 @@
 package com.marcnuri.mnimapsync.cli;
 
 import com.marcnuri.mnimapsync.SyncOptions;
+import com.marcnuri.mnimapsync.index.IdentityFetch;
+import java.io.File;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.Optional;
@@ -48,6 +50,12 @@ public class ArgumentParser {
       parseArgument("--password1", argumentQueue,
           key -> result.getSourceHost().setPassword(argumentQueue.poll()));
       parseArgument("--ssl1", argumentQueue, key -> result.getSourceHost().setSsl(true));
+      parseArgument("--header-fields1", argumentQueue,
+          key -> result.getSourceHost().setIdentityFetch(IdentityFetch.HEADER_FIELDS));
+      parseArgument("--commands-per-second1", argumentQueue, key -> result.getSourceHost()
+          .setCommandsPerSecond(parseIntValue(key, argumentQueue.poll())));
+      parseArgument("--bytes-per-second1", argumentQueue, key -> result.getSourceHost()
+          .setBytesPerSecond(parseIntValue(key, argumentQueue.poll())));
       parseArgument("--host2", argumentQueue,
           key -> result.getTargetHost().setHost(argumentQueue.poll()));
       parseArgument("--port2", argumentQueue,
@@ -57,14 +65,62 @@ public class ArgumentParser {
       parseArgument("--password2", argumentQueue,
           key -> result.getTargetHost().setPassword(argumentQueue.poll()));
       parseArgument("--ssl2", argumentQueue, key -> result.getTargetHost().setSsl(true));
+      parseArgument("--header-fields2", argumentQueue,
+          key -> result.getTargetHost().setIdentityFetch(IdentityFetch.HEADER_FIELDS));
+      parseArgument("--commands-per-second2", argumentQueue, key -> result.getTargetHost()
+          .setCommandsPerSecond(parseIntValue(key, argumentQueue.poll())));
+      parseArgument("--bytes-per-second2", argumentQueue, key -> result.getTargetHost()
+          .setBytesPerSecond(parseIntValue(key, argumentQueue.poll())));
       parseArgument("--delete", argumentQueue, key -> result.setDelete(true));
       parseArgument("--threads", argumentQueue,
           key -> result.setThreads(parseIntValue(key, argumentQueue.poll())));
+      parseArgument("--source-connections", argumentQueue,
+          key -> result.setSourceConnections(parseIntValue(key, argumentQueue.poll())));
+      parseArgument("--target-connections", argumentQueue,
+          key -> result.setTargetConnections(parseIntValue(key, argumentQueue.poll())));
+      parseArgument("--fingerprint-index", argumentQueue,
+          key -> result.setFingerprintIndex(true));
+      parseArgument("--mapped-index", argumentQueue, key -> result.setMappedIndex(true));
+      parseArgument("--incremental", argumentQueue, key -> result.setIncremental(true));
+      parseArgument("--server-side-copy", argumentQueue, key -> result.setServerSideCopy(true));
+      parseArgument("--virtual-threads", argumentQueue, key -> result.setVirtualThreads(true));
+      parseArgument("--adaptive-concurrency", argumentQueue,
+          key -> result.setAdaptiveConcurrency(true));
+      parseArgument("--dry-run", argumentQueue, key -> result.setDryRun(true));
+      parseArgument("--daemon", argumentQueue, key -> result.setDaemon(true));
+      parseArgument("--poll-interval", argumentQueue,
+          key -> result.setPollInterval(parseIntValue(key, argumentQueue.poll())));
+      parseArgument("--batch", argumentQueue,
+          key -> result.setBatchFile(new File(parseStringValue(key, argumentQueue.poll()))));
+      parseArgument("--max-connections", argumentQueue,
+          key -> result.setMaxConnections(parseIntValue(key, argumentQueue.poll())));
+      parseArgument("--max-host-connections", argumentQueue,
+          key -> result.setMaxHostConnections(parseIntValue(key, argumentQueue.poll())));
+      parseArgument("--state-dir", argumentQueue,
+          key -> result.setStateDirectory(new File(parseStringValue(key, argumentQueue.poll()))));
       if (currentArgument.equals(argumentQueue.peek())) {
         throw new IllegalArgumentException(
             String.format("Unrecognized argument: %s", currentArgument));
       }
     }
+    if (result.isMappedIndex() && result.getStateDirectory() == null) {
+      throw new IllegalArgumentException("--mapped-index requires --state-dir");
+    }
+    if (result.isIncremental() && result.getStateDirectory() == null) {
+      throw new IllegalArgumentException("--incremental requires --state-dir");
+    }
+    if (result.isDryRun() && result.getBatchFile() != null) {
+      throw new IllegalArgumentException("--dry-run can't be combined with --batch");
+    }
+    if (result.isDaemon() && result.getBatchFile() != null) {
+      throw new IllegalArgumentException("--daemon can't be combined with --batch");
+    }
+    if (result.isDaemon() && result.isDryRun()) {
+      throw new IllegalArgumentException("--daemon can't be combined with --dry-run");
+    }
+    if (result.getPollInterval() <= 0) {
+      throw new IllegalArgumentException("--poll-interval should be a positive integer");
+    }
     return result;
   }
 
@@ -75,6 +131,11 @@ public class ArgumentParser {
     }
   }
 
+  private static String parseStringValue(String key, String value) {
+    return Optional.ofNullable(value).orElseThrow(() -> new IllegalArgumentException(
+        String.format("%s requires a value", key)));
+  }
+
   private static int parseIntValue(String key, String intValue) {
     try {
       return Integer.parseInt(Optional.ofNullable(intValue)
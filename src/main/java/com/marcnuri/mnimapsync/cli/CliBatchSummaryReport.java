@@ -0,0 +1,103 @@
+/*
+ * CliBatchSummaryReport.java
+ *
+ * Created on 2026-10-17, 19:50
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.cli;
+
+import com.marcnuri.mnimapsync.MNIMAPSync;
+import com.marcnuri.mnimapsync.batch.BatchSync;
+import com.marcnuri.mnimapsync.store.StoreCopier;
+import com.marcnuri.mnimapsync.store.StoreDeleter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Aggregated report of every account of a {@link BatchSync}.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public class CliBatchSummaryReport extends CliReport {
+
+  private static final String BATCH_SUMMARY_REPORT_TEMPLATE = "/CliBatchSummaryReport.template";
+
+  private CliBatchSummaryReport() {
+  }
+
+  public static String getBatchSummaryReportAsText(BatchSync batchSync) throws IOException {
+
+    return replaceTemplateVariables(
+        loadTemplate(BATCH_SUMMARY_REPORT_TEMPLATE),
+        initTemplateVariables(batchSync)
+    );
+  }
+
+  private static Map<String, String> initTemplateVariables(BatchSync batchSync) {
+    int accountsSynced = 0;
+    final List<String> failedAccounts = new ArrayList<>();
+    int foldersCopied = 0;
+    int foldersToCopy = 0;
+    long messagesCopied = 0L;
+    long messagesToCopy = 0L;
+    long messagesDeleted = 0L;
+    long messagesToDelete = 0L;
+    for (int it = 0; it < batchSync.getAccounts().size(); it++) {
+      final MNIMAPSync sync = batchSync.getSyncs().get(it);
+      final StoreCopier sourceCopier = sync == null ? null : sync.getSourceCopier();
+      if (sourceCopier == null || sourceCopier.hasCopyException()) {
+        failedAccounts.add(BatchSync.getAccountName(batchSync.getAccounts().get(it)));
+      } else {
+        accountsSynced++;
+      }
+      if (sourceCopier != null) {
+        foldersCopied += sourceCopier.getFoldersCopiedCount();
+        foldersToCopy +=
+            sourceCopier.getFoldersCopiedCount() + sourceCopier.getFoldersSkippedCount();
+        messagesCopied += sourceCopier.getMessagesCopiedCount();
+        messagesToCopy +=
+            sourceCopier.getMessagesCopiedCount() + sourceCopier.getMessagesSkippedCount();
+      }
+      final StoreDeleter targetDeleter = sync == null ? null : sync.getTargetDeleter();
+      if (targetDeleter != null) {
+        messagesDeleted += targetDeleter.getMessagesDeletedCount();
+        messagesToDelete +=
+            targetDeleter.getMessagesDeletedCount() + targetDeleter.getMessagesSkippedCount();
+      }
+    }
+    final Map<String, String> variables = new HashMap<>();
+    variables.put("elapsedTimeInSeconds", String.valueOf(batchSync.getElapsedTimeInSeconds()));
+    variables.put("accountsSyncedCount", String.valueOf(accountsSynced));
+    variables.put("accountsCount", String.valueOf(batchSync.getAccounts().size()));
+    variables.put("failedAccounts",
+        failedAccounts.isEmpty() ? "none" : String.join(", ", failedAccounts));
+    variables.put("foldersCopiedCount", String.valueOf(foldersCopied));
+    variables.put("foldersToCopyCount", String.valueOf(foldersToCopy));
+    variables.put("messagesCopiedCount", String.valueOf(messagesCopied));
+    variables.put("messagesToCopyCount", String.valueOf(messagesToCopy));
+    variables.put("messagesPerSecond", batchSync.getElapsedTimeInSeconds() == 0L ? "0"
+        : String.format(Locale.ENGLISH, "%.2f",
+            messagesToCopy / ((double) batchSync.getElapsedTimeInSeconds())));
+    variables.put("messagesDeletedCount", String.valueOf(messagesDeleted));
+    variables.put("messagesToDeleteCount", String.valueOf(messagesToDelete));
+    return variables;
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * CliPlanReport.java
+ *
+ * Created on 2026-10-18, 00:50
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.cli;
+
+import com.marcnuri.mnimapsync.store.SyncPlan;
+import com.marcnuri.mnimapsync.store.SyncPlan.FolderPlan;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Report of a dry run, the {@link SyncPlan} of every folder followed by the totals and the
+ * estimated duration of the sync.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+public class CliPlanReport extends CliReport {
+
+  private static final String PLAN_REPORT_TEMPLATE = "/CliPlanReport.template";
+  private static final String[] BYTE_UNITS = {"B", "KiB", "MiB", "GiB", "TiB"};
+
+  private CliPlanReport() {
+  }
+
+  public static String getPlanReportAsText(SyncPlan syncPlan) throws IOException {
+
+    return replaceTemplateVariables(
+        loadTemplate(PLAN_REPORT_TEMPLATE),
+        initTemplateVariables(syncPlan)
+    );
+  }
+
+  private static Map<String, String> initTemplateVariables(SyncPlan syncPlan) {
+    final StringBuilder folders = new StringBuilder();
+    for (FolderPlan folderPlan : syncPlan.getFolders()) {
+      folders.append(String.format("  %s: copy %s (%s), delete %s (%s)\n", folderPlan.getName(),
+          folderPlan.getMessagesToCopy(), formatBytes(folderPlan.getBytesToCopy()),
+          folderPlan.getMessagesToDelete(), formatBytes(folderPlan.getBytesToDelete())));
+    }
+    if (folders.length() == 0) {
+      folders.append("  No messages to copy or delete.\n");
+    }
+    final Map<String, String> variables = new HashMap<>();
+    variables.put("folders", folders.toString());
+    variables.put("messagesToCopyCount", String.valueOf(syncPlan.getMessagesToCopy()));
+    variables.put("bytesToCopy", formatBytes(syncPlan.getBytesToCopy()));
+    variables.put("messagesToDeleteCount", String.valueOf(syncPlan.getMessagesToDelete()));
+    variables.put("bytesToDelete", formatBytes(syncPlan.getBytesToDelete()));
+    variables.put("sourceMessagesPerSecond",
+        String.format(Locale.ENGLISH, "%.2f", syncPlan.getSourceMessagesPerSecond()));
+    variables.put("targetMessagesPerSecond",
+        String.format(Locale.ENGLISH, "%.2f", syncPlan.getTargetMessagesPerSecond()));
+    variables.put("bytesPerSecond", formatBytes((long) syncPlan.getBytesPerSecond()));
+    variables.put("eta", syncPlan.getEtaSeconds() < 0L ? "unknown"
+        : String.format("%s seconds", syncPlan.getEtaSeconds()));
+    return variables;
+  }
+
+  static String formatBytes(long bytes) {
+    double value = bytes;
+    int unit = 0;
+    while (value >= 1024D && unit < BYTE_UNITS.length - 1) {
+      value /= 1024D;
+      unit++;
+    }
+    return unit == 0 ? String.format("%s B", bytes)
+        : String.format(Locale.ENGLISH, "%.2f %s", value, BYTE_UNITS[unit]);
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * SourceWatcher.java
+ *
+ * Created on 2026-10-18, 01:10
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.daemon;
+
+import com.marcnuri.mnimapsync.imap.FolderSessions;
+import com.marcnuri.mnimapsync.imap.HostThrottle;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.mail.Folder;
+import javax.mail.MessagingException;
+
+/**
+ * Watches source folders with IMAP IDLE (RFC 2177) and signals any change reported by the server.
+ *
+ * Each watched folder keeps its own connection selected READ_ONLY, so only a limited number of
+ * folders (INBOX first) is watched. Watched folders hold their connection from the
+ * {@link com.marcnuri.mnimapsync.imap.ConnectionLimit} of the server for as long as they're
+ * watched. Nothing is watched if the server doesn't support IDLE.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+public final class SourceWatcher implements AutoCloseable {
+
+  private static final String CAPABILITY_IDLE = "IDLE";
+  private static final long RECONNECT_DELAY_MILLIS = 5_000L;
+
+  private final IMAPStore store;
+  private final int maxFolders;
+  private final FolderSessions folderSessions;
+  private final ThreadFactory threadFactory;
+  private final List<Thread> threads;
+  private final Set<Folder> openFolders;
+  private volatile boolean closed;
+  private boolean changed;
+
+  /**
+   * @param store connected store, IDLE blocks the connections of the watched folders.
+   * @param maxFolders maximum number of folders (and connections) to watch.
+   * @param throttle throttle of the server, watched folders take connections from its limit.
+   * @param threadFactory factory of the threads blocked in IDLE, one per folder.
+   */
+  public SourceWatcher(IMAPStore store, int maxFolders, HostThrottle throttle,
+      ThreadFactory threadFactory) {
+
+    this.store = store;
+    this.maxFolders = maxFolders;
+    folderSessions = new FolderSessions(store, 0, throttle);
+    this.threadFactory = threadFactory;
+    threads = new ArrayList<>();
+    openFolders = ConcurrentHashMap.newKeySet();
+  }
+
+  /**
+   * Starts watching the provided folders (up to the maximum).
+   *
+   * @return the names of the watched folders.
+   */
+  public List<String> watch(Collection<String> folderNames, String inbox)
+      throws MessagingException {
+
+    final List<String> result = new ArrayList<>();
+    if (!store.hasCapability(CAPABILITY_IDLE)) {
+      Logger.getLogger(SourceWatcher.class.getName()).log(Level.INFO,
+          "Source server doesn't support IDLE, changes will be polled");
+      return result;
+    }
+    if (maxFolders > 0 && inbox != null && folderNames.contains(inbox)) {
+      result.add(inbox);
+    }
+    for (String folderName : folderNames) {
+      if (result.size() >= maxFolders) {
+        break;
+      }
+      if (!folderName.equals(inbox) && holdsMessages(folderName)) {
+        result.add(folderName);
+      }
+    }
+    for (String folderName : result) {
+      final Thread thread = threadFactory.newThread(() -> watchFolder(folderName));
+      threads.add(thread);
+      thread.start();
+    }
+    return result;
+  }
+
+  private boolean holdsMessages(String folderName) throws MessagingException {
+    return (store.getFolder(folderName).getType() & Folder.HOLDS_MESSAGES)
+        == Folder.HOLDS_MESSAGES;
+  }
+
+  /**
+   * Blocks until a change is signaled or the timeout elapses.
+   *
+   * @return true if a change was signaled since the previous invocation.
+   */
+  public synchronized boolean awaitChange(long timeoutMillis) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + timeoutMillis;
+    long remaining = timeoutMillis;
+    while (!changed && remaining > 0L) {
+      wait(remaining);
+      remaining = deadline - System.currentTimeMillis();
+    }
+    final boolean result = changed;
+    changed = false;
+    return result;
+  }
+
+  synchronized void changed() {
+    changed = true;
+    notifyAll();
+  }
+
+  private void watchFolder(String folderName) {
+    while (!closed) {
+      IMAPFolder folder = null;
+      try {
+        folder = (IMAPFolder) folderSessions.open(folderName, Folder.READ_ONLY);
+        openFolders.add(folder);
+        while (!closed && folder.isOpen()) {
+          //Returns after the first response sent by the server (EXISTS, EXPUNGE, FETCH...)
+          folder.idle(true);
+          changed();
+        }
+      } catch (MessagingException | IllegalStateException ex) {
+        if (closed) {
+          return;
+        }
+        Logger.getLogger(SourceWatcher.class.getName()).log(Level.WARNING,
+            String.format("Stopped watching folder %s, reconnecting", folderName), ex);
+        //Changes may have been missed while disconnected
+        changed();
+        if (!sleep(RECONNECT_DELAY_MILLIS)) {
+          return;
+        }
+      } finally {
+        if (folder != null) {
+          openFolders.remove(folder);
+          folderSessions.discard(folder);
+        }
+      }
+    }
+  }
+
+  private static boolean sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+      return true;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private static void closeQuietly(Folder folder) {
+    try {
+      if (folder.isOpen()) {
+        folder.close(false);
+      }
+    } catch (MessagingException | IllegalStateException ex) {
+      Logger.getLogger(SourceWatcher.class.getName()).log(Level.FINE, null, ex);
+    }
+  }
+
+  /**
+   * Stops watching, closing a folder aborts its IDLE command.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    openFolders.forEach(SourceWatcher::closeQuietly);
+    threads.forEach(Thread::interrupt);
+  }
+}
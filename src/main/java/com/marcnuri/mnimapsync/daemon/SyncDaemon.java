@@ -0,0 +1,240 @@
+/*
+ * SyncDaemon.java
+ *
+ * Created on 2026-10-18, 01:40
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.daemon;
+
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.openStore;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.sourceFolderNameToTarget;
+
+import com.marcnuri.mnimapsync.SyncOptions;
+import com.marcnuri.mnimapsync.WorkerOptions;
+import com.marcnuri.mnimapsync.index.FolderState;
+import com.marcnuri.mnimapsync.index.Index;
+import com.marcnuri.mnimapsync.index.MappedIndex;
+import com.marcnuri.mnimapsync.store.CopyOptions;
+import com.marcnuri.mnimapsync.store.StoreCopier;
+import com.marcnuri.mnimapsync.store.StoreDeleter;
+import com.sun.mail.imap.IMAPStore;
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.mail.MessagingException;
+
+/**
+ * Keeps mirroring the source store after the initial sync, reusing its in-memory indexes.
+ *
+ * Each cycle runs a new {@link StoreCopier} on the same indexes: source folders whose STATUS
+ * reports no changes aren't selected and only messages appended since the previous cycle are
+ * copied, deduplicated against the target index. Cycles run as soon as the {@link SourceWatcher}
+ * signals a change and at least every poll interval.
+ *
+ * If deletes are enabled, only target folders whose source folder had messages removed are
+ * crawled again to delete them.
+ *
+ * The watched folders take their connections from the source connections, the copy runs with
+ * the remaining ones.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+public class SyncDaemon {
+
+  /**
+   * Maximum number of source folders watched with IDLE: INBOX, where most new messages arrive,
+   * plus one more folder. Changes to any other folder are picked up by the poll.
+   */
+  public static final int MAX_WATCHED_FOLDERS = 2;
+
+  //Changes arriving in bursts (e.g. a client moving many messages) are synced together
+  private static final long DEBOUNCE_MILLIS = 1_000L;
+  private static final long RECONNECT_DELAY_MILLIS = 30_000L;
+
+  private final SyncOptions syncOptions;
+  private final Index sourceIndex;
+  private final Index targetIndex;
+  private final WorkerOptions sourceWorkers;
+  private final WorkerOptions targetWorkers;
+  private final AtomicLong cycles;
+  private final AtomicLong messagesCopiedCount;
+  private final AtomicLong messagesDeletedCount;
+  private volatile long lastCycleMessagesCopied;
+  private volatile long lastCycleMessagesDeleted;
+
+  /**
+   * @param sourceIndex index of the source store populated by the initial sync.
+   * @param targetIndex index of the target store populated by the initial sync.
+   * @param sourceWorkers workers connected to the source server, shared by the watched folders
+   * and the copy.
+   * @param targetWorkers workers connected to the target server.
+   */
+  public SyncDaemon(SyncOptions syncOptions, Index sourceIndex, Index targetIndex,
+      WorkerOptions sourceWorkers, WorkerOptions targetWorkers) {
+    this.syncOptions = syncOptions;
+    this.sourceIndex = sourceIndex;
+    this.targetIndex = targetIndex;
+    this.sourceWorkers = sourceWorkers;
+    this.targetWorkers = targetWorkers;
+    cycles = new AtomicLong();
+    messagesCopiedCount = new AtomicLong();
+    messagesDeletedCount = new AtomicLong();
+  }
+
+  /**
+   * Runs until the current thread is interrupted. Connections lost in between cycles are opened
+   * again after a delay.
+   *
+   * @param cycleListener notified after each completed cycle.
+   */
+  public void run(Consumer<SyncDaemon> cycleListener) throws InterruptedException {
+    while (true) {
+      try (
+          final IMAPStore sourceStore = openStore(syncOptions.getSourceHost(),
+              syncOptions.getSourceConnections());
+          final IMAPStore targetStore = openStore(syncOptions.getTargetHost(),
+              syncOptions.getTargetConnections());
+          final SourceWatcher sourceWatcher = new SourceWatcher(sourceStore,
+              watchedFolders(sourceWorkers.getConnections()), sourceWorkers.getThrottle(),
+              sourceWorkers.getThreadFactory())
+      ) {
+        sourceWatcher.watch(sourceIndex.getFolders(), sourceIndex.getInbox());
+        while (true) {
+          sourceWatcher.awaitChange(TimeUnit.SECONDS.toMillis(syncOptions.getPollInterval()));
+          Thread.sleep(DEBOUNCE_MILLIS);
+          cycle(sourceStore, targetStore);
+          cycleListener.accept(this);
+        }
+      } catch (MessagingException | GeneralSecurityException ex) {
+        Logger.getLogger(SyncDaemon.class.getName()).log(Level.WARNING,
+            "Daemon sync failed, reconnecting", ex);
+        Thread.sleep(RECONNECT_DELAY_MILLIS);
+      }
+    }
+  }
+
+  /**
+   * Copies the messages appended to the source since the previous cycle and, if enabled, deletes
+   * the target messages removed from the source.
+   *
+   * @throws MessagingException if any message couldn't be copied, the next cycle processes the
+   * affected folders again.
+   */
+  final void cycle(IMAPStore sourceStore, IMAPStore targetStore)
+      throws MessagingException, InterruptedException {
+
+    final Map<String, FolderState> previousStates = new HashMap<>(sourceIndex.getFolderStates());
+    final WorkerOptions copyWorkers = new WorkerOptions(sourceWorkers);
+    copyWorkers.setConnections(copyConnections(sourceWorkers.getConnections()));
+    final CopyOptions copyOptions = new CopyOptions();
+    copyOptions.setSource(copyWorkers);
+    copyOptions.setTarget(targetWorkers);
+    copyOptions.setServerSideCopy(syncOptions.isServerSideCopy());
+    final StoreCopier storeCopier = new StoreCopier(sourceStore, sourceIndex, targetStore,
+        targetIndex, copyOptions);
+    storeCopier.copy();
+    lastCycleMessagesCopied = storeCopier.getMessagesCopiedCount();
+    lastCycleMessagesDeleted = 0L;
+    messagesCopiedCount.getAndAdd(lastCycleMessagesCopied);
+    try {
+      if (storeCopier.hasCopyException()) {
+        throw storeCopier.getCopyExceptions().get(0);
+      }
+      //Delete only if source store was completely indexed
+      if (syncOptions.getDelete() && storeCopier.isSourceIndexComplete()) {
+        final Set<String> targetFolderNames = foldersWithRemovals(previousStates);
+        if (!targetFolderNames.isEmpty()) {
+          final StoreDeleter storeDeleter = new StoreDeleter(sourceIndex, targetIndex,
+              targetStore, targetWorkers);
+          storeDeleter.delete(targetFolderNames::contains);
+          lastCycleMessagesDeleted = storeDeleter.getMessagesDeletedCount();
+          messagesDeletedCount.getAndAdd(lastCycleMessagesDeleted);
+        }
+      }
+      cycles.getAndAdd(1);
+    } finally {
+      if (targetIndex instanceof MappedIndex) {
+        ((MappedIndex) targetIndex).force();
+        ((MappedIndex) sourceIndex).force();
+      }
+    }
+  }
+
+  /**
+   * Number of source folders to watch, at least one source connection is left for the copy.
+   */
+  static int watchedFolders(int sourceConnections) {
+    return Math.max(0, Math.min(MAX_WATCHED_FOLDERS, sourceConnections - 1));
+  }
+
+  /**
+   * Source connections left for the copy once the watched folders are selected.
+   */
+  static int copyConnections(int sourceConnections) {
+    return Math.max(1, sourceConnections - watchedFolders(sourceConnections));
+  }
+
+  /**
+   * Returns the target folders whose source folder had messages removed (or was removed) since
+   * the previous states were recorded.
+   *
+   * A folder only had messages appended if its message count grew at most by the number of UIDs
+   * assigned in between.
+   */
+  private Set<String> foldersWithRemovals(Map<String, FolderState> previousStates) {
+    final Set<String> result = new HashSet<>();
+    previousStates.forEach((sourceFolderName, previous) -> {
+      final FolderState current = sourceIndex.getFolderState(sourceFolderName);
+      if (current == null || current.getUidValidity() != previous.getUidValidity()
+          || current.getMessageCount()
+          < previous.getMessageCount() + current.getUidNext() - previous.getUidNext()) {
+        result.add(sourceFolderNameToTarget(sourceFolderName, sourceIndex, targetIndex));
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Number of completed cycles.
+   */
+  public long getCycles() {
+    return cycles.get();
+  }
+
+  public long getMessagesCopiedCount() {
+    return messagesCopiedCount.get();
+  }
+
+  public long getMessagesDeletedCount() {
+    return messagesDeletedCount.get();
+  }
+
+  public long getLastCycleMessagesCopied() {
+    return lastCycleMessagesCopied;
+  }
+
+  public long getLastCycleMessagesDeleted() {
+    return lastCycleMessagesDeleted;
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * AdaptiveConcurrency.java
+ *
+ * Created on 2026-10-17, 22:20
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the number of concurrent operations against a server adjusting the limit with an AIMD
+ * (additive increase, multiplicative decrease) strategy.
+ *
+ * The limit grows by one operation per window of successful operations while their latency stays
+ * close to the best latency observed, and is halved when the server throttles or drops the
+ * connection. Decreases are applied at most once per {@link #DECREASE_INTERVAL_NANOS}, as every
+ * operation in flight usually fails at once.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public final class AdaptiveConcurrency {
+
+  static final long DECREASE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1L);
+  //Operations slower than this factor of the baseline latency don't increase the limit
+  private static final double LATENCY_TOLERANCE = 2D;
+  //Baseline drifts towards the current latency so that it can recover from outliers
+  private static final double BASELINE_DRIFT = 0.01D;
+  private static final double DECREASE_FACTOR = 0.5D;
+
+  private final int maxLimit;
+  private final LongSupplier nanoClock;
+  private double limit;
+  private int inFlight;
+  private double baselineLatency;
+  private long lastDecrease;
+
+  /**
+   * @param maxLimit maximum number of concurrent operations, usually the number of connections.
+   */
+  public AdaptiveConcurrency(int maxLimit) {
+    this(maxLimit, System::nanoTime);
+  }
+
+  AdaptiveConcurrency(int maxLimit, LongSupplier nanoClock) {
+    this.maxLimit = Math.max(maxLimit, 1);
+    this.nanoClock = nanoClock;
+    //Starts halfway so that the limit can be raised as well as lowered
+    limit = Math.max(this.maxLimit / 2, 1);
+    inFlight = 0;
+    baselineLatency = 0D;
+    lastDecrease = nanoClock.getAsLong() - DECREASE_INTERVAL_NANOS;
+  }
+
+  /**
+   * Blocks until an operation can be started within the current limit.
+   */
+  public synchronized void acquire() throws InterruptedException {
+    while (inFlight >= getLimit()) {
+      wait();
+    }
+    inFlight++;
+  }
+
+  /**
+   * Signals that an operation finished successfully after the provided latency.
+   */
+  public synchronized void succeeded(long latencyNanos) {
+    release();
+    if (baselineLatency == 0D || latencyNanos < baselineLatency) {
+      baselineLatency = latencyNanos;
+    } else {
+      baselineLatency += (latencyNanos - baselineLatency) * BASELINE_DRIFT;
+    }
+    if (latencyNanos <= baselineLatency * LATENCY_TOLERANCE) {
+      limit = Math.min(maxLimit, limit + 1D / limit);
+    }
+  }
+
+  /**
+   * Signals that an operation was rejected by the server due to throttling or a lost connection.
+   */
+  public synchronized void throttled() {
+    release();
+    final long now = nanoClock.getAsLong();
+    if (now - lastDecrease >= DECREASE_INTERVAL_NANOS) {
+      limit = Math.max(1D, limit * DECREASE_FACTOR);
+      lastDecrease = now;
+    }
+  }
+
+  /**
+   * Signals that an operation failed for a reason unrelated to the server load.
+   */
+  public synchronized void failed() {
+    release();
+  }
+
+  public synchronized int getLimit() {
+    return (int) limit;
+  }
+
+  private void release() {
+    inFlight--;
+    notifyAll();
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * ConnectionLimit.java
+ *
+ * Created on 2026-10-18, 02:20
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of folders selected at the same time on a server, each of which holds its
+ * own connection.
+ *
+ * Every folder opened through {@link FolderSessions} holds a {@link Lease} until its session
+ * ends, whatever the component (crawl, copy, append, delete) the session belongs to. Sessions
+ * kept selected for the next batch of a worker are idle: when a connection is needed and every
+ * lease is taken, an idle session is closed to free its lease.
+ *
+ * The store connection (LIST, STATUS, CREATE...) of each open store isn't limited.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+public final class ConnectionLimit {
+
+  //Sessions may become idle while waiting for a lease
+  private static final long EVICT_INTERVAL_MILLIS = 100L;
+
+  private final int connections;
+  private final Semaphore leases;
+  private final Set<Lease> idleLeases;
+
+  /**
+   * @param connections maximum number of folders selected at the same time.
+   */
+  public ConnectionLimit(int connections) {
+    if (connections <= 0) {
+      throw new IllegalArgumentException("Connections should be a positive integer");
+    }
+    this.connections = connections;
+    leases = new Semaphore(connections, true);
+    idleLeases = ConcurrentHashMap.newKeySet();
+  }
+
+  public static ConnectionLimit unlimited() {
+    return new ConnectionLimit(Integer.MAX_VALUE);
+  }
+
+  /**
+   * Maximum number of folders selected at the same time.
+   */
+  public int getConnections() {
+    return connections;
+  }
+
+  /**
+   * Blocks until a connection is available, closing idle sessions if needed.
+   *
+   * @param evict closes the connection if the lease is evicted while idle.
+   */
+  Lease acquire(Runnable evict) throws InterruptedException {
+    while (!leases.tryAcquire()) {
+      if (!evictIdle()
+          && leases.tryAcquire(EVICT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+        break;
+      }
+    }
+    return new Lease(evict);
+  }
+
+  private boolean evictIdle() {
+    final Iterator<Lease> it = idleLeases.iterator();
+    while (it.hasNext()) {
+      if (it.next().evict()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  int getAvailable() {
+    return leases.availablePermits();
+  }
+
+  /**
+   * Connection held by a session. A lease is either in use by its owner thread, idle (can be
+   * claimed by another thread or evicted) or ended.
+   */
+  final class Lease {
+
+    private final Runnable evict;
+    private Thread owner;
+    private boolean idle;
+    private boolean ended;
+
+    private Lease(Runnable evict) {
+      this.evict = evict;
+      owner = Thread.currentThread();
+    }
+
+    /**
+     * Marks the lease as idle, it can be evicted until it's resumed.
+     */
+    synchronized void idle() {
+      if (!ended) {
+        idle = true;
+        idleLeases.add(this);
+      }
+    }
+
+    /**
+     * Marks an idle lease as in use again.
+     *
+     * @return false if the lease was evicted (or ended) and the connection can't be used.
+     */
+    synchronized boolean resume() {
+      if (ended || owner != Thread.currentThread()) {
+        return false;
+      }
+      idle = false;
+      idleLeases.remove(this);
+      return true;
+    }
+
+    /**
+     * Takes over an idle lease for the current thread.
+     *
+     * @return false if the lease isn't idle.
+     */
+    synchronized boolean claim() {
+      if (ended || !idle) {
+        return false;
+      }
+      idle = false;
+      owner = Thread.currentThread();
+      idleLeases.remove(this);
+      return true;
+    }
+
+    /**
+     * Closes the connection and ends the lease unless it was claimed by another thread.
+     */
+    synchronized void endIfOwner(Runnable close) {
+      if (!ended && owner == Thread.currentThread()) {
+        close.run();
+        end();
+      }
+    }
+
+    /**
+     * Returns the connection to the limit, it can be invoked more than once.
+     */
+    synchronized void end() {
+      if (!ended) {
+        ended = true;
+        idle = false;
+        idleLeases.remove(this);
+        leases.release();
+      }
+    }
+
+    private synchronized boolean evict() {
+      if (!idle || ended) {
+        return false;
+      }
+      evict.run();
+      end();
+      return true;
+    }
+  }
+}
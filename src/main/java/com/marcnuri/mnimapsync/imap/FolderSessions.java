@@ -0,0 +1,311 @@
+/*
+ * FolderSessions.java
+ *
+ * Created on 2026-10-17, 17:20
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.mail.Folder;
+import javax.mail.MessagingException;
+import javax.mail.ReadOnlyFolderException;
+import javax.mail.Store;
+
+/**
+ * Keeps the last folder opened by each worker thread selected so that consecutive batches of the
+ * same folder don't pay a new SELECT/EXAMINE.
+ *
+ * The folder is reselected when the worker switches to a different folder, and after
+ * {@link #MAX_SESSION_MESSAGES} messages have been processed in the same session, as JavaMail
+ * caches the fetched data of every message of an open folder.
+ *
+ * Each open folder holds a connection of the {@link ConnectionLimit} of the throttle's server
+ * until its session ends, sessions kept selected can be closed to free their connection for
+ * other workers of the same server. A thread that needs a folder kept selected by an idle
+ * session of another thread (e.g. a finished task running on its own virtual thread) takes the
+ * session over instead of selecting the folder again.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public final class FolderSessions {
+
+  public static final int MAX_SESSION_MESSAGES = 10_000;
+  //Sentinel mode for folders opened READ_WRITE if possible, READ_ONLY otherwise
+  private static final int WRITABLE_IF_POSSIBLE = -1;
+
+  private final Store store;
+  private final int maxSessionMessages;
+  private final HostThrottle throttle;
+  private final ThreadLocal<Session> currentSession;
+  private final Set<Session> sessions;
+
+  public FolderSessions(Store store) {
+    this(store, MAX_SESSION_MESSAGES);
+  }
+
+  /**
+   * @param maxSessionMessages number of messages after which a session is closed, 0 to close
+   * folders as soon as they are released.
+   */
+  public FolderSessions(Store store, int maxSessionMessages) {
+    this(store, maxSessionMessages, HostThrottle.unlimited());
+  }
+
+  /**
+   * @param throttle limits of the commands that the workers of these sessions send to the server.
+   */
+  public FolderSessions(Store store, int maxSessionMessages, HostThrottle throttle) {
+    this.store = store;
+    this.maxSessionMessages = maxSessionMessages;
+    this.throttle = throttle;
+    currentSession = new ThreadLocal<>();
+    sessions = ConcurrentHashMap.newKeySet();
+  }
+
+  public HostThrottle getThrottle() {
+    return throttle;
+  }
+
+  /**
+   * Returns the folder opened in the provided mode by the current thread, the folder is only
+   * opened if the thread's session is for a different folder or mode.
+   */
+  public Folder open(String folderName, int mode) throws MessagingException {
+    final Session session = currentSession.get();
+    if (session != null && session.matches(folderName, mode) && session.lease.resume()) {
+      return session.folder;
+    }
+    closeCurrentSession();
+    final Session idleSession = claimIdleSession(folderName, mode);
+    if (idleSession != null) {
+      return idleSession.folder;
+    }
+    return openSession(folderName, mode, store.getFolder(folderName));
+  }
+
+  /**
+   * Opens the provided folder (e.g. returned by {@link Folder#list()}) in a new session of the
+   * current thread, the previous session is closed.
+   */
+  public Folder open(Folder folder, int mode) throws MessagingException {
+    return openSession(folder.getFullName(), mode, folder);
+  }
+
+  private Folder openSession(String folderName, int mode, Folder folder)
+      throws MessagingException {
+
+    closeCurrentSession();
+    final ConnectionLimit.Lease lease = acquire(folder);
+    try {
+      folder.open(mode);
+    } catch (MessagingException | RuntimeException ex) {
+      lease.end();
+      throw ex;
+    }
+    return startSession(folderName, mode, folder, lease);
+  }
+
+  /**
+   * Same as {@link #open(String, int)} with {@link Folder#READ_WRITE} for servers with public or
+   * read only folders, which are opened {@link Folder#READ_ONLY}.
+   */
+  public Folder openWritableIfPossible(String folderName) throws MessagingException {
+    final Session session = currentSession.get();
+    if (session != null && session.matches(folderName, WRITABLE_IF_POSSIBLE)
+        && session.lease.resume()) {
+      return session.folder;
+    }
+    closeCurrentSession();
+    final Session idleSession = claimIdleSession(folderName, WRITABLE_IF_POSSIBLE);
+    if (idleSession != null) {
+      return idleSession.folder;
+    }
+    final Folder folder = store.getFolder(folderName);
+    final ConnectionLimit.Lease lease = acquire(folder);
+    try {
+      try {
+        folder.open(Folder.READ_WRITE);
+      } catch (ReadOnlyFolderException ex) {
+        folder.open(Folder.READ_ONLY);
+      }
+    } catch (MessagingException | RuntimeException ex) {
+      lease.end();
+      throw ex;
+    }
+    return startSession(folderName, WRITABLE_IF_POSSIBLE, folder, lease);
+  }
+
+  /**
+   * Takes over the idle session of another thread (e.g. a finished task) for the same folder and
+   * mode, if any.
+   */
+  private Session claimIdleSession(String folderName, int mode) {
+    for (Session session : sessions) {
+      if (session.matches(folderName, mode) && session.lease.claim()) {
+        currentSession.set(session);
+        return session;
+      }
+    }
+    return null;
+  }
+
+  private ConnectionLimit.Lease acquire(Folder folder) throws MessagingException {
+    try {
+      return throttle.getConnectionLimit().acquire(() -> {
+        closeQuietly(folder);
+        sessions.removeIf(session -> session.folder == folder);
+      });
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new MessagingException(
+          String.format("Interrupted while waiting for a connection to open %s",
+              folder.getFullName()), ex);
+    }
+  }
+
+  /**
+   * Signals that the current thread has finished processing the provided messages of its folder,
+   * the folder is kept open for the next batch unless the session is exhausted.
+   */
+  public void release(Folder folder, int messages) throws MessagingException {
+    final Session session = currentSession.get();
+    if (session == null || session.folder != folder) {
+      return;
+    }
+    session.messages += messages;
+    if (session.messages >= maxSessionMessages || !folder.isOpen()) {
+      endSession(session);
+      try {
+        if (folder.isOpen()) {
+          folder.close(false);
+        }
+      } finally {
+        session.lease.end();
+      }
+    } else {
+      session.lease.idle();
+    }
+  }
+
+  /**
+   * Closes the provided folder ending the current thread's session.
+   */
+  public void close(Folder folder, boolean expunge) throws MessagingException {
+    final Session session = currentSession.get();
+    if (session != null && session.folder == folder) {
+      endSession(session);
+      try {
+        folder.close(expunge);
+      } finally {
+        session.lease.end();
+      }
+    } else {
+      folder.close(expunge);
+    }
+  }
+
+  /**
+   * Ends the current thread's session after a failure, the folder is closed ignoring any error as
+   * its connection may already be lost.
+   */
+  public void discard(Folder folder) {
+    final Session session = currentSession.get();
+    if (session != null && session.folder == folder) {
+      endSession(session);
+    }
+    closeQuietly(folder);
+    if (session != null && session.folder == folder) {
+      session.lease.end();
+    }
+  }
+
+  /**
+   * Closes the folders of every session, must be invoked once the workers have finished.
+   */
+  public void closeAll() {
+    for (Session session : sessions) {
+      closeQuietly(session.folder);
+      session.lease.end();
+    }
+    sessions.clear();
+  }
+
+  private Folder startSession(String folderName, int mode, Folder folder,
+      ConnectionLimit.Lease lease) {
+    final Session session = new Session(folderName, mode, folder, lease);
+    currentSession.set(session);
+    sessions.add(session);
+    return folder;
+  }
+
+  /**
+   * Removes the session, its lease must be ended once its folder is closed.
+   */
+  private void endSession(Session session) {
+    currentSession.remove();
+    sessions.remove(session);
+  }
+
+  /**
+   * Closes the current thread's session unless it was claimed by another thread.
+   */
+  private void closeCurrentSession() {
+    final Session session = currentSession.get();
+    if (session != null) {
+      currentSession.remove();
+      session.lease.endIfOwner(() -> {
+        sessions.remove(session);
+        closeQuietly(session.folder);
+      });
+    }
+  }
+
+  private static void closeQuietly(Folder folder) {
+    try {
+      if (folder.isOpen()) {
+        folder.close(false);
+      }
+    } catch (MessagingException | IllegalStateException ex) {
+      Logger.getLogger(FolderSessions.class.getName()).log(Level.WARNING, null, ex);
+    }
+  }
+
+  private static final class Session {
+
+    private final String folderName;
+    private final int mode;
+    private final Folder folder;
+    private final ConnectionLimit.Lease lease;
+    private int messages;
+
+    private Session(String folderName, int mode, Folder folder, ConnectionLimit.Lease lease) {
+      this.folderName = folderName;
+      this.mode = mode;
+      this.folder = folder;
+      this.lease = lease;
+      messages = 0;
+    }
+
+    private boolean matches(String folderName, int mode) {
+      return folderName.equals(this.folderName) && this.mode == mode && folder.isOpen();
+    }
+  }
+}
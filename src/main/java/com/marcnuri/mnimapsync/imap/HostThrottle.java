@@ -0,0 +1,147 @@
+/*
+ * HostThrottle.java
+ *
+ * Created on 2026-10-17, 22:30
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import com.marcnuri.mnimapsync.HostDefinition;
+import com.marcnuri.mnimapsync.imap.RetryPolicy.RetryableCall;
+import javax.mail.MessagingException;
+
+/**
+ * Rate and concurrency limits of the IMAP commands sent to a server by the workers of a sync.
+ *
+ * Commands per second and bytes per second are limited as configured in the
+ * {@link HostDefinition}. Concurrent commands are optionally limited by an
+ * {@link AdaptiveConcurrency} controller, otherwise they're only bounded by the number of
+ * connections. Connections are limited by the {@link ConnectionLimit} shared by every
+ * {@link FolderSessions} of the host.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public final class HostThrottle {
+
+  private final RateLimiter commands;
+  private final RateLimiter bytes;
+  private final AdaptiveConcurrency concurrency;
+  private final ConnectionLimit connectionLimit;
+
+  /**
+   * @param connections maximum number of connections to the host.
+   * @param adaptive if true, commands are run concurrently within an adaptive limit.
+   */
+  public HostThrottle(HostDefinition host, int connections, boolean adaptive) {
+    this(new RateLimiter(host.getCommandsPerSecond()), new RateLimiter(host.getBytesPerSecond()),
+        adaptive ? new AdaptiveConcurrency(connections) : null, new ConnectionLimit(connections));
+  }
+
+  HostThrottle(RateLimiter commands, RateLimiter bytes, AdaptiveConcurrency concurrency) {
+    this(commands, bytes, concurrency, ConnectionLimit.unlimited());
+  }
+
+  HostThrottle(RateLimiter commands, RateLimiter bytes, AdaptiveConcurrency concurrency,
+      ConnectionLimit connectionLimit) {
+    this.commands = commands;
+    this.bytes = bytes;
+    this.concurrency = concurrency;
+    this.connectionLimit = connectionLimit;
+  }
+
+  public static HostThrottle unlimited() {
+    return new HostThrottle(new RateLimiter(0D), new RateLimiter(0D), null);
+  }
+
+  /**
+   * Runs a single IMAP command once it fits within the limits. Transient failures of the command
+   * are reported as throttling to the concurrency controller.
+   */
+  public <T> T execute(RetryableCall<T> command) throws MessagingException, InterruptedException {
+    if (concurrency != null) {
+      concurrency.acquire();
+    }
+    final long start = System.nanoTime();
+    boolean released = false;
+    try {
+      commands.acquire(1L);
+      //Waits for the bytes transferred by previous commands
+      bytes.acquire(0L);
+      final T result = command.call();
+      if (concurrency != null) {
+        concurrency.succeeded(System.nanoTime() - start);
+        released = true;
+      }
+      return result;
+    } catch (MessagingException ex) {
+      if (concurrency != null) {
+        if (RetryPolicy.isTransient(ex)) {
+          concurrency.throttled();
+        } else {
+          concurrency.failed();
+        }
+        released = true;
+      }
+      throw ex;
+    } finally {
+      if (concurrency != null && !released) {
+        concurrency.failed();
+      }
+    }
+  }
+
+  /**
+   * Runs the command as in {@link #execute(RetryableCall)} retrying transient failures with the
+   * provided policy, each attempt is throttled on its own.
+   */
+  public <T> T execute(RetryPolicy retryPolicy, RetryableCall<T> command)
+      throws MessagingException, InterruptedException {
+
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return execute(command);
+      } catch (MessagingException ex) {
+        if (!retryPolicy.shouldRetry(ex, attempt)) {
+          throw ex;
+        }
+        retryPolicy.backoff(attempt, ex);
+      }
+    }
+  }
+
+  /**
+   * Accounts the bytes transferred from or to the host, the next commands wait if the byte rate
+   * is exceeded.
+   */
+  public void transferred(long transferredBytes) throws InterruptedException {
+    bytes.acquire(transferredBytes);
+  }
+
+  /**
+   * Limit of the folders selected at the same time on the host.
+   */
+  public ConnectionLimit getConnectionLimit() {
+    return connectionLimit;
+  }
+
+  /**
+   * Current concurrency limit, 0 if concurrency isn't adaptive.
+   */
+  public int getConcurrencyLimit() {
+    return concurrency == null ? 0 : concurrency.getLimit();
+  }
+}
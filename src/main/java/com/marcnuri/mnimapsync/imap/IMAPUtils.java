@@ -21,15 +21,41 @@
 package com.marcnuri.mnimapsync.imap;
 
 import com.marcnuri.mnimapsync.HostDefinition;
+import com.marcnuri.mnimapsync.index.FolderState;
 import com.marcnuri.mnimapsync.index.Index;
+import com.sun.mail.iap.Argument;
+import com.sun.mail.iap.Literal;
+import com.sun.mail.iap.Response;
+import com.sun.mail.imap.IMAPFolder;
 import com.sun.mail.imap.IMAPSSLStore;
 import com.sun.mail.imap.IMAPStore;
+import com.sun.mail.imap.protocol.BASE64MailboxEncoder;
+import com.sun.mail.imap.protocol.INTERNALDATE;
+import com.sun.mail.imap.protocol.Status;
+import com.sun.mail.util.CRLFOutputStream;
 import com.sun.mail.util.MailSSLSocketFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import javax.mail.Flags;
+import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.Session;
+import javax.mail.UIDFolder;
 
 /**
  * Created by Marc Nuri <marc@marcnuri.com> on 2019-08-31.
@@ -37,6 +63,24 @@ import javax.mail.Session;
 public class IMAPUtils {
 
   public static final String INBOX_MAILBOX = "INBOX";
+  private static final String CAPABILITY_CONDSTORE = "CONDSTORE";
+  private static final String CAPABILITY_MULTIAPPEND = "MULTIAPPEND";
+  private static final String CAPABILITY_UIDPLUS = "UIDPLUS";
+  //Keeps command lines well below the 8192 octets recommended by RFC 7162
+  static final int MAX_UID_SET_LENGTH = 4000;
+  private static final String[] STATUS_ITEMS = {"MESSAGES", "UIDNEXT", "UIDVALIDITY"};
+  private static final String[] STATUS_ITEMS_CONDSTORE = {
+      "MESSAGES", "UIDNEXT", "UIDVALIDITY", "HIGHESTMODSEQ"};
+
+  private static final Map<Flags.Flag, String> SYSTEM_FLAGS = new HashMap<>();
+
+  static {
+    SYSTEM_FLAGS.put(Flags.Flag.ANSWERED, "\\Answered");
+    SYSTEM_FLAGS.put(Flags.Flag.DELETED, "\\Deleted");
+    SYSTEM_FLAGS.put(Flags.Flag.DRAFT, "\\Draft");
+    SYSTEM_FLAGS.put(Flags.Flag.FLAGGED, "\\Flagged");
+    SYSTEM_FLAGS.put(Flags.Flag.SEEN, "\\Seen");
+  }
 
   private static MailSSLSocketFactory mailSSLSocketFactory;
 
@@ -83,6 +127,306 @@ public class IMAPUtils {
     return ret;
   }
 
+  /**
+   * Retrieves the {@link FolderState} of a (closed) folder using a single STATUS command, without
+   * selecting it. HIGHESTMODSEQ is only requested if the server supports CONDSTORE.
+   */
+  public static FolderState getFolderStatus(IMAPFolder folder) throws MessagingException {
+    final boolean condstore = folder.getStore() instanceof IMAPStore
+        && ((IMAPStore) folder.getStore()).hasCapability(CAPABILITY_CONDSTORE);
+    final String fullName = folder.getFullName();
+    final Status status = (Status) folder.doCommand(protocol ->
+        protocol.status(fullName, condstore ? STATUS_ITEMS_CONDSTORE : STATUS_ITEMS));
+    if (status == null) {
+      return null;
+    }
+    return new FolderState(status.uidvalidity, status.uidnext, status.total,
+        Math.max(status.highestmodseq, 0L));
+  }
+
+  /**
+   * Returns the sequence number of the first message appended to the (open) folder since the
+   * previous state was recorded. If nothing was appended, the message count + 1 is returned.
+   *
+   * Messages with a UID lower than the previous UIDNEXT can only have been expunged. If their
+   * count didn't change, messages indexed for the previous state are still valid and only the
+   * appended messages (always at the end of the folder) need to be processed. Otherwise, 0 is
+   * returned to signal that the whole folder needs to be processed again.
+   */
+  public static int firstAppendedMessage(UIDFolder folder, FolderState folderState,
+      FolderState previousState) throws MessagingException {
+
+    if (folderState.isUnchangedSince(previousState)) {
+      return folderState.getMessageCount() + 1;
+    }
+    if (folderState.isCompatibleWith(previousState)) {
+      int firstAppendedMessage = folderState.getMessageCount() + 1;
+      int appendedMessageCount = 0;
+      // "UID n:*" always matches the last message even if its UID is lower than n
+      for (Message message : folder.getMessagesByUID(previousState.getUidNext(), UIDFolder.LASTUID)) {
+        if (folder.getUID(message) >= previousState.getUidNext()) {
+          firstAppendedMessage = Math.min(firstAppendedMessage, message.getMessageNumber());
+          appendedMessageCount++;
+        }
+      }
+      if (folderState.getMessageCount() - appendedMessageCount
+          == previousState.getMessageCount()) {
+        return firstAppendedMessage;
+      }
+    }
+    return 0;
+  }
+
+  public static boolean supportsMultiAppend(IMAPStore store) throws MessagingException {
+    return store.hasCapability(CAPABILITY_MULTIAPPEND);
+  }
+
+  /**
+   * Appends the messages to the folder using a single MULTIAPPEND (RFC 3502) command, which
+   * saves a round trip per message.
+   *
+   * The command is atomic, if it fails none of the messages were appended.
+   */
+  public static void multiAppend(IMAPFolder folder, Message[] messages)
+      throws MessagingException {
+
+    final Argument arguments = new Argument();
+    arguments.writeString(BASE64MailboxEncoder.encode(folder.getFullName()));
+    for (Message message : messages) {
+      arguments.writeAtom(toFlagList(message.getFlags()));
+      if (message.getReceivedDate() != null) {
+        arguments.writeString(INTERNALDATE.format(message.getReceivedDate()));
+      }
+      arguments.writeBytes(toLiteral(message));
+    }
+    folder.doCommand(protocol -> {
+      final Response[] responses = protocol.command("APPEND", arguments);
+      protocol.notifyResponseHandlers(responses);
+      protocol.handleResult(responses[responses.length - 1]);
+      return null;
+    });
+  }
+
+  /**
+   * Appends the message to the folder streaming its content straight from the server it was
+   * fetched from. Only a small buffer is held in memory, regardless of the size of the message.
+   *
+   * The size of the message must be its RFC822.SIZE, which is the exact size of the literal sent
+   * to the target server.
+   *
+   * @throws MessageSizeMismatchException if the content of the message doesn't match its
+   * RFC822.SIZE (broken servers), the connection of the folder can't be used anymore. This
+   * error is permanent, the message has to be buffered to be appended.
+   */
+  public static void appendStreaming(IMAPFolder folder, Message message)
+      throws MessagingException {
+
+    final String fullName = folder.getFullName();
+    final Flags flags = message.getFlags();
+    final Date receivedDate = message.getReceivedDate();
+    final int size = message.getSize();
+    final AtomicReference<IOException> sizeMismatch = new AtomicReference<>();
+    final Literal literal = new Literal() {
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @Override
+      public void writeTo(OutputStream os) throws IOException {
+        final SizeLimitedOutputStream limitedOs = new SizeLimitedOutputStream(os, size);
+        try {
+          message.writeTo(limitedOs);
+          limitedOs.checkComplete();
+        } catch (MessagingException ex) {
+          throw new IOException(ex);
+        } catch (IOException ex) {
+          if (limitedOs.isMismatch()) {
+            sizeMismatch.set(ex);
+          }
+          throw ex;
+        }
+      }
+    };
+    try {
+      folder.doCommand(protocol -> {
+        protocol.append(fullName, flags, receivedDate, literal);
+        return null;
+      });
+    } catch (MessagingException ex) {
+      //JavaMail reports the failed literal as a lost connection (transient)
+      if (sizeMismatch.get() != null) {
+        throw new MessageSizeMismatchException(sizeMismatch.get().getMessage(), ex);
+      }
+      throw ex;
+    }
+  }
+
+  /**
+   * Flags the messages with the provided UIDs of the (open) folder as \Deleted. UIDs are sent as
+   * range-compressed sets (e.g. 1:500,502) in as few UID STORE commands as possible, instead of
+   * a STORE per message.
+   */
+  public static void uidStoreDeleted(IMAPFolder folder, long[] uids) throws MessagingException {
+    uidCommand(folder, "UID STORE %s +FLAGS.SILENT (\\Deleted)", uids);
+  }
+
+  /**
+   * Permanently removes the messages with the provided UIDs, already flagged as \Deleted, from
+   * the (open) folder.
+   *
+   * UID EXPUNGE (RFC 4315) is used if the server supports UIDPLUS so that only these messages
+   * are removed, any other message flagged as \Deleted is kept. EXPUNGE is used otherwise.
+   */
+  public static void uidExpunge(IMAPFolder folder, long[] uids) throws MessagingException {
+    if (folder.getStore() instanceof IMAPStore
+        && ((IMAPStore) folder.getStore()).hasCapability(CAPABILITY_UIDPLUS)) {
+      uidCommand(folder, "UID EXPUNGE %s", uids);
+    } else {
+      folder.expunge();
+    }
+  }
+
+  private static void uidCommand(IMAPFolder folder, String command, long[] uids)
+      throws MessagingException {
+
+    for (String uidSet : toUidSets(uids)) {
+      folder.doCommand(protocol -> {
+        final Response[] responses = protocol.command(String.format(command, uidSet), null);
+        protocol.notifyResponseHandlers(responses);
+        protocol.handleResult(responses[responses.length - 1]);
+        return null;
+      });
+    }
+  }
+
+  /**
+   * Compresses the UIDs into sequence sets of consecutive UID ranges (RFC 3501), split so that
+   * none of them exceeds {@link #MAX_UID_SET_LENGTH} characters.
+   */
+  static List<String> toUidSets(long[] uids) {
+    final long[] sortedUids = uids.clone();
+    Arrays.sort(sortedUids);
+    final List<String> result = new ArrayList<>();
+    final StringBuilder uidSet = new StringBuilder();
+    int it = 0;
+    while (it < sortedUids.length) {
+      final long first = sortedUids[it];
+      long last = first;
+      while (++it < sortedUids.length && sortedUids[it] <= last + 1) {
+        last = sortedUids[it];
+      }
+      final String range = first == last ? String.valueOf(first) : first + ":" + last;
+      if (uidSet.length() > 0 && uidSet.length() + 1 + range.length() > MAX_UID_SET_LENGTH) {
+        result.add(uidSet.toString());
+        uidSet.setLength(0);
+      }
+      if (uidSet.length() > 0) {
+        uidSet.append(',');
+      }
+      uidSet.append(range);
+    }
+    if (uidSet.length() > 0) {
+      result.add(uidSet.toString());
+    }
+    return result;
+  }
+
+  /**
+   * The \Recent flag can't be set by clients, so it's ignored.
+   */
+  private static String toFlagList(Flags flags) {
+    final StringJoiner flagList = new StringJoiner(" ", "(", ")");
+    if (flags != null) {
+      Stream.of(flags.getSystemFlags()).map(SYSTEM_FLAGS::get).filter(Objects::nonNull)
+          .forEach(flagList::add);
+      Stream.of(flags.getUserFlags()).forEach(flagList::add);
+    }
+    return flagList.toString();
+  }
+
+  private static Literal toLiteral(Message message) throws MessagingException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (final OutputStream os = new CRLFOutputStream(bytes)) {
+      message.writeTo(os);
+    } catch (IOException ex) {
+      throw new MessagingException("Couldn't write message", ex);
+    }
+    final byte[] literal = bytes.toByteArray();
+    return new Literal() {
+      @Override
+      public int size() {
+        return literal.length;
+      }
+
+      @Override
+      public void writeTo(OutputStream os) throws IOException {
+        os.write(literal);
+      }
+    };
+  }
+
+  /**
+   * Fails instead of sending more or less bytes than those announced for a literal, which would
+   * otherwise corrupt the protocol stream.
+   */
+  private static final class SizeLimitedOutputStream extends FilterOutputStream {
+
+    private final long size;
+    private long written;
+    private boolean mismatch;
+
+    private SizeLimitedOutputStream(OutputStream out, long size) {
+      super(out);
+      this.size = size;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      checkAvailable(1);
+      out.write(b);
+      written++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      checkAvailable(len);
+      out.write(b, off, len);
+      written += len;
+    }
+
+    private void checkAvailable(int len) throws IOException {
+      if (written + len > size) {
+        mismatch = true;
+        throw new IOException(String.format("Message is larger than its RFC822.SIZE (%s)", size));
+      }
+    }
+
+    private void checkComplete() throws IOException {
+      if (written != size) {
+        mismatch = true;
+        throw new IOException(String.format("Message is smaller than its RFC822.SIZE (%s)", size));
+      }
+    }
+
+    private boolean isMismatch() {
+      return mismatch;
+    }
+  }
+
+  /**
+   * The content of a message streamed by {@link #appendStreaming(IMAPFolder, Message)} didn't
+   * match its RFC822.SIZE.
+   */
+  public static final class MessageSizeMismatchException extends MessagingException {
+
+    private static final long serialVersionUID = 1L;
+
+    MessageSizeMismatchException(String message, Exception cause) {
+      super(message, cause);
+    }
+  }
+
   private static Optional<String> translateInbox(String folderName, String inboxName) {
     if (INBOX_MAILBOX.equalsIgnoreCase(folderName)) {
       return Optional.ofNullable(inboxName);
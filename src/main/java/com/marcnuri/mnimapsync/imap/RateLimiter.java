@@ -0,0 +1,89 @@
+/*
+ * RateLimiter.java
+ *
+ * Created on 2026-10-17, 22:10
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket that limits the rate at which permits (commands, bytes...) are consumed.
+ *
+ * Permits are paid in advance: a caller only waits for the permits consumed by the previous
+ * callers, which allows acquiring amounts that are only known after the operation is performed
+ * (e.g. the bytes of a fetched message). Up to one second worth of unused permits is kept.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public final class RateLimiter {
+
+  private static final double NANOS_PER_SECOND = 1_000_000_000D;
+
+  private final double permitsPerSecond;
+  private final LongSupplier nanoClock;
+  private double available;
+  private long lastRefill;
+
+  /**
+   * @param permitsPerSecond maximum rate, 0 or less for no limit.
+   */
+  public RateLimiter(double permitsPerSecond) {
+    this(permitsPerSecond, System::nanoTime);
+  }
+
+  RateLimiter(double permitsPerSecond, LongSupplier nanoClock) {
+    this.permitsPerSecond = permitsPerSecond;
+    this.nanoClock = nanoClock;
+    available = Math.max(permitsPerSecond, 0D);
+    lastRefill = nanoClock.getAsLong();
+  }
+
+  public boolean isUnlimited() {
+    return permitsPerSecond <= 0D;
+  }
+
+  /**
+   * Consumes the permits, blocking until the permits consumed by previous callers are
+   * available.
+   */
+  public void acquire(long permits) throws InterruptedException {
+    final long waitNanos = reserve(permits);
+    if (waitNanos > 0L) {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+  }
+
+  /**
+   * Consumes the permits and returns the nanoseconds the caller must wait before proceeding.
+   */
+  synchronized long reserve(long permits) {
+    if (isUnlimited()) {
+      return 0L;
+    }
+    final long now = nanoClock.getAsLong();
+    available = Math.min(permitsPerSecond,
+        available + (now - lastRefill) / NANOS_PER_SECOND * permitsPerSecond);
+    lastRefill = now;
+    final long waitNanos = available >= 0D ? 0L
+        : (long) Math.ceil(-available / permitsPerSecond * NANOS_PER_SECOND);
+    available -= Math.max(permits, 0L);
+    return waitNanos;
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * RetryPolicy.java
+ *
+ * Created on 2026-10-17, 21:30
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import com.marcnuri.mnimapsync.imap.IMAPUtils.MessageSizeMismatchException;
+import com.sun.mail.iap.ConnectionException;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.mail.FolderClosedException;
+import javax.mail.MessagingException;
+import javax.mail.StoreClosedException;
+
+/**
+ * Retries IMAP operations that failed due to transient errors (dropped connections, timeouts or
+ * server throttling) with exponential backoff.
+ *
+ * Any other error is considered permanent and is never retried.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public final class RetryPolicy {
+
+  public static final RetryPolicy DEFAULT = new RetryPolicy(4, 500L, 30_000L);
+  public static final RetryPolicy NONE = new RetryPolicy(1, 0L, 0L);
+  //RFC 5530 response codes (and Gmail's THROTTLED) of temporary server conditions
+  private static final String[] TRANSIENT_RESPONSE_CODES = {
+      "[UNAVAILABLE]", "[INUSE]", "[THROTTLED]"
+  };
+
+  private final int maxAttempts;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+
+  /**
+   * @param maxAttempts number of times an operation is attempted, including the first one.
+   * @param initialBackoffMillis maximum delay before the first retry, doubled on each retry.
+   * @param maxBackoffMillis upper bound of the delay between retries.
+   */
+  public RetryPolicy(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis) {
+    this.maxAttempts = maxAttempts;
+    this.initialBackoffMillis = initialBackoffMillis;
+    this.maxBackoffMillis = maxBackoffMillis;
+  }
+
+  /**
+   * Invokes the call until it succeeds, fails with a permanent error or runs out of attempts.
+   */
+  public <T> T call(RetryableCall<T> call) throws MessagingException, InterruptedException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return call.call();
+      } catch (MessagingException ex) {
+        if (!shouldRetry(ex, attempt)) {
+          throw ex;
+        }
+        backoff(attempt, ex);
+      }
+    }
+  }
+
+  /**
+   * Whether an operation that failed with the provided exception in the provided attempt
+   * (starting at 1) should be attempted again.
+   */
+  public boolean shouldRetry(MessagingException exception, int attempt) {
+    return attempt < maxAttempts && isTransient(exception);
+  }
+
+  /**
+   * Sleeps before the next attempt for a random delay (full jitter) bounded by the exponential
+   * backoff of the failed attempt, so that concurrent workers don't retry in lockstep.
+   */
+  public void backoff(int attempt, MessagingException exception) throws InterruptedException {
+    Logger.getLogger(RetryPolicy.class.getName()).log(Level.WARNING, String.format(
+        "Transient error in attempt %s of %s, retrying: %s", attempt, maxAttempts,
+        exception.getMessage()));
+    final long bound = Math.min(maxBackoffMillis,
+        initialBackoffMillis << Math.min(attempt - 1, 30));
+    if (bound > 0L) {
+      Thread.sleep(ThreadLocalRandom.current().nextLong(bound / 2, bound + 1));
+    }
+  }
+
+  /**
+   * Transient errors are those caused by a lost connection or by a temporary server condition,
+   * the same operation may succeed once the connection is reestablished.
+   */
+  public static boolean isTransient(Throwable exception) {
+    for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+      //Reported as a lost connection, but a new attempt would send the same content
+      if (cause instanceof MessageSizeMismatchException) {
+        return false;
+      }
+      if (cause instanceof FolderClosedException || cause instanceof StoreClosedException
+          || cause instanceof ConnectionException || cause instanceof IOException) {
+        return true;
+      }
+      final String message = cause.getMessage() == null ? ""
+          : cause.getMessage().toUpperCase(Locale.ENGLISH);
+      for (String responseCode : TRANSIENT_RESPONSE_CODES) {
+        if (message.contains(responseCode)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  @FunctionalInterface
+  public interface RetryableCall<T> {
+
+    T call() throws MessagingException;
+  }
+}
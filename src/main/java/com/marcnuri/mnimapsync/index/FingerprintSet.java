@@ -0,0 +1,348 @@
+/*
+ * FingerprintSet.java
+ *
+ * Created on 2026-10-17, 11:20
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Concurrent {@link Set} of {@link MessageId} that only retains the fingerprint of the added
+ * entries.
+ *
+ * Fingerprints are stored as pairs of longs in lock striped open addressing (linear probing)
+ * tables, so adding or looking up a {@link MessageId} doesn't allocate any object. Lookups are
+ * optimistic and only block if they overlap with a modification of the same stripe.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public class FingerprintSet extends AbstractSet<MessageId> {
+
+  private static final int STRIPE_BITS = 4;
+  private static final int INITIAL_STRIPE_CAPACITY = 16;
+
+  private final Stripe[] stripes;
+
+  public FingerprintSet() {
+    stripes = new Stripe[1 << STRIPE_BITS];
+    for (int it = 0; it < stripes.length; it++) {
+      stripes[it] = new Stripe();
+    }
+  }
+
+  @Override
+  public boolean add(MessageId messageId) {
+    return add(messageId.getFingerprintHigh(), messageId.getFingerprintLow());
+  }
+
+  public boolean add(long fingerprintHigh, long fingerprintLow) {
+    return stripe(fingerprintHigh).add(fingerprintHigh, fingerprintLow);
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    if (o instanceof MessageId) {
+      final MessageId messageId = (MessageId) o;
+      return contains(messageId.getFingerprintHigh(), messageId.getFingerprintLow());
+    }
+    return false;
+  }
+
+  public boolean contains(long fingerprintHigh, long fingerprintLow) {
+    return stripe(fingerprintHigh).contains(fingerprintHigh, fingerprintLow);
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    if (o instanceof MessageId) {
+      final MessageId messageId = (MessageId) o;
+      return stripe(messageId.getFingerprintHigh())
+          .remove(messageId.getFingerprintHigh(), messageId.getFingerprintLow());
+    }
+    return false;
+  }
+
+  /**
+   * Iterates over a point in time copy of the entries, {@link Iterator#remove()} is not
+   * supported.
+   */
+  @Override
+  public Iterator<MessageId> iterator() {
+    final List<MessageId> entries = new ArrayList<>();
+    for (Stripe stripe : stripes) {
+      stripe.copyTo(entries);
+    }
+    return new Iterator<MessageId>() {
+      private final Iterator<MessageId> delegate = entries.iterator();
+
+      @Override
+      public boolean hasNext() {
+        return delegate.hasNext();
+      }
+
+      @Override
+      public MessageId next() {
+        return delegate.next();
+      }
+    };
+  }
+
+  /**
+   * Returns a point in time copy of the fingerprints as (high, low) pairs, without allocating
+   * an object per entry.
+   */
+  public long[] toFingerprintArray() {
+    final List<long[]> stripeFingerprints = new ArrayList<>(stripes.length);
+    int length = 0;
+    for (Stripe stripe : stripes) {
+      final long[] fingerprints = stripe.toFingerprintArray();
+      stripeFingerprints.add(fingerprints);
+      length += fingerprints.length;
+    }
+    final long[] result = new long[length];
+    int offset = 0;
+    for (long[] fingerprints : stripeFingerprints) {
+      System.arraycopy(fingerprints, 0, result, offset, fingerprints.length);
+      offset += fingerprints.length;
+    }
+    return result;
+  }
+
+  @Override
+  public int size() {
+    int size = 0;
+    for (Stripe stripe : stripes) {
+      size += stripe.size();
+    }
+    return size;
+  }
+
+  @Override
+  public void clear() {
+    for (Stripe stripe : stripes) {
+      stripe.clear();
+    }
+  }
+
+  private Stripe stripe(long fingerprintHigh) {
+    return stripes[(int) (fingerprintHigh >>> (Long.SIZE - STRIPE_BITS))];
+  }
+
+  /**
+   * Open addressing table where slot <code>n</code> is stored in <code>table[2n]</code> (high)
+   * and <code>table[2n + 1]</code> (low). The (0, 0) pair marks an empty slot, so that
+   * fingerprint is tracked separately.
+   */
+  private static final class Stripe {
+
+    private final StampedLock lock;
+    private long[] table;
+    private int size;
+    private boolean containsZero;
+
+    private Stripe() {
+      lock = new StampedLock();
+      table = new long[INITIAL_STRIPE_CAPACITY * 2];
+    }
+
+    private boolean contains(long high, long low) {
+      final long stamp = lock.tryOptimisticRead();
+      final boolean result = find(table, containsZero, high, low) >= 0;
+      if (lock.validate(stamp)) {
+        return result;
+      }
+      final long readStamp = lock.readLock();
+      try {
+        return find(table, containsZero, high, low) >= 0;
+      } finally {
+        lock.unlockRead(readStamp);
+      }
+    }
+
+    private boolean add(long high, long low) {
+      final long stamp = lock.writeLock();
+      try {
+        if (find(table, containsZero, high, low) >= 0) {
+          return false;
+        }
+        if (isEmpty(high, low)) {
+          containsZero = true;
+        } else {
+          if ((size + 1) * 4L > slots(table) * 3L) {
+            resize();
+          }
+          insert(table, high, low);
+        }
+        size++;
+        return true;
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+
+    private boolean remove(long high, long low) {
+      final long stamp = lock.writeLock();
+      try {
+        final int slot = find(table, containsZero, high, low);
+        if (slot < 0) {
+          return false;
+        }
+        if (isEmpty(high, low)) {
+          containsZero = false;
+        } else {
+          shiftBackwards(slot);
+        }
+        size--;
+        return true;
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+
+    private int size() {
+      final long stamp = lock.readLock();
+      try {
+        return size;
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+
+    private void clear() {
+      final long stamp = lock.writeLock();
+      try {
+        table = new long[INITIAL_STRIPE_CAPACITY * 2];
+        size = 0;
+        containsZero = false;
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+
+    private void copyTo(List<MessageId> entries) {
+      final long stamp = lock.readLock();
+      try {
+        if (containsZero) {
+          entries.add(MessageId.fromFingerprint(0L, 0L));
+        }
+        for (int slot = 0; slot < slots(table); slot++) {
+          if (!isEmpty(table[slot * 2], table[slot * 2 + 1])) {
+            entries.add(MessageId.fromFingerprint(table[slot * 2], table[slot * 2 + 1]));
+          }
+        }
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+
+    private long[] toFingerprintArray() {
+      final long stamp = lock.readLock();
+      try {
+        final long[] result = new long[size * 2];
+        int offset = 0;
+        if (containsZero) {
+          offset += 2;
+        }
+        for (int slot = 0; slot < slots(table); slot++) {
+          if (!isEmpty(table[slot * 2], table[slot * 2 + 1])) {
+            result[offset++] = table[slot * 2];
+            result[offset++] = table[slot * 2 + 1];
+          }
+        }
+        return result;
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+
+    private void resize() {
+      final long[] oldTable = table;
+      final long[] newTable = new long[oldTable.length * 2];
+      for (int slot = 0; slot < slots(oldTable); slot++) {
+        if (!isEmpty(oldTable[slot * 2], oldTable[slot * 2 + 1])) {
+          insert(newTable, oldTable[slot * 2], oldTable[slot * 2 + 1]);
+        }
+      }
+      table = newTable;
+    }
+
+    /**
+     * Backward shift deletion, moves any entry in the probe sequence following the removed slot
+     * that would otherwise become unreachable.
+     */
+    private void shiftBackwards(int removedSlot) {
+      final int mask = slots(table) - 1;
+      int free = removedSlot;
+      for (int slot = (free + 1) & mask; !isEmpty(table[slot * 2], table[slot * 2 + 1]);
+          slot = (slot + 1) & mask) {
+        final int ideal = (int) table[slot * 2 + 1] & mask;
+        final boolean reachableWithoutShift = free <= slot
+            ? free < ideal && ideal <= slot
+            : free < ideal || ideal <= slot;
+        if (!reachableWithoutShift) {
+          table[free * 2] = table[slot * 2];
+          table[free * 2 + 1] = table[slot * 2 + 1];
+          free = slot;
+        }
+      }
+      table[free * 2] = 0L;
+      table[free * 2 + 1] = 0L;
+    }
+
+    private static int find(long[] table, boolean containsZero, long high, long low) {
+      if (isEmpty(high, low)) {
+        return containsZero ? 0 : -1;
+      }
+      final int mask = slots(table) - 1;
+      for (int slot = (int) low & mask; ; slot = (slot + 1) & mask) {
+        final long currentHigh = table[slot * 2];
+        final long currentLow = table[slot * 2 + 1];
+        if (currentHigh == high && currentLow == low) {
+          return slot;
+        }
+        if (isEmpty(currentHigh, currentLow)) {
+          return -1;
+        }
+      }
+    }
+
+    private static void insert(long[] table, long high, long low) {
+      final int mask = slots(table) - 1;
+      int slot = (int) low & mask;
+      while (!isEmpty(table[slot * 2], table[slot * 2 + 1])) {
+        slot = (slot + 1) & mask;
+      }
+      table[slot * 2] = high;
+      table[slot * 2 + 1] = low;
+    }
+
+    private static int slots(long[] table) {
+      return table.length / 2;
+    }
+
+    private static boolean isEmpty(long high, long low) {
+      return high == 0L && low == 0L;
+    }
+  }
+}
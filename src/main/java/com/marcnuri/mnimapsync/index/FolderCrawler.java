@@ -16,11 +16,14 @@
  */
 package com.marcnuri.mnimapsync.index;
 
+import com.marcnuri.mnimapsync.imap.FolderSessions;
+import com.marcnuri.mnimapsync.imap.RetryPolicy;
 import javax.mail.FetchProfile;
 import javax.mail.Folder;
 import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.Store;
+import javax.mail.UIDFolder;
 
 /**
  *
@@ -28,36 +31,82 @@ import javax.mail.Store;
  */
 public final class FolderCrawler implements Runnable {
 
-    private final Store store;
+    private final FolderSessions folderSessions;
     private final String folderName;
     private final int start;
     private final int end;
     private final Index index;
+    private final IdentityFetch identityFetch;
 
     protected FolderCrawler(Store store, String folderName, int start, int end,
-            Index index) {
-        this.store = store;
+            Index index, IdentityFetch identityFetch) {
+        //Standalone crawler, the folder is closed once crawled
+        this(new FolderSessions(store, 0), folderName, start, end, index, identityFetch);
+    }
+
+    /**
+     * @param folderSessions keeps the folder selected for the next batch processed by the thread.
+     */
+    protected FolderCrawler(FolderSessions folderSessions, String folderName, int start, int end,
+            Index index, IdentityFetch identityFetch) {
+        this.folderSessions = folderSessions;
         this.folderName = folderName;
         this.start = start;
         this.end = end;
         this.index = index;
+        this.identityFetch = identityFetch;
     }
 
     public void run() {
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    crawl();
+                    break;
+                } catch (MessagingException ex) {
+                    //Messages already indexed are ignored by the retry, they are in the index set
+                    if (!RetryPolicy.DEFAULT.shouldRetry(ex, attempt)) {
+                        throw ex;
+                    }
+                    RetryPolicy.DEFAULT.backoff(attempt, ex);
+                }
+            }
+        } catch (MessagingException messagingException) {
+            index.addCrawlException(messagingException);
+        } catch (InterruptedException ex) {
+            index.addCrawlException(new MessagingException(
+                String.format("Interrupted while crawling folder %s", folderName), ex));
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void crawl() throws MessagingException, InterruptedException {
         long indexedMessages = 0L;
         long skippedMessages = 0L;
+        final Folder folder = folderSessions.open(folderName, Folder.READ_ONLY);
+        boolean released = false;
         try {
-            final Folder folder = store.getFolder(folderName);
-            folder.open(Folder.READ_ONLY);
             final Message[] messages = folder.getMessages(start, end);
-            folder.fetch(messages, MessageId.addHeaders(new FetchProfile()));
+            final FolderUids folderUids = index.getFolderUids(folderName);
+            final FetchProfile fetchProfile = MessageId.addHeaders(new FetchProfile(),
+                identityFetch);
+            if (folderUids != null) {
+                fetchProfile.add(UIDFolder.FetchProfileItem.UID);
+            }
+            folderSessions.getThrottle().execute(() -> {
+                folder.fetch(messages, fetchProfile);
+                return messages;
+            });
             for (Message message : messages) {
                 //Don't bother crawling if index has exceptions. Process won't continue
                 if (index.hasCrawlException()) {
-                    return;
+                    break;
                 }
                 try {
                     final MessageId messageId = new MessageId(message);
+                    if (folderUids != null) {
+                        folderUids.add(((UIDFolder) folder).getUID(message), messageId);
+                    }
                     if (index.getFolderMessages(folderName).add(messageId)) {
                         indexedMessages++;
                     } else {
@@ -65,16 +114,20 @@ public final class FolderCrawler implements Runnable {
                     }
                 } catch (MessageId.MessageIdException ex) {
                     if (ex.getCause() != null) {
-                        throw new MessagingException();
+                        throw ex.getCause();
                     }
                     skippedMessages++;
                 }
             }
-            folder.close(false);
-        } catch (MessagingException messagingException) {
-            index.addCrawlException(messagingException);
+            folderSessions.release(folder, messages.length);
+            released = true;
+        } finally {
+            //A retry must select the folder again
+            if (!released) {
+                folderSessions.discard(folder);
+            }
+            index.updatedIndexedMessageCount(indexedMessages);
+            index.updatedSkippedMessageCount(skippedMessages);
         }
-        index.updatedIndexedMessageCount(indexedMessages);
-        index.updatedSkippedMessageCount(skippedMessages);
     }
 }
@@ -0,0 +1,109 @@
+/*
+ * FolderState.java
+ *
+ * Created on 2026-10-17, 9:12
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Immutable view of the UID related status of an IMAP folder at the moment it was indexed.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public final class FolderState implements Serializable {
+
+  private static final long serialVersionUID = 2307563426474372017L;
+
+  private final long uidValidity;
+  private final long uidNext;
+  private final int messageCount;
+  private final long highestModSeq;
+
+  public FolderState(long uidValidity, long uidNext, int messageCount) {
+    this(uidValidity, uidNext, messageCount, 0L);
+  }
+
+  /**
+   * @param highestModSeq HIGHESTMODSEQ reported by servers supporting CONDSTORE, 0 otherwise.
+   */
+  public FolderState(long uidValidity, long uidNext, int messageCount, long highestModSeq) {
+    this.uidValidity = uidValidity;
+    this.uidNext = uidNext;
+    this.messageCount = messageCount;
+    this.highestModSeq = highestModSeq;
+  }
+
+  public long getUidValidity() {
+    return uidValidity;
+  }
+
+  public long getUidNext() {
+    return uidNext;
+  }
+
+  public int getMessageCount() {
+    return messageCount;
+  }
+
+  public long getHighestModSeq() {
+    return highestModSeq;
+  }
+
+  /**
+   * Messages indexed for the previous state are still valid only if the UIDs weren't reassigned
+   * and the server reported a usable UIDNEXT value.
+   */
+  public boolean isCompatibleWith(FolderState previous) {
+    return previous != null && previous.uidNext > 0 && uidValidity == previous.uidValidity;
+  }
+
+  /**
+   * A folder is unchanged if no messages were appended (same UIDNEXT) and none were expunged (same
+   * message count).
+   *
+   * Changes reported only by a different HIGHESTMODSEQ are flag updates, which don't affect the
+   * identity of the messages.
+   */
+  public boolean isUnchangedSince(FolderState previous) {
+    return isCompatibleWith(previous) && uidNext == previous.uidNext
+        && messageCount == previous.messageCount;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    FolderState that = (FolderState) o;
+    return uidValidity == that.uidValidity &&
+        uidNext == that.uidNext &&
+        messageCount == that.messageCount &&
+        highestModSeq == that.highestModSeq;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(uidValidity, uidNext, messageCount, highestModSeq);
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * FolderUids.java
+ *
+ * Created on 2026-10-17, 23:40
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * UIDs of every message of a folder crawled in a single pass, each with the fingerprint of its
+ * {@link MessageId}.
+ *
+ * Messages that no longer exist in the source can then be found without fetching the headers of
+ * the folder again. Entries are stored as (UID, fingerprint) triples in a single long array,
+ * 24 bytes per message.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public final class FolderUids {
+
+  private static final int ENTRY_LONGS = 3;
+  private static final int INITIAL_CAPACITY = 16;
+  private static final long UID_SIGN_BIT = 1L << (Integer.SIZE - 1);
+
+  private final long uidValidity;
+  private long[] entries;
+  private int size;
+  //A retried crawl may add the same UIDs again
+  private boolean sorted;
+
+  public FolderUids(long uidValidity) {
+    this.uidValidity = uidValidity;
+    entries = new long[INITIAL_CAPACITY * ENTRY_LONGS];
+    size = 0;
+    sorted = true;
+  }
+
+  /**
+   * UIDVALIDITY of the folder when it was crawled, UIDs are only valid while it doesn't change.
+   */
+  public long getUidValidity() {
+    return uidValidity;
+  }
+
+  public synchronized void add(long uid, MessageId messageId) {
+    if ((size + 1) * ENTRY_LONGS > entries.length) {
+      entries = Arrays.copyOf(entries, entries.length * 2);
+    }
+    final int offset = size * ENTRY_LONGS;
+    sorted = sorted && (size == 0 || entries[offset - ENTRY_LONGS] < uid);
+    entries[offset] = uid;
+    entries[offset + 1] = messageId.getFingerprintHigh();
+    entries[offset + 2] = messageId.getFingerprintLow();
+    size++;
+  }
+
+  /**
+   * Number of distinct UIDs.
+   */
+  public synchronized int size() {
+    sort();
+    return size;
+  }
+
+  /**
+   * Returns the sorted UIDs of the messages whose {@link MessageId} isn't contained in the provided
+   * messages, looking up each entry in the provided set.
+   */
+  public synchronized long[] missingFrom(Set<MessageId> messages) {
+    sort();
+    final FingerprintSet fingerprints =
+        messages instanceof FingerprintSet ? (FingerprintSet) messages : null;
+    final long[] result = new long[size];
+    int missing = 0;
+    for (int offset = 0; offset < size * ENTRY_LONGS; offset += ENTRY_LONGS) {
+      final long high = entries[offset + 1];
+      final long low = entries[offset + 2];
+      //Fingerprint sets are looked up without allocating a MessageId per entry
+      if (fingerprints != null ? !fingerprints.contains(high, low)
+          : !messages.contains(MessageId.fromFingerprint(high, low))) {
+        result[missing++] = entries[offset];
+      }
+    }
+    return Arrays.copyOf(result, missing);
+  }
+
+  /**
+   * Returns the sorted UIDs of the messages whose {@link MessageId} isn't contained in the provided
+   * messages.
+   *
+   * The entries are sorted by fingerprint and merged with the provided messages in a single pass.
+   */
+  public long[] missingFrom(SortedFingerprints messages) {
+    final long[] records;
+    final int recordCount;
+    synchronized (this) {
+      sort();
+      recordCount = size;
+      records = new long[size * ENTRY_LONGS];
+      for (int offset = 0; offset < size * ENTRY_LONGS; offset += ENTRY_LONGS) {
+        records[offset] = entries[offset + 1];
+        records[offset + 1] = entries[offset + 2];
+        records[offset + 2] = entries[offset];
+      }
+    }
+    final long[] missing = SortedFingerprints.withValues(records, recordCount)
+        .valuesMissingFrom(messages);
+    Arrays.sort(missing);
+    return missing;
+  }
+
+  /**
+   * Returns the {@link MessageId} fingerprints of the messages with the provided UIDs, UIDs that
+   * weren't recorded are ignored.
+   */
+  public synchronized List<MessageId> getMessageIds(long[] uids) {
+    sort();
+    final List<MessageId> result = new ArrayList<>(uids.length);
+    for (long uid : uids) {
+      final int offset = find(uid);
+      if (offset >= 0) {
+        result.add(MessageId.fromFingerprint(entries[offset + 1], entries[offset + 2]));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Binary search of the UID in the sorted entries, returns the offset of its entry or -1.
+   */
+  private int find(long uid) {
+    int low = 0;
+    int high = size - 1;
+    while (low <= high) {
+      final int middle = (low + high) >>> 1;
+      final long middleUid = entries[middle * ENTRY_LONGS];
+      if (middleUid < uid) {
+        low = middle + 1;
+      } else if (middleUid > uid) {
+        high = middle - 1;
+      } else {
+        return middle * ENTRY_LONGS;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Sorts the entries by UID discarding duplicates. UIDs are 32-bit unsigned integers, so each
+   * UID is sorted along with the position of its entry packed in a single long (the sign bit of
+   * the UID is flipped so that signed order matches unsigned order).
+   */
+  private void sort() {
+    if (sorted) {
+      return;
+    }
+    final long[] keys = new long[size];
+    for (int it = 0; it < size; it++) {
+      keys[it] = (entries[it * ENTRY_LONGS] ^ UID_SIGN_BIT) << Integer.SIZE | it;
+    }
+    Arrays.sort(keys);
+    final long[] sortedEntries = new long[Math.max(size, INITIAL_CAPACITY) * ENTRY_LONGS];
+    int sortedSize = 0;
+    for (long key : keys) {
+      final int from = (int) key * ENTRY_LONGS;
+      if (sortedSize > 0
+          && sortedEntries[(sortedSize - 1) * ENTRY_LONGS] == entries[from]) {
+        continue;
+      }
+      System.arraycopy(entries, from, sortedEntries, sortedSize * ENTRY_LONGS, ENTRY_LONGS);
+      sortedSize++;
+    }
+    entries = sortedEntries;
+    size = sortedSize;
+    sorted = true;
+  }
+}
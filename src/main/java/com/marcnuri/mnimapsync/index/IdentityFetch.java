@@ -0,0 +1,46 @@
+/*
+ * IdentityFetch.java
+ *
+ * Created on 2026-10-17, 13:05
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+/**
+ * Strategy used to fetch the headers required to build a {@link MessageId}.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public enum IdentityFetch {
+
+  /**
+   * Fetches every header of the message (<code>ENVELOPE</code> and <code>RFC822.HEADER</code>).
+   *
+   * Safe for every server, but downloads far more data than needed to identify a message.
+   */
+  HEADERS,
+
+  /**
+   * Fetches only the headers used to identify a message
+   * (<code>BODY.PEEK[HEADER.FIELDS (MESSAGE-ID SUBJECT FROM TO)]</code>).
+   *
+   * Must only be used with servers that return every occurrence of a multi-valued header for
+   * these requests, otherwise the same message would get a different {@link MessageId} than in
+   * servers using {@link #HEADERS}.
+   */
+  HEADER_FIELDS
+}
@@ -21,7 +21,9 @@ import static com.marcnuri.mnimapsync.imap.IMAPUtils.INBOX_MAILBOX;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import javax.mail.MessagingException;
@@ -32,20 +34,38 @@ import javax.mail.MessagingException;
  */
 public class Index {
 
+    private final boolean fingerprintIdentity;
     private final AtomicReference<String> folderSeparator;
     private final AtomicReference<String> inbox;
     private final Set<String> folders;
     private final Map<String, Set<MessageId>> folderMessages;
+    private final Map<String, FolderState> folderStates;
+    private final Map<String, FolderUids> folderUids;
+    private volatile boolean uidTracking;
+    private final Map<String, CompletableFuture<Void>> folderCrawls;
     private final AtomicLong indexedMessageCount;
     private final AtomicLong skippedMessageCount;
     //If no empty, the other processes shouldn't continue
     private final Set<MessagingException> crawlExceptions;
 
     public Index() {
+        this(false);
+    }
+
+    /**
+     * @param fingerprintIdentity if true, folder messages only retain the fingerprint of each
+     * {@link MessageId}, which greatly reduces the memory required by large indexes.
+     */
+    public Index(boolean fingerprintIdentity) {
+        this.fingerprintIdentity = fingerprintIdentity;
         this.folderSeparator = new AtomicReference<>();
         this.inbox = new AtomicReference<>();
         this.folders = ConcurrentHashMap.newKeySet();
         this.folderMessages = new ConcurrentHashMap<>();
+        this.folderStates = new ConcurrentHashMap<>();
+        this.folderUids = new ConcurrentHashMap<>();
+        this.uidTracking = false;
+        this.folderCrawls = new ConcurrentHashMap<>();
         this.indexedMessageCount = new AtomicLong();
         this.skippedMessageCount = new AtomicLong();
         this.crawlExceptions = ConcurrentHashMap.newKeySet();
@@ -90,6 +110,10 @@ public class Index {
         return folders.contains(folder);
     }
 
+    public Set<String> getFolders() {
+        return Collections.unmodifiableSet(folders);
+    }
+
     public final long getIndexedMessageCount() {
         return indexedMessageCount.longValue();
     }
@@ -99,7 +123,101 @@ public class Index {
     }
 
     public Set<MessageId> getFolderMessages(String folder) {
-        return folderMessages.computeIfAbsent(folder, k -> ConcurrentHashMap.newKeySet());
+        return folderMessages.computeIfAbsent(folder, k -> fingerprintIdentity
+            ? new FingerprintSet() : ConcurrentHashMap.newKeySet());
+    }
+
+    /**
+     * Returns the state of the folder when its messages were last indexed or null if unknown.
+     */
+    public FolderState getFolderState(String folder) {
+        return folderStates.get(folder);
+    }
+
+    public void setFolderState(String folder, FolderState folderState) {
+        folderStates.put(folder, folderState);
+    }
+
+    public Map<String, FolderState> getFolderStates() {
+        return Collections.unmodifiableMap(folderStates);
+    }
+
+    /**
+     * Discards any indexed message and state for the provided folder.
+     */
+    public void resetFolder(String folder) {
+        folderStates.remove(folder);
+        folderMessages.remove(folder);
+        folderUids.remove(folder);
+    }
+
+    /**
+     * Discards the provided folder, which no longer exists in the store.
+     */
+    public final void removeFolder(String folder) {
+        resetFolder(folder);
+        folders.remove(folder);
+    }
+
+    public boolean isUidTracking() {
+        return uidTracking;
+    }
+
+    /**
+     * @param uidTracking if true, the UIDs of the messages of the folders that are completely
+     * crawled are recorded, see {@link #getFolderUids(String)}.
+     */
+    public void setUidTracking(boolean uidTracking) {
+        this.uidTracking = uidTracking;
+    }
+
+    /**
+     * Returns the UIDs of every message of the folder or null if the folder wasn't completely
+     * crawled in this run (or UIDs aren't tracked).
+     */
+    public FolderUids getFolderUids(String folder) {
+        return folderUids.get(folder);
+    }
+
+    /**
+     * Starts recording the UIDs of the folder, which is about to be completely crawled.
+     */
+    final void startFolderUids(String folder, long uidValidity) {
+        if (uidTracking) {
+            folderUids.put(folder, new FolderUids(uidValidity));
+        }
+    }
+
+    /**
+     * Discards the UIDs of the folder, which is only partially crawled.
+     */
+    final void discardFolderUids(String folder) {
+        folderUids.remove(folder);
+    }
+
+    final void setFolderCrawl(String folder, CompletableFuture<Void> crawl) {
+        folderCrawls.put(folder, crawl);
+    }
+
+    /**
+     * Blocks until every message of the provided folder has been crawled. Returns immediately if
+     * the folder wasn't found when the store was crawled.
+     *
+     * @throws MessagingException if the crawl of any of the folders failed, the index is then
+     * incomplete and can't be used to compare messages.
+     */
+    public void awaitFolderCrawl(String folder) throws MessagingException, InterruptedException {
+        final CompletableFuture<Void> crawl = folderCrawls.get(folder);
+        if (crawl != null) {
+            try {
+                crawl.get();
+            } catch (ExecutionException ex) {
+                throw new MessagingException(String.format("Error crawling folder %s", folder), ex);
+            }
+        }
+        if (hasCrawlException()) {
+            throw crawlExceptions.iterator().next();
+        }
     }
 
     final void addCrawlException(MessagingException exception) {
@@ -0,0 +1,100 @@
+/*
+ * IndexSnapshot.java
+ *
+ * Created on 2026-10-17, 9:40
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Persists the messages and {@link FolderState} of an {@link Index} so that a later run only needs
+ * to crawl the messages appended since the snapshot was taken.
+ *
+ * Only folders with a known {@link FolderState} are included in the snapshot.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public class IndexSnapshot {
+
+  private static final int VERSION = 1;
+
+  private IndexSnapshot() {
+  }
+
+  /**
+   * Writes the snapshot to a temporary file which then replaces the provided file, a failed save
+   * will never leave a truncated snapshot behind.
+   */
+  public static void save(Index index, File file) throws IOException {
+    final File tempFile = new File(file.getPath() + ".tmp");
+    try (final ObjectOutputStream oos = new ObjectOutputStream(
+        new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+      oos.writeInt(VERSION);
+      oos.writeInt(index.getFolderStates().size());
+      for (Entry<String, FolderState> entry : index.getFolderStates().entrySet()) {
+        final Set<MessageId> messages = index.getFolderMessages(entry.getKey());
+        oos.writeUTF(entry.getKey());
+        oos.writeObject(entry.getValue());
+        oos.writeInt(messages.size());
+        for (MessageId messageId : messages) {
+          oos.writeObject(messageId);
+        }
+      }
+    }
+    Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Restores the folder states and messages stored in the snapshot file into the provided
+   * {@link Index}.
+   */
+  public static Index load(File file, Index index) throws IOException {
+    try (final ObjectInputStream ois = new ObjectInputStream(
+        new BufferedInputStream(new FileInputStream(file)))) {
+      if (ois.readInt() != VERSION) {
+        throw new IOException(String.format("Unsupported index snapshot version in %s", file));
+      }
+      final int folderCount = ois.readInt();
+      for (int folder = 0; folder < folderCount; folder++) {
+        final String folderName = ois.readUTF();
+        final FolderState folderState = (FolderState) ois.readObject();
+        final Set<MessageId> messages = index.getFolderMessages(folderName);
+        final int messageCount = ois.readInt();
+        for (int message = 0; message < messageCount; message++) {
+          messages.add((MessageId) ois.readObject());
+        }
+        index.setFolderState(folderName, folderState);
+      }
+    } catch (ClassNotFoundException | ClassCastException ex) {
+      throw new IOException(String.format("Invalid index snapshot %s", file), ex);
+    }
+    return index;
+  }
+}
@@ -0,0 +1,469 @@
+/*
+ * MappedFingerprintSet.java
+ *
+ * Created on 2026-10-17, 13:10
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link java.util.Set} of {@link MessageId} fingerprints stored in a memory-mapped file.
+ *
+ * The file contains a fixed size header (folder name, {@link FolderState} and table metadata)
+ * followed by an open addressing (linear probing) table of fingerprint long pairs. Tables grow by
+ * rehashing into a new file that atomically replaces the previous one. The header of a new file
+ * is written (and forced) once its table is complete, so a file left half written by a crash is
+ * never valid. Replaced buffers are unmapped right away instead of waiting for the GC.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+final class MappedFingerprintSet extends AbstractSet<MessageId> {
+
+  static final String EXTENSION = ".fingerprints";
+
+  private static final int MAGIC = 0x4D4E4958;
+  private static final int VERSION = 2;
+  private static final int HEADER_SIZE = 4096;
+  private static final int SLOT_SIZE = 2 * Long.BYTES;
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_SIZE) / SLOT_SIZE;
+  private static final int OFFSET_MAGIC = 0;
+  private static final int OFFSET_VERSION = 4;
+  private static final int OFFSET_CAPACITY = 8;
+  private static final int OFFSET_SIZE = 12;
+  private static final int OFFSET_CONTAINS_ZERO = 16;
+  private static final int OFFSET_HAS_STATE = 20;
+  private static final int OFFSET_UID_VALIDITY = 24;
+  private static final int OFFSET_UID_NEXT = 32;
+  private static final int OFFSET_MESSAGE_COUNT = 40;
+  private static final int OFFSET_HIGHEST_MOD_SEQ = 48;
+  private static final int OFFSET_NAME_LENGTH = 56;
+  private static final int OFFSET_NAME = 60;
+
+  private final File file;
+  private final String folderName;
+  private final StampedLock lock;
+  private MappedByteBuffer buffer;
+  private int capacity;
+
+  private MappedFingerprintSet(File file, String folderName, MappedByteBuffer buffer) {
+    this.file = file;
+    this.folderName = folderName;
+    this.lock = new StampedLock();
+    this.buffer = buffer;
+    this.capacity = buffer.getInt(OFFSET_CAPACITY);
+  }
+
+  static MappedFingerprintSet create(File file, String folderName) throws IOException {
+    final MappedByteBuffer buffer = map(file, folderName, INITIAL_CAPACITY);
+    writeHeader(buffer, folderName, INITIAL_CAPACITY);
+    buffer.force();
+    return new MappedFingerprintSet(file, folderName, buffer);
+  }
+
+  static MappedFingerprintSet open(File file) throws IOException {
+    final MappedByteBuffer buffer;
+    try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      if (channel.size() < HEADER_SIZE) {
+        throw new IOException(String.format("Invalid fingerprint file %s", file));
+      }
+      buffer = channel.map(MapMode.READ_WRITE, 0, channel.size());
+    }
+    if (buffer.getInt(OFFSET_MAGIC) != MAGIC || buffer.getInt(OFFSET_VERSION) != VERSION
+        || buffer.capacity() != HEADER_SIZE + (long) buffer.getInt(OFFSET_CAPACITY) * SLOT_SIZE) {
+      throw new IOException(String.format("Invalid fingerprint file %s", file));
+    }
+    final byte[] name = new byte[buffer.getInt(OFFSET_NAME_LENGTH)];
+    for (int it = 0; it < name.length; it++) {
+      name[it] = buffer.get(OFFSET_NAME + it);
+    }
+    return new MappedFingerprintSet(file, new String(name, StandardCharsets.UTF_8), buffer);
+  }
+
+  String getFolderName() {
+    return folderName;
+  }
+
+  FolderState getFolderState() {
+    final long stamp = lock.readLock();
+    try {
+      if (buffer.getInt(OFFSET_HAS_STATE) == 0) {
+        return null;
+      }
+      return readFolderState(buffer);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  void setFolderState(FolderState folderState) {
+    final long stamp = lock.writeLock();
+    try {
+      writeFolderState(buffer, folderState);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Flushes any modification to the underlying file.
+   */
+  void force() {
+    final long stamp = lock.readLock();
+    try {
+      buffer.force();
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  @Override
+  public boolean add(MessageId messageId) {
+    final long high = messageId.getFingerprintHigh();
+    final long low = messageId.getFingerprintLow();
+    final long stamp = lock.writeLock();
+    try {
+      if (find(high, low) >= 0) {
+        return false;
+      }
+      if (isEmpty(high, low)) {
+        buffer.putInt(OFFSET_CONTAINS_ZERO, 1);
+      } else {
+        if ((buffer.getInt(OFFSET_SIZE) + 1) * 4L > capacity * 3L) {
+          resize();
+        }
+        insert(buffer, capacity, high, low);
+      }
+      buffer.putInt(OFFSET_SIZE, buffer.getInt(OFFSET_SIZE) + 1);
+      return true;
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    if (o instanceof MessageId) {
+      final MessageId messageId = (MessageId) o;
+      final long stamp = lock.readLock();
+      try {
+        return find(messageId.getFingerprintHigh(), messageId.getFingerprintLow()) >= 0;
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    if (o instanceof MessageId) {
+      final MessageId messageId = (MessageId) o;
+      final long high = messageId.getFingerprintHigh();
+      final long low = messageId.getFingerprintLow();
+      final long stamp = lock.writeLock();
+      try {
+        final int slot = find(high, low);
+        if (slot < 0) {
+          return false;
+        }
+        if (isEmpty(high, low)) {
+          buffer.putInt(OFFSET_CONTAINS_ZERO, 0);
+        } else {
+          shiftBackwards(slot);
+        }
+        buffer.putInt(OFFSET_SIZE, buffer.getInt(OFFSET_SIZE) - 1);
+        return true;
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Iterates over a point in time copy of the entries, {@link Iterator#remove()} is not
+   * supported.
+   */
+  @Override
+  public Iterator<MessageId> iterator() {
+    final List<MessageId> entries = new ArrayList<>();
+    final long stamp = lock.readLock();
+    try {
+      if (buffer.getInt(OFFSET_CONTAINS_ZERO) != 0) {
+        entries.add(MessageId.fromFingerprint(0L, 0L));
+      }
+      for (int slot = 0; slot < capacity; slot++) {
+        final long high = buffer.getLong(slotOffset(slot));
+        final long low = buffer.getLong(slotOffset(slot) + Long.BYTES);
+        if (!isEmpty(high, low)) {
+          entries.add(MessageId.fromFingerprint(high, low));
+        }
+      }
+    } finally {
+      lock.unlockRead(stamp);
+    }
+    final Iterator<MessageId> delegate = entries.iterator();
+    return new Iterator<MessageId>() {
+      @Override
+      public boolean hasNext() {
+        return delegate.hasNext();
+      }
+
+      @Override
+      public MessageId next() {
+        return delegate.next();
+      }
+    };
+  }
+
+  @Override
+  public int size() {
+    final long stamp = lock.readLock();
+    try {
+      return buffer.getInt(OFFSET_SIZE);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Removes every fingerprint and the folder state.
+   */
+  @Override
+  public void clear() {
+    final long stamp = lock.writeLock();
+    try {
+      final File tempFile = new File(file.getPath() + ".tmp");
+      final MappedByteBuffer newBuffer = map(tempFile, folderName, INITIAL_CAPACITY);
+      replaceWith(tempFile, newBuffer, INITIAL_CAPACITY);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  private int find(long high, long low) {
+    if (isEmpty(high, low)) {
+      return buffer.getInt(OFFSET_CONTAINS_ZERO) != 0 ? 0 : -1;
+    }
+    final int mask = capacity - 1;
+    for (int slot = (int) low & mask; ; slot = (slot + 1) & mask) {
+      final long currentHigh = buffer.getLong(slotOffset(slot));
+      final long currentLow = buffer.getLong(slotOffset(slot) + Long.BYTES);
+      if (currentHigh == high && currentLow == low) {
+        return slot;
+      }
+      if (isEmpty(currentHigh, currentLow)) {
+        return -1;
+      }
+    }
+  }
+
+  /**
+   * Backward shift deletion, moves any entry in the probe sequence following the removed slot
+   * that would otherwise become unreachable.
+   */
+  private void shiftBackwards(int removedSlot) {
+    final int mask = capacity - 1;
+    int free = removedSlot;
+    for (int slot = (free + 1) & mask; !isEmpty(buffer.getLong(slotOffset(slot)),
+        buffer.getLong(slotOffset(slot) + Long.BYTES)); slot = (slot + 1) & mask) {
+      final long low = buffer.getLong(slotOffset(slot) + Long.BYTES);
+      final int ideal = (int) low & mask;
+      final boolean reachableWithoutShift = free <= slot
+          ? free < ideal && ideal <= slot
+          : free < ideal || ideal <= slot;
+      if (!reachableWithoutShift) {
+        buffer.putLong(slotOffset(free), buffer.getLong(slotOffset(slot)));
+        buffer.putLong(slotOffset(free) + Long.BYTES, low);
+        free = slot;
+      }
+    }
+    buffer.putLong(slotOffset(free), 0L);
+    buffer.putLong(slotOffset(free) + Long.BYTES, 0L);
+  }
+
+  private void resize() throws IOException {
+    if (capacity >= MAX_CAPACITY / 2) {
+      throw new IOException(String.format("Fingerprint file %s is full", file));
+    }
+    final int newCapacity = capacity * 2;
+    final File tempFile = new File(file.getPath() + ".tmp");
+    final MappedByteBuffer newBuffer = map(tempFile, folderName, newCapacity);
+    for (int slot = 0; slot < capacity; slot++) {
+      final long high = buffer.getLong(slotOffset(slot));
+      final long low = buffer.getLong(slotOffset(slot) + Long.BYTES);
+      if (!isEmpty(high, low)) {
+        insert(newBuffer, newCapacity, high, low);
+      }
+    }
+    newBuffer.putInt(OFFSET_SIZE, buffer.getInt(OFFSET_SIZE));
+    newBuffer.putInt(OFFSET_CONTAINS_ZERO, buffer.getInt(OFFSET_CONTAINS_ZERO));
+    if (buffer.getInt(OFFSET_HAS_STATE) != 0) {
+      writeFolderState(newBuffer, readFolderState(buffer));
+    }
+    replaceWith(tempFile, newBuffer, newCapacity);
+  }
+
+  /**
+   * The mapped file is never truncated or rewritten in place, a new file is always prepared and
+   * then moved to replace the current one.
+   */
+  private void replaceWith(File newFile, MappedByteBuffer newBuffer, int newCapacity)
+      throws IOException {
+
+    newBuffer.force();
+    writeHeader(newBuffer, folderName, newCapacity);
+    newBuffer.force();
+    Files.move(newFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    final MappedByteBuffer previousBuffer = buffer;
+    buffer = newBuffer;
+    capacity = newCapacity;
+    unmap(previousBuffer);
+  }
+
+  /**
+   * Maps a new zeroed file for a table of the provided capacity, its header isn't written.
+   */
+  private static MappedByteBuffer map(File file, String folderName, int capacity)
+      throws IOException {
+
+    final byte[] name = folderName.getBytes(StandardCharsets.UTF_8);
+    if (OFFSET_NAME + name.length > HEADER_SIZE) {
+      throw new IOException(String.format("Folder name too long: %s", folderName));
+    }
+    try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      return channel.map(MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+    }
+  }
+
+  /**
+   * Writes the table metadata, the magic number that makes the file valid goes last.
+   */
+  private static void writeHeader(MappedByteBuffer buffer, String folderName, int capacity) {
+    final byte[] name = folderName.getBytes(StandardCharsets.UTF_8);
+    buffer.putInt(OFFSET_NAME_LENGTH, name.length);
+    for (int it = 0; it < name.length; it++) {
+      buffer.put(OFFSET_NAME + it, name[it]);
+    }
+    buffer.putInt(OFFSET_CAPACITY, capacity);
+    buffer.putInt(OFFSET_VERSION, VERSION);
+    buffer.putInt(OFFSET_MAGIC, MAGIC);
+  }
+
+  /**
+   * Releases the mapping of a buffer that's no longer used, otherwise its memory and file handle
+   * are only released once the buffer is garbage collected (e.g. replaced files can't be deleted
+   * on Windows). Any access to the buffer after unmapping crashes the JVM.
+   */
+  private static void unmap(MappedByteBuffer buffer) {
+    try {
+      //Java 9+
+      final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      unsafeClass.getMethod("invokeCleaner", ByteBuffer.class)
+          .invoke(theUnsafe.get(null), buffer);
+    } catch (NoSuchMethodException ex) {
+      unmapWithCleaner(buffer);
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      Logger.getLogger(MappedFingerprintSet.class.getName()).log(Level.FINE,
+          "Couldn't unmap buffer, it will be released once garbage collected", ex);
+    }
+  }
+
+  private static void unmapWithCleaner(MappedByteBuffer buffer) {
+    try {
+      //Java 8
+      final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+      cleanerMethod.setAccessible(true);
+      final Object cleaner = cleanerMethod.invoke(buffer);
+      if (cleaner != null) {
+        final Method cleanMethod = cleaner.getClass().getMethod("clean");
+        cleanMethod.setAccessible(true);
+        cleanMethod.invoke(cleaner);
+      }
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      Logger.getLogger(MappedFingerprintSet.class.getName()).log(Level.FINE,
+          "Couldn't unmap buffer, it will be released once garbage collected", ex);
+    }
+  }
+
+  private static FolderState readFolderState(MappedByteBuffer buffer) {
+    return new FolderState(buffer.getLong(OFFSET_UID_VALIDITY), buffer.getLong(OFFSET_UID_NEXT),
+        buffer.getInt(OFFSET_MESSAGE_COUNT), buffer.getLong(OFFSET_HIGHEST_MOD_SEQ));
+  }
+
+  private static void writeFolderState(MappedByteBuffer buffer, FolderState folderState) {
+    if (folderState == null) {
+      buffer.putInt(OFFSET_HAS_STATE, 0);
+    } else {
+      buffer.putLong(OFFSET_UID_VALIDITY, folderState.getUidValidity());
+      buffer.putLong(OFFSET_UID_NEXT, folderState.getUidNext());
+      buffer.putInt(OFFSET_MESSAGE_COUNT, folderState.getMessageCount());
+      buffer.putLong(OFFSET_HIGHEST_MOD_SEQ, folderState.getHighestModSeq());
+      buffer.putInt(OFFSET_HAS_STATE, 1);
+    }
+  }
+
+  private static void insert(MappedByteBuffer buffer, int capacity, long high, long low) {
+    final int mask = capacity - 1;
+    int slot = (int) low & mask;
+    while (!isEmpty(buffer.getLong(slotOffset(slot)),
+        buffer.getLong(slotOffset(slot) + Long.BYTES))) {
+      slot = (slot + 1) & mask;
+    }
+    buffer.putLong(slotOffset(slot), high);
+    buffer.putLong(slotOffset(slot) + Long.BYTES, low);
+  }
+
+  private static int slotOffset(int slot) {
+    return HEADER_SIZE + slot * SLOT_SIZE;
+  }
+
+  private static boolean isEmpty(long high, long low) {
+    return high == 0L && low == 0L;
+  }
+}
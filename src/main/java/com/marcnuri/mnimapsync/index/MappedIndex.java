@@ -0,0 +1,152 @@
+/*
+ * MappedIndex.java
+ *
+ * Created on 2026-10-17, 13:55
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link Index} whose folder messages are stored off-heap in memory-mapped files (one per folder)
+ * within the provided directory.
+ *
+ * Messages are always indexed by their fingerprint. Folder states are persisted along with the
+ * messages, so the directory can be reopened by a later run as a restartable snapshot.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public class MappedIndex extends Index {
+
+  private static final Logger logger = Logger.getLogger(MappedIndex.class.getName());
+
+  private final File directory;
+  private final Map<String, MappedFingerprintSet> folderMessages;
+
+  /**
+   * Opens (or creates) the index stored in the provided directory.
+   */
+  public MappedIndex(File directory) throws IOException {
+    super(true);
+    this.directory = directory;
+    this.folderMessages = new ConcurrentHashMap<>();
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException(String.format("Couldn't create index directory %s", directory));
+    }
+    final File[] files = directory.listFiles((dir, name) ->
+        name.endsWith(MappedFingerprintSet.EXTENSION));
+    for (File file : files == null ? new File[0] : files) {
+      try {
+        final MappedFingerprintSet messages = MappedFingerprintSet.open(file);
+        folderMessages.put(messages.getFolderName(), messages);
+      } catch (IOException ex) {
+        //Invalid files are discarded, the folder will be fully crawled
+        logger.log(Level.WARNING, null, ex);
+      }
+    }
+  }
+
+  @Override
+  public Set<MessageId> getFolderMessages(String folder) {
+    return getMappedFolderMessages(folder);
+  }
+
+  @Override
+  public FolderState getFolderState(String folder) {
+    final MappedFingerprintSet messages = folderMessages.get(folder);
+    return messages == null ? null : messages.getFolderState();
+  }
+
+  @Override
+  public void setFolderState(String folder, FolderState folderState) {
+    getMappedFolderMessages(folder).setFolderState(folderState);
+  }
+
+  @Override
+  public Map<String, FolderState> getFolderStates() {
+    final Map<String, FolderState> folderStates = new HashMap<>();
+    folderMessages.forEach((folder, messages) -> {
+      final FolderState folderState = messages.getFolderState();
+      if (folderState != null) {
+        folderStates.put(folder, folderState);
+      }
+    });
+    return Collections.unmodifiableMap(folderStates);
+  }
+
+  @Override
+  public void resetFolder(String folder) {
+    final MappedFingerprintSet messages = folderMessages.get(folder);
+    if (messages != null) {
+      messages.clear();
+    }
+  }
+
+  /**
+   * Removes every folder (messages and state) from the index.
+   */
+  public void resetFolders() {
+    folderMessages.values().forEach(MappedFingerprintSet::clear);
+  }
+
+  /**
+   * Writes any pending modification in the memory-mapped files to disk.
+   */
+  public void force() {
+    folderMessages.values().forEach(MappedFingerprintSet::force);
+  }
+
+  private MappedFingerprintSet getMappedFolderMessages(String folder) {
+    return folderMessages.computeIfAbsent(folder, k -> {
+      try {
+        return MappedFingerprintSet.create(new File(directory, fileName(k)), k);
+      } catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+    });
+  }
+
+  /**
+   * Folder names may contain characters that aren't valid in file names, the actual name is
+   * stored in the file header.
+   */
+  private static String fileName(String folder) {
+    try {
+      final StringBuilder fileName = new StringBuilder();
+      for (byte b : MessageDigest.getInstance("MD5")
+          .digest(folder.getBytes(StandardCharsets.UTF_8))) {
+        fileName.append(String.format("%02x", b));
+      }
+      return fileName.append(MappedFingerprintSet.EXTENSION).toString();
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+}
@@ -18,10 +18,15 @@ package com.marcnuri.mnimapsync.index;
 
 import com.sun.mail.imap.IMAPFolder;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -33,11 +38,15 @@ import javax.mail.MessagingException;
  * Class to create a reusable message ID for identification in maps and comparisons of source/target
  * messages.
  *
+ * Besides the normalized header fields, every instance holds a 128-bit fingerprint of those fields.
+ * Fingerprint only instances ({@link #toFingerprint()}) drop the fields to save memory and are
+ * compared using the fingerprint alone.
+ *
  * @author Marc Nuri <marc@marcnuri.com>
  */
 public class MessageId implements Serializable {
 
-    private static final long serialVersionUID = 8724942298665055562L;
+    private static final long serialVersionUID = -3061486623640587208L;
 
     private static final String HEADER_SUBJECT = "Subject";
     private static final String HEADER_MESSAGE_ID = "Message-Id";
@@ -49,6 +58,8 @@ public class MessageId implements Serializable {
     private final String[] from;
     private final String[] to;
     private final String subject;
+    private final long fingerprintHigh;
+    private final long fingerprintLow;
 
     //Method using headers Safer but slower
     /**
@@ -81,6 +92,42 @@ public class MessageId implements Serializable {
         } catch (MessagingException messagingException) {
             throw new MessageIdException("Messaging Exception", messagingException);
         }
+        final ByteBuffer fingerprint = ByteBuffer.wrap(fingerprint(messageIdHeader, from, to,
+            subject));
+        this.fingerprintHigh = fingerprint.getLong();
+        this.fingerprintLow = fingerprint.getLong();
+    }
+
+    private MessageId(long fingerprintHigh, long fingerprintLow) {
+        this.messageIdHeader = null;
+        this.from = null;
+        this.to = null;
+        this.subject = null;
+        this.fingerprintHigh = fingerprintHigh;
+        this.fingerprintLow = fingerprintLow;
+    }
+
+    public static MessageId fromFingerprint(long fingerprintHigh, long fingerprintLow) {
+        return new MessageId(fingerprintHigh, fingerprintLow);
+    }
+
+    /**
+     * Returns an equivalent instance that only retains the 128-bit fingerprint.
+     */
+    public MessageId toFingerprint() {
+        return isFingerprint() ? this : new MessageId(fingerprintHigh, fingerprintLow);
+    }
+
+    public boolean isFingerprint() {
+        return messageIdHeader == null;
+    }
+
+    public long getFingerprintHigh() {
+        return fingerprintHigh;
+    }
+
+    public long getFingerprintLow() {
+        return fingerprintLow;
     }
 
     @Override
@@ -92,18 +139,52 @@ public class MessageId implements Serializable {
             return false;
         }
         MessageId messageId1 = (MessageId) o;
+        if (isFingerprint() || messageId1.isFingerprint()) {
+            return fingerprintHigh == messageId1.fingerprintHigh &&
+                fingerprintLow == messageId1.fingerprintLow;
+        }
         return Objects.equals(messageIdHeader, messageId1.messageIdHeader) &&
             Arrays.equals(from, messageId1.from) &&
             Arrays.equals(to, messageId1.to) &&
             Objects.equals(subject, messageId1.subject);
     }
 
+    /**
+     * Computed from the fingerprint so that full and fingerprint only instances are interchangeable
+     * in hash based collections.
+     */
     @Override
     public int hashCode() {
-        int result = Objects.hash(messageIdHeader, subject);
-        result = 31 * result + Arrays.hashCode(from);
-        result = 31 * result + Arrays.hashCode(to);
-        return result;
+        return Long.hashCode(fingerprintHigh ^ fingerprintLow);
+    }
+
+    /**
+     * MD5 digest of the normalized fields. Every field is length prefixed so that different field
+     * combinations can't produce the same digest input.
+     */
+    private static byte[] fingerprint(String messageIdHeader, String[] from, String[] to,
+        String subject) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("MD5");
+            update(digest, messageIdHeader);
+            update(digest, subject);
+            for (String[] addresses : new String[][]{from, to}) {
+                digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(addresses.length).array());
+                for (String address : addresses) {
+                    update(digest, address);
+                }
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException ex) {
+            //Every Java platform implementation is required to support MD5
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+        digest.update(bytes);
     }
 
     /**
@@ -129,19 +210,29 @@ public class MessageId implements Serializable {
      * Adds required headers to fetch profile
      */
     public static FetchProfile addHeaders(FetchProfile fetchProfile) {
+        return addHeaders(fetchProfile, IdentityFetch.HEADERS);
+    }
+
+    /**
+     * Adds required headers to fetch profile using the provided {@link IdentityFetch} strategy
+     */
+    public static FetchProfile addHeaders(FetchProfile fetchProfile, IdentityFetch identityFetch) {
+        if (identityFetch == IdentityFetch.HEADER_FIELDS) {
+            //Values are read using getHeader, so ENVELOPE is not needed
+            for (String header : new String[]{
+                HEADER_MESSAGE_ID,
+                HEADER_SUBJECT,
+                HEADER_FROM,
+                HEADER_TO}) {
+                fetchProfile.add(header.toUpperCase(Locale.ENGLISH));
+            }
+            return fetchProfile;
+        }
         fetchProfile.add(FetchProfile.Item.ENVELOPE);
         //Some servers respond to get a header request with a partial response of the header
         //when hMailServer is fetched for To or From, it returns only the first entry,
         //so when compared with other server versions, e-mails appear to be different.
         fetchProfile.add(IMAPFolder.FetchProfileItem.HEADERS);
-        //If using the header consructor add this for performance.
-//        for (String header : new String[]{
-//            MessageId.HEADER_MESSAGE_ID,
-//            MessageId.HEADER_SUBJECT,
-//            MessageId.HEADER_FROM,
-//            MessageId.HEADER_TO}) {
-//            fetchProfile.add(header.toUpperCase());
-//        }
         return fetchProfile;
     }
 
@@ -0,0 +1,237 @@
+/*
+ * SortedFingerprints.java
+ *
+ * Created on 2026-10-17, 23:55
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Immutable snapshot of {@link MessageId} fingerprints sorted in a primitive array, optionally
+ * each with an associated value (e.g. the UID of the message).
+ *
+ * The difference between two snapshots is computed with a single linear merge instead of a hash
+ * lookup per message. Records are stored as (high, low[, value]) tuples in a single long array
+ * so a snapshot needs 16 or 24 bytes per message (twice as much while it's being sorted).
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public final class SortedFingerprints {
+
+  private static final int FINGERPRINT_LONGS = 2;
+  private static final int INSERTION_SORT_THRESHOLD = 16;
+  private static final int MAX_BUCKET_BITS = 16;
+  //Average records per bucket of the distribution pass
+  private static final int BUCKET_RECORDS = 64;
+
+  private final long[] records;
+  private final int stride;
+  private final int size;
+
+  private SortedFingerprints(long[] records, int stride, int size) {
+    this.records = distribute(records, stride, size);
+    this.stride = stride;
+    this.size = size;
+  }
+
+  /**
+   * Sorts a snapshot of the fingerprints of the provided messages.
+   */
+  public static SortedFingerprints of(Set<MessageId> messages) {
+    if (messages instanceof FingerprintSet) {
+      final long[] fingerprints = ((FingerprintSet) messages).toFingerprintArray();
+      return new SortedFingerprints(fingerprints, FINGERPRINT_LONGS,
+          fingerprints.length / FINGERPRINT_LONGS);
+    }
+    final MessageId[] snapshot = messages.toArray(new MessageId[0]);
+    final long[] fingerprints = new long[snapshot.length * FINGERPRINT_LONGS];
+    for (int it = 0; it < snapshot.length; it++) {
+      fingerprints[it * FINGERPRINT_LONGS] = snapshot[it].getFingerprintHigh();
+      fingerprints[it * FINGERPRINT_LONGS + 1] = snapshot[it].getFingerprintLow();
+    }
+    return new SortedFingerprints(fingerprints, FINGERPRINT_LONGS, snapshot.length);
+  }
+
+  /**
+   * Sorts the provided (high, low, value) records, the array is owned by the returned instance.
+   *
+   * @param size number of records, the array may be larger.
+   */
+  public static SortedFingerprints withValues(long[] records, int size) {
+    return new SortedFingerprints(records, FINGERPRINT_LONGS + 1, size);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the values of the records whose fingerprint isn't contained in the other snapshot,
+   * in fingerprint order.
+   */
+  public long[] valuesMissingFrom(SortedFingerprints other) {
+    if (stride == FINGERPRINT_LONGS) {
+      throw new IllegalStateException("Fingerprints have no associated values");
+    }
+    final long[] result = new long[size];
+    return Arrays.copyOf(result, merge(other, result));
+  }
+
+  /**
+   * Returns the number of fingerprints that aren't contained in the other snapshot.
+   */
+  public int countMissingFrom(SortedFingerprints other) {
+    return merge(other, null);
+  }
+
+  /**
+   * Walks both snapshots in order, adding the values of the missing records to the result (if
+   * any), and returns the number of missing records.
+   */
+  private int merge(SortedFingerprints other, long[] result) {
+    int missing = 0;
+    int otherIndex = 0;
+    for (int index = 0; index < size; index++) {
+      final long high = records[index * stride];
+      final long low = records[index * stride + 1];
+      int comparison = 1;
+      while (otherIndex < other.size && (comparison = compare(high, low,
+          other.records[otherIndex * other.stride],
+          other.records[otherIndex * other.stride + 1])) > 0) {
+        otherIndex++;
+      }
+      if (comparison != 0) {
+        if (result != null) {
+          result[missing] = records[index * stride + FINGERPRINT_LONGS];
+        }
+        missing++;
+      }
+    }
+    return missing;
+  }
+
+  /**
+   * Sorts the records distributing them in buckets by the most significant bits of their
+   * fingerprint (a single counting sort pass) and then sorting each bucket. Fingerprints are
+   * hashes, so buckets are small and each one is sorted within the CPU cache.
+   */
+  private static long[] distribute(long[] records, int stride, int size) {
+    final int bucketBits = Math.min(MAX_BUCKET_BITS,
+        Integer.SIZE - 1 - Integer.numberOfLeadingZeros(Math.max(size / BUCKET_RECORDS, 1)));
+    if (bucketBits == 0) {
+      sort(records, stride, 0, size - 1);
+      return records;
+    }
+    final int[] bucketStarts = new int[(1 << bucketBits) + 1];
+    for (int index = 0; index < size; index++) {
+      bucketStarts[bucket(records[index * stride], bucketBits) + 1]++;
+    }
+    for (int bucket = 1; bucket < bucketStarts.length; bucket++) {
+      bucketStarts[bucket] += bucketStarts[bucket - 1];
+    }
+    final int[] positions = Arrays.copyOf(bucketStarts, bucketStarts.length - 1);
+    final long[] distributed = new long[size * stride];
+    for (int index = 0; index < size; index++) {
+      final int position = positions[bucket(records[index * stride], bucketBits)]++;
+      System.arraycopy(records, index * stride, distributed, position * stride, stride);
+    }
+    for (int bucket = 0; bucket < bucketStarts.length - 1; bucket++) {
+      sort(distributed, stride, bucketStarts[bucket], bucketStarts[bucket + 1] - 1);
+    }
+    return distributed;
+  }
+
+  /**
+   * Bucket of the fingerprint, the sign bit is flipped so that buckets follow the signed order.
+   */
+  private static int bucket(long high, int bucketBits) {
+    return (int) ((high ^ Long.MIN_VALUE) >>> (Long.SIZE - bucketBits));
+  }
+
+  /**
+   * Quicksort of the records between both indexes (inclusive) by fingerprint. Fingerprints are
+   * hashes, so a median of three pivot is enough to keep partitions balanced.
+   * The smaller partition is sorted recursively to bound the stack depth.
+   */
+  private static void sort(long[] records, int stride, int from, int to) {
+    while (to - from >= INSERTION_SORT_THRESHOLD) {
+      final int middle = (from + to) >>> 1;
+      if (compare(records, stride, middle, from) < 0) {
+        swap(records, stride, middle, from);
+      }
+      if (compare(records, stride, to, from) < 0) {
+        swap(records, stride, to, from);
+      }
+      if (compare(records, stride, to, middle) < 0) {
+        swap(records, stride, to, middle);
+      }
+      final long pivotHigh = records[middle * stride];
+      final long pivotLow = records[middle * stride + 1];
+      int left = from;
+      int right = to;
+      while (left <= right) {
+        while (compare(records[left * stride], records[left * stride + 1],
+            pivotHigh, pivotLow) < 0) {
+          left++;
+        }
+        while (compare(records[right * stride], records[right * stride + 1],
+            pivotHigh, pivotLow) > 0) {
+          right--;
+        }
+        if (left <= right) {
+          swap(records, stride, left++, right--);
+        }
+      }
+      if (right - from < to - left) {
+        sort(records, stride, from, right);
+        from = left;
+      } else {
+        sort(records, stride, left, to);
+        to = right;
+      }
+    }
+    for (int it = from + 1; it <= to; it++) {
+      for (int current = it; current > from && compare(records, stride, current, current - 1) < 0;
+          current--) {
+        swap(records, stride, current, current - 1);
+      }
+    }
+  }
+
+  private static int compare(long highA, long lowA, long highB, long lowB) {
+    final int comparison = Long.compare(highA, highB);
+    return comparison != 0 ? comparison : Long.compare(lowA, lowB);
+  }
+
+  private static int compare(long[] records, int stride, int indexA, int indexB) {
+    return compare(records[indexA * stride], records[indexA * stride + 1],
+        records[indexB * stride], records[indexB * stride + 1]);
+  }
+
+  private static void swap(long[] records, int stride, int indexA, int indexB) {
+    final int offsetA = indexA * stride;
+    final int offsetB = indexB * stride;
+    for (int it = 0; it < stride; it++) {
+      final long temp = records[offsetA + it];
+      records[offsetA + it] = records[offsetB + it];
+      records[offsetB + it] = temp;
+    }
+  }
+}
@@ -20,13 +20,22 @@
  */
 package com.marcnuri.mnimapsync.index;
 
-import com.marcnuri.mnimapsync.MNIMAPSync;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.firstAppendedMessage;
+
+import com.marcnuri.mnimapsync.BatchPlanner;
+import com.marcnuri.mnimapsync.WorkScheduler;
+import com.marcnuri.mnimapsync.WorkerOptions;
+import com.marcnuri.mnimapsync.imap.FolderSessions;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import javax.mail.Folder;
 import javax.mail.MessagingException;
 import javax.mail.Store;
+import javax.mail.UIDFolder;
 
 /**
  * Created by Marc Nuri <marc@marcnuri.com> on 2019-09-02.
@@ -38,53 +47,143 @@ public class StoreCrawler {
 
   /**
    * Static method to populate a {@link Index} with the messages in an {@link Store}
+   *
+   * <p>If the index already contains messages for a folder (e.g. loaded from an {@link
+   * IndexSnapshot}) and the {@link FolderState} is still compatible, only the messages appended
+   * since then are crawled. Otherwise, the folder is reset and fully crawled.
    */
-  public static Index populateFromStore(final Index index, Store store, int threads)
-      throws MessagingException, InterruptedException {
+  public static Index populateFromStore(final Index index, Store store,
+      WorkerOptions workerOptions) throws MessagingException, InterruptedException {
 
-    MessagingException messagingException = null;
-    final ExecutorService service = Executors.newFixedThreadPool(threads);
+    return awaitPopulateFromStore(startPopulateFromStore(index, store, workerOptions));
+  }
+
+  /**
+   * Starts populating the {@link Index} and returns as soon as the folder tree has been traversed
+   * and the crawl of every folder has been scheduled.
+   *
+   * <p>Until the returned future completes, {@link Index#awaitFolderCrawl(String)} can be used to
+   * wait for a specific folder to be completely indexed.
+   *
+   * @param workerOptions crawler workers, message headers are fetched using their {@link
+   * IdentityFetch} strategy.
+   */
+  public static CompletableFuture<Index> startPopulateFromStore(final Index index, Store store,
+      WorkerOptions workerOptions) throws MessagingException {
+
+    final BatchPlanner batchPlanner = new BatchPlanner();
+    final WorkScheduler scheduler = new WorkScheduler(workerOptions.getConnections(),
+        batchPlanner, workerOptions.getThreadFactory());
+    final FolderSessions folderSessions = new FolderSessions(store,
+        FolderSessions.MAX_SESSION_MESSAGES, workerOptions.getThrottle());
+    final Map<String, FolderState> crawledFolderStates = new HashMap<>();
+    final List<CompletableFuture<Void>> folderCrawls = new ArrayList<>();
     try {
       index.setFolderSeparator(String.valueOf(store.getDefaultFolder().getSeparator()));
-      crawlFolders(store, index, store.getDefaultFolder(), service);
-    } catch (MessagingException ex) {
-      messagingException = ex;
+      crawlFolders(store, index, store.getDefaultFolder(), scheduler, batchPlanner, folderSessions,
+          crawledFolderStates, workerOptions.getIdentityFetch(), folderCrawls);
+    } catch (MessagingException | RuntimeException ex) {
+      //Folders already scheduled are still being crawled, their sessions are closed afterwards
+      CompletableFuture.allOf(folderCrawls.toArray(new CompletableFuture[0]))
+          .whenComplete((v, crawlException) -> folderSessions.closeAll());
+      throw ex;
+    } finally {
+      //Largest folders are crawled first
+      scheduler.shutdown();
     }
-    service.shutdown();
-    service.awaitTermination(1, TimeUnit.HOURS);
-    if (index.hasCrawlException()) {
-      messagingException = index.getCrawlExceptions().iterator().next();
+    //Folders that no longer exist in the store can be discarded right away
+    new HashMap<>(index.getFolderStates()).keySet().stream()
+        .filter(folderName -> !crawledFolderStates.containsKey(folderName))
+        .forEach(index::resetFolder);
+    return CompletableFuture.allOf(folderCrawls.toArray(new CompletableFuture[0]))
+        .whenComplete((v, ex) -> folderSessions.closeAll())
+        .thenApply(v -> {
+          //States are only updated once all of the folder's messages have been successfully crawled
+          if (!index.hasCrawlException()) {
+            crawledFolderStates.forEach(index::setFolderState);
+          }
+          return index;
+        });
+  }
+
+  /**
+   * Waits for a crawl started with {@link #startPopulateFromStore(Index, Store, WorkerOptions)}
+   * to complete.
+   *
+   * @throws MessagingException if any of the folders couldn't be crawled
+   */
+  public static Index awaitPopulateFromStore(CompletableFuture<Index> crawl)
+      throws MessagingException, InterruptedException {
+
+    final Index index;
+    try {
+      index = crawl.get();
+    } catch (ExecutionException ex) {
+      throw new MessagingException("Error crawling store", ex);
     }
-    if (messagingException != null) {
-      throw messagingException;
+    if (index.hasCrawlException()) {
+      throw index.getCrawlExceptions().iterator().next();
     }
     return index;
   }
 
   private static void crawlFolders(Store store, Index index, Folder folder,
-      ExecutorService service) throws MessagingException {
+      WorkScheduler scheduler, BatchPlanner batchPlanner, FolderSessions folderSessions,
+      Map<String, FolderState> crawledFolderStates, IdentityFetch identityFetch,
+      List<CompletableFuture<Void>> folderCrawls)
+      throws MessagingException {
     if (folder != null) {
       final String folderName = folder.getFullName();
       index.addFolder(folderName);
       if ((folder.getType() & Folder.HOLDS_MESSAGES) == Folder.HOLDS_MESSAGES) {
-        folder.open(Folder.READ_ONLY);
-        if (folder.getMode() != Folder.READ_ONLY) {
-          folder.expunge();
-        }
-        final int messageCount = folder.getMessageCount();
-        folder.close(false);
-        int pos = 1;
-        while (pos + MNIMAPSync.BATCH_SIZE <= messageCount) {
-          service.execute(new FolderCrawler(store, folderName, pos,
-              pos + MNIMAPSync.BATCH_SIZE, index));
-          pos = pos + MNIMAPSync.BATCH_SIZE;
+        //Selected within the connection limit of the workers
+        folderSessions.open(folder, Folder.READ_ONLY);
+        final int messageCount;
+        int pos = 0;
+        boolean closed = false;
+        try {
+          if (folder.getMode() != Folder.READ_ONLY) {
+            folder.expunge();
+          }
+          messageCount = folder.getMessageCount();
+          if (folder instanceof UIDFolder) {
+            final FolderState folderState = new FolderState(
+                ((UIDFolder) folder).getUIDValidity(), ((UIDFolder) folder).getUIDNext(),
+                messageCount);
+            pos = firstAppendedMessage((UIDFolder) folder, folderState,
+                index.getFolderState(folderName));
+            crawledFolderStates.put(folderName, folderState);
+          }
+          if (pos == 0) {
+            index.resetFolder(folderName);
+            pos = 1;
+          }
+          //UIDs are only useful if every message of the folder is crawled
+          if (pos == 1 && folder instanceof UIDFolder) {
+            index.startFolderUids(folderName, ((UIDFolder) folder).getUIDValidity());
+          } else {
+            index.discardFolderUids(folderName);
+          }
+          folderSessions.close(folder, false);
+          closed = true;
+        } finally {
+          if (!closed) {
+            folderSessions.discard(folder);
+          }
         }
-        service.execute(new FolderCrawler(store, folderName, pos, messageCount, index));
+        //Only headers are fetched, every message has a similar cost
+        final CompletableFuture<Void> folderCrawl = scheduler.schedule(
+            batchPlanner.plan(pos, messageCount),
+            (start, end) -> new FolderCrawler(folderSessions, folderName, start, end, index,
+                identityFetch));
+        index.setFolderCrawl(folderName, folderCrawl);
+        folderCrawls.add(folderCrawl);
       }
       //Folder recursion. Get all children
       if ((folder.getType() & Folder.HOLDS_FOLDERS) == Folder.HOLDS_FOLDERS) {
         for (Folder child : folder.list()) {
-          crawlFolders(store, index, child, service);
+          crawlFolders(store, index, child, scheduler, batchPlanner, folderSessions,
+              crawledFolderStates, identityFetch, folderCrawls);
         }
       }
     }
@@ -0,0 +1,298 @@
+/*
+ * CheckpointJournal.java
+ *
+ * Created on 2026-10-17, 20:40
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.store;
+
+import com.marcnuri.mnimapsync.index.FingerprintSet;
+import com.marcnuri.mnimapsync.index.MessageId;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only journal of the work completed by a {@link StoreCopier} so that an interrupted run
+ * can be resumed.
+ *
+ * Completed units are recorded as the UID range they covered in the source folder along with the
+ * fingerprints of its messages, so a restarted run neither fetches them again nor loses them from
+ * the source index. Fingerprints of every message appended to the target are recorded too, so
+ * that they aren't appended twice even if their unit didn't complete.
+ *
+ * A record that was only partially written when the process died is discarded when the journal
+ * is loaded. The journal is truncated at the first invalid record, any record after it is
+ * discarded too.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public final class CheckpointJournal implements Closeable {
+
+  private static final int VERSION = 1;
+  private static final byte UNIT_RECORD = 'U';
+  private static final byte APPEND_RECORD = 'A';
+
+  private final File file;
+  private final Map<String, List<CompletedUnit>> completedUnits;
+  private final Map<String, Set<MessageId>> appendedMessages;
+  private FileChannel channel;
+  private DataOutputStream output;
+
+  public CheckpointJournal(File file) throws IOException {
+    this.file = file;
+    completedUnits = new HashMap<>();
+    appendedMessages = new HashMap<>();
+    final long validLength = file.isFile() ? load() : 0L;
+    open(validLength);
+  }
+
+  /**
+   * Units completed for the provided source folder, sorted by their first UID. Units recorded
+   * with a different UIDVALIDITY are ignored as their UIDs no longer identify the same messages.
+   */
+  public synchronized List<CompletedUnit> getCompletedUnits(String sourceFolder,
+      long uidValidity) {
+
+    final List<CompletedUnit> result = new ArrayList<>();
+    for (CompletedUnit unit : completedUnits.getOrDefault(sourceFolder,
+        Collections.emptyList())) {
+      if (unit.uidValidity == uidValidity) {
+        result.add(unit);
+      }
+    }
+    result.sort(Comparator.comparingLong(CompletedUnit::getFirstUid));
+    return result;
+  }
+
+  public synchronized boolean isAppended(String targetFolder, MessageId messageId) {
+    final Set<MessageId> appended = appendedMessages.get(targetFolder);
+    return appended != null && appended.contains(messageId);
+  }
+
+  /**
+   * Records messages that were successfully appended to the target folder.
+   */
+  public synchronized void appended(String targetFolder, Collection<MessageId> messageIds) {
+    if (messageIds.isEmpty()) {
+      return;
+    }
+    appendedMessages.computeIfAbsent(targetFolder, k -> new FingerprintSet()).addAll(messageIds);
+    write(APPEND_RECORD, targetFolder, messageIds, false, 0L, 0L, 0L);
+  }
+
+  /**
+   * Records that every message of the source folder within the UID range was processed. The
+   * record is synced to disk before returning.
+   */
+  public synchronized void unitCompleted(String sourceFolder, long uidValidity, long firstUid,
+      long lastUid, Collection<MessageId> messageIds) {
+
+    completedUnits.computeIfAbsent(sourceFolder, k -> new ArrayList<>()).add(
+        new CompletedUnit(uidValidity, firstUid, lastUid, fingerprints(messageIds)));
+    write(UNIT_RECORD, sourceFolder, messageIds, true, uidValidity, firstUid, lastUid);
+  }
+
+  /**
+   * Discards every record, the journal is no longer needed once a run completes successfully.
+   */
+  public synchronized void reset() throws IOException {
+    completedUnits.clear();
+    appendedMessages.clear();
+    close();
+    open(0L);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (output != null) {
+      output.close();
+      output = null;
+      channel = null;
+    }
+  }
+
+  private long load() throws IOException {
+    final byte[] content = Files.readAllBytes(file.toPath());
+    final DataInputStream input = new DataInputStream(new ByteArrayInputStream(content));
+    try {
+      if (input.readInt() != VERSION) {
+        Logger.getLogger(CheckpointJournal.class.getName()).log(Level.WARNING,
+            "Unsupported checkpoint journal version in {0}, ignoring it", file);
+        return 0L;
+      }
+    } catch (EOFException ex) {
+      return 0L;
+    }
+    long validLength = content.length - input.available();
+    try {
+      while (input.available() > 0) {
+        final byte type = input.readByte();
+        final String folder = input.readUTF();
+        if (type == UNIT_RECORD) {
+          final long uidValidity = input.readLong();
+          final long firstUid = input.readLong();
+          final long lastUid = input.readLong();
+          final List<MessageId> messageIds = readMessageIds(input);
+          completedUnits.computeIfAbsent(folder, k -> new ArrayList<>())
+              .add(new CompletedUnit(uidValidity, firstUid, lastUid, messageIds));
+        } else if (type == APPEND_RECORD) {
+          appendedMessages.computeIfAbsent(folder, k -> new FingerprintSet())
+              .addAll(readMessageIds(input));
+        } else {
+          throw new IOException(String.format("Invalid checkpoint journal record in %s", file));
+        }
+        validLength = content.length - input.available();
+      }
+    } catch (EOFException ex) {
+      Logger.getLogger(CheckpointJournal.class.getName()).log(Level.WARNING,
+          "Discarding incomplete record at the end of checkpoint journal {0}", file);
+    } catch (IOException ex) {
+      //Records after a corrupted one can't be located, the rest of the run is processed again
+      Logger.getLogger(CheckpointJournal.class.getName()).log(Level.WARNING,
+          String.format("Discarding invalid records of checkpoint journal %s", file), ex);
+    }
+    return validLength;
+  }
+
+  /**
+   * Opens the journal for appending, any content beyond the valid length is truncated.
+   */
+  private void open(long validLength) throws IOException {
+    final FileOutputStream fileOutputStream = new FileOutputStream(file, validLength > 0L);
+    channel = fileOutputStream.getChannel();
+    channel.truncate(validLength);
+    output = new DataOutputStream(new BufferedOutputStream(fileOutputStream));
+    if (validLength == 0L) {
+      output.writeInt(VERSION);
+      output.flush();
+    }
+  }
+
+  private void write(byte type, String folder, Collection<MessageId> messageIds, boolean sync,
+      long uidValidity, long firstUid, long lastUid) {
+
+    if (output == null) {
+      return;
+    }
+    try {
+      output.writeByte(type);
+      output.writeUTF(folder);
+      if (type == UNIT_RECORD) {
+        output.writeLong(uidValidity);
+        output.writeLong(firstUid);
+        output.writeLong(lastUid);
+      }
+      output.writeInt(messageIds.size());
+      for (MessageId messageId : messageIds) {
+        output.writeLong(messageId.getFingerprintHigh());
+        output.writeLong(messageId.getFingerprintLow());
+      }
+      output.flush();
+      if (sync) {
+        channel.force(false);
+      }
+    } catch (IOException ex) {
+      //Journal is only needed to resume, the sync itself can continue without it
+      Logger.getLogger(CheckpointJournal.class.getName()).log(Level.WARNING,
+          String.format("Couldn't write checkpoint journal %s, disabling it", file), ex);
+      try {
+        close();
+      } catch (IOException closeException) {
+        ex.addSuppressed(closeException);
+      }
+    }
+  }
+
+  private static List<MessageId> readMessageIds(DataInputStream input) throws IOException {
+    final int count = input.readInt();
+    if (count < 0) {
+      throw new IOException(String.format("Invalid message count %s", count));
+    }
+    if (count > input.available() / (2 * Long.BYTES)) {
+      throw new EOFException();
+    }
+    final List<MessageId> result = new ArrayList<>(count);
+    for (int it = 0; it < count; it++) {
+      result.add(MessageId.fromFingerprint(input.readLong(), input.readLong()));
+    }
+    return result;
+  }
+
+  private static List<MessageId> fingerprints(Collection<MessageId> messageIds) {
+    final List<MessageId> result = new ArrayList<>(messageIds.size());
+    for (MessageId messageId : messageIds) {
+      result.add(messageId.toFingerprint());
+    }
+    return result;
+  }
+
+  /**
+   * UID range of a source folder whose messages were completely processed in a previous run.
+   */
+  public static final class CompletedUnit {
+
+    private final long uidValidity;
+    private final long firstUid;
+    private final long lastUid;
+    private final List<MessageId> messageIds;
+
+    CompletedUnit(long uidValidity, long firstUid, long lastUid, List<MessageId> messageIds) {
+      this.uidValidity = uidValidity;
+      this.firstUid = firstUid;
+      this.lastUid = lastUid;
+      this.messageIds = messageIds;
+    }
+
+    public long getFirstUid() {
+      return firstUid;
+    }
+
+    public long getLastUid() {
+      return lastUid;
+    }
+
+    public boolean contains(long uid) {
+      return uid >= firstUid && uid <= lastUid;
+    }
+
+    /**
+     * Fingerprints of the source messages of the unit.
+     */
+    public List<MessageId> getMessageIds() {
+      return messageIds;
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * CopyOptions.java
+ *
+ * Created on 2026-10-18, 03:20
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.store;
+
+import com.marcnuri.mnimapsync.WorkerOptions;
+
+/**
+ * Settings of a {@link StoreCopier}.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+public final class CopyOptions {
+
+  private WorkerOptions source;
+  private WorkerOptions target;
+  private boolean serverSideCopy;
+  private CheckpointJournal checkpointJournal;
+
+  public CopyOptions() {
+    source = new WorkerOptions();
+    target = new WorkerOptions();
+    serverSideCopy = false;
+  }
+
+  /**
+   * Workers fetching messages from the source store.
+   */
+  public WorkerOptions getSource() {
+    return source;
+  }
+
+  public void setSource(WorkerOptions source) {
+    this.source = source;
+  }
+
+  /**
+   * Workers appending messages to the target store, only their connections and throttle are
+   * used.
+   */
+  public WorkerOptions getTarget() {
+    return target;
+  }
+
+  public void setTarget(WorkerOptions target) {
+    this.target = target;
+  }
+
+  /**
+   * If true, messages are copied within the source store using COPY commands, source and target
+   * stores must be connected to the same account.
+   */
+  public boolean isServerSideCopy() {
+    return serverSideCopy;
+  }
+
+  public void setServerSideCopy(boolean serverSideCopy) {
+    this.serverSideCopy = serverSideCopy;
+  }
+
+  /**
+   * Journal where completed work is recorded, units completed in a previous run are skipped.
+   * Null to disable checkpoints.
+   */
+  public CheckpointJournal getCheckpointJournal() {
+    return checkpointJournal;
+  }
+
+  public void setCheckpointJournal(CheckpointJournal checkpointJournal) {
+    this.checkpointJournal = checkpointJournal;
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * FetchedMessage.java
+ *
+ * Created on 2026-10-17, 14:10
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.store;
+
+import java.util.Date;
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+
+/**
+ * In-memory copy of a source message, including its flags and received date.
+ *
+ * Once fetched, the message can be appended to the target store without holding a connection to
+ * the source folder.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+final class FetchedMessage extends MimeMessage {
+
+  private final Date receivedDate;
+
+  FetchedMessage(MimeMessage source) throws MessagingException {
+    super(source);
+    receivedDate = source.getReceivedDate();
+  }
+
+  /**
+   * Preserves the INTERNALDATE of the source message when appending it.
+   */
+  @Override
+  public Date getReceivedDate() {
+    return receivedDate;
+  }
+}
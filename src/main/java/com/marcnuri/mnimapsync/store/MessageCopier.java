@@ -16,20 +16,38 @@
  */
 package com.marcnuri.mnimapsync.store;
 
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.multiAppend;
+
+import com.marcnuri.mnimapsync.imap.FolderSessions;
+import com.marcnuri.mnimapsync.imap.IMAPUtils;
+import com.marcnuri.mnimapsync.imap.IMAPUtils.MessageSizeMismatchException;
 import com.marcnuri.mnimapsync.index.Index;
 import com.marcnuri.mnimapsync.index.MessageId;
 import com.sun.mail.imap.IMAPFolder;
 import com.sun.mail.imap.IMAPMessage;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.mail.FetchProfile;
 import javax.mail.Folder;
 import javax.mail.Message;
 import javax.mail.MessagingException;
-import javax.mail.ReadOnlyFolderException;
+import javax.mail.UIDFolder;
+import javax.mail.internet.MimeMessage;
 
 /**
  *
@@ -37,12 +55,31 @@ import javax.mail.ReadOnlyFolderException;
  */
 public final class MessageCopier implements Runnable {
 
+    private static final int MAX_APPEND_BATCH_SIZE = 50;
+    private static final long MAX_APPEND_BATCH_BYTES = 4L * 1024L * 1024L;
+    //Messages larger than this are never held in memory
+    private static final int STREAMING_THRESHOLD_BYTES = 1024 * 1024;
+
     private final StoreCopier storeCopier;
     private final String sourceFolderName;
     private final String targetFolderName;
     private final int start;
     private final int end;
     private final Set<MessageId> targetFolderMessages;
+    //Messages of this unit appended to the target, whether counted or not
+    private final AtomicLong appendedCount;
+    private final Set<MessageId> appendedMessages;
+    //State of the last attempt
+    private Message[] sourceMessages;
+    private Map<Message, MessageId> sourceMessageIds;
+    private boolean indexed;
+    private boolean targetIndexFailed;
+    private long copied;
+    private long skipped;
+    //UID range of the unit, only resolved if checkpoints are enabled
+    private long uidValidity;
+    private long firstUid;
+    private long lastUid;
 
     public MessageCopier(StoreCopier storeCopier, String sourceFolderName, String targetFolderName,
             int start, int end, Set<MessageId> targetFolderMessages) {
@@ -52,23 +89,88 @@ public final class MessageCopier implements Runnable {
         this.start = start;
         this.end = end;
         this.targetFolderMessages = targetFolderMessages;
+        appendedCount = new AtomicLong();
+        appendedMessages = ConcurrentHashMap.newKeySet();
+        sourceMessages = new Message[0];
+        sourceMessageIds = Collections.emptyMap();
     }
 
     public void run() {
+        final Deque<CompletableFuture<Long>> pendingAppends = new ArrayDeque<>();
+        boolean failed = false;
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    copy(pendingAppends);
+                    break;
+                } catch (MessagingException ex) {
+                    //Appends of the failed attempt are kept, the retry will skip those messages
+                    awaitAppends(pendingAppends);
+                    if (targetIndexFailed
+                        || !storeCopier.getRetryPolicy().shouldRetry(ex, attempt)) {
+                        throw ex;
+                    }
+                    storeCopier.getRetryPolicy().backoff(attempt, ex);
+                }
+            }
+        } catch (MessagingException messagingException) {
+            failed = true;
+            storeCopier.getCopyExceptions().add(messagingException);
+            Logger.getLogger(Index.class.getName()).log(Level.SEVERE, null,
+                    messagingException);
+        } catch (InterruptedException ex) {
+            failed = true;
+            storeCopier.getCopyExceptions().add(new MessagingException(
+                String.format("Interrupted while copying folder %s", sourceFolderName), ex));
+            Thread.currentThread().interrupt();
+        }
+        if (failed && !indexed) {
+            storeCopier.sourceIndexIncomplete();
+        }
+        //Source folder is already released, wait for the remaining target uploads
+        awaitAppends(pendingAppends);
+        //Unit is only complete if every message was either appended or skipped
+        if (!failed && sourceMessages.length > 0
+            && appendedCount.get() + skipped == sourceMessages.length) {
+            storeCopier.checkpointUnit(sourceFolderName, uidValidity, firstUid, lastUid,
+                sourceMessageIds.values());
+        }
+        storeCopier.updatedMessagesCopiedCount(copied);
+        storeCopier.updateMessagesSkippedCount(skipped);
+        if (storeCopier.getSourceIndex() != null) {
+            //Quick way to update count (not precise)
+            storeCopier.getSourceIndex().updatedIndexedMessageCount(copied + skipped);
+        }
+    }
+
+    /**
+     * Single attempt to copy the messages of the unit, the source folder is discarded if the
+     * attempt fails so that a retry opens a new connection.
+     */
+    private void copy(Deque<CompletableFuture<Long>> pendingAppends)
+        throws MessagingException, InterruptedException {
+
         final int updateCount = 20;
-        long copied = 0L, skipped = 0L;
+        boolean streaming = false;
+        skipped = 0L;
+        //Opens a new connection per Thread, kept selected for the thread's next batch
+        final Folder sourceFolder = storeCopier.getSourceFolderSessions()
+            .openWritableIfPossible(sourceFolderName);
         try {
-            final Folder sourceFolder = storeCopier.getSourceStore().getFolder(sourceFolderName);
-            //Opens a new connection per Thread
-            //Manage Servers with public/read only folders.
-            try {
-                sourceFolder.open(Folder.READ_WRITE);
-            } catch (ReadOnlyFolderException ex) {
-                sourceFolder.open(Folder.READ_ONLY);
+            sourceMessages = sourceFolder.getMessages(start, end);
+            final FetchProfile idProfile = MessageId.addHeaders(new FetchProfile(),
+                storeCopier.getSourceIdentityFetch());
+            if (storeCopier.isCheckpointEnabled()) {
+                //Completed units are checkpointed by UID, sequence numbers change between runs
+                idProfile.add(UIDFolder.FetchProfileItem.UID);
             }
-            final Message[] sourceMessages = sourceFolder.getMessages(start, end);
-            sourceFolder.fetch(sourceMessages, MessageId.addHeaders(new FetchProfile()));
-            final List<Message> toCopy = new ArrayList<>();
+            final Message[] messages = sourceMessages;
+            storeCopier.getSourceThrottle().execute(() -> {
+                sourceFolder.fetch(messages, idProfile);
+                return messages;
+            });
+            resolveUidRange(sourceFolder, sourceMessages);
+            sourceMessageIds = new LinkedHashMap<>();
             for (Message message : sourceMessages) {
                 try {
                     final MessageId id = new MessageId(message);
@@ -76,54 +178,272 @@ public final class MessageCopier implements Runnable {
                     if (storeCopier.getSourceIndex() != null) {
                         storeCopier.getSourceIndex().getFolderMessages(sourceFolderName).add(id);
                     }
-                    if (!targetFolderMessages.contains(id)) {
-                        ((IMAPMessage) message).setPeek(true);
-                        toCopy.add(message);
-                    } else {
-                        skipped++;
-                    }
+                    sourceMessageIds.put(message, id);
                 } catch (MessageId.MessageIdException ex) {
                     //Usually messages that ran into this exception are spammy, so we skip them.
                     skipped++;
                 }
             }
-            if (!toCopy.isEmpty()) {
+            indexed = true;
+            //Target folder may still be being crawled, its messages are only complete afterwards
+            try {
+                storeCopier.getTargetIndex().awaitFolderCrawl(targetFolderName);
+            } catch (MessagingException ex) {
+                //Crawl was already retried, the index won't complete
+                targetIndexFailed = true;
+                throw ex;
+            }
+            final Map<Message, MessageId> toCopy = new LinkedHashMap<>();
+            for (Entry<Message, MessageId> sourceMessageId : sourceMessageIds.entrySet()) {
+                if (appendedMessages.contains(sourceMessageId.getValue())) {
+                    //Appended in a previous attempt, already counted
+                    continue;
+                }
+                if (!targetFolderMessages.contains(sourceMessageId.getValue())
+                    && !storeCopier.isCheckpointAppended(targetFolderName,
+                    sourceMessageId.getValue())) {
+                    ((IMAPMessage) sourceMessageId.getKey()).setPeek(true);
+                    toCopy.put(sourceMessageId.getKey(), sourceMessageId.getValue());
+                } else {
+                    skipped++;
+                }
+            }
+            if (!toCopy.isEmpty() && storeCopier.isServerSideCopy()) {
+                copied += copyServerSide(sourceFolder, toCopy);
+            } else if (!toCopy.isEmpty()) {
                 final FetchProfile fullProfile = MessageId.addHeaders(new FetchProfile());
                 fullProfile.add(FetchProfile.Item.CONTENT_INFO);
                 fullProfile.add(FetchProfile.Item.FLAGS);
                 fullProfile.add(IMAPFolder.FetchProfileItem.HEADERS);
                 fullProfile.add(FetchProfile.Item.SIZE);
-                sourceFolder.fetch(toCopy.toArray(new Message[0]), fullProfile);
-                final Folder targetFolder = storeCopier.getTargetStore().getFolder(targetFolderName);
-                targetFolder.open(Folder.READ_WRITE);
-                for (Message message : toCopy) {
-                    targetFolder.appendMessages(new Message[]{message});
-                    try {
-                        targetFolderMessages.add(new MessageId(message));
-                        copied++;
-                        if (copied % updateCount == 0) {
+                final Message[] fetchMessages = toCopy.keySet().toArray(new Message[0]);
+                storeCopier.getSourceThrottle().execute(() -> {
+                    sourceFolder.fetch(fetchMessages, fullProfile);
+                    return fetchMessages;
+                });
+                //Messages are downloaded here and uploaded in batches by the target append workers
+                final List<Message> batch = new ArrayList<>();
+                final List<MessageId> batchIds = new ArrayList<>();
+                long batchBytes = 0L;
+                for (Entry<Message, MessageId> message : toCopy.entrySet()) {
+                    if (message.getKey().getSize() > STREAMING_THRESHOLD_BYTES) {
+                        //Large messages are streamed from the source, which must stay open
+                        pendingAppends.add(appendStreaming(message.getKey(), message.getValue()));
+                        streaming = true;
+                        continue;
+                    }
+                    final Message fetchedMessage =
+                        new FetchedMessage((MimeMessage) message.getKey());
+                    storeCopier.getSourceThrottle().transferred(
+                        Math.max(fetchedMessage.getSize(), 0));
+                    batch.add(fetchedMessage);
+                    batchIds.add(message.getValue());
+                    batchBytes += Math.max(fetchedMessage.getSize(), 0);
+                    if (batch.size() >= MAX_APPEND_BATCH_SIZE
+                        || batchBytes >= MAX_APPEND_BATCH_BYTES) {
+                        pendingAppends.add(appendBatch(batch, batchIds));
+                        batch.clear();
+                        batchIds.clear();
+                        batchBytes = 0L;
+                    }
+                    while (!pendingAppends.isEmpty() && pendingAppends.peek().isDone()) {
+                        copied += awaitAppend(pendingAppends.poll());
+                        if (copied >= updateCount) {
                             storeCopier.updatedMessagesCopiedCount(copied);
                             copied = 0L;
                         }
-                    } catch (MessageId.MessageIdException ex) {
-                        //No exception should be thrown because id was generated previously and worked
-                        Logger.getLogger(StoreCopier.class.getName()).
-                                log(Level.SEVERE, null, ex);
                     }
                 }
-                targetFolder.close(false);
+                if (!batch.isEmpty()) {
+                    pendingAppends.add(appendBatch(batch, batchIds));
+                }
             }
-            sourceFolder.close(false);
-        } catch (MessagingException messagingException) {
+            if (streaming) {
+                awaitAppends(pendingAppends);
+            }
+        } catch (MessagingException ex) {
+            if (streaming) {
+                //Pending streamed appends are still reading their messages from the source folder
+                awaitAppends(pendingAppends);
+            }
+            storeCopier.getSourceFolderSessions().discard(sourceFolder);
+            throw ex;
+        }
+        storeCopier.getSourceFolderSessions().release(sourceFolder, sourceMessages.length);
+    }
+
+    private void resolveUidRange(Folder sourceFolder, Message[] sourceMessages)
+        throws MessagingException {
+
+        if (storeCopier.isCheckpointEnabled() && sourceMessages.length > 0) {
+            final UIDFolder uidFolder = (UIDFolder) sourceFolder;
+            uidValidity = uidFolder.getUIDValidity();
+            firstUid = uidFolder.getUID(sourceMessages[0]);
+            lastUid = uidFolder.getUID(sourceMessages[sourceMessages.length - 1]);
+        }
+    }
+
+    /**
+     * Copies the messages within the source server, no message content is transferred. COPY is
+     * atomic, either every message is copied or none.
+     *
+     * MOVE (RFC 6851) isn't used: it's COPY plus the expunge of the source messages, and a sync
+     * must leave the source folder untouched (its messages are also indexed for later runs).
+     */
+    private long copyServerSide(Folder sourceFolder, Map<Message, MessageId> toCopy)
+        throws MessagingException, InterruptedException {
+
+        //Target folder must belong to the source store for the server to perform the copy
+        final Folder targetFolder = storeCopier.getSourceStore().getFolder(targetFolderName);
+        storeCopier.getSourceThrottle().execute(() -> ((IMAPFolder) sourceFolder)
+            .copyUIDMessages(toCopy.keySet().toArray(new Message[0]), targetFolder));
+        registerAppended(toCopy.values());
+        return toCopy.size();
+    }
+
+    private CompletableFuture<Long> appendBatch(List<Message> batch, List<MessageId> batchIds)
+        throws InterruptedException {
+
+        final Message[] messages = batch.toArray(new Message[0]);
+        final MessageId[] ids = batchIds.toArray(new MessageId[0]);
+        return storeCopier.append(() -> appendBisecting(messages, ids, 0, messages.length));
+    }
+
+    /**
+     * Appends the messages in the range [from, to) retrying transient errors. If the append
+     * still fails, the range is split in halves which are appended separately until the failing
+     * messages are isolated, so that a single bad message doesn't fail the whole batch.
+     *
+     * Servers without MULTIAPPEND get one APPEND per message, which aren't pipelined: each APPEND
+     * sends a synchronizing literal and JavaMail waits for the tagged response of every command.
+     * Batches are still appended concurrently by the append workers, one per target connection.
+     *
+     * Returns the number of appended messages, failures are recorded.
+     */
+    private long appendBisecting(Message[] messages, MessageId[] ids, int from, int to)
+        throws MessagingException, InterruptedException {
+
+        final int count = to - from;
+        final boolean multiAppend = count > 1 && storeCopier.isTargetMultiAppend();
+        if (count == 1 || multiAppend) {
+            try {
+                storeCopier.getTargetThrottle().execute(storeCopier.getRetryPolicy(),
+                    () -> appendToTarget(count, targetFolder -> {
+                        if (multiAppend) {
+                            multiAppend(targetFolder, Arrays.copyOfRange(messages, from, to));
+                        } else {
+                            targetFolder.appendMessages(new Message[]{messages[from]});
+                        }
+                    }));
+                storeCopier.getTargetThrottle().transferred(size(messages, from, to));
+                registerAppended(Arrays.asList(ids).subList(from, to));
+                return count;
+            } catch (MessagingException ex) {
+                if (count == 1) {
+                    storeCopier.getCopyExceptions().add(ex);
+                    Logger.getLogger(Index.class.getName()).log(Level.SEVERE, null, ex);
+                    return 0L;
+                }
+                //Nothing was appended, each half is retried on its own
+                Logger.getLogger(StoreCopier.class.getName()).log(Level.WARNING, null, ex);
+            }
+        }
+        final int middle = from + count / 2;
+        return appendBisecting(messages, ids, from, middle)
+            + appendBisecting(messages, ids, middle, to);
+    }
+
+    /**
+     * Streams the message from the source to the target. If its content doesn't match its
+     * RFC822.SIZE, it's buffered and appended as any other message.
+     */
+    private CompletableFuture<Long> appendStreaming(Message message, MessageId id)
+        throws InterruptedException {
+
+        return storeCopier.append(() -> {
+            try {
+                storeCopier.getTargetThrottle().execute(storeCopier.getRetryPolicy(),
+                    () -> appendToTarget(1, targetFolder ->
+                        IMAPUtils.appendStreaming(targetFolder, message)));
+            } catch (MessageSizeMismatchException ex) {
+                Logger.getLogger(StoreCopier.class.getName()).log(Level.WARNING, String.format(
+                    "Couldn't stream message to %s, appending buffered copy: %s",
+                    targetFolderName, ex.getMessage()));
+                final Message fetchedMessage = new FetchedMessage((MimeMessage) message);
+                storeCopier.getSourceThrottle().transferred(Math.max(fetchedMessage.getSize(), 0));
+                return appendBisecting(new Message[]{fetchedMessage}, new MessageId[]{id}, 0, 1);
+            }
+            final long size = Math.max(message.getSize(), 0);
+            storeCopier.getSourceThrottle().transferred(size);
+            storeCopier.getTargetThrottle().transferred(size);
+            registerAppended(Collections.singletonList(id));
+            return 1L;
+        });
+    }
+
+    /**
+     * Appends to the target folder selected by the current append worker, so that appends run
+     * on the worker's own connection instead of being serialized on the store connection. The
+     * folder is discarded if the append fails so that a retry selects it again.
+     */
+    private int appendToTarget(int count, TargetAppend targetAppend) throws MessagingException {
+        final FolderSessions targetFolderSessions = storeCopier.getTargetFolderSessions();
+        final IMAPFolder targetFolder =
+            (IMAPFolder) targetFolderSessions.open(targetFolderName, Folder.READ_WRITE);
+        try {
+            targetAppend.append(targetFolder);
+        } catch (MessagingException ex) {
+            targetFolderSessions.discard(targetFolder);
+            throw ex;
+        }
+        targetFolderSessions.release(targetFolder, count);
+        return count;
+    }
+
+    private static long size(Message[] messages, int from, int to) throws MessagingException {
+        long result = 0L;
+        for (int it = from; it < to; it++) {
+            result += Math.max(messages[it].getSize(), 0);
+        }
+        return result;
+    }
+
+    private void registerAppended(Collection<MessageId> ids) {
+        targetFolderMessages.addAll(ids);
+        appendedMessages.addAll(ids);
+        appendedCount.addAndGet(ids.size());
+        storeCopier.checkpointAppended(targetFolderName, ids);
+    }
+
+    private void awaitAppends(Deque<CompletableFuture<Long>> pendingAppends) {
+        while (!pendingAppends.isEmpty()) {
+            copied += awaitAppend(pendingAppends.poll());
+        }
+    }
+
+    /**
+     * Returns the number of appended messages, 0 if the whole append failed (the exception is
+     * recorded).
+     */
+    private long awaitAppend(CompletableFuture<Long> append) {
+        try {
+            return append.join();
+        } catch (CompletionException ex) {
+            final MessagingException messagingException =
+                ex.getCause() instanceof MessagingException
+                ? (MessagingException) ex.getCause()
+                : new MessagingException(String.format("Couldn't append messages to %s",
+                    targetFolderName), ex);
             storeCopier.getCopyExceptions().add(messagingException);
             Logger.getLogger(Index.class.getName()).log(Level.SEVERE, null,
-                    messagingException);
-        }
-        storeCopier.updatedMessagesCopiedCount(copied);
-        storeCopier.updateMessagesSkippedCount(skipped);
-        if (storeCopier.getSourceIndex() != null) {
-            //Quick way to update count (not precise)
-            storeCopier.getSourceIndex().updatedIndexedMessageCount(copied + skipped);
+                messagingException);
+            return 0L;
         }
     }
+
+    @FunctionalInterface
+    private interface TargetAppend {
+
+        void append(IMAPFolder targetFolder) throws MessagingException;
+    }
 }
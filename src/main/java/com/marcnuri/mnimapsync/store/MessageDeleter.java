@@ -16,16 +16,23 @@
  */
 package com.marcnuri.mnimapsync.store;
 
+import com.marcnuri.mnimapsync.imap.FolderSessions;
+import com.marcnuri.mnimapsync.imap.IMAPUtils;
+import com.marcnuri.mnimapsync.index.FolderUids;
 import com.marcnuri.mnimapsync.index.Index;
 import com.marcnuri.mnimapsync.index.MessageId;
+import com.sun.mail.imap.IMAPFolder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.mail.FetchProfile;
-import javax.mail.Flags;
 import javax.mail.Folder;
 import javax.mail.Message;
 import javax.mail.MessagingException;
+import javax.mail.UIDFolder;
 
 /**
  *
@@ -37,54 +44,117 @@ public final class MessageDeleter implements Runnable {
     private final String targetFolderName;
     private final int start;
     private final int end;
-    private final boolean expunge;
     private final Set<MessageId> sourceFolderMessages;
+    //UIDs planned from the target index, null if they have to be found by fetching headers
+    private final long[] plannedUids;
+    //UIDs recorded by the target crawl, resolve the ids of the planned UIDs
+    private final FolderUids folderUids;
+    //Ids of the messages found to be deleted, removed from the target index once flagged
+    private final List<MessageId> deletedIds;
+    private long skipped;
 
+    /**
+     * Messages of the target folder in the range [start, end] that don't exist in the source folder
+     * are flagged as deleted, they're expunged by the {@link StoreDeleter} once every message of
+     * the folder has been processed.
+     */
     public MessageDeleter(StoreDeleter storeDeleter,
-            String targetFolderName, int start, int end, boolean expunge,
+            String targetFolderName, int start, int end,
             Set<MessageId> sourceFolderMessages) {
+        this(storeDeleter, targetFolderName, start, end, sourceFolderMessages, null, null);
+    }
+
+    /**
+     * Messages of the target folder with the provided UIDs, planned from the target index, are
+     * flagged as deleted without fetching their headers again. Their ids are resolved from the
+     * folder UIDs recorded by the target crawl.
+     */
+    public MessageDeleter(StoreDeleter storeDeleter, String targetFolderName,
+            FolderUids folderUids, long[] uids) {
+        this(storeDeleter, targetFolderName, 0, 0, null, folderUids, uids);
+    }
+
+    private MessageDeleter(StoreDeleter storeDeleter, String targetFolderName, int start, int end,
+            Set<MessageId> sourceFolderMessages, FolderUids folderUids, long[] plannedUids) {
         this.storeDeleter = storeDeleter;
         this.targetFolderName = targetFolderName;
         this.start = start;
         this.end = end;
-        this.expunge = expunge;
         this.sourceFolderMessages = sourceFolderMessages;
+        this.folderUids = folderUids;
+        this.plannedUids = plannedUids;
+        deletedIds = new ArrayList<>();
+        skipped = 0L;
     }
 
     public void run() {
         long deleted = 0L;
-        long skipped = 0L;
+        final FolderSessions targetFolderSessions = storeDeleter.getTargetFolderSessions();
+        Folder targetFolder = null;
+        boolean released = false;
         try {
-            final Folder targetFolder = storeDeleter.getTargetStore().getFolder(targetFolderName);
-            //Opens a new connection per Thread
-            targetFolder.open(Folder.READ_WRITE);
-            final Message[] targetMessages = targetFolder.getMessages(start, end);
-            targetFolder.fetch(targetMessages, MessageId.addHeaders(new FetchProfile()));
-            for (Message message : targetMessages) {
-                try {
-                    final MessageId id = new MessageId(message);
-                    if (!sourceFolderMessages.contains(id)) {
-                        message.setFlag(Flags.Flag.DELETED, true);
-                        deleted++;
-                    } else {
-                        skipped++;
-                    }
-                } catch (MessageId.MessageIdException ex) {
-                    //Usually messages that ran into this exception are spammy, so we skip them.
-                    skipped++;
+            //Opens a new connection per Thread, kept selected for the thread's next batch
+            targetFolder = targetFolderSessions.open(targetFolderName, Folder.READ_WRITE);
+            final Folder folder = targetFolder;
+            final long[] uids = plannedUids != null ? plannedUids : findDeletedUids(folder);
+            if (uids.length > 0) {
+                //Single round trip for the whole batch instead of a STORE per message
+                targetFolderSessions.getThrottle().execute(() -> {
+                    IMAPUtils.uidStoreDeleted((IMAPFolder) folder, uids);
+                    return uids;
+                });
+                if (plannedUids != null) {
+                    deletedIds.addAll(folderUids.getMessageIds(uids));
                 }
+                storeDeleter.flaggedDeleted(targetFolderName, uids, deletedIds);
+                deleted = uids.length;
             }
-            //Close folder and expunge flagged messages
-            //Expunge only if folder is read write
-            if (targetFolder.getMode() == Folder.READ_ONLY) {
-                targetFolder.close(false);
-            } else {
-                targetFolder.close(expunge);
-            }
+            targetFolderSessions.release(folder, plannedUids != null ? 0 : end - start + 1);
+            released = true;
         } catch (MessagingException messagingException) {
             Logger.getLogger(Index.class.getName()).log(Level.SEVERE, null, messagingException);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            //The connection may be lost, the next batch selects the folder again
+            if (targetFolder != null && !released) {
+                targetFolderSessions.discard(targetFolder);
+            }
         }
         storeDeleter.updatedMessagesDeletedCount(deleted);
         storeDeleter.updateMessagesSkippedCount(skipped);
     }
+
+    /**
+     * Fetches the headers of the messages in the range [start, end] and returns the UIDs of those
+     * that don't exist in the source folder.
+     */
+    private long[] findDeletedUids(Folder targetFolder)
+            throws MessagingException, InterruptedException {
+        final Message[] targetMessages = targetFolder.getMessages(start, end);
+        final FetchProfile fetchProfile = MessageId.addHeaders(new FetchProfile(),
+            storeDeleter.getTargetIdentityFetch());
+        fetchProfile.add(UIDFolder.FetchProfileItem.UID);
+        storeDeleter.getTargetFolderSessions().getThrottle().execute(() -> {
+            targetFolder.fetch(targetMessages, fetchProfile);
+            return targetMessages;
+        });
+        final long[] deletedUids = new long[targetMessages.length];
+        int deletedCount = 0;
+        for (Message message : targetMessages) {
+            try {
+                final MessageId id = new MessageId(message);
+                if (!sourceFolderMessages.contains(id)) {
+                    deletedUids[deletedCount++] = ((UIDFolder) targetFolder).getUID(message);
+                    deletedIds.add(id);
+                } else {
+                    skipped++;
+                }
+            } catch (MessageId.MessageIdException ex) {
+                //Usually messages that ran into this exception are spammy, so we skip them.
+                skipped++;
+            }
+        }
+        return Arrays.copyOf(deletedUids, deletedCount);
+    }
 }
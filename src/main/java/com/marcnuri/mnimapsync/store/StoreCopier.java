@@ -16,25 +16,51 @@
  */
 package com.marcnuri.mnimapsync.store;
 
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.firstAppendedMessage;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.getFolderStatus;
 import static com.marcnuri.mnimapsync.imap.IMAPUtils.sourceFolderNameToTarget;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.supportsMultiAppend;
 
-import com.marcnuri.mnimapsync.MNIMAPSync;
+import com.marcnuri.mnimapsync.BatchPlanner;
+import com.marcnuri.mnimapsync.BatchPlanner.Unit;
+import com.marcnuri.mnimapsync.WorkScheduler;
+import com.marcnuri.mnimapsync.WorkerOptions;
+import com.marcnuri.mnimapsync.WorkerThreads;
+import com.marcnuri.mnimapsync.imap.FolderSessions;
+import com.marcnuri.mnimapsync.imap.HostThrottle;
+import com.marcnuri.mnimapsync.imap.RetryPolicy;
+import com.marcnuri.mnimapsync.index.FolderState;
+import com.marcnuri.mnimapsync.index.IdentityFetch;
 import com.marcnuri.mnimapsync.index.Index;
+import com.marcnuri.mnimapsync.index.MessageId;
+import com.marcnuri.mnimapsync.store.CheckpointJournal.CompletedUnit;
 import com.sun.mail.imap.IMAPFolder;
 import com.sun.mail.imap.IMAPStore;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntToLongFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.mail.FetchProfile;
 import javax.mail.Folder;
+import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.ReadOnlyFolderException;
+import javax.mail.UIDFolder;
 
 /**
  *
@@ -42,30 +68,63 @@ import javax.mail.ReadOnlyFolderException;
  */
 public final class StoreCopier {
 
-    private final ExecutorService service;
+    private final WorkScheduler scheduler;
+    private final FolderSessions sourceFolderSessions;
+    //Append workers append on their own selected target folder, not on the store connection
+    private final FolderSessions targetFolderSessions;
+    private final ExecutorService appendService;
+    //Bounds the messages fetched from the source that are waiting to be appended to the target
+    private final Semaphore pendingAppends;
+    private final BatchPlanner batchPlanner;
     private final IMAPStore sourceStore;
     private final IMAPStore targetStore;
     private final Index sourceIndex;
     private final Index targetIndex;
+    private final IdentityFetch sourceIdentityFetch;
+    private final boolean serverSideCopy;
+    private final CheckpointJournal checkpointJournal;
+    private final RetryPolicy retryPolicy;
     private final AtomicInteger foldersCopiedCount;
     private final AtomicInteger foldersSkippedCount;
+    private final AtomicInteger foldersUnchangedCount;
     private final AtomicLong messagesCopiedCount;
     private final AtomicLong messagesSkippedCount;
-    //If no empty, we shouldn't allow deletion
     private final List<MessagingException> copyExceptions;
+    //If false, we shouldn't allow deletion
+    private final AtomicBoolean sourceIndexComplete;
+    private final Map<String, FolderState> copiedFolderStates;
+    private volatile Boolean targetMultiAppend;
 
     public StoreCopier(IMAPStore sourceStore, Index sourceIndex, IMAPStore targetStore,
-            Index targetIndex, int threads) {
+            Index targetIndex, CopyOptions copyOptions) {
+        final WorkerOptions source = copyOptions.getSource();
+        final WorkerOptions target = copyOptions.getTarget();
         this.sourceStore = sourceStore;
         this.sourceIndex = sourceIndex;
         this.targetStore = targetStore;
         this.targetIndex = targetIndex;
-        service = Executors.newFixedThreadPool(threads);
+        this.sourceIdentityFetch = source.getIdentityFetch();
+        this.serverSideCopy = copyOptions.isServerSideCopy();
+        this.checkpointJournal = copyOptions.getCheckpointJournal();
+        retryPolicy = RetryPolicy.DEFAULT;
+        appendService = WorkerThreads.newWorkerPool(target.getConnections(),
+            target.getThreadFactory());
+        pendingAppends = new Semaphore(target.getConnections() * 2);
+        batchPlanner = new BatchPlanner();
+        scheduler = new WorkScheduler(source.getConnections(), batchPlanner,
+            source.getThreadFactory());
+        sourceFolderSessions = new FolderSessions(sourceStore,
+            FolderSessions.MAX_SESSION_MESSAGES, source.getThrottle());
+        targetFolderSessions = new FolderSessions(targetStore,
+            FolderSessions.MAX_SESSION_MESSAGES, target.getThrottle());
         foldersCopiedCount = new AtomicInteger();
         foldersSkippedCount = new AtomicInteger();
+        foldersUnchangedCount = new AtomicInteger();
         messagesCopiedCount = new AtomicLong();
         messagesSkippedCount = new AtomicLong();
         this.copyExceptions = Collections.synchronizedList(new ArrayList<>());
+        sourceIndexComplete = new AtomicBoolean(true);
+        this.copiedFolderStates = new HashMap<>();
     }
 
     public final void copy() throws InterruptedException {
@@ -77,10 +136,26 @@ public final class StoreCopier {
             //Copy messages
             copySourceMessages((IMAPFolder) sourceStore.getDefaultFolder());
         } catch (MessagingException ex) {
+            //Folders that weren't processed are missing from the source index
+            copyExceptions.add(ex);
+            sourceIndexIncomplete();
             Logger.getLogger(StoreCopier.class.getName()).log(Level.SEVERE, null, ex);
         }
-        service.shutdown();
-        service.awaitTermination(1, TimeUnit.DAYS);
+        //Largest folders are copied first
+        scheduler.shutdown();
+        scheduler.awaitTermination(1, TimeUnit.DAYS);
+        sourceFolderSessions.closeAll();
+        //Message copiers wait for their appends, so no more appends should be pending
+        appendService.shutdown();
+        appendService.awaitTermination(1, TimeUnit.DAYS);
+        targetFolderSessions.closeAll();
+        //Source folder states are only updated if every message was successfully processed
+        if (!hasCopyException()) {
+            new HashMap<>(sourceIndex.getFolderStates()).keySet().stream()
+                .filter(folderName -> !copiedFolderStates.containsKey(folderName))
+                .forEach(sourceIndex::removeFolder);
+            copiedFolderStates.forEach(sourceIndex::setFolderState);
+        }
     }
 
     /**
@@ -103,6 +178,8 @@ public final class StoreCopier {
                 throw new MessagingException(String.format(
                         "Couldn't create folder: %s in target server.", sourceFolderName));
             }
+            //Index may be reused by subsequent copies
+            targetIndex.addFolder(targetFolderName);
             incrementFoldersCopiedCount();
         } else {
             incrementFoldersSkippedCount();
@@ -118,36 +195,36 @@ public final class StoreCopier {
     /**
      * Once the folder structure has been created it copies messages recursively from the root
      * folder.
+     *
+     * If the source index contains the {@link FolderState} of a folder from a previous run, only
+     * messages appended since then are processed. Folders whose STATUS reports no changes aren't
+     * even selected.
      */
-    private void copySourceMessages(IMAPFolder sourceFolder) throws MessagingException {
+    private void copySourceMessages(IMAPFolder sourceFolder)
+            throws MessagingException, InterruptedException {
         if (sourceFolder != null) {
             final String sourceFolderName = sourceFolder.getFullName();
             final String targetFolderName = sourceFolderNameToTarget(sourceFolderName, sourceIndex,
                 targetIndex);
-            if ((sourceFolder.getType() & Folder.HOLDS_MESSAGES) == Folder.HOLDS_MESSAGES) {
-                //Manage Servers with public/read only folders.
-                try {
-                    sourceFolder.open(Folder.READ_WRITE);
-                } catch (ReadOnlyFolderException ex) {
-                    sourceFolder.open(Folder.READ_ONLY);
-                }
-                if (sourceFolder.getMode() != Folder.READ_ONLY) {
-                    sourceFolder.expunge();
-                }
-                ///////////////////////
-                final int messageCount = sourceFolder.getMessageCount();
-                sourceFolder.close(false);
-                int pos = 1;
-                while (pos + MNIMAPSync.BATCH_SIZE <= messageCount) {
-                    //Copy messages
-                    service.execute(new MessageCopier(this, sourceFolderName, targetFolderName, pos,
-                            pos + MNIMAPSync.BATCH_SIZE, targetIndex.getFolderMessages(
-                                    targetFolderName)));
-                    pos = pos + MNIMAPSync.BATCH_SIZE;
-                }
-                service.execute(new MessageCopier(this, sourceFolderName, targetFolderName, pos,
-                        messageCount,
-                        targetIndex.getFolderMessages(targetFolderName)));
+            final FolderState previousState = sourceIndex.getFolderState(sourceFolderName);
+            final FolderState status = previousState == null ? null
+                : getFolderStatus(sourceFolder);
+            if (status != null && status.isUnchangedSince(previousState)) {
+                copiedFolderStates.put(sourceFolderName, status);
+                foldersUnchangedCount.getAndAdd(1);
+            } else if ((sourceFolder.getType() & Folder.HOLDS_MESSAGES) == Folder.HOLDS_MESSAGES) {
+                final List<Unit> units = retryPolicy.call(() -> {
+                    try {
+                        return planFolder(sourceFolder, previousState, status);
+                    } catch (MessagingException ex) {
+                        //A retry must select the folder again
+                        sourceFolderSessions.discard(sourceFolder);
+                        throw ex;
+                    }
+                });
+                //Copy messages
+                scheduler.schedule(units, (start, end) -> new MessageCopier(this, sourceFolderName,
+                    targetFolderName, start, end, targetIndex.getFolderMessages(targetFolderName)));
             }
             //Folder recursion. Get all children
             if ((sourceFolder.getType() & Folder.HOLDS_FOLDERS) == Folder.HOLDS_FOLDERS) {
@@ -158,12 +235,215 @@ public final class StoreCopier {
         }
     }
 
+    /**
+     * Selects the source folder to plan the units of the messages that need to be copied.
+     */
+    private List<Unit> planFolder(IMAPFolder sourceFolder, FolderState previousState,
+            FolderState status) throws MessagingException {
+        final String sourceFolderName = sourceFolder.getFullName();
+        //Manage Servers with public/read only folders.
+        //Selected within the connection limit of the workers
+        try {
+            sourceFolderSessions.open(sourceFolder, Folder.READ_WRITE);
+        } catch (ReadOnlyFolderException ex) {
+            sourceFolderSessions.open(sourceFolder, Folder.READ_ONLY);
+        }
+        if (sourceFolder.getMode() != Folder.READ_ONLY) {
+            sourceFolder.expunge();
+        }
+        ///////////////////////
+        final int messageCount = sourceFolder.getMessageCount();
+        final FolderState folderState = new FolderState(sourceFolder.getUIDValidity(),
+            sourceFolder.getUIDNext(), messageCount,
+            status == null ? 0L : status.getHighestModSeq());
+        int pos = firstAppendedMessage(sourceFolder, folderState, previousState);
+        if (pos == 0) {
+            sourceIndex.resetFolder(sourceFolderName);
+            pos = 1;
+        }
+        copiedFolderStates.put(sourceFolderName, folderState);
+        final List<CompletedUnit> completedUnits = checkpointJournal == null
+            ? Collections.emptyList()
+            : checkpointJournal.getCompletedUnits(sourceFolderName,
+                folderState.getUidValidity());
+        final List<Unit> units;
+        if (!completedUnits.isEmpty() && pos <= messageCount) {
+            units = planPendingUnits(sourceFolder, pos, messageCount, completedUnits);
+        } else if (serverSideCopy || pos > messageCount) {
+            //Message contents don't leave the server in server-side copies
+            units = batchPlanner.plan(pos, messageCount);
+        } else {
+            units = batchPlanner.plan(pos, messageCount,
+                messageCosts(fetchSizes(sourceFolder, pos, messageCount), pos));
+        }
+        sourceFolderSessions.close(sourceFolder, false);
+        return units;
+    }
+
+    /**
+     * Plans the messages in the range [start, end] of the open folder that weren't processed by
+     * any of the units completed in a previous run.
+     *
+     * Messages of the completed units are added to the source index as if they had been
+     * processed in this run.
+     */
+    private List<Unit> planPendingUnits(IMAPFolder sourceFolder, int start, int end,
+            List<CompletedUnit> completedUnits) throws MessagingException {
+        final Message[] messages = sourceFolder.getMessages(start, end);
+        final FetchProfile fetchProfile = new FetchProfile();
+        fetchProfile.add(UIDFolder.FetchProfileItem.UID);
+        if (!serverSideCopy) {
+            fetchProfile.add(FetchProfile.Item.SIZE);
+        }
+        sourceFolder.fetch(messages, fetchProfile);
+        final IntToLongFunction costs = serverSideCopy ? null : messageCosts(messages, start);
+        final List<Unit> result = new ArrayList<>();
+        long skipped = 0L;
+        int pendingStart = -1;
+        int completedUnit = 0;
+        //Messages and completed units are both sorted by UID
+        for (int it = 0; it < messages.length; it++) {
+            final long uid = sourceFolder.getUID(messages[it]);
+            while (completedUnit < completedUnits.size()
+                && completedUnits.get(completedUnit).getLastUid() < uid) {
+                completedUnit++;
+            }
+            final boolean completed = completedUnit < completedUnits.size()
+                && completedUnits.get(completedUnit).contains(uid);
+            if (completed) {
+                skipped++;
+                if (pendingStart >= 0) {
+                    result.addAll(planRange(pendingStart, start + it - 1, costs));
+                    pendingStart = -1;
+                }
+            } else if (pendingStart < 0) {
+                pendingStart = start + it;
+            }
+        }
+        if (pendingStart >= 0) {
+            result.addAll(planRange(pendingStart, end, costs));
+        }
+        if (sourceIndex != null) {
+            final Set<MessageId> sourceFolderMessages =
+                sourceIndex.getFolderMessages(sourceFolder.getFullName());
+            completedUnits.forEach(unit -> sourceFolderMessages.addAll(unit.getMessageIds()));
+        }
+        updateMessagesSkippedCount(skipped);
+        return result;
+    }
+
+    private List<Unit> planRange(int start, int end, IntToLongFunction costs) {
+        return serverSideCopy ? batchPlanner.plan(start, end)
+            : batchPlanner.plan(start, end, costs);
+    }
+
+    /**
+     * Fetches the RFC822.SIZE of the messages in the range [start, end] of the open folder.
+     */
+    private static Message[] fetchSizes(Folder folder, int start, int end)
+            throws MessagingException {
+        final Message[] messages = folder.getMessages(start, end);
+        final FetchProfile fetchProfile = new FetchProfile();
+        fetchProfile.add(FetchProfile.Item.SIZE);
+        folder.fetch(messages, fetchProfile);
+        return messages;
+    }
+
+    /**
+     * Estimates the cost of copying each of the messages (with a fetched size) starting at the
+     * provided message number.
+     */
+    private static IntToLongFunction messageCosts(Message[] messages, int start)
+            throws MessagingException {
+        final long[] costs = new long[messages.length];
+        for (int it = 0; it < messages.length; it++) {
+            costs[it] = BatchPlanner.MESSAGE_OVERHEAD + Math.max(messages[it].getSize(), 0);
+        }
+        return messageNumber -> costs[messageNumber - start];
+    }
+
+    /**
+     * Schedules an append to the target store in the append workers, blocks while the maximum
+     * number of pending appends is reached so that source fetches can't outpace target uploads.
+     *
+     * The returned future completes with the number of appended messages.
+     */
+    final CompletableFuture<Long> append(AppendTask appendTask) throws InterruptedException {
+        pendingAppends.acquire();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return appendTask.append();
+                } catch (MessagingException ex) {
+                    throw new CompletionException(ex);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new CompletionException(
+                        new MessagingException("Interrupted while appending messages", ex));
+                }
+            }, appendService).whenComplete((result, ex) -> pendingAppends.release());
+        } catch (RejectedExecutionException ex) {
+            pendingAppends.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Records messages appended to the target folder in the checkpoint journal (if enabled).
+     */
+    final void checkpointAppended(String targetFolderName, Collection<MessageId> messageIds) {
+        if (checkpointJournal != null) {
+            checkpointJournal.appended(targetFolderName, messageIds);
+        }
+    }
+
+    /**
+     * Records a completely processed source UID range in the checkpoint journal (if enabled).
+     */
+    final void checkpointUnit(String sourceFolderName, long uidValidity, long firstUid,
+            long lastUid, Collection<MessageId> messageIds) {
+        if (checkpointJournal != null) {
+            checkpointJournal.unitCompleted(sourceFolderName, uidValidity, firstUid, lastUid,
+                messageIds);
+        }
+    }
+
+    /**
+     * Whether the message was appended to the target folder in a previous run according to the
+     * checkpoint journal.
+     */
+    final boolean isCheckpointAppended(String targetFolderName, MessageId messageId) {
+        return checkpointJournal != null
+            && checkpointJournal.isAppended(targetFolderName, messageId);
+    }
+
+    final boolean isCheckpointEnabled() {
+        return checkpointJournal != null;
+    }
+
     public final boolean hasCopyException() {
         synchronized (copyExceptions) {
             return !copyExceptions.isEmpty();
         }
     }
 
+    /**
+     * Whether every source message was indexed. Messages that couldn't be appended to the target
+     * are still indexed, only errors while reading the source (once retries are exhausted)
+     * leave the index incomplete, in which case target messages can't be safely deleted.
+     */
+    public final boolean isSourceIndexComplete() {
+        return sourceIndexComplete.get();
+    }
+
+    final void sourceIndexIncomplete() {
+        sourceIndexComplete.set(false);
+    }
+
+    final RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
     private void incrementFoldersCopiedCount() {
         foldersCopiedCount.getAndAdd(1);
     }
@@ -188,6 +468,13 @@ public final class StoreCopier {
         return foldersSkippedCount.get();
     }
 
+    /**
+     * Number of folders that weren't processed because they didn't change since the previous run.
+     */
+    public final int getFoldersUnchangedCount() {
+        return foldersUnchangedCount.get();
+    }
+
     public final long getMessagesCopiedCount() {
         return messagesCopiedCount.get();
     }
@@ -204,12 +491,56 @@ public final class StoreCopier {
         return sourceIndex;
     }
 
+    final Index getTargetIndex() {
+        return targetIndex;
+    }
+
     final IMAPStore getTargetStore() {
         return targetStore;
     }
 
+    final FolderSessions getSourceFolderSessions() {
+        return sourceFolderSessions;
+    }
+
+    final HostThrottle getSourceThrottle() {
+        return sourceFolderSessions.getThrottle();
+    }
+
+    final FolderSessions getTargetFolderSessions() {
+        return targetFolderSessions;
+    }
+
+    final HostThrottle getTargetThrottle() {
+        return targetFolderSessions.getThrottle();
+    }
+
+    /**
+     * Whether the target server supports MULTIAPPEND, the capability is only checked once as it
+     * requires the store connection.
+     */
+    final boolean isTargetMultiAppend() throws MessagingException {
+        if (targetMultiAppend == null) {
+            targetMultiAppend = supportsMultiAppend(targetStore);
+        }
+        return targetMultiAppend;
+    }
+
+    final IdentityFetch getSourceIdentityFetch() {
+        return sourceIdentityFetch;
+    }
+
+    final boolean isServerSideCopy() {
+        return serverSideCopy;
+    }
+
     public final synchronized List<MessagingException> getCopyExceptions() {
         return copyExceptions;
     }
 
+    @FunctionalInterface
+    interface AppendTask {
+
+        long append() throws MessagingException, InterruptedException;
+    }
 }
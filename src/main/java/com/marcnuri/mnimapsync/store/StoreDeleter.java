@@ -18,18 +18,36 @@ package com.marcnuri.mnimapsync.store;
 
 import static com.marcnuri.mnimapsync.imap.IMAPUtils.targetToSourceFolderName;
 
-import com.marcnuri.mnimapsync.MNIMAPSync;
+import com.marcnuri.mnimapsync.BatchPlanner;
+import com.marcnuri.mnimapsync.WorkScheduler;
+import com.marcnuri.mnimapsync.WorkerOptions;
+import com.marcnuri.mnimapsync.imap.FolderSessions;
+import com.marcnuri.mnimapsync.imap.IMAPUtils;
+import com.marcnuri.mnimapsync.index.FolderUids;
+import com.marcnuri.mnimapsync.index.IdentityFetch;
 import com.marcnuri.mnimapsync.index.Index;
+import com.marcnuri.mnimapsync.index.MessageId;
+import com.sun.mail.imap.IMAPFolder;
 import com.sun.mail.imap.IMAPStore;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.LongStream;
 import javax.mail.Folder;
 import javax.mail.MessagingException;
+import javax.mail.UIDFolder;
 
 /**
  *
@@ -37,72 +55,180 @@ import javax.mail.MessagingException;
  */
 public class StoreDeleter {
 
-    private final ExecutorService service;
+    private final BatchPlanner batchPlanner;
+    private final WorkScheduler scheduler;
+    private final FolderSessions targetFolderSessions;
     private final IMAPStore targetStore;
     private final Index targetIndex;
     private final Index sourceIndex;
+    private final IdentityFetch targetIdentityFetch;
     private final AtomicInteger foldersDeletedCount;
     private final AtomicInteger foldersSkippedCount;
     private final AtomicLong messagesDeletedCount;
     private final AtomicLong messagesSkippedCount;
+    //UIDs flagged as deleted per target folder, pending to be expunged
+    private final Map<String, List<long[]>> flaggedUids;
 
+    /**
+     * @param workerOptions workers deleting messages from the target store.
+     */
     public StoreDeleter(Index sourceIndex, Index targetIndex, IMAPStore targetStore,
-        int threads) {
+        WorkerOptions workerOptions) {
 
-        service = Executors.newFixedThreadPool(threads);
+        batchPlanner = new BatchPlanner();
+        scheduler = new WorkScheduler(workerOptions.getConnections(), batchPlanner,
+            workerOptions.getThreadFactory());
+        targetFolderSessions = new FolderSessions(targetStore,
+            FolderSessions.MAX_SESSION_MESSAGES, workerOptions.getThrottle());
         this.targetStore = targetStore;
         this.sourceIndex = sourceIndex;
         this.targetIndex = targetIndex;
+        this.targetIdentityFetch = workerOptions.getIdentityFetch();
         this.foldersDeletedCount = new AtomicInteger();
         this.foldersSkippedCount = new AtomicInteger();
         this.messagesDeletedCount = new AtomicLong();
         this.messagesSkippedCount = new AtomicLong();
+        flaggedUids = new ConcurrentHashMap<>();
     }
 
     public final void delete() throws InterruptedException {
+        delete(targetFolderName -> true);
+    }
+
+    /**
+     * Deletes the target folders that don't exist in the source and the messages that don't exist
+     * in the source only from the target folders accepted by the filter.
+     */
+    public final void delete(Predicate<String> targetFolderFilter) throws InterruptedException {
         try {
             //Delete Folder Structure
             deleteTargetFolder(targetStore.getDefaultFolder());
             //Copy messages
-            deleteTargetMessages(targetStore.getDefaultFolder());
+            deleteTargetMessages(targetStore.getDefaultFolder(), targetFolderFilter);
         } catch (MessagingException ex) {
             Logger.getLogger(StoreDeleter.class.getName()).log(Level.SEVERE, null, ex);
         }
-        service.shutdown();
-        service.awaitTermination(1, TimeUnit.DAYS);
+        //Largest folders are processed first
+        scheduler.shutdown();
+        scheduler.awaitTermination(1, TimeUnit.DAYS);
+        targetFolderSessions.closeAll();
+    }
+
+    private void deleteTargetMessages(Folder targetFolder, Predicate<String> targetFolderFilter)
+            throws MessagingException {
+        final List<FolderDeletion> folderDeletions = new ArrayList<>();
+        listTargetMessages(targetFolder, targetFolderFilter, folderDeletions);
+        //Every folder is planned (in parallel) before any message is flagged as deleted
+        folderDeletions.parallelStream().forEach(this::plan);
+        for (FolderDeletion folderDeletion : folderDeletions) {
+            schedule(folderDeletion);
+        }
     }
 
-    private void deleteTargetMessages(Folder targetFolder) throws MessagingException {
+    private void listTargetMessages(Folder targetFolder, Predicate<String> targetFolderFilter,
+            List<FolderDeletion> folderDeletions) throws MessagingException {
         if (targetFolder != null) {
             final String targetFolderName = targetFolder.getFullName();
             final String sourceFolderName = targetToSourceFolderName(targetFolderName, sourceIndex, targetIndex);
-            if ((targetFolder.getType() & Folder.HOLDS_MESSAGES) == Folder.HOLDS_MESSAGES) {
-                targetFolder.open(Folder.READ_WRITE);
-                if (targetFolder.getMode() != Folder.READ_ONLY) {
-                    targetFolder.expunge();
+            if ((targetFolder.getType() & Folder.HOLDS_MESSAGES) == Folder.HOLDS_MESSAGES
+                    && targetFolderFilter.test(targetFolderName)) {
+                //Selected within the connection limit of the workers
+                targetFolderSessions.open(targetFolder, Folder.READ_WRITE);
+                final int messageCount;
+                final FolderUids folderUids;
+                try {
+                    if (targetFolder.getMode() != Folder.READ_ONLY) {
+                        targetFolder.expunge();
+                    }
+                    messageCount = targetFolder.getMessageCount();
+                    folderUids = getIndexedUids(targetFolder);
+                } catch (MessagingException ex) {
+                    targetFolderSessions.discard(targetFolder);
+                    throw ex;
                 }
-                final int messageCount = targetFolder.getMessageCount();
-                targetFolder.close(false);
-                int pos = 1;
-                while (pos + MNIMAPSync.BATCH_SIZE <= messageCount) {
-                    service.execute(
-                            new MessageDeleter(this, targetFolderName, pos,
-                                    pos + MNIMAPSync.BATCH_SIZE, false, sourceIndex.
-                                    getFolderMessages(sourceFolderName)));
-                    pos = pos + MNIMAPSync.BATCH_SIZE;
-                }
-                service.execute(new MessageDeleter(this, targetFolderName,
-                        pos, messageCount, true, sourceIndex.getFolderMessages(sourceFolderName)));
+                targetFolderSessions.close(targetFolder, false);
+                folderDeletions.add(new FolderDeletion(targetFolderName, sourceFolderName,
+                        messageCount, folderUids));
             }
             //Folder recursion. Get all children
             if ((targetFolder.getType() & Folder.HOLDS_FOLDERS) == Folder.HOLDS_FOLDERS) {
                 for (Folder child : targetFolder.list()) {
-                    deleteTargetMessages(child);
+                    listTargetMessages(child, targetFolderFilter, folderDeletions);
                 }
             }
         }
     }
 
+    /**
+     * Computes the UIDs of the messages to delete from the target index, no headers are fetched.
+     * Each target fingerprint is looked up in the source index, sorting both sides to merge them
+     * is slower (see FingerprintDifferenceBenchmark).
+     */
+    private void plan(FolderDeletion folderDeletion) {
+        if (folderDeletion.folderUids != null) {
+            folderDeletion.uids = folderDeletion.folderUids.missingFrom(
+                    sourceIndex.getFolderMessages(folderDeletion.sourceFolderName));
+            updateMessagesSkippedCount(
+                    folderDeletion.folderUids.size() - folderDeletion.uids.length);
+        }
+    }
+
+    private void schedule(FolderDeletion folderDeletion) {
+        final String targetFolderName = folderDeletion.targetFolderName;
+        final long[] uids = folderDeletion.uids;
+        final CompletableFuture<Void> scheduled;
+        if (uids != null) {
+            scheduled = scheduler.schedule(batchPlanner.plan(1, uids.length),
+                    (start, end) -> new MessageDeleter(this, targetFolderName,
+                            folderDeletion.folderUids, Arrays.copyOfRange(uids, start - 1, end)));
+        } else {
+            final String sourceFolderName = folderDeletion.sourceFolderName;
+            scheduled = scheduler.schedule(batchPlanner.plan(1, folderDeletion.messageCount),
+                    (start, end) -> new MessageDeleter(this, targetFolderName, start, end,
+                            sourceIndex.getFolderMessages(sourceFolderName)));
+        }
+        //Flagged messages are expunged once every batch of the folder has completed,
+        //expunging earlier would shift the sequence numbers of the pending batches
+        scheduled.whenComplete((result, ex) -> expungeFlagged(targetFolderName));
+    }
+
+    /**
+     * Returns the UIDs of the (open) folder recorded when the target store was crawled, null if
+     * they weren't recorded or are no longer valid.
+     */
+    private FolderUids getIndexedUids(Folder targetFolder) throws MessagingException {
+        final FolderUids folderUids = targetIndex.getFolderUids(targetFolder.getFullName());
+        if (folderUids != null && targetFolder instanceof UIDFolder
+                && ((UIDFolder) targetFolder).getUIDValidity() == folderUids.getUidValidity()) {
+            return folderUids;
+        }
+        return null;
+    }
+
+    /**
+     * Expunges the messages flagged as deleted in the target folder, if any.
+     */
+    private void expungeFlagged(String targetFolderName) {
+        final List<long[]> folderFlaggedUids = flaggedUids.remove(targetFolderName);
+        if (folderFlaggedUids == null) {
+            return;
+        }
+        final long[] uids = folderFlaggedUids.stream().flatMapToLong(LongStream::of).toArray();
+        try {
+            final Folder targetFolder = targetFolderSessions.open(targetFolderName,
+                Folder.READ_WRITE);
+            targetFolderSessions.getThrottle().execute(() -> {
+                IMAPUtils.uidExpunge((IMAPFolder) targetFolder, uids);
+                return uids;
+            });
+            targetFolderSessions.release(targetFolder, 0);
+        } catch (MessagingException ex) {
+            Logger.getLogger(StoreDeleter.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private void deleteTargetFolder(Folder folder) throws MessagingException {
         final String targetFolderName = folder.getFullName();
         final String sourceFolderName = targetToSourceFolderName(targetFolderName, sourceIndex, targetIndex);
@@ -110,6 +236,7 @@ public class StoreDeleter {
         if (!sourceIndex.containsFolder(sourceFolderName)) {
             //Delete recursively
             targetStore.getFolder(targetFolderName).delete(true);
+            removeIndexedFolders(targetFolderName);
             incrementFoldersDeletedCount();
         }
         //Folder recursion. Get all children
@@ -120,6 +247,18 @@ public class StoreDeleter {
         }
     }
 
+    /**
+     * Removes the deleted target folder and its subfolders from the target index, which may be
+     * reused by subsequent syncs.
+     */
+    private void removeIndexedFolders(String targetFolderName) {
+        final String subfolderPrefix = targetFolderName + targetIndex.getFolderSeparator();
+        new ArrayList<>(targetIndex.getFolders()).stream()
+            .filter(folderName -> folderName.equals(targetFolderName)
+                || folderName.startsWith(subfolderPrefix))
+            .forEach(targetIndex::removeFolder);
+    }
+
     private void incrementFoldersDeletedCount() {
         foldersDeletedCount.getAndAdd(1);
     }
@@ -132,6 +271,22 @@ public class StoreDeleter {
         messagesSkippedCount.getAndAdd(delta);
     }
 
+    /**
+     * Records the UIDs of the messages flagged as deleted in the target folder so that they're
+     * expunged once the folder is completely processed.
+     *
+     * The ids of the flagged messages are removed from the target index, which may be reused:
+     * the messages must be copied again if they reappear in the source. Messages whose flagging
+     * failed are kept in the index as they still exist in the target folder.
+     */
+    final void flaggedDeleted(String targetFolderName, long[] uids, Collection<MessageId> ids) {
+        flaggedUids.computeIfAbsent(targetFolderName,
+            folderName -> Collections.synchronizedList(new ArrayList<>())).add(uids);
+        //Fingerprint sets don't support removal through their iterators (removeAll)
+        final Set<MessageId> targetFolderMessages = targetIndex.getFolderMessages(targetFolderName);
+        ids.forEach(targetFolderMessages::remove);
+    }
+
     public final int getFoldersDeletedCount() {
         return foldersDeletedCount.get();
     }
@@ -151,4 +306,37 @@ public class StoreDeleter {
     final IMAPStore getTargetStore() {
         return targetStore;
     }
+
+    final FolderSessions getTargetFolderSessions() {
+        return targetFolderSessions;
+    }
+
+    final Index getTargetIndex() {
+        return targetIndex;
+    }
+
+    final IdentityFetch getTargetIdentityFetch() {
+        return targetIdentityFetch;
+    }
+
+    /**
+     * Deletion of the messages of a target folder. UIDs of the messages to delete are planned
+     * when the folder was indexed with its UIDs, otherwise the folder is crawled again.
+     */
+    private static final class FolderDeletion {
+
+        private final String targetFolderName;
+        private final String sourceFolderName;
+        private final int messageCount;
+        private final FolderUids folderUids;
+        private long[] uids;
+
+        private FolderDeletion(String targetFolderName, String sourceFolderName, int messageCount,
+                FolderUids folderUids) {
+            this.targetFolderName = targetFolderName;
+            this.sourceFolderName = sourceFolderName;
+            this.messageCount = messageCount;
+            this.folderUids = folderUids;
+        }
+    }
 }
@@ -0,0 +1,191 @@
+/*
+ * SyncPlan.java
+ *
+ * Created on 2026-10-18, 00:20
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.store;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Messages that a sync would copy and delete, per target folder, along with an estimate of how
+ * long the sync would take.
+ *
+ * The estimate is based on the throughput measured for each server while planning: the identity
+ * crawls of both stores (which a sync performs again) and a sample of the messages downloaded
+ * from the source.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+public final class SyncPlan {
+
+  private final Map<String, FolderPlan> folders;
+  private long crawlNanos;
+  private double sourceMessagesPerSecond;
+  private double targetMessagesPerSecond;
+  private double bytesPerSecond;
+
+  SyncPlan() {
+    folders = new TreeMap<>();
+  }
+
+  /**
+   * Plans of the target folders with messages to copy or delete, sorted by name.
+   */
+  public Collection<FolderPlan> getFolders() {
+    return Collections.unmodifiableCollection(folders.values());
+  }
+
+  synchronized FolderPlan folder(String targetFolderName) {
+    return folders.computeIfAbsent(targetFolderName, FolderPlan::new);
+  }
+
+  public long getMessagesToCopy() {
+    return folders.values().stream().mapToLong(FolderPlan::getMessagesToCopy).sum();
+  }
+
+  public long getBytesToCopy() {
+    return folders.values().stream().mapToLong(FolderPlan::getBytesToCopy).sum();
+  }
+
+  public long getMessagesToDelete() {
+    return folders.values().stream().mapToLong(FolderPlan::getMessagesToDelete).sum();
+  }
+
+  public long getBytesToDelete() {
+    return folders.values().stream().mapToLong(FolderPlan::getBytesToDelete).sum();
+  }
+
+  /**
+   * Wall time of the identity crawls of both stores, which run concurrently.
+   */
+  public long getCrawlNanos() {
+    return crawlNanos;
+  }
+
+  void setCrawlNanos(long crawlNanos) {
+    this.crawlNanos = crawlNanos;
+  }
+
+  /**
+   * Messages per second indexed by the identity crawl of the source store.
+   */
+  public double getSourceMessagesPerSecond() {
+    return sourceMessagesPerSecond;
+  }
+
+  void setSourceMessagesPerSecond(double sourceMessagesPerSecond) {
+    this.sourceMessagesPerSecond = sourceMessagesPerSecond;
+  }
+
+  /**
+   * Messages per second indexed by the identity crawl of the target store.
+   */
+  public double getTargetMessagesPerSecond() {
+    return targetMessagesPerSecond;
+  }
+
+  void setTargetMessagesPerSecond(double targetMessagesPerSecond) {
+    this.targetMessagesPerSecond = targetMessagesPerSecond;
+  }
+
+  /**
+   * Estimated rate at which message contents are transferred from the source to the target, 0 if
+   * it couldn't be measured.
+   */
+  public double getBytesPerSecond() {
+    return bytesPerSecond;
+  }
+
+  void setBytesPerSecond(double bytesPerSecond) {
+    this.bytesPerSecond = bytesPerSecond;
+  }
+
+  /**
+   * Estimated duration of the sync in seconds, -1 if it can't be estimated.
+   *
+   * Both stores are crawled again, message contents are transferred at the estimated byte rate
+   * and target messages are deleted at the rate the target store was crawled.
+   */
+  public long getEtaSeconds() {
+    double seconds = crawlNanos / (double) TimeUnit.SECONDS.toNanos(1L);
+    if (getBytesToCopy() > 0L) {
+      if (bytesPerSecond <= 0D) {
+        return -1L;
+      }
+      seconds += getBytesToCopy() / bytesPerSecond;
+    }
+    if (getMessagesToDelete() > 0L) {
+      if (targetMessagesPerSecond <= 0D) {
+        return -1L;
+      }
+      seconds += getMessagesToDelete() / targetMessagesPerSecond;
+    }
+    return (long) Math.ceil(seconds);
+  }
+
+  /**
+   * Messages to copy to and delete from a target folder.
+   */
+  public static final class FolderPlan {
+
+    private final String name;
+    private long messagesToCopy;
+    private long bytesToCopy;
+    private long messagesToDelete;
+    private long bytesToDelete;
+
+    private FolderPlan(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getMessagesToCopy() {
+      return messagesToCopy;
+    }
+
+    public long getBytesToCopy() {
+      return bytesToCopy;
+    }
+
+    public long getMessagesToDelete() {
+      return messagesToDelete;
+    }
+
+    public long getBytesToDelete() {
+      return bytesToDelete;
+    }
+
+    synchronized void toCopy(long messages, long bytes) {
+      messagesToCopy += messages;
+      bytesToCopy += bytes;
+    }
+
+    synchronized void toDelete(long messages, long bytes) {
+      messagesToDelete += messages;
+      bytesToDelete += bytes;
+    }
+  }
+}
@@ -0,0 +1,299 @@
+/*
+ * SyncPlanner.java
+ *
+ * Created on 2026-10-18, 00:35
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.store;
+
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.sourceFolderNameToTarget;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.targetToSourceFolderName;
+import static com.marcnuri.mnimapsync.index.StoreCrawler.awaitPopulateFromStore;
+import static com.marcnuri.mnimapsync.index.StoreCrawler.startPopulateFromStore;
+
+import com.marcnuri.mnimapsync.HostDefinition;
+import com.marcnuri.mnimapsync.WorkerOptions;
+import com.marcnuri.mnimapsync.imap.FolderSessions;
+import com.marcnuri.mnimapsync.imap.HostThrottle;
+import com.marcnuri.mnimapsync.index.FolderUids;
+import com.marcnuri.mnimapsync.index.Index;
+import com.marcnuri.mnimapsync.index.SortedFingerprints;
+import com.sun.mail.imap.IMAPMessage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import javax.mail.FetchProfile;
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Store;
+import javax.mail.UIDFolder;
+
+/**
+ * Plans a sync without modifying any of the stores.
+ *
+ * Both stores are crawled with the identity fetch of a sync, recording the UID of every message.
+ * The messages to copy and delete are then found by merging the fingerprints of each pair of
+ * folders, and only their RFC822.SIZE is fetched. Folders are only opened READ_ONLY and the
+ * contents downloaded to sample the transfer rate are fetched with BODY.PEEK.
+ *
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+public final class SyncPlanner {
+
+  private static final int SIZE_FETCH_BATCH = 1000;
+  //Message contents downloaded to measure the transfer rate of the source server
+  static final long SAMPLE_BYTES = 4L * 1024L * 1024L;
+
+  private final Store sourceStore;
+  private final Index sourceIndex;
+  private final HostDefinition sourceHost;
+  private final WorkerOptions sourceWorkers;
+  private final Store targetStore;
+  private final Index targetIndex;
+  private final HostDefinition targetHost;
+  private final WorkerOptions targetWorkers;
+  private final boolean delete;
+  private long sampledBytes;
+  private long sampledNanos;
+
+  /**
+   * @param sourceIndex empty index for the source messages.
+   * @param sourceWorkers workers crawling the source store.
+   * @param targetIndex empty index for the target messages.
+   * @param targetWorkers workers crawling the target store.
+   * @param delete if true, target messages that don't exist in the source are planned for
+   * deletion.
+   */
+  public SyncPlanner(Store sourceStore, Index sourceIndex, HostDefinition sourceHost,
+      WorkerOptions sourceWorkers, Store targetStore, Index targetIndex,
+      HostDefinition targetHost, WorkerOptions targetWorkers, boolean delete) {
+    this.sourceStore = sourceStore;
+    this.sourceIndex = sourceIndex;
+    this.sourceHost = sourceHost;
+    this.sourceWorkers = sourceWorkers;
+    this.targetStore = targetStore;
+    this.targetIndex = targetIndex;
+    this.targetHost = targetHost;
+    this.targetWorkers = targetWorkers;
+    this.delete = delete;
+  }
+
+  public SyncPlan plan() throws MessagingException, InterruptedException {
+    final SyncPlan syncPlan = new SyncPlan();
+    sourceIndex.setUidTracking(true);
+    targetIndex.setUidTracking(true);
+    final long start = System.nanoTime();
+    final long[] sourceCrawlNanos = new long[1];
+    final long[] targetCrawlNanos = new long[1];
+    final CompletableFuture<Index> sourceCrawl = startPopulateFromStore(sourceIndex, sourceStore,
+        sourceWorkers)
+        .whenComplete((index, ex) -> sourceCrawlNanos[0] = System.nanoTime() - start);
+    final CompletableFuture<Index> targetCrawl = startPopulateFromStore(targetIndex, targetStore,
+        targetWorkers)
+        .whenComplete((index, ex) -> targetCrawlNanos[0] = System.nanoTime() - start);
+    try {
+      awaitPopulateFromStore(sourceCrawl);
+    } finally {
+      awaitPopulateFromStore(targetCrawl);
+    }
+    syncPlan.setCrawlNanos(System.nanoTime() - start);
+    syncPlan.setSourceMessagesPerSecond(
+        perSecond(sourceIndex.getIndexedMessageCount(), sourceCrawlNanos[0]));
+    syncPlan.setTargetMessagesPerSecond(
+        perSecond(targetIndex.getIndexedMessageCount(), targetCrawlNanos[0]));
+    for (String sourceFolderName : sourceIndex.getFolders()) {
+      planCopy(syncPlan, sourceFolderName);
+    }
+    if (delete) {
+      for (String targetFolderName : targetIndex.getFolders()) {
+        planDelete(syncPlan, targetFolderName);
+      }
+    }
+    syncPlan.setBytesPerSecond(estimateBytesPerSecond());
+    return syncPlan;
+  }
+
+  private void planCopy(SyncPlan syncPlan, String sourceFolderName)
+      throws MessagingException, InterruptedException {
+
+    final FolderUids sourceUids = sourceIndex.getFolderUids(sourceFolderName);
+    if (sourceUids == null) {
+      return;
+    }
+    final String targetFolderName = sourceFolderNameToTarget(sourceFolderName, sourceIndex,
+        targetIndex);
+    final long[] uids = sourceUids.missingFrom(folderFingerprints(targetIndex, targetFolderName));
+    if (uids.length > 0) {
+      syncPlan.folder(targetFolderName).toCopy(uids.length,
+          fetchSizes(sourceStore, sourceFolderName, uids, sourceWorkers.getThrottle(), true));
+    }
+  }
+
+  private void planDelete(SyncPlan syncPlan, String targetFolderName)
+      throws MessagingException, InterruptedException {
+
+    final FolderUids targetUids = targetIndex.getFolderUids(targetFolderName);
+    if (targetUids == null) {
+      return;
+    }
+    final String sourceFolderName = targetToSourceFolderName(targetFolderName, sourceIndex,
+        targetIndex);
+    //Messages of target folders that no longer exist in the source are deleted with the folder
+    final long[] uids = targetUids.missingFrom(folderFingerprints(sourceIndex, sourceFolderName));
+    if (uids.length > 0) {
+      syncPlan.folder(targetFolderName).toDelete(uids.length,
+          fetchSizes(targetStore, targetFolderName, uids, targetWorkers.getThrottle(), false));
+    }
+  }
+
+  private static SortedFingerprints folderFingerprints(Index index, String folderName) {
+    return SortedFingerprints.of(index.containsFolder(folderName)
+        ? index.getFolderMessages(folderName) : Collections.emptySet());
+  }
+
+  /**
+   * Returns the total RFC822.SIZE of the messages with the provided UIDs. Optionally, the contents
+   * of the first messages are downloaded to sample the transfer rate of the server.
+   */
+  private long fetchSizes(Store store, String folderName, long[] uids, HostThrottle throttle,
+      boolean sample) throws MessagingException, InterruptedException {
+
+    //Selected within the connection limit of the host
+    final FolderSessions folderSessions = new FolderSessions(store, 0, throttle);
+    final Folder folder = folderSessions.open(folderName, Folder.READ_ONLY);
+    try {
+      long result = 0L;
+      final FetchProfile sizeProfile = new FetchProfile();
+      sizeProfile.add(FetchProfile.Item.SIZE);
+      for (int from = 0; from < uids.length; from += SIZE_FETCH_BATCH) {
+        final long[] batchUids = Arrays.copyOfRange(uids, from,
+            Math.min(from + SIZE_FETCH_BATCH, uids.length));
+        //Messages expunged since the crawl are returned as null
+        final Message[] messages = Arrays.stream(throttle.execute(
+            () -> ((UIDFolder) folder).getMessagesByUID(batchUids)))
+            .filter(message -> message != null).toArray(Message[]::new);
+        throttle.execute(() -> {
+          folder.fetch(messages, sizeProfile);
+          return messages;
+        });
+        for (Message message : messages) {
+          result += Math.max(message.getSize(), 0);
+        }
+        if (sample) {
+          sampleTransfer(messages, throttle);
+        }
+      }
+      return result;
+    } finally {
+      folderSessions.close(folder, false);
+    }
+  }
+
+  /**
+   * Downloads the contents of the messages until {@link #SAMPLE_BYTES} are sampled, the download
+   * of a message larger than the remaining sample is aborted as soon as the sample is complete.
+   */
+  private void sampleTransfer(Message[] messages, HostThrottle throttle)
+      throws MessagingException, InterruptedException {
+
+    for (Message message : messages) {
+      if (sampledBytes >= SAMPLE_BYTES) {
+        return;
+      }
+      ((IMAPMessage) message).setPeek(true);
+      final long start = System.nanoTime();
+      final long bytes = throttle.execute(() -> {
+        final CountingOutputStream contents =
+            new CountingOutputStream(SAMPLE_BYTES - sampledBytes);
+        try {
+          message.writeTo(contents);
+        } catch (SampleCompleteException ex) {
+          //Remaining contents aren't needed
+        } catch (IOException ex) {
+          throw new MessagingException("Couldn't download message contents", ex);
+        }
+        return contents.count;
+      });
+      sampledNanos += System.nanoTime() - start;
+      sampledBytes += bytes;
+    }
+  }
+
+  /**
+   * Sampled contents are downloaded sequentially while a sync downloads with every source
+   * connection. Rate limits of both hosts are honored.
+   */
+  private double estimateBytesPerSecond() {
+    double result = perSecond(sampledBytes, sampledNanos)
+        * Math.max(sourceWorkers.getConnections(), 1);
+    if (sourceHost.getBytesPerSecond() > 0L) {
+      result = Math.min(result, sourceHost.getBytesPerSecond());
+    }
+    if (targetHost.getBytesPerSecond() > 0L) {
+      result = Math.min(result, targetHost.getBytesPerSecond());
+    }
+    return result;
+  }
+
+  private static double perSecond(long count, long nanos) {
+    return nanos <= 0L ? 0D : count * (double) TimeUnit.SECONDS.toNanos(1L) / nanos;
+  }
+
+  /**
+   * Counts the written bytes, fails with a {@link SampleCompleteException} once the limit is
+   * reached.
+   */
+  private static final class CountingOutputStream extends OutputStream {
+
+    private final long limit;
+    private long count;
+
+    private CountingOutputStream(long limit) {
+      this.limit = limit;
+    }
+
+    @Override
+    public void write(int b) throws SampleCompleteException {
+      written(1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws SampleCompleteException {
+      written(len);
+    }
+
+    private void written(int len) throws SampleCompleteException {
+      count += Math.min(len, limit - count);
+      if (count >= limit) {
+        throw new SampleCompleteException();
+      }
+    }
+  }
+
+  private static final class SampleCompleteException extends IOException {
+
+    private static final long serialVersionUID = 3245234962125234452L;
+
+    private SampleCompleteException() {
+      super("Sample complete");
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * BatchPlannerTest.java
+ *
+ * Created on 2026-10-17, 15:45
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+
+import com.marcnuri.mnimapsync.BatchPlanner.Unit;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+class BatchPlannerTest {
+
+  @Test
+  void plan_emptyRange_shouldReturnNoUnits() {
+    // Given
+    final BatchPlanner batchPlanner = new BatchPlanner();
+    // When
+    final List<Unit> result = batchPlanner.plan(1, 0);
+    // Then
+    assertThat(result, empty());
+  }
+
+  @Test
+  void plan_sameCostMessages_shouldSplitInInitialBatchSize() {
+    // Given
+    final BatchPlanner batchPlanner = new BatchPlanner();
+    // When
+    final List<Unit> result = batchPlanner.plan(1, 450);
+    // Then
+    assertThat(result, hasSize(3));
+    assertThat(result.get(0).getStart(), equalTo(1));
+    assertThat(result.get(0).getEnd(), equalTo(MNIMAPSync.BATCH_SIZE));
+    assertThat(result.get(1).getStart(), equalTo(MNIMAPSync.BATCH_SIZE + 1));
+    assertThat(result.get(2).getEnd(), equalTo(450));
+  }
+
+  @Test
+  void plan_largeMessages_shouldBeIsolatedInTheirOwnUnits() {
+    // Given
+    final BatchPlanner batchPlanner = new BatchPlanner();
+    final long targetCost = batchPlanner.getTargetUnitCost();
+    // When
+    final List<Unit> result = batchPlanner.plan(1, 10,
+        messageNumber -> messageNumber == 5 ? targetCost * 2 : BatchPlanner.MESSAGE_OVERHEAD);
+    // Then
+    assertThat(result, hasSize(2));
+    assertThat(result.get(0).getStart(), equalTo(1));
+    assertThat(result.get(0).getEnd(), equalTo(5));
+    assertThat(result.get(1).getStart(), equalTo(6));
+    assertThat(result.get(1).getEnd(), equalTo(10));
+  }
+
+  @Test
+  void plan_tinyMessages_shouldNotExceedMaxUnitMessages() {
+    // Given
+    final BatchPlanner batchPlanner = new BatchPlanner();
+    // When
+    final List<Unit> result = batchPlanner.plan(1, BatchPlanner.MAX_UNIT_MESSAGES + 1,
+        messageNumber -> 0L);
+    // Then
+    assertThat(result, hasSize(2));
+    assertThat(result.get(0).getEnd(), equalTo(BatchPlanner.MAX_UNIT_MESSAGES));
+  }
+
+  @Test
+  void record_fasterThanExpected_shouldIncreaseTargetUnitCost() {
+    // Given
+    final BatchPlanner batchPlanner = new BatchPlanner();
+    final long initialTargetCost = batchPlanner.getTargetUnitCost();
+    // When
+    batchPlanner.record(initialTargetCost, TimeUnit.SECONDS.toNanos(1L));
+    // Then
+    assertThat(batchPlanner.getTargetUnitCost(), greaterThan(initialTargetCost));
+  }
+
+  @Test
+  void timed_completedTask_shouldRunTaskAndRecordThroughput() {
+    // Given
+    final BatchPlanner batchPlanner = new BatchPlanner();
+    final long initialTargetCost = batchPlanner.getTargetUnitCost();
+    final boolean[] ran = new boolean[1];
+    // When
+    batchPlanner.timed(new Unit(1, 1, initialTargetCost * 100), () -> ran[0] = true).run();
+    // Then
+    assertThat(ran[0], equalTo(true));
+    assertThat(batchPlanner.getTargetUnitCost(), greaterThan(initialTargetCost));
+  }
+}
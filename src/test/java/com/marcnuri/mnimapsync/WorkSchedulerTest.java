@@ -0,0 +1,159 @@
+/*
+ * WorkSchedulerTest.java
+ *
+ * Created on 2026-10-17, 16:55
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.marcnuri.mnimapsync.BatchPlanner.Unit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+class WorkSchedulerTest {
+
+  @Test
+  void schedule_busyWorkers_shouldProcessLargestQueuedFolderFirst() throws Exception {
+    // Given
+    final List<String> processed = Collections.synchronizedList(new ArrayList<>());
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch busy = new CountDownLatch(1);
+    final WorkScheduler workScheduler = new WorkScheduler(1, new BatchPlanner());
+    workScheduler.schedule(Collections.singletonList(new Unit(1, 1, 1L)),
+        (start, end) -> () -> {
+          started.countDown();
+          awaitQuietly(busy);
+          processed.add("first");
+        });
+    assertThat(started.await(10, TimeUnit.SECONDS), equalTo(true));
+    workScheduler.schedule(Collections.singletonList(new Unit(1, 1, 10L)),
+        (start, end) -> () -> processed.add("small"));
+    workScheduler.schedule(Arrays.asList(new Unit(1, 1, 100L), new Unit(2, 2, 100L)),
+        (start, end) -> () -> processed.add("large-" + start));
+    workScheduler.schedule(Collections.singletonList(new Unit(1, 1, 50L)),
+        (start, end) -> () -> processed.add("medium"));
+    // When
+    busy.countDown();
+    workScheduler.shutdown();
+    // Then
+    assertThat(workScheduler.awaitTermination(10, TimeUnit.SECONDS), equalTo(true));
+    assertThat(processed, contains("first", "large-1", "large-2", "medium", "small"));
+  }
+
+  @Test
+  void schedule_notShutDown_shouldProcessUnits() throws Exception {
+    // Given
+    final WorkScheduler workScheduler = new WorkScheduler(1, new BatchPlanner());
+    // When
+    final CompletableFuture<Void> result = workScheduler.schedule(
+        Collections.singletonList(new Unit(1, 1, 1L)), (start, end) -> () -> {});
+    // Then
+    result.get(10, TimeUnit.SECONDS);
+    assertThat(workScheduler.awaitTermination(10, TimeUnit.MILLISECONDS), equalTo(false));
+    workScheduler.shutdown();
+    assertThat(workScheduler.awaitTermination(10, TimeUnit.SECONDS), equalTo(true));
+  }
+
+  @Test
+  void schedule_idleWorkers_shouldSplitUnitsAndProcessEveryMessageOnce() throws Exception {
+    // Given
+    final List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+    final List<int[]> ranges = Collections.synchronizedList(new ArrayList<>());
+    final WorkScheduler workScheduler = new WorkScheduler(2, new BatchPlanner());
+    final CompletableFuture<Void> result = workScheduler.schedule(
+        Collections.singletonList(new Unit(1, 100, 100L)), (start, end) -> () -> {
+          ranges.add(new int[]{start, end});
+          for (int it = start; it <= end; it++) {
+            processed.add(it);
+          }
+        });
+    // When
+    workScheduler.shutdown();
+    // Then
+    result.get(10, TimeUnit.SECONDS);
+    assertThat(ranges.size(), greaterThan(1));
+    Collections.sort(processed);
+    assertThat(processed.size(), equalTo(100));
+    for (int it = 0; it < 100; it++) {
+      assertThat(processed.get(it), equalTo(it + 1));
+    }
+  }
+
+  @Test
+  void schedule_noUnits_shouldReturnCompletedFuture() {
+    // Given
+    final WorkScheduler workScheduler = new WorkScheduler(1, new BatchPlanner());
+    // When
+    final CompletableFuture<Void> result = workScheduler.schedule(
+        Collections.emptyList(), (start, end) -> () -> {});
+    // Then
+    assertThat(result.isDone(), equalTo(true));
+    workScheduler.shutdown();
+  }
+
+  @Test
+  void schedule_taskFails_shouldCompleteExceptionally() throws Exception {
+    // Given
+    final WorkScheduler workScheduler = new WorkScheduler(1, new BatchPlanner());
+    final CompletableFuture<Void> result = workScheduler.schedule(
+        Collections.singletonList(new Unit(1, 1, 1L)), (start, end) -> () -> {
+          throw new IllegalStateException("Failed");
+        });
+    // When
+    workScheduler.shutdown();
+    // Then
+    assertThat(workScheduler.awaitTermination(10, TimeUnit.SECONDS), equalTo(true));
+    final ExecutionException exception = assertThrows(ExecutionException.class, result::get);
+    assertThat(exception.getCause().getMessage(), equalTo("Failed"));
+  }
+
+  @Test
+  void schedule_afterShutdown_shouldThrowException() {
+    // Given
+    final WorkScheduler workScheduler = new WorkScheduler(1, new BatchPlanner());
+    workScheduler.shutdown();
+    // When
+    final IllegalStateException result = assertThrows(IllegalStateException.class,
+        () -> workScheduler.schedule(Collections.emptyList(), (start, end) -> () -> {}));
+    // Then
+    assertThat(result.getMessage(), equalTo("Scheduler is already shut down"));
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * WorkerThreadsTest.java
+ *
+ * Created on 2026-10-17, 18:40
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+class WorkerThreadsTest {
+
+  @Test
+  void threadFactory_platformThreads_shouldCreatePoolThreads() {
+    // Given
+    final ThreadFactory threadFactory = WorkerThreads.threadFactory(false);
+    // When
+    final Thread result = threadFactory.newThread(() -> {});
+    // Then
+    assertThat(result.getName(), startsWith("pool-"));
+  }
+
+  @Test
+  void threadFactory_virtualThreads_shouldCreateVirtualThreadsIfSupported() throws Exception {
+    // Given
+    final ThreadFactory threadFactory = WorkerThreads.threadFactory(true);
+    final boolean[] ran = new boolean[1];
+    // When
+    final Thread result = threadFactory.newThread(() -> ran[0] = true);
+    result.start();
+    result.join();
+    // Then
+    assertThat(ran[0], equalTo(true));
+    assertThat(result.getName(), startsWith(
+        WorkerThreads.isVirtualThreadSupported() ? "mnimapsync-worker-" : "pool-"));
+  }
+
+  @Test
+  void newWorkerPool_platformThreads_shouldBeBoundedToThreads() {
+    // When
+    final ExecutorService result = WorkerThreads.newWorkerPool(3,
+        WorkerThreads.threadFactory(false));
+    // Then
+    assertThat(((ThreadPoolExecutor) result).getMaximumPoolSize(), equalTo(3));
+    result.shutdown();
+  }
+
+  @Test
+  void newThreadPerTaskExecutor_moreTasksThanThreads_shouldRunTasksConcurrently()
+      throws Exception {
+    // Given
+    final ExecutorService executor = WorkerThreads.newThreadPerTaskExecutor(
+        WorkerThreads.threadFactory(false));
+    final CountDownLatch running = new CountDownLatch(3);
+    // When
+    for (int it = 0; it < 3; it++) {
+      executor.execute(() -> {
+        running.countDown();
+        try {
+          running.await();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      });
+    }
+    // Then
+    assertThat(running.await(5L, TimeUnit.SECONDS), equalTo(true));
+    executor.shutdown();
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * BatchFileParserTest.java
+ *
+ * Created on 2026-10-17, 20:05
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.batch;
+
+import static com.marcnuri.mnimapsync.batch.BatchFileParser.parseBatch;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.marcnuri.mnimapsync.SyncOptions;
+import com.marcnuri.mnimapsync.index.IdentityFetch;
+import java.io.File;
+import java.io.StringReader;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+class BatchFileParserTest {
+
+  @Test
+  void parseBatch_validAccounts_shouldReturnOptionsForEachAccount() throws Exception {
+    // Given
+    final SyncOptions batchOptions = new SyncOptions();
+    batchOptions.setThreads(3);
+    batchOptions.setDelete(true);
+    batchOptions.setStateDirectory(new File("/tmp/state"));
+    batchOptions.getSourceHost().setIdentityFetch(IdentityFetch.HEADER_FIELDS);
+    final String batch = "# host1,port1,user1,password1,ssl1,host2,port2,user2,password2,ssl2\n"
+        + "\n"
+        + "imap.source.com,993,john,S3cret,true,imap.target.com,143,john.doe,s3cr3t,false\n"
+        + "imap.source.com,993,jane,\"pa,ss\"\"word\",true,imap.target.com,993,jane,p,true\n";
+    // When
+    final List<SyncOptions> result = parseBatch(new StringReader(batch), batchOptions);
+    // Then
+    assertThat(result, hasSize(2));
+    assertThat(result.get(0).getSourceHost().getHost(), is("imap.source.com"));
+    assertThat(result.get(0).getSourceHost().getPort(), is(993));
+    assertThat(result.get(0).getSourceHost().getUser(), is("john"));
+    assertThat(result.get(0).getSourceHost().getPassword(), is("S3cret"));
+    assertThat(result.get(0).getSourceHost().isSsl(), is(true));
+    assertThat(result.get(0).getSourceHost().getIdentityFetch(), is(IdentityFetch.HEADER_FIELDS));
+    assertThat(result.get(0).getTargetHost().getHost(), is("imap.target.com"));
+    assertThat(result.get(0).getTargetHost().getPort(), is(143));
+    assertThat(result.get(0).getTargetHost().getUser(), is("john.doe"));
+    assertThat(result.get(0).getTargetHost().isSsl(), is(false));
+    assertThat(result.get(0).getThreads(), is(3));
+    assertThat(result.get(0).getDelete(), is(true));
+    assertThat(result.get(0).getStateDirectory(),
+        is(new File("/tmp/state", "john@imap.source.com")));
+    assertThat(result.get(1).getSourceHost().getPassword(), is("pa,ss\"word"));
+  }
+
+  @Test
+  void parseBatch_missingColumns_shouldThrowException() {
+    // Given
+    final String batch = "imap.source.com,993,john,S3cret,true\n";
+    // When
+    final IllegalArgumentException result = assertThrows(IllegalArgumentException.class,
+        () -> parseBatch(new StringReader(batch), new SyncOptions()));
+    // Then
+    assertThat(result.getMessage(),
+        is("Invalid batch file line 1: expected 10 columns but found 5"));
+  }
+
+  @Test
+  void parseBatch_invalidPort_shouldThrowException() {
+    // Given
+    final String batch = "\nimap.source.com,imap,john,S3cret,true,imap.target.com,143,j,s,false";
+    // When
+    final IllegalArgumentException result = assertThrows(IllegalArgumentException.class,
+        () -> parseBatch(new StringReader(batch), new SyncOptions()));
+    // Then
+    assertThat(result.getMessage(), is("Invalid batch file line 2: port should be an integer"));
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * ConnectionBudgetTest.java
+ *
+ * Created on 2026-10-17, 20:15
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.batch;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.marcnuri.mnimapsync.SyncOptions;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+class ConnectionBudgetTest {
+
+  @Test
+  void validate_demandExceedsGlobalLimit_shouldThrowException() {
+    // Given
+    final ConnectionBudget connectionBudget = new ConnectionBudget(10, 0);
+    final Map<String, Integer> demand = new HashMap<>();
+    demand.put("source", 6);
+    demand.put("target", 6);
+    // When
+    final IllegalArgumentException result = assertThrows(IllegalArgumentException.class,
+        () -> connectionBudget.validate("account", demand));
+    // Then
+    assertThat(result.getMessage(),
+        is("Account account requires 12 connections, exceeding --max-connections 10"));
+  }
+
+  @Test
+  void validate_demandExceedsHostLimit_shouldThrowException() {
+    // Given
+    final ConnectionBudget connectionBudget = new ConnectionBudget(0, 5);
+    // When
+    final IllegalArgumentException result = assertThrows(IllegalArgumentException.class,
+        () -> connectionBudget.validate("account", Collections.singletonMap("source", 6)));
+    // Then
+    assertThat(result.getMessage(), is("Account account requires 6 connections to source,"
+        + " exceeding --max-host-connections 5"));
+  }
+
+  @Test
+  void acquire_hostLimitReached_shouldWaitUntilReleased() throws Exception {
+    // Given
+    final ConnectionBudget connectionBudget = new ConnectionBudget(0, 6);
+    final Map<String, Integer> demand = Collections.singletonMap("source", 4);
+    connectionBudget.acquire(demand);
+    final CountDownLatch acquired = new CountDownLatch(1);
+    final Thread otherAccount = new Thread(() -> {
+      try {
+        connectionBudget.acquire(demand);
+        acquired.countDown();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    otherAccount.start();
+    // When
+    final boolean acquiredBeforeRelease = acquired.await(200, TimeUnit.MILLISECONDS);
+    connectionBudget.release(demand);
+    // Then
+    assertThat(acquiredBeforeRelease, is(false));
+    assertThat(acquired.await(10, TimeUnit.SECONDS), is(true));
+    assertThat(connectionBudget.getConnections(), is(4));
+  }
+
+  @Test
+  void connectionDemand_sameSourceAndTargetHost_shouldAddConnections() {
+    // Given
+    final SyncOptions account = new SyncOptions();
+    account.getSourceHost().setHost("IMAP.server.com");
+    account.getTargetHost().setHost("imap.server.com");
+    account.setSourceConnections(3);
+    account.setTargetConnections(2);
+    // When
+    final Map<String, Integer> result = BatchSync.connectionDemand(account);
+    // Then
+    assertThat(result, is(Collections.singletonMap("imap.server.com", 7)));
+  }
+}
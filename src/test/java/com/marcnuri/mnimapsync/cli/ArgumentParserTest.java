@@ -27,6 +27,8 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import com.marcnuri.mnimapsync.SyncOptions;
+import com.marcnuri.mnimapsync.index.IdentityFetch;
+import java.io.File;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -86,6 +88,112 @@ class ArgumentParserTest {
     assertThat(exception.getMessage(), is("--port1 value should be an integer"));
   }
 
+  @Test
+  void parseCliArguments_mappedIndexWithoutStateDir_shouldThrowException() {
+    final IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+      // Given
+      final String[] arguments = new String[]{"--mapped-index"};
+      // When
+      parseCliArguments(arguments);
+      // Then
+      fail();
+    });
+    assertThat(exception.getMessage(), is("--mapped-index requires --state-dir"));
+  }
+
+  @Test
+  void parseCliArguments_dryRunWithBatch_shouldThrowException() {
+    final IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+      // Given
+      final String[] arguments = new String[]{"--dry-run", "--batch", "/tmp/accounts.csv"};
+      // When
+      parseCliArguments(arguments);
+      // Then
+      fail();
+    });
+    assertThat(exception.getMessage(), is("--dry-run can't be combined with --batch"));
+  }
+
+  @Test
+  void parseCliArguments_dryRun_shouldReturnDryRunSyncOptions() {
+    // Given
+    final String[] arguments = new String[]{
+        "--host1", "mail.source.com",
+        "--host2", "mail.target.com",
+        "--dry-run"
+    };
+    // When
+    final SyncOptions result = parseCliArguments(arguments);
+    // Then
+    assertThat(result.isDryRun(), is(true));
+    assertThat(result.getDelete(), is(false));
+  }
+
+  @Test
+  void parseCliArguments_daemonWithBatch_shouldThrowException() {
+    final IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+      // Given
+      final String[] arguments = new String[]{"--daemon", "--batch", "/tmp/accounts.csv"};
+      // When
+      parseCliArguments(arguments);
+      // Then
+      fail();
+    });
+    assertThat(exception.getMessage(), is("--daemon can't be combined with --batch"));
+  }
+
+  @Test
+  void parseCliArguments_daemonWithDryRun_shouldThrowException() {
+    final IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+      // Given
+      final String[] arguments = new String[]{"--daemon", "--dry-run"};
+      // When
+      parseCliArguments(arguments);
+      // Then
+      fail();
+    });
+    assertThat(exception.getMessage(), is("--daemon can't be combined with --dry-run"));
+  }
+
+  @Test
+  void parseCliArguments_zeroPollInterval_shouldThrowException() {
+    final IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+      // Given
+      final String[] arguments = new String[]{"--daemon", "--poll-interval", "0"};
+      // When
+      parseCliArguments(arguments);
+      // Then
+      fail();
+    });
+    assertThat(exception.getMessage(), is("--poll-interval should be a positive integer"));
+  }
+
+  @Test
+  void parseCliArguments_daemon_shouldReturnDaemonSyncOptions() {
+    // Given
+    final String[] arguments = new String[]{
+        "--host1", "mail.source.com",
+        "--host2", "mail.target.com",
+        "--daemon",
+        "--poll-interval", "30"
+    };
+    // When
+    final SyncOptions result = parseCliArguments(arguments);
+    // Then
+    assertThat(result.isDaemon(), is(true));
+    assertThat(result.getPollInterval(), is(30));
+  }
+
+  @Test
+  void parseCliArguments_noPollInterval_shouldUseDefault() {
+    // Given
+    final String[] arguments = new String[]{"--daemon"};
+    // When
+    final SyncOptions result = parseCliArguments(arguments);
+    // Then
+    assertThat(result.getPollInterval(), is(60));
+  }
+
   @Test
   void parseCliArguments_validArgumentss_shouldReturnValidSyncOptions() {
     // Given
@@ -96,11 +204,25 @@ class ArgumentParserTest {
         "--user1", "source-user",
         "--password1", "S3cret",
         "--ssl1",
+        "--header-fields1",
+        "--commands-per-second1", "10",
+        "--bytes-per-second2", "1048576",
         "--user2", "target-user",
         "--ssl2",
         "--port2", "313373",
         "--password2", "s3cr3t",
         "--threads", "9",
+        "--source-connections", "20",
+        "--state-dir", "/tmp/mnimapsync",
+        "--fingerprint-index",
+        "--mapped-index",
+        "--incremental",
+        "--server-side-copy",
+        "--virtual-threads",
+        "--adaptive-concurrency",
+        "--batch", "/tmp/accounts.csv",
+        "--max-connections", "100",
+        "--max-host-connections", "30",
         "--delete"
     };
     // When
@@ -111,12 +233,67 @@ class ArgumentParserTest {
     assertThat(result.getSourceHost().getUser(), is("source-user"));
     assertThat(result.getSourceHost().getPassword(), is("S3cret"));
     assertThat(result.getSourceHost().isSsl(), is(true));
+    assertThat(result.getSourceHost().getIdentityFetch(), is(IdentityFetch.HEADER_FIELDS));
+    assertThat(result.getSourceHost().getCommandsPerSecond(), is(10));
+    assertThat(result.getSourceHost().getBytesPerSecond(), is(0L));
     assertThat(result.getTargetHost().getHost(), is("mail.target.com"));
     assertThat(result.getTargetHost().getPort(), is(313373));
     assertThat(result.getTargetHost().getUser(), is("target-user"));
     assertThat(result.getTargetHost().getPassword(), is("s3cr3t"));
     assertThat(result.getTargetHost().isSsl(), is(true));
+    assertThat(result.getTargetHost().getIdentityFetch(), is(IdentityFetch.HEADERS));
+    assertThat(result.getTargetHost().getCommandsPerSecond(), is(0));
+    assertThat(result.getTargetHost().getBytesPerSecond(), is(1048576L));
     assertThat(result.getThreads(), is(9));
+    assertThat(result.getSourceConnections(), is(20));
+    assertThat(result.getTargetConnections(), is(9));
+    assertThat(result.getStateDirectory(), is(new File("/tmp/mnimapsync")));
+    assertThat(result.isFingerprintIndex(), is(true));
+    assertThat(result.isMappedIndex(), is(true));
+    assertThat(result.isIncremental(), is(true));
+    assertThat(result.isServerSideCopy(), is(true));
+    assertThat(result.isVirtualThreads(), is(true));
+    assertThat(result.isAdaptiveConcurrency(), is(true));
+    assertThat(result.getBatchFile(), is(new File("/tmp/accounts.csv")));
+    assertThat(result.getMaxConnections(), is(100));
+    assertThat(result.getMaxHostConnections(), is(30));
     assertThat(result.getDelete(), is(true));
   }
+
+  @Test
+  void parseCliArguments_sameSourceAndTargetAccount_shouldEnableServerSideCopy() {
+    // Given
+    final String[] arguments = new String[]{
+        "--host1", "mail.server.com", "--port1", "993", "--user1", "user",
+        "--host2", "MAIL.server.com", "--port2", "993", "--user2", "user"
+    };
+    // When
+    final SyncOptions result = parseCliArguments(arguments);
+    // Then
+    assertThat(result.isServerSideCopy(), is(true));
+  }
+
+  @Test
+  void parseCliArguments_differentTargetAccount_shouldNotEnableServerSideCopy() {
+    // Given
+    final String[] arguments = new String[]{
+        "--host1", "mail.server.com", "--port1", "993", "--user1", "user",
+        "--host2", "mail.server.com", "--port2", "993", "--user2", "other-user"
+    };
+    // When
+    final SyncOptions result = parseCliArguments(arguments);
+    // Then
+    assertThat(result.isServerSideCopy(), is(false));
+  }
+
+  @Test
+  void parseCliArguments_connectionsWithoutThreads_shouldUseDefaultThreadsForOtherServer() {
+    // Given
+    final String[] arguments = new String[]{"--target-connections", "2"};
+    // When
+    final SyncOptions result = parseCliArguments(arguments);
+    // Then
+    assertThat(result.getSourceConnections(), is(result.getThreads()));
+    assertThat(result.getTargetConnections(), is(2));
+  }
 }
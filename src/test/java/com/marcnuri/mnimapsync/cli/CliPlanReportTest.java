@@ -0,0 +1,106 @@
+/*
+ * CliPlanReportTest.java
+ *
+ * Created on 2026-10-18, 01:10
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.cli;
+
+import static com.marcnuri.mnimapsync.cli.CliPlanReport.getPlanReportAsText;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import com.marcnuri.mnimapsync.store.SyncPlan;
+import com.marcnuri.mnimapsync.store.SyncPlan.FolderPlan;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+class CliPlanReportTest {
+
+  @Test
+  void getPlanReportAsText_emptyPlan_shouldPrintEmptyReport() throws Exception {
+    // Given
+    final SyncPlan syncPlan = mock(SyncPlan.class);
+    doReturn(Collections.emptyList()).when(syncPlan).getFolders();
+    // When
+    final String result = getPlanReportAsText(syncPlan);
+    // Then
+    assertThat(result,
+        is("================================================================================\n"
+            + "Sync Plan (dry run).\n"
+            + "================================================================================\n"
+            + "\n"
+            + "  No messages to copy or delete.\n"
+            + "\n"
+            + "  Messages to copy:   0 (0 B)\n"
+            + "  Messages to delete: 0 (0 B)\n"
+            + "\n"
+            + "  Source crawl:       0.00 messages/second\n"
+            + "  Target crawl:       0.00 messages/second\n"
+            + "  Transfer rate:      0 B/second\n"
+            + "\n"
+            + "  Estimated time:     0 seconds\n"
+            + "\n"
+            + "================================================================================\n"));
+  }
+
+  @Test
+  void getPlanReportAsText_folderPlans_shouldPrintFoldersAndEstimate() throws Exception {
+    // Given
+    final SyncPlan syncPlan = mock(SyncPlan.class);
+    final FolderPlan folderPlan = mock(FolderPlan.class);
+    doReturn("INBOX").when(folderPlan).getName();
+    doReturn(1337L).when(folderPlan).getMessagesToCopy();
+    doReturn(3L * 1024L * 1024L).when(folderPlan).getBytesToCopy();
+    doReturn(2L).when(folderPlan).getMessagesToDelete();
+    doReturn(512L).when(folderPlan).getBytesToDelete();
+    doReturn(Collections.singletonList(folderPlan)).when(syncPlan).getFolders();
+    doReturn(1337L).when(syncPlan).getMessagesToCopy();
+    doReturn(3L * 1024L * 1024L).when(syncPlan).getBytesToCopy();
+    doReturn(2L).when(syncPlan).getMessagesToDelete();
+    doReturn(512L).when(syncPlan).getBytesToDelete();
+    doReturn(120.5D).when(syncPlan).getSourceMessagesPerSecond();
+    doReturn(99D).when(syncPlan).getTargetMessagesPerSecond();
+    doReturn(1536D).when(syncPlan).getBytesPerSecond();
+    doReturn(-1L).when(syncPlan).getEtaSeconds();
+    // When
+    final String result = getPlanReportAsText(syncPlan);
+    // Then
+    assertThat(result,
+        is("================================================================================\n"
+            + "Sync Plan (dry run).\n"
+            + "================================================================================\n"
+            + "\n"
+            + "  INBOX: copy 1337 (3.00 MiB), delete 2 (512 B)\n"
+            + "\n"
+            + "  Messages to copy:   1337 (3.00 MiB)\n"
+            + "  Messages to delete: 2 (512 B)\n"
+            + "\n"
+            + "  Source crawl:       120.50 messages/second\n"
+            + "  Target crawl:       99.00 messages/second\n"
+            + "  Transfer rate:      1.50 KiB/second\n"
+            + "\n"
+            + "  Estimated time:     unknown\n"
+            + "\n"
+            + "================================================================================\n"));
+  }
+}
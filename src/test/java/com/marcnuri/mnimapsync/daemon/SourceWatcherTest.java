@@ -0,0 +1,140 @@
+/*
+ * SourceWatcherTest.java
+ *
+ * Created on 2026-10-18, 01:55
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.daemon;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import com.marcnuri.mnimapsync.imap.HostThrottle;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import javax.mail.Folder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+class SourceWatcherTest {
+
+  private IMAPFolder imapFolder;
+  private IMAPStore imapStore;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    imapFolder = Mockito.mock(IMAPFolder.class);
+    doReturn(Folder.HOLDS_MESSAGES).when(imapFolder).getType();
+    imapStore = Mockito.mock(IMAPStore.class);
+    doReturn(imapFolder).when(imapStore).getFolder(anyString());
+    doReturn(true).when(imapStore).hasCapability("IDLE");
+  }
+
+  @Test
+  void watch_serverWithoutIdle_shouldNotWatchFolders() throws Exception {
+    // Given
+    doReturn(false).when(imapStore).hasCapability("IDLE");
+    final SourceWatcher sourceWatcher = new SourceWatcher(imapStore, 5, HostThrottle.unlimited(),
+        Thread::new);
+    // When
+    final List<String> result = sourceWatcher.watch(Arrays.asList("INBOX", "Sent"), "INBOX");
+    // Then
+    assertThat(result, empty());
+    verify(imapStore, never()).getFolder(anyString());
+  }
+
+  @Test
+  void watch_moreFoldersThanMaximum_shouldWatchInboxFirst() throws Exception {
+    // Given
+    final SourceWatcher sourceWatcher = new SourceWatcher(imapStore, 2, HostThrottle.unlimited(),
+        runnable -> new Thread());
+    // When
+    final List<String> result = sourceWatcher.watch(
+        Arrays.asList("Archive", "INBOX", "Sent"), "INBOX");
+    // Then
+    assertThat(result, contains("INBOX", "Archive"));
+  }
+
+  @Test
+  void watch_noConnectionsToWatch_shouldNotWatchInbox() throws Exception {
+    // Given
+    final SourceWatcher sourceWatcher = new SourceWatcher(imapStore, 0, HostThrottle.unlimited(),
+        runnable -> new Thread());
+    // When
+    final List<String> result = sourceWatcher.watch(Arrays.asList("INBOX", "Sent"), "INBOX");
+    // Then
+    assertThat(result, empty());
+  }
+
+  @Test
+  void awaitChange_changeSignaled_shouldReturnTrueOnlyOnce() throws Exception {
+    // Given
+    final SourceWatcher sourceWatcher = new SourceWatcher(imapStore, 1, HostThrottle.unlimited(),
+        Thread::new);
+    sourceWatcher.changed();
+    // When
+    final boolean first = sourceWatcher.awaitChange(1000L);
+    final boolean second = sourceWatcher.awaitChange(10L);
+    // Then
+    assertThat(first, equalTo(true));
+    assertThat(second, equalTo(false));
+  }
+
+  @Test
+  void watch_idleReturns_shouldSignalChangeUntilClosed() throws Exception {
+    // Given
+    doReturn(true).when(imapFolder).isOpen();
+    doAnswer(invocation -> {
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10L));
+      return null;
+    }).when(imapFolder).idle(true);
+    final List<Thread> threads = new ArrayList<>();
+    final SourceWatcher sourceWatcher = new SourceWatcher(imapStore, 1, HostThrottle.unlimited(),
+        runnable -> {
+          final Thread thread = new Thread(runnable);
+          threads.add(thread);
+          return thread;
+        });
+    sourceWatcher.watch(Arrays.asList("INBOX"), "INBOX");
+    // When
+    final boolean result = sourceWatcher.awaitChange(5000L);
+    sourceWatcher.close();
+    // Then
+    assertThat(result, equalTo(true));
+    threads.get(0).join(5000L);
+    assertThat(threads.get(0).isAlive(), equalTo(false));
+    verify(imapFolder, timeout(5000L).atLeastOnce()).close(anyBoolean());
+  }
+}
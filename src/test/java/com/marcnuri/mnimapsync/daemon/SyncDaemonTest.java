@@ -0,0 +1,144 @@
+/*
+ * SyncDaemonTest.java
+ *
+ * Created on 2026-10-18, 02:10
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.daemon;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.marcnuri.mnimapsync.SyncOptions;
+import com.marcnuri.mnimapsync.WorkerOptions;
+import com.marcnuri.mnimapsync.index.FolderState;
+import com.marcnuri.mnimapsync.index.Index;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+import com.sun.mail.imap.protocol.Status;
+import javax.mail.Folder;
+import javax.mail.MessagingException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+class SyncDaemonTest {
+
+  private IMAPFolder imapFolder;
+  private IMAPStore imapStore;
+  private Index sourceIndex;
+  private Index targetIndex;
+  private SyncDaemon syncDaemon;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    imapFolder = Mockito.mock(IMAPFolder.class);
+    doReturn('.').when(imapFolder).getSeparator();
+    doReturn("INBOX").when(imapFolder).getFullName();
+    doReturn(Folder.HOLDS_MESSAGES).when(imapFolder).getType();
+    doReturn(new Folder[0]).when(imapFolder).list();
+    imapStore = Mockito.mock(IMAPStore.class);
+    doReturn(imapFolder).when(imapStore).getFolder(anyString());
+    doReturn(imapFolder).when(imapStore).getDefaultFolder();
+    sourceIndex = new Index();
+    targetIndex = new Index();
+    targetIndex.setFolderSeparator(".");
+    targetIndex.addFolder("INBOX");
+    final SyncOptions syncOptions = new SyncOptions();
+    syncOptions.setThreads(1);
+    syncOptions.setDelete(true);
+    syncDaemon = new SyncDaemon(syncOptions, sourceIndex, targetIndex, new WorkerOptions(),
+        new WorkerOptions());
+  }
+
+  @Test
+  void cycle_sourceFolderUnchanged_shouldNotSelectFolders() throws Exception {
+    // Given
+    sourceIndex.setFolderState("INBOX", new FolderState(1337L, 2L, 1));
+    mockStatus(1337L, 2L, 1);
+    // When
+    syncDaemon.cycle(imapStore, imapStore);
+    // Then
+    verify(imapFolder, never()).open(anyInt());
+    assertThat(syncDaemon.getCycles(), equalTo(1L));
+    assertThat(syncDaemon.getLastCycleMessagesCopied(), equalTo(0L));
+    assertThat(syncDaemon.getLastCycleMessagesDeleted(), equalTo(0L));
+  }
+
+  @Test
+  void cycle_sourceFolderWithRemovedMessages_shouldCrawlTargetFolderForDeletes()
+      throws Exception {
+    // Given
+    sourceIndex.setFolderState("INBOX", new FolderState(1337L, 2L, 2));
+    mockStatus(1337L, 2L, 1);
+    // When
+    syncDaemon.cycle(imapStore, imapStore);
+    // Then
+    //Source folder selected by the copier and target folder selected by the deleter
+    verify(imapFolder, times(2)).open(Folder.READ_WRITE);
+    assertThat(syncDaemon.getCycles(), equalTo(1L));
+  }
+
+  @Test
+  void cycle_targetFolderCantBeCreated_shouldThrowException() throws Exception {
+    // Given
+    targetIndex.removeFolder("INBOX");
+    doReturn(false).when(imapFolder).create(anyInt());
+    // When
+    final MessagingException result = assertThrows(MessagingException.class,
+        () -> syncDaemon.cycle(imapStore, imapStore));
+    // Then
+    assertThat(result.getMessage(), equalTo("Couldn't create folder: INBOX in target server."));
+    assertThat(syncDaemon.getCycles(), equalTo(0L));
+  }
+
+  @Test
+  void copyConnections_severalSourceConnections_shouldExcludeWatchedFolders() {
+    // When
+    final int result = SyncDaemon.copyConnections(5);
+    // Then
+    assertThat(result, equalTo(5 - SyncDaemon.MAX_WATCHED_FOLDERS));
+  }
+
+  @Test
+  void copyConnections_singleSourceConnection_shouldNotWatchFolders() {
+    // When
+    final int result = SyncDaemon.copyConnections(1);
+    // Then
+    assertThat(result, equalTo(1));
+    assertThat(SyncDaemon.watchedFolders(1), equalTo(0));
+  }
+
+  private void mockStatus(long uidValidity, long uidNext, int total) throws Exception {
+    final Status status = Mockito.mock(Status.class);
+    status.uidvalidity = uidValidity;
+    status.uidnext = uidNext;
+    status.total = total;
+    doReturn(status).when(imapFolder).doCommand(any());
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * AdaptiveConcurrencyTest.java
+ *
+ * Created on 2026-10-17, 23:00
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+class AdaptiveConcurrencyTest {
+
+  @Test
+  void getLimit_initial_shouldBeHalfOfMax() {
+    assertThat(new AdaptiveConcurrency(10).getLimit(), is(5));
+    assertThat(new AdaptiveConcurrency(1).getLimit(), is(1));
+    assertThat(new AdaptiveConcurrency(0).getLimit(), is(1));
+  }
+
+  @Test
+  void succeeded_healthyLatency_shouldIncreaseLimitUpToMax() throws Exception {
+    // Given
+    final AdaptiveConcurrency concurrency = new AdaptiveConcurrency(8);
+    // When
+    for (int it = 0; it < 100; it++) {
+      concurrency.acquire();
+      concurrency.succeeded(1_000L);
+    }
+    // Then
+    assertThat(concurrency.getLimit(), is(8));
+  }
+
+  @Test
+  void succeeded_increasingLatency_shouldNotIncreaseLimit() throws Exception {
+    // Given
+    final AdaptiveConcurrency concurrency = new AdaptiveConcurrency(8);
+    concurrency.acquire();
+    concurrency.succeeded(1_000L);
+    final int initialLimit = concurrency.getLimit();
+    // When
+    for (int it = 0; it < 20; it++) {
+      concurrency.acquire();
+      concurrency.succeeded(10_000L);
+    }
+    // Then
+    assertThat(concurrency.getLimit(), is(initialLimit));
+  }
+
+  @Test
+  void throttled_shouldHalveLimitOncePerInterval() throws Exception {
+    // Given
+    final AtomicLong clock = new AtomicLong();
+    final AdaptiveConcurrency concurrency = new AdaptiveConcurrency(16, clock::get);
+    // When
+    concurrency.acquire();
+    concurrency.acquire();
+    concurrency.throttled();
+    concurrency.throttled();
+    final int afterFirstInterval = concurrency.getLimit();
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(1L));
+    concurrency.acquire();
+    concurrency.throttled();
+    // Then
+    assertThat(afterFirstInterval, is(4));
+    assertThat(concurrency.getLimit(), is(2));
+  }
+
+  @Test
+  void acquire_limitReached_shouldWaitForRelease() throws Exception {
+    // Given
+    final AdaptiveConcurrency concurrency = new AdaptiveConcurrency(2);
+    concurrency.acquire();
+    final Thread waiting = new Thread(() -> {
+      try {
+        concurrency.acquire();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    waiting.start();
+    waiting.join(100L);
+    final boolean blocked = waiting.isAlive();
+    // When
+    concurrency.failed();
+    waiting.join(1000L);
+    // Then
+    assertThat(blocked, is(true));
+    assertThat(waiting.isAlive(), is(false));
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * ConnectionLimitTest.java
+ *
+ * Created on 2026-10-18, 02:40
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.marcnuri.mnimapsync.imap.ConnectionLimit.Lease;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+class ConnectionLimitTest {
+
+  @Test
+  void acquire_availableConnection_shouldNotEvictIdleLeases() throws Exception {
+    // Given
+    final ConnectionLimit connectionLimit = new ConnectionLimit(2);
+    final AtomicInteger evictions = new AtomicInteger();
+    connectionLimit.acquire(evictions::incrementAndGet).idle();
+    // When
+    connectionLimit.acquire(evictions::incrementAndGet);
+    // Then
+    assertThat(evictions.get(), is(0));
+    assertThat(connectionLimit.getAvailable(), is(0));
+  }
+
+  @Test
+  void acquire_noConnectionAvailable_shouldEvictIdleLease() throws Exception {
+    // Given
+    final ConnectionLimit connectionLimit = new ConnectionLimit(1);
+    final AtomicInteger evictions = new AtomicInteger();
+    final Lease idleLease = connectionLimit.acquire(evictions::incrementAndGet);
+    idleLease.idle();
+    // When
+    connectionLimit.acquire(evictions::incrementAndGet);
+    // Then
+    assertThat(evictions.get(), is(1));
+    assertThat(idleLease.resume(), is(false));
+  }
+
+  @Test
+  void acquire_leaseInUse_shouldWaitUntilLeaseEnds() throws Exception {
+    // Given
+    final ConnectionLimit connectionLimit = new ConnectionLimit(1);
+    final Lease lease = connectionLimit.acquire(() -> {});
+    final CompletableFuture<Lease> waiting = CompletableFuture.supplyAsync(() -> {
+      try {
+        return connectionLimit.acquire(() -> {});
+      } catch (InterruptedException ex) {
+        throw new IllegalStateException(ex);
+      }
+    });
+    Thread.sleep(200L);
+    final boolean waited = !waiting.isDone();
+    // When
+    lease.end();
+    // Then
+    assertThat(waited, is(true));
+    assertThat(waiting.get(5L, TimeUnit.SECONDS) != null, is(true));
+  }
+
+  @Test
+  void end_invokedTwice_shouldReturnConnectionOnce() throws Exception {
+    // Given
+    final ConnectionLimit connectionLimit = new ConnectionLimit(2);
+    final Lease lease = connectionLimit.acquire(() -> {});
+    // When
+    lease.end();
+    lease.end();
+    // Then
+    assertThat(connectionLimit.getAvailable(), is(2));
+  }
+}
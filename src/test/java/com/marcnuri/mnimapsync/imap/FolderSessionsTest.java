@@ -0,0 +1,190 @@
+/*
+ * FolderSessionsTest.java
+ *
+ * Created on 2026-10-17, 17:45
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import javax.mail.Folder;
+import javax.mail.ReadOnlyFolderException;
+import javax.mail.Store;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+class FolderSessionsTest {
+
+  private Store store;
+  private Folder inbox;
+  private Folder sent;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    store = mock(Store.class);
+    inbox = mock(Folder.class);
+    doReturn(true).when(inbox).isOpen();
+    doReturn(inbox).when(store).getFolder("INBOX");
+    sent = mock(Folder.class);
+    doReturn(true).when(sent).isOpen();
+    doReturn(sent).when(store).getFolder("Sent");
+  }
+
+  @Test
+  void open_sameFolderAndMode_shouldSelectFolderOnce() throws Exception {
+    // Given
+    final FolderSessions folderSessions = new FolderSessions(store);
+    final Folder first = folderSessions.open("INBOX", Folder.READ_ONLY);
+    folderSessions.release(first, 200);
+    // When
+    final Folder result = folderSessions.open("INBOX", Folder.READ_ONLY);
+    // Then
+    assertThat(result, sameInstance(first));
+    verify(store, times(1)).getFolder(eq("INBOX"));
+    verify(inbox, times(1)).open(eq(Folder.READ_ONLY));
+    verify(inbox, times(0)).close(anyBoolean());
+  }
+
+  @Test
+  void open_differentFolder_shouldClosePreviousFolder() throws Exception {
+    // Given
+    final FolderSessions folderSessions = new FolderSessions(store);
+    folderSessions.release(folderSessions.open("INBOX", Folder.READ_ONLY), 200);
+    // When
+    final Folder result = folderSessions.open("Sent", Folder.READ_ONLY);
+    // Then
+    assertThat(result, sameInstance(sent));
+    verify(inbox, times(1)).close(eq(false));
+    verify(sent, times(1)).open(eq(Folder.READ_ONLY));
+  }
+
+  @Test
+  void openWritableIfPossible_readOnlyFolder_shouldFallBackAndReuseFolder() throws Exception {
+    // Given
+    doThrow(new ReadOnlyFolderException()).when(inbox).open(Folder.READ_WRITE);
+    final FolderSessions folderSessions = new FolderSessions(store);
+    folderSessions.release(folderSessions.openWritableIfPossible("INBOX"), 200);
+    // When
+    final Folder result = folderSessions.openWritableIfPossible("INBOX");
+    // Then
+    assertThat(result, sameInstance(inbox));
+    verify(inbox, times(1)).open(eq(Folder.READ_WRITE));
+    verify(inbox, times(1)).open(eq(Folder.READ_ONLY));
+  }
+
+  @Test
+  void release_sessionExhausted_shouldCloseFolder() throws Exception {
+    // Given
+    final FolderSessions folderSessions = new FolderSessions(store, 300);
+    folderSessions.release(folderSessions.open("INBOX", Folder.READ_ONLY), 200);
+    // When
+    folderSessions.release(folderSessions.open("INBOX", Folder.READ_ONLY), 200);
+    // Then
+    verify(inbox, times(1)).open(eq(Folder.READ_ONLY));
+    verify(inbox, times(1)).close(eq(false));
+  }
+
+  @Test
+  void close_expunge_shouldCloseFolderAndEndSession() throws Exception {
+    // Given
+    final FolderSessions folderSessions = new FolderSessions(store);
+    final Folder folder = folderSessions.open("INBOX", Folder.READ_WRITE);
+    // When
+    folderSessions.close(folder, true);
+    folderSessions.open("INBOX", Folder.READ_WRITE);
+    // Then
+    verify(inbox, times(1)).close(eq(true));
+    verify(inbox, times(2)).open(eq(Folder.READ_WRITE));
+  }
+
+  @Test
+  void closeAll_openSessions_shouldCloseEveryFolder() throws Exception {
+    // Given
+    final FolderSessions folderSessions = new FolderSessions(store);
+    final Thread otherWorker = new Thread(() -> {
+      try {
+        folderSessions.release(folderSessions.open("Sent", Folder.READ_ONLY), 1);
+      } catch (Exception ex) {
+        throw new IllegalStateException(ex);
+      }
+    });
+    otherWorker.start();
+    otherWorker.join();
+    folderSessions.release(folderSessions.open("INBOX", Folder.READ_ONLY), 1);
+    // When
+    folderSessions.closeAll();
+    // Then
+    verify(inbox, times(1)).close(eq(false));
+    verify(sent, times(1)).close(eq(false));
+  }
+
+  @Test
+  void open_connectionLimitReached_shouldCloseIdleSessionOfOtherWorker() throws Exception {
+    // Given
+    final FolderSessions folderSessions = new FolderSessions(store,
+        FolderSessions.MAX_SESSION_MESSAGES, new HostThrottle(new RateLimiter(0D),
+        new RateLimiter(0D), null, new ConnectionLimit(1)));
+    final Thread otherWorker = new Thread(() -> {
+      try {
+        folderSessions.release(folderSessions.open("INBOX", Folder.READ_ONLY), 1);
+      } catch (Exception ex) {
+        throw new IllegalStateException(ex);
+      }
+    });
+    otherWorker.start();
+    otherWorker.join();
+    // When
+    final Folder result = folderSessions.open("Sent", Folder.READ_ONLY);
+    // Then
+    assertThat(result, sameInstance(sent));
+    verify(inbox, times(1)).close(eq(false));
+    verify(sent, times(1)).open(eq(Folder.READ_ONLY));
+  }
+
+  @Test
+  void open_folderKeptSelectedByOtherThread_shouldTakeOverIdleSession() throws Exception {
+    // Given
+    final FolderSessions folderSessions = new FolderSessions(store);
+    final Thread finishedTask = new Thread(() -> {
+      try {
+        folderSessions.release(folderSessions.open("INBOX", Folder.READ_ONLY), 1);
+      } catch (Exception ex) {
+        throw new IllegalStateException(ex);
+      }
+    });
+    finishedTask.start();
+    finishedTask.join();
+    // When
+    final Folder result = folderSessions.open("INBOX", Folder.READ_ONLY);
+    // Then
+    assertThat(result, sameInstance(inbox));
+    verify(inbox, times(1)).open(eq(Folder.READ_ONLY));
+    verify(inbox, times(0)).close(anyBoolean());
+  }
+}
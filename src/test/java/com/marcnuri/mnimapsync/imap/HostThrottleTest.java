@@ -0,0 +1,86 @@
+/*
+ * HostThrottleTest.java
+ *
+ * Created on 2026-10-17, 23:10
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.mail.MessagingException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+class HostThrottleTest {
+
+  @Test
+  void execute_unlimited_shouldReturnCommandResult() throws Exception {
+    // When
+    final int result = HostThrottle.unlimited().execute(() -> 1337);
+    // Then
+    assertThat(result, is(1337));
+    assertThat(HostThrottle.unlimited().getConcurrencyLimit(), is(0));
+  }
+
+  @Test
+  void execute_throttledResponse_shouldDecreaseConcurrency() {
+    // Given
+    final HostThrottle hostThrottle = new HostThrottle(new RateLimiter(0D), new RateLimiter(0D),
+        new AdaptiveConcurrency(8));
+    // When
+    assertThrows(MessagingException.class, () -> hostThrottle.execute(() -> {
+      throw new MessagingException("NO [THROTTLED] Too many commands");
+    }));
+    // Then
+    assertThat(hostThrottle.getConcurrencyLimit(), is(2));
+  }
+
+  @Test
+  void execute_permanentError_shouldKeepConcurrency() {
+    // Given
+    final HostThrottle hostThrottle = new HostThrottle(new RateLimiter(0D), new RateLimiter(0D),
+        new AdaptiveConcurrency(8));
+    // When
+    assertThrows(MessagingException.class, () -> hostThrottle.execute(() -> {
+      throw new MessagingException("NO Message too large");
+    }));
+    // Then
+    assertThat(hostThrottle.getConcurrencyLimit(), is(4));
+  }
+
+  @Test
+  void execute_withRetryPolicy_shouldRetryTransientErrors() throws Exception {
+    // Given
+    final AtomicInteger attempts = new AtomicInteger();
+    // When
+    final int result = HostThrottle.unlimited().execute(new RetryPolicy(3, 1L, 1L), () -> {
+      if (attempts.incrementAndGet() < 3) {
+        throw new MessagingException("BYE [UNAVAILABLE]");
+      }
+      return 1337;
+    });
+    // Then
+    assertThat(result, is(1337));
+    assertThat(attempts.get(), is(3));
+  }
+}
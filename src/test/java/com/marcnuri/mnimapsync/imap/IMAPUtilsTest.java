@@ -20,29 +20,57 @@
  */
 package com.marcnuri.mnimapsync.imap;
 
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.appendStreaming;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.firstAppendedMessage;
 import static com.marcnuri.mnimapsync.imap.IMAPUtils.openStore;
 import static com.marcnuri.mnimapsync.imap.IMAPUtils.sourceFolderNameToTarget;
 import static com.marcnuri.mnimapsync.imap.IMAPUtils.targetToSourceFolderName;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.toUidSets;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.uidExpunge;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.uidStoreDeleted;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import com.marcnuri.mnimapsync.HostDefinition;
+import com.marcnuri.mnimapsync.imap.IMAPUtils.MessageSizeMismatchException;
+import com.marcnuri.mnimapsync.index.FolderState;
 import com.marcnuri.mnimapsync.index.Index;
+import com.sun.mail.iap.Literal;
+import com.sun.mail.iap.ProtocolException;
+import com.sun.mail.iap.Response;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPFolder.ProtocolCommand;
 import com.sun.mail.imap.IMAPSSLStore;
 import com.sun.mail.imap.IMAPStore;
+import com.sun.mail.imap.protocol.IMAPProtocol;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 import javax.mail.Authenticator;
+import javax.mail.Message;
+import javax.mail.MessagingException;
 import javax.mail.Session;
+import javax.mail.UIDFolder;
 import mockit.Mock;
 import mockit.MockUp;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
 /**
  * Created by Marc Nuri <marc@marcnuri.com> on 2019-08-31.
@@ -154,4 +182,209 @@ class IMAPUtilsTest {
     // Then
     assertThat(result, equalTo("Folder.With.Separator"));
   }
+
+  @Test
+  void firstAppendedMessage_compatibleStateWithAppendedMessages_shouldReturnFirstAppendedMessage()
+      throws Exception {
+    // Given
+    final IMAPFolder folder = mock(IMAPFolder.class);
+    final Message lastPreviousMessage = mock(Message.class);
+    final Message firstAppendedMessage = mock(Message.class);
+    doReturn(5).when(firstAppendedMessage).getMessageNumber();
+    final Message secondAppendedMessage = mock(Message.class);
+    doReturn(6).when(secondAppendedMessage).getMessageNumber();
+    doReturn(new Message[]{lastPreviousMessage, firstAppendedMessage, secondAppendedMessage})
+        .when(folder).getMessagesByUID(eq(10L), eq(UIDFolder.LASTUID));
+    doReturn(9L).when(folder).getUID(lastPreviousMessage);
+    doReturn(10L).when(folder).getUID(firstAppendedMessage);
+    doReturn(11L).when(folder).getUID(secondAppendedMessage);
+    // When
+    final int result = firstAppendedMessage(folder, new FolderState(1337L, 12L, 6),
+        new FolderState(1337L, 10L, 4));
+    // Then
+    assertThat(result, equalTo(5));
+  }
+
+  @Test
+  void firstAppendedMessage_compatibleStateWithExpungedMessages_shouldReturnZero()
+      throws Exception {
+    // Given
+    final IMAPFolder folder = mock(IMAPFolder.class);
+    doReturn(new Message[0]).when(folder).getMessagesByUID(eq(10L), eq(UIDFolder.LASTUID));
+    // When
+    final int result = firstAppendedMessage(folder, new FolderState(1337L, 11L, 3),
+        new FolderState(1337L, 10L, 4));
+    // Then
+    assertThat(result, equalTo(0));
+  }
+
+  @Test
+  void firstAppendedMessage_unchangedState_shouldReturnMessageCountPlusOne() throws Exception {
+    // Given
+    final IMAPFolder folder = mock(IMAPFolder.class);
+    // When
+    final int result = firstAppendedMessage(folder, new FolderState(1337L, 10L, 4),
+        new FolderState(1337L, 10L, 4));
+    // Then
+    assertThat(result, equalTo(5));
+    verify(folder, times(0)).getMessagesByUID(anyLong(), anyLong());
+  }
+
+  @Test
+  void firstAppendedMessage_differentUidValidity_shouldReturnZero() throws Exception {
+    // Given
+    final IMAPFolder folder = mock(IMAPFolder.class);
+    // When
+    final int result = firstAppendedMessage(folder, new FolderState(1L, 10L, 4),
+        new FolderState(1337L, 10L, 4));
+    // Then
+    assertThat(result, equalTo(0));
+  }
+
+  @Test
+  void appendStreaming_messageMatchingSize_shouldStreamMessageAsLiteral() throws Exception {
+    // Given
+    final IMAPProtocol protocol = mock(IMAPProtocol.class);
+    final IMAPFolder folder = mockFolderWithProtocol(protocol);
+    final Message message = mockMessage("Hello", 5);
+    // When
+    appendStreaming(folder, message);
+    // Then
+    final ArgumentCaptor<Literal> literal = ArgumentCaptor.forClass(Literal.class);
+    verify(protocol, times(1)).append(eq("INBOX"), any(), any(), literal.capture());
+    final ByteArrayOutputStream result = new ByteArrayOutputStream();
+    literal.getValue().writeTo(result);
+    assertThat(literal.getValue().size(), equalTo(5));
+    assertThat(result.toString("UTF-8"), equalTo("Hello"));
+  }
+
+  @Test
+  void appendStreaming_messageLargerThanSize_shouldFailWritingLiteral() throws Exception {
+    // Given
+    final IMAPProtocol protocol = mock(IMAPProtocol.class);
+    final IMAPFolder folder = mockFolderWithProtocol(protocol);
+    final Message message = mockMessage("Hello", 3);
+    appendStreaming(folder, message);
+    final ArgumentCaptor<Literal> literal = ArgumentCaptor.forClass(Literal.class);
+    verify(protocol, times(1)).append(eq("INBOX"), any(), any(), literal.capture());
+    // When
+    final IOException result = assertThrows(IOException.class, () ->
+        literal.getValue().writeTo(new ByteArrayOutputStream()));
+    // Then
+    assertThat(result.getMessage(), equalTo("Message is larger than its RFC822.SIZE (3)"));
+  }
+
+  @Test
+  void appendStreaming_messageSmallerThanSize_shouldThrowPermanentException() throws Exception {
+    // Given
+    final IMAPProtocol protocol = mock(IMAPProtocol.class);
+    doAnswer(invocation -> {
+      try {
+        invocation.<Literal>getArgument(3).writeTo(new ByteArrayOutputStream());
+      } catch (IOException ex) {
+        throw new ProtocolException(ex.getMessage());
+      }
+      return null;
+    }).when(protocol).append(eq("INBOX"), any(), any(), any());
+    final IMAPFolder folder = mock(IMAPFolder.class);
+    doReturn("INBOX").when(folder).getFullName();
+    doAnswer(invocation -> {
+      try {
+        return invocation.<ProtocolCommand>getArgument(0).doCommand(protocol);
+      } catch (ProtocolException ex) {
+        throw new MessagingException(ex.getMessage(), ex);
+      }
+    }).when(folder).doCommand(any());
+    final Message message = mockMessage("Hello", 8);
+    // When
+    final MessagingException result = assertThrows(MessagingException.class, () ->
+        appendStreaming(folder, message));
+    // Then
+    assertThat(result instanceof MessageSizeMismatchException, equalTo(true));
+    assertThat(result.getMessage(), equalTo("Message is smaller than its RFC822.SIZE (8)"));
+    assertThat(RetryPolicy.isTransient(result), equalTo(false));
+  }
+
+  @Test
+  void toUidSets_unsortedUids_shouldReturnCompressedRanges() {
+    // When
+    final List<String> result = toUidSets(new long[]{7L, 3L, 1L, 2L, 3L, 5L, 6L, 10L});
+    // Then
+    assertThat(result, equalTo(Collections.singletonList("1:3,5:7,10")));
+  }
+
+  @Test
+  void toUidSets_manyRanges_shouldSplitLongSets() {
+    // Given
+    final long[] uids = new long[2000];
+    for (int it = 0; it < uids.length; it++) {
+      uids[it] = it * 2L + 100_000L;
+    }
+    // When
+    final List<String> result = toUidSets(uids);
+    // Then
+    assertThat(result.size(), equalTo(4));
+    assertThat(result.stream().allMatch(set -> set.length() <= IMAPUtils.MAX_UID_SET_LENGTH),
+        equalTo(true));
+    assertThat(String.join(",", result).split(",").length, equalTo(2000));
+  }
+
+  @Test
+  void uidStoreDeleted_uids_shouldSendSingleUidStoreCommand() throws Exception {
+    // Given
+    final IMAPProtocol protocol = mock(IMAPProtocol.class);
+    doReturn(new Response[]{mock(Response.class)}).when(protocol).command(anyString(), any());
+    final IMAPFolder folder = mockFolderWithProtocol(protocol);
+    // When
+    uidStoreDeleted(folder, new long[]{1L, 2L, 3L, 4L, 9L});
+    // Then
+    verify(protocol, times(1)).command(eq("UID STORE 1:4,9 +FLAGS.SILENT (\\Deleted)"), any());
+  }
+
+  @Test
+  void uidExpunge_serverWithUidPlus_shouldSendUidExpungeCommand() throws Exception {
+    // Given
+    final IMAPProtocol protocol = mock(IMAPProtocol.class);
+    doReturn(new Response[]{mock(Response.class)}).when(protocol).command(anyString(), any());
+    final IMAPFolder folder = mockFolderWithProtocol(protocol);
+    final IMAPStore store = mock(IMAPStore.class);
+    doReturn(true).when(store).hasCapability("UIDPLUS");
+    doReturn(store).when(folder).getStore();
+    // When
+    uidExpunge(folder, new long[]{5L, 6L});
+    // Then
+    verify(protocol, times(1)).command(eq("UID EXPUNGE 5:6"), any());
+    verify(folder, times(0)).expunge();
+  }
+
+  @Test
+  void uidExpunge_serverWithoutUidPlus_shouldExpungeFolder() throws Exception {
+    // Given
+    final IMAPProtocol protocol = mock(IMAPProtocol.class);
+    final IMAPFolder folder = mockFolderWithProtocol(protocol);
+    doReturn(mock(IMAPStore.class)).when(folder).getStore();
+    // When
+    uidExpunge(folder, new long[]{5L, 6L});
+    // Then
+    verify(protocol, times(0)).command(anyString(), any());
+    verify(folder, times(1)).expunge();
+  }
+
+  private static IMAPFolder mockFolderWithProtocol(IMAPProtocol protocol) throws Exception {
+    final IMAPFolder folder = mock(IMAPFolder.class);
+    doReturn("INBOX").when(folder).getFullName();
+    doAnswer(invocation -> invocation.<ProtocolCommand>getArgument(0).doCommand(protocol))
+        .when(folder).doCommand(any());
+    return folder;
+  }
+
+  private static Message mockMessage(String content, int size) throws Exception {
+    final Message message = mock(Message.class);
+    doReturn(size).when(message).getSize();
+    doAnswer(invocation -> {
+      invocation.<OutputStream>getArgument(0).write(content.getBytes(StandardCharsets.UTF_8));
+      return null;
+    }).when(message).writeTo(any());
+    return message;
+  }
 }
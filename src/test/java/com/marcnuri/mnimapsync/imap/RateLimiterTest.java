@@ -0,0 +1,83 @@
+/*
+ * RateLimiterTest.java
+ *
+ * Created on 2026-10-17, 22:50
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+class RateLimiterTest {
+
+  @Test
+  void reserve_unlimited_shouldNotWait() {
+    // Given
+    final RateLimiter rateLimiter = new RateLimiter(0D);
+    // When
+    final long result = rateLimiter.reserve(Long.MAX_VALUE);
+    // Then
+    assertThat(rateLimiter.isUnlimited(), is(true));
+    assertThat(result, is(0L));
+    assertThat(rateLimiter.reserve(1L), is(0L));
+  }
+
+  @Test
+  void reserve_withinBurst_shouldNotWait() {
+    // Given
+    final RateLimiter rateLimiter = new RateLimiter(10D, () -> 0L);
+    // When
+    final long result = rateLimiter.reserve(10L);
+    // Then
+    assertThat(result, is(0L));
+  }
+
+  @Test
+  void reserve_afterExceedingRate_shouldWaitForPreviousPermits() {
+    // Given
+    final RateLimiter rateLimiter = new RateLimiter(10D, () -> 0L);
+    rateLimiter.reserve(10L);
+    // When
+    final long first = rateLimiter.reserve(5L);
+    final long second = rateLimiter.reserve(1L);
+    // Then
+    assertThat(first, is(0L));
+    assertThat(second, is(TimeUnit.MILLISECONDS.toNanos(500L)));
+  }
+
+  @Test
+  void reserve_afterIdlePeriod_shouldRefillUpToOneSecond() {
+    // Given
+    final AtomicLong clock = new AtomicLong();
+    final RateLimiter rateLimiter = new RateLimiter(10D, clock::get);
+    rateLimiter.reserve(10L);
+    clock.set(TimeUnit.SECONDS.toNanos(60L));
+    // When
+    rateLimiter.reserve(11L);
+    final long result = rateLimiter.reserve(1L);
+    // Then
+    assertThat(result, is(TimeUnit.MILLISECONDS.toNanos(100L)));
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * RetryPolicyTest.java
+ *
+ * Created on 2026-10-17, 21:55
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.mail.FolderClosedException;
+import javax.mail.MessagingException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+class RetryPolicyTest {
+
+  @Test
+  void isTransient_connectionErrors_shouldReturnTrue() {
+    assertThat(RetryPolicy.isTransient(new FolderClosedException(null)), is(true));
+    assertThat(RetryPolicy.isTransient(
+        new MessagingException("Fetch failed", new SocketTimeoutException())), is(true));
+    assertThat(RetryPolicy.isTransient(
+        new MessagingException("NO [THROTTLED] Too many commands")), is(true));
+  }
+
+  @Test
+  void isTransient_permanentErrors_shouldReturnFalse() {
+    assertThat(RetryPolicy.isTransient(new MessagingException("NO Message too large")), is(false));
+  }
+
+  @Test
+  void call_transientErrorThenSuccess_shouldRetry() throws Exception {
+    // Given
+    final AtomicInteger attempts = new AtomicInteger();
+    // When
+    final int result = new RetryPolicy(3, 1L, 1L).call(() -> {
+      if (attempts.incrementAndGet() < 3) {
+        throw new MessagingException("BYE [UNAVAILABLE]");
+      }
+      return 1337;
+    });
+    // Then
+    assertThat(result, is(1337));
+    assertThat(attempts.get(), is(3));
+  }
+
+  @Test
+  void call_transientErrorExhaustsAttempts_shouldThrowLastException() {
+    // Given
+    final AtomicInteger attempts = new AtomicInteger();
+    // When
+    final MessagingException result = assertThrows(MessagingException.class,
+        () -> new RetryPolicy(2, 1L, 1L).call(() -> {
+          throw new MessagingException("[INUSE] " + attempts.incrementAndGet());
+        }));
+    // Then
+    assertThat(result.getMessage(), is("[INUSE] 2"));
+  }
+
+  @Test
+  void call_permanentError_shouldNotRetry() {
+    // Given
+    final AtomicInteger attempts = new AtomicInteger();
+    // When
+    assertThrows(MessagingException.class, () -> RetryPolicy.DEFAULT.call(() -> {
+      attempts.incrementAndGet();
+      throw new MessagingException("NO Mailbox doesn't exist");
+    }));
+    // Then
+    assertThat(attempts.get(), is(1));
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * FingerprintSetTest.java
+ *
+ * Created on 2026-10-17, 11:45
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.mockito.Mockito.doReturn;
+
+import com.sun.mail.imap.IMAPMessage;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+class FingerprintSetTest {
+
+  @Test
+  void add_fullMessageId_shouldOnlyRetainFingerprint() throws Exception {
+    // Given
+    final FingerprintSet fingerprintSet = new FingerprintSet();
+    // When
+    final boolean result = fingerprintSet.add(messageId("1337"));
+    // Then
+    assertThat(result, equalTo(true));
+    assertThat(fingerprintSet, hasSize(1));
+    assertThat(fingerprintSet.iterator().next().isFingerprint(), equalTo(true));
+  }
+
+  @Test
+  void add_repeatedMessageId_shouldReturnFalse() throws Exception {
+    // Given
+    final FingerprintSet fingerprintSet = new FingerprintSet();
+    fingerprintSet.add(messageId("1337"));
+    // When
+    final boolean result = fingerprintSet.add(messageId("1337"));
+    // Then
+    assertThat(result, equalTo(false));
+    assertThat(fingerprintSet, hasSize(1));
+  }
+
+  @Test
+  void contains_fullMessageId_shouldMatchFingerprint() throws Exception {
+    // Given
+    final FingerprintSet fingerprintSet = new FingerprintSet();
+    fingerprintSet.add(messageId("1337"));
+    // When
+    final boolean contained = fingerprintSet.contains(messageId("1337"));
+    final boolean notContained = fingerprintSet.contains(messageId("313373"));
+    // Then
+    assertThat(contained, equalTo(true));
+    assertThat(notContained, equalTo(false));
+  }
+
+  @Test
+  void add_manyCollidingFingerprints_shouldGrowAndRetainAll() {
+    // Given
+    final FingerprintSet fingerprintSet = new FingerprintSet();
+    // When
+    for (long it = 0; it < 10_000L; it++) {
+      fingerprintSet.add(0L, it << 8);
+    }
+    // Then
+    assertThat(fingerprintSet, hasSize(10_000));
+    assertThat(fingerprintSet.contains(0L, 1337L << 8), equalTo(true));
+    assertThat(fingerprintSet.contains(0L, 1337L), equalTo(false));
+  }
+
+  @Test
+  void remove_entryInTheMiddleOfProbeSequence_shouldKeepFollowingEntriesReachable() {
+    // Given
+    final FingerprintSet fingerprintSet = new FingerprintSet();
+    // Same stripe and same initial slot
+    fingerprintSet.add(1L, 16L);
+    fingerprintSet.add(1L, 32L);
+    fingerprintSet.add(1L, 48L);
+    // When
+    final boolean result = fingerprintSet.remove(MessageId.fromFingerprint(1L, 32L));
+    // Then
+    assertThat(result, equalTo(true));
+    assertThat(fingerprintSet, hasSize(2));
+    assertThat(fingerprintSet.contains(1L, 16L), equalTo(true));
+    assertThat(fingerprintSet.contains(1L, 32L), equalTo(false));
+    assertThat(fingerprintSet.contains(1L, 48L), equalTo(true));
+  }
+
+  @Test
+  void add_zeroFingerprint_shouldBeContained() {
+    // Given
+    final FingerprintSet fingerprintSet = new FingerprintSet();
+    // When
+    final boolean result = fingerprintSet.add(0L, 0L);
+    // Then
+    assertThat(result, equalTo(true));
+    assertThat(fingerprintSet.contains(MessageId.fromFingerprint(0L, 0L)), equalTo(true));
+    assertThat(fingerprintSet, hasSize(1));
+  }
+
+  @Test
+  void toFingerprintArray_severalFingerprints_shouldReturnPairs() {
+    // Given
+    final FingerprintSet fingerprintSet = new FingerprintSet();
+    fingerprintSet.add(0L, 0L);
+    fingerprintSet.add(1L, 2L);
+    // When
+    final long[] result = fingerprintSet.toFingerprintArray();
+    // Then
+    assertThat(result.length, equalTo(4));
+    assertThat(result[0] == 0L && result[1] == 0L || result[2] == 0L && result[3] == 0L,
+        equalTo(true));
+    assertThat(result[0] == 1L && result[1] == 2L || result[2] == 1L && result[3] == 2L,
+        equalTo(true));
+  }
+
+  private static MessageId messageId(String id) throws Exception {
+    final IMAPMessage message = Mockito.mock(IMAPMessage.class);
+    doReturn(new String[]{id}).when(message).getHeader("Message-Id");
+    return new MessageId(message);
+  }
+}
@@ -23,7 +23,6 @@ package com.marcnuri.mnimapsync.index;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
-import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
@@ -34,8 +33,10 @@ import static org.mockito.Mockito.verify;
 import com.marcnuri.mnimapsync.index.FolderCrawler;
 import com.marcnuri.mnimapsync.index.Index;
 import com.marcnuri.mnimapsync.index.MessageId;
+import com.sun.mail.imap.IMAPFolder;
 import com.sun.mail.imap.IMAPMessage;
 import com.sun.mail.imap.IMAPStore;
+import java.util.HashSet;
 import javax.mail.Folder;
 import javax.mail.Message;
 import javax.mail.MessagingException;
@@ -72,7 +73,7 @@ class FolderCrawlerTest {
   void run_emptyFolder_shouldOnlyUpdateIndexes() throws Exception {
     // Given
     final FolderCrawler folderCrawler = new FolderCrawler(
-        imapStore, "FolderName", 0, 100, index);
+        imapStore, "FolderName", 0, 100, index, IdentityFetch.HEADERS);
     doReturn(new Message[0]).when(folder).getMessages(eq(0), eq(100));
     // When
     folderCrawler.run();
@@ -83,10 +84,10 @@ class FolderCrawlerTest {
   }
 
   @Test
-  void run_notEmptyFolderAndStoreWithExceptions_shouldReturn() throws Exception {
+  void run_notEmptyFolderAndStoreWithExceptions_shouldReturnReportingNoMessages() throws Exception {
     // Given
     final FolderCrawler folderCrawler = new FolderCrawler(
-        imapStore, "FolderName", 0, 100, index);
+        imapStore, "FolderName", 0, 100, index, IdentityFetch.HEADERS);
     final Message message = Mockito.mock(Message.class);
     doReturn(new Message[]{message}).when(folder).getMessages(eq(0), eq(100));
     doReturn(true).when(index).hasCrawlException();
@@ -94,15 +95,15 @@ class FolderCrawlerTest {
     folderCrawler.run();
     // Then
     verify(imapStore, times(1)).getFolder(eq("FolderName"));
-    verify(index, times(0)).updatedIndexedMessageCount(anyLong());
-    verify(index, times(0)).updatedSkippedMessageCount(anyLong());
+    verify(index, times(1)).updatedIndexedMessageCount(eq(0L));
+    verify(index, times(1)).updatedSkippedMessageCount(eq(0L));
   }
 
   @Test
   void run_notEmptyFolderAndRepeatedMessages_shouldUpdateIndexes() throws Exception {
     // Given
     final FolderCrawler folderCrawler = new FolderCrawler(
-        imapStore, "FolderName", 0, 100, index);
+        imapStore, "FolderName", 0, 100, index, IdentityFetch.HEADERS);
     final IMAPMessage message = Mockito.mock(IMAPMessage.class);
     doReturn(new String[]{"1337"}).when(message).getHeader("Message-Id");
     final IMAPMessage repeatedMessage = Mockito.mock(IMAPMessage.class);
@@ -117,11 +118,36 @@ class FolderCrawlerTest {
     assertThat(index.getSkippedMessageCount(), equalTo(1L));
   }
 
+  @Test
+  void run_folderWithTrackedUids_shouldRecordUidOfEveryMessage() throws Exception {
+    // Given
+    final IMAPFolder imapFolder = Mockito.mock(IMAPFolder.class);
+    doReturn(imapFolder).when(imapStore).getFolder(anyString());
+    index.setUidTracking(true);
+    index.startFolderUids("FolderName", 1L);
+    final FolderCrawler folderCrawler = new FolderCrawler(
+        imapStore, "FolderName", 0, 100, index, IdentityFetch.HEADERS);
+    final IMAPMessage message = Mockito.mock(IMAPMessage.class);
+    doReturn(new String[]{"1337"}).when(message).getHeader("Message-Id");
+    doReturn(13L).when(imapFolder).getUID(message);
+    final IMAPMessage repeatedMessage = Mockito.mock(IMAPMessage.class);
+    doReturn(new String[]{"1337"}).when(repeatedMessage).getHeader("Message-Id");
+    doReturn(37L).when(imapFolder).getUID(repeatedMessage);
+    doReturn(new Message[]{message, repeatedMessage}).when(imapFolder)
+        .getMessages(eq(0), eq(100));
+    // When
+    folderCrawler.run();
+    // Then
+    assertThat(index.getFolderUids("FolderName").size(), equalTo(2));
+    assertThat(index.getFolderUids("FolderName").missingFrom(SortedFingerprints.of(new HashSet<>())),
+        equalTo(new long[]{13L, 37L}));
+  }
+
   @Test
   void run_notEmptyFolderAndThrowsMessageIdExceptionWithCause_shouldUpdateIndexesAndAddCrawlException() throws Exception {
     // Given
     final FolderCrawler folderCrawler = new FolderCrawler(
-        imapStore, "FolderName", 0, 100, index);
+        imapStore, "FolderName", 0, 100, index, IdentityFetch.HEADERS);
     final IMAPMessage message = Mockito.mock(IMAPMessage.class);
     doThrow(new MessagingException()).when(message).getHeader("Message-Id");
     doReturn(new Message[]{message}).when(folder).getMessages(eq(0), eq(100));
@@ -0,0 +1,126 @@
+/*
+ * FolderUidsTest.java
+ *
+ * Created on 2026-10-17, 23:55
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+class FolderUidsTest {
+
+  @Test
+  void missingFrom_someMessagesInSource_shouldReturnUidsOfMissingMessages() {
+    // Given
+    final FolderUids folderUids = new FolderUids(1337L);
+    folderUids.add(1L, MessageId.fromFingerprint(1L, 1L));
+    folderUids.add(2L, MessageId.fromFingerprint(2L, 2L));
+    folderUids.add(3L, MessageId.fromFingerprint(3L, 3L));
+    folderUids.add(4L, MessageId.fromFingerprint(1L, 1L));
+    final Set<MessageId> sourceMessages = new HashSet<>();
+    sourceMessages.add(MessageId.fromFingerprint(2L, 2L));
+    // When
+    final long[] result = folderUids.missingFrom(SortedFingerprints.of(sourceMessages));
+    // Then
+    assertThat(result, equalTo(new long[]{1L, 3L, 4L}));
+    assertThat(folderUids.getUidValidity(), equalTo(1337L));
+  }
+
+  @Test
+  void missingFrom_fingerprintSet_shouldReturnUidsOfMissingMessages() {
+    // Given
+    final FolderUids folderUids = new FolderUids(1L);
+    folderUids.add(10L, MessageId.fromFingerprint(10L, 10L));
+    folderUids.add(20L, MessageId.fromFingerprint(20L, 20L));
+    final FingerprintSet sourceMessages = new FingerprintSet();
+    sourceMessages.add(10L, 10L);
+    // When
+    final long[] result = folderUids.missingFrom(SortedFingerprints.of(sourceMessages));
+    // Then
+    assertThat(result, equalTo(new long[]{20L}));
+  }
+
+  @Test
+  void missingFrom_messageSet_shouldLookUpEachMessage() {
+    // Given
+    final FolderUids folderUids = new FolderUids(1L);
+    folderUids.add(3L, MessageId.fromFingerprint(3L, 3L));
+    folderUids.add(1L, MessageId.fromFingerprint(1L, 1L));
+    folderUids.add(2L, MessageId.fromFingerprint(2L, 2L));
+    final Set<MessageId> sourceMessages = new HashSet<>();
+    sourceMessages.add(MessageId.fromFingerprint(2L, 2L));
+    // When
+    final long[] result = folderUids.missingFrom(sourceMessages);
+    // Then
+    assertThat(result, equalTo(new long[]{1L, 3L}));
+  }
+
+  @Test
+  void missingFrom_fingerprintSetLookup_shouldReturnUidsOfMissingMessages() {
+    // Given
+    final FolderUids folderUids = new FolderUids(1L);
+    folderUids.add(10L, MessageId.fromFingerprint(10L, 10L));
+    folderUids.add(20L, MessageId.fromFingerprint(20L, 20L));
+    final FingerprintSet sourceMessages = new FingerprintSet();
+    sourceMessages.add(10L, 10L);
+    // When
+    final long[] result = folderUids.missingFrom(sourceMessages);
+    // Then
+    assertThat(result, equalTo(new long[]{20L}));
+  }
+
+  @Test
+  void getMessageIds_someUidsRecorded_shouldReturnIdsOfRecordedUids() {
+    // Given
+    final FolderUids folderUids = new FolderUids(1L);
+    folderUids.add(30L, MessageId.fromFingerprint(30L, 30L));
+    folderUids.add(10L, MessageId.fromFingerprint(10L, 10L));
+    folderUids.add(20L, MessageId.fromFingerprint(20L, 20L));
+    // When
+    final List<MessageId> result = folderUids.getMessageIds(new long[]{10L, 15L, 30L});
+    // Then
+    assertThat(result, contains(MessageId.fromFingerprint(10L, 10L),
+        MessageId.fromFingerprint(30L, 30L)));
+  }
+
+  @Test
+  void size_unsortedAndRepeatedUids_shouldReturnDistinctUids() {
+    // Given
+    final FolderUids folderUids = new FolderUids(1L);
+    for (long uid = 100L; uid > 0L; uid--) {
+      folderUids.add(uid, MessageId.fromFingerprint(uid, uid));
+      folderUids.add(uid, MessageId.fromFingerprint(uid, uid));
+    }
+    // When
+    final int result = folderUids.size();
+    // Then
+    assertThat(result, equalTo(100));
+    assertThat(folderUids.missingFrom(SortedFingerprints.of(new HashSet<>())).length, equalTo(100));
+    assertThat(folderUids.missingFrom(SortedFingerprints.of(new HashSet<>()))[0], equalTo(1L));
+  }
+}
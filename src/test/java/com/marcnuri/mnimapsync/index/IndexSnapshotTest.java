@@ -0,0 +1,88 @@
+/*
+ * IndexSnapshotTest.java
+ *
+ * Created on 2026-10-17, 10:05
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.Mockito.doReturn;
+
+import com.sun.mail.imap.IMAPMessage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+class IndexSnapshotTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void saveAndLoad_indexWithFolderStates_shouldRestoreStatesAndMessages() throws Exception {
+    // Given
+    final File snapshot = tempDir.resolve("target.index").toFile();
+    final Index index = new Index();
+    index.setFolderState("INBOX", new FolderState(1337L, 3L, 2));
+    index.getFolderMessages("INBOX").add(messageId("1"));
+    index.getFolderMessages("INBOX").add(messageId("2"));
+    index.getFolderMessages("Not indexed").add(messageId("3"));
+    IndexSnapshot.save(index, snapshot);
+    final Index restoredIndex = new Index();
+    // When
+    IndexSnapshot.load(snapshot, restoredIndex);
+    // Then
+    assertThat(restoredIndex.getFolderState("INBOX"), equalTo(new FolderState(1337L, 3L, 2)));
+    assertThat(restoredIndex.getFolderMessages("INBOX"), hasSize(2));
+    assertThat(restoredIndex.getFolderMessages("INBOX").contains(messageId("2")), equalTo(true));
+    assertThat(restoredIndex.getFolderState("Not indexed"), nullValue());
+    assertThat(restoredIndex.getFolderMessages("Not indexed"), hasSize(0));
+  }
+
+  @Test
+  void load_invalidFile_shouldThrowException() throws Exception {
+    // Given
+    final File snapshot = tempDir.resolve("invalid.index").toFile();
+    try (FileOutputStream fos = new FileOutputStream(snapshot)) {
+      fos.write(new byte[]{1, 3, 3, 7});
+    }
+    // When
+    assertThrows(IOException.class, () -> {
+      IndexSnapshot.load(snapshot, new Index());
+      fail();
+    });
+  }
+
+  private static MessageId messageId(String id) throws Exception {
+    final IMAPMessage message = Mockito.mock(IMAPMessage.class);
+    doReturn(new String[]{id}).when(message).getHeader("Message-Id");
+    return new MessageId(message);
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * MappedIndexTest.java
+ *
+ * Created on 2026-10-17, 14:30
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.anEmptyMap;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.File;
+import java.nio.file.Path;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+class MappedIndexTest {
+
+  @TempDir
+  Path tempDir;
+
+  private File directory;
+
+  @BeforeEach
+  void setUp() {
+    directory = tempDir.resolve("target").toFile();
+  }
+
+  @Test
+  void getFolderMessages_manyMessages_shouldGrowAndRetainAll() throws Exception {
+    // Given
+    final MappedIndex mappedIndex = new MappedIndex(directory);
+    // When
+    for (long it = 1; it <= 5_000L; it++) {
+      mappedIndex.getFolderMessages("INBOX").add(MessageId.fromFingerprint(it, it * 31));
+    }
+    // Then
+    assertThat(mappedIndex.getFolderMessages("INBOX"), hasSize(5_000));
+    assertThat(mappedIndex.getFolderMessages("INBOX")
+        .contains(MessageId.fromFingerprint(1337L, 1337L * 31)), equalTo(true));
+    assertThat(mappedIndex.getFolderMessages("INBOX")
+        .contains(MessageId.fromFingerprint(1337L, 1337L)), equalTo(false));
+  }
+
+  @Test
+  void getFolderMessages_removeEntriesInProbeSequence_shouldKeepOtherEntriesReachable()
+      throws Exception {
+    // Given
+    final MappedIndex mappedIndex = new MappedIndex(directory);
+    // Same initial slot
+    mappedIndex.getFolderMessages("INBOX").add(MessageId.fromFingerprint(1L, 1024L));
+    mappedIndex.getFolderMessages("INBOX").add(MessageId.fromFingerprint(2L, 1024L));
+    mappedIndex.getFolderMessages("INBOX").add(MessageId.fromFingerprint(3L, 1024L));
+    // When
+    final boolean result = mappedIndex.getFolderMessages("INBOX")
+        .remove(MessageId.fromFingerprint(2L, 1024L));
+    // Then
+    assertThat(result, equalTo(true));
+    assertThat(mappedIndex.getFolderMessages("INBOX"), hasSize(2));
+    assertThat(mappedIndex.getFolderMessages("INBOX")
+        .contains(MessageId.fromFingerprint(1L, 1024L)), equalTo(true));
+    assertThat(mappedIndex.getFolderMessages("INBOX")
+        .contains(MessageId.fromFingerprint(2L, 1024L)), equalTo(false));
+    assertThat(mappedIndex.getFolderMessages("INBOX")
+        .contains(MessageId.fromFingerprint(3L, 1024L)), equalTo(true));
+  }
+
+  @Test
+  void constructor_existingDirectory_shouldRestoreFolderStatesAndMessages() throws Exception {
+    // Given
+    final MappedIndex previousIndex = new MappedIndex(directory);
+    previousIndex.getFolderMessages("INBOX/Sub folder").add(MessageId.fromFingerprint(1L, 2L));
+    previousIndex.setFolderState("INBOX/Sub folder", new FolderState(1337L, 2L, 1));
+    previousIndex.force();
+    // When
+    final MappedIndex mappedIndex = new MappedIndex(directory);
+    // Then
+    assertThat(mappedIndex.getFolderState("INBOX/Sub folder"),
+        equalTo(new FolderState(1337L, 2L, 1)));
+    assertThat(mappedIndex.getFolderStates().size(), equalTo(1));
+    assertThat(mappedIndex.getFolderMessages("INBOX/Sub folder")
+        .contains(MessageId.fromFingerprint(1L, 2L)), equalTo(true));
+  }
+
+  @Test
+  void resetFolder_existingFolder_shouldRemoveStateAndMessages() throws Exception {
+    // Given
+    final MappedIndex mappedIndex = new MappedIndex(directory);
+    mappedIndex.getFolderMessages("INBOX").add(MessageId.fromFingerprint(1L, 2L));
+    mappedIndex.setFolderState("INBOX", new FolderState(1337L, 2L, 1));
+    // When
+    mappedIndex.resetFolder("INBOX");
+    // Then
+    assertThat(mappedIndex.getFolderState("INBOX"), nullValue());
+    assertThat(mappedIndex.getFolderStates(), anEmptyMap());
+    assertThat(mappedIndex.getFolderMessages("INBOX"), hasSize(0));
+  }
+}
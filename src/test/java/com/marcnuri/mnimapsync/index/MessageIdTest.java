@@ -21,6 +21,8 @@
 package com.marcnuri.mnimapsync.index;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayContainingInAnyOrder;
+import static org.hamcrest.Matchers.emptyArray;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -28,7 +30,9 @@ import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.Mockito.doReturn;
 
 import com.marcnuri.mnimapsync.index.MessageId.MessageIdException;
+import com.sun.mail.imap.IMAPFolder;
 import com.sun.mail.imap.IMAPMessage;
+import javax.mail.FetchProfile;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
@@ -112,4 +116,64 @@ public class MessageIdTest {
     // Then
     assertThat(result, equalTo(false));
   }
+
+  @Test
+  void equalTo_fingerprintOfEqualMessageId_shouldBeEqual() throws Exception {
+    // Given
+    final IMAPMessage imapMessage = Mockito.mock(IMAPMessage.class);
+    doReturn(new String[]{"SAME ID FOR BOTH"}).when(imapMessage).getHeader("Message-Id");
+    doReturn(new String[]{"mrblonde@email.com", "mrblue@email.com"})
+        .doReturn(new String[]{"\"Mr. Blue\" <mrblue@email.com>", "mrblonde@email.com"})
+        .when(imapMessage).getHeader("To");
+    final MessageId firstMessageId = new MessageId(imapMessage);
+    final MessageId secondMessageId = new MessageId(imapMessage).toFingerprint();
+    // When
+    final boolean result = firstMessageId.equals(secondMessageId);
+    // Then
+    assertThat(result, equalTo(true));
+    assertThat(secondMessageId.isFingerprint(), equalTo(true));
+    assertThat(firstMessageId.hashCode(), equalTo(secondMessageId.hashCode()));
+  }
+
+  @Test
+  void equalTo_fingerprintOfMessageIdWithShiftedFields_shouldNotBeEqual() throws Exception {
+    // Given
+    final IMAPMessage imapMessage = Mockito.mock(IMAPMessage.class);
+    doReturn(new String[]{"SAME ID FOR BOTH"}).when(imapMessage).getHeader("Message-Id");
+    doReturn(new String[]{"mrblonde@email.com"}).doReturn(new String[0])
+        .when(imapMessage).getHeader("From");
+    doReturn(new String[0]).doReturn(new String[]{"mrblonde@email.com"})
+        .when(imapMessage).getHeader("To");
+    final MessageId firstMessageId = new MessageId(imapMessage).toFingerprint();
+    final MessageId secondMessageId = new MessageId(imapMessage).toFingerprint();
+    // When
+    final boolean result = firstMessageId.equals(secondMessageId);
+    // Then
+    assertThat(result, equalTo(false));
+  }
+
+  @Test
+  void addHeaders_headers_shouldAddEnvelopeAndHeaders() {
+    // Given
+    final FetchProfile fetchProfile = new FetchProfile();
+    // When
+    final FetchProfile result = MessageId.addHeaders(fetchProfile, IdentityFetch.HEADERS);
+    // Then
+    assertThat(result.contains(FetchProfile.Item.ENVELOPE), equalTo(true));
+    assertThat(result.contains(IMAPFolder.FetchProfileItem.HEADERS), equalTo(true));
+    assertThat(result.getHeaderNames(), emptyArray());
+  }
+
+  @Test
+  void addHeaders_headerFields_shouldOnlyAddIdentityHeaders() {
+    // Given
+    final FetchProfile fetchProfile = new FetchProfile();
+    // When
+    final FetchProfile result = MessageId.addHeaders(fetchProfile, IdentityFetch.HEADER_FIELDS);
+    // Then
+    assertThat(result.contains(FetchProfile.Item.ENVELOPE), equalTo(false));
+    assertThat(result.contains(IMAPFolder.FetchProfileItem.HEADERS), equalTo(false));
+    assertThat(result.getHeaderNames(),
+        arrayContainingInAnyOrder("MESSAGE-ID", "SUBJECT", "FROM", "TO"));
+  }
 }
@@ -0,0 +1,110 @@
+/*
+ * SortedFingerprintsTest.java
+ *
+ * Created on 2026-10-17, 23:58
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+class SortedFingerprintsTest {
+
+  @Test
+  void valuesMissingFrom_someFingerprintsInOther_shouldReturnValuesOfMissingRecords() {
+    // Given
+    final long[] records = {
+        3L, 3L, 30L,
+        -1L, 5L, 10L,
+        3L, -3L, 20L,
+        7L, 7L, 40L
+    };
+    final Set<MessageId> messages = new HashSet<>();
+    messages.add(MessageId.fromFingerprint(3L, 3L));
+    messages.add(MessageId.fromFingerprint(8L, 8L));
+    // When
+    final long[] result = SortedFingerprints.withValues(records, 4)
+        .valuesMissingFrom(SortedFingerprints.of(messages));
+    // Then
+    assertThat(result, equalTo(new long[]{10L, 20L, 40L}));
+  }
+
+  @Test
+  void valuesMissingFrom_randomRecords_shouldMatchHashLookup() {
+    // Given
+    final Random random = new Random(1337L);
+    final FingerprintSet messages = new FingerprintSet();
+    final long[] records = new long[10_000 * 3];
+    final Set<Long> expected = new HashSet<>();
+    for (int it = 0; it < 10_000; it++) {
+      records[it * 3] = random.nextInt(100);
+      records[it * 3 + 1] = random.nextLong();
+      records[it * 3 + 2] = it;
+      if (random.nextBoolean()) {
+        messages.add(records[it * 3], records[it * 3 + 1]);
+      } else {
+        expected.add((long) it);
+      }
+    }
+    // When
+    final long[] result = SortedFingerprints.withValues(records, 10_000)
+        .valuesMissingFrom(SortedFingerprints.of(messages));
+    // Then
+    assertThat(result.length, equalTo(expected.size()));
+    assertThat(Arrays.stream(result).allMatch(expected::contains), equalTo(true));
+  }
+
+  @Test
+  void countMissingFrom_duplicateFingerprints_shouldCountEveryMissingFingerprint() {
+    // Given
+    final long[] records = {
+        1L, 1L, 0L,
+        1L, 1L, 0L,
+        2L, 2L, 0L,
+        2L, 2L, 0L
+    };
+    final Set<MessageId> messages = new HashSet<>();
+    messages.add(MessageId.fromFingerprint(1L, 1L));
+    // When
+    final int result = SortedFingerprints.withValues(records, 4)
+        .countMissingFrom(SortedFingerprints.of(messages));
+    // Then
+    assertThat(result, equalTo(2));
+  }
+
+  @Test
+  void valuesMissingFrom_noValues_shouldThrowException() {
+    // Given
+    final SortedFingerprints sortedFingerprints = SortedFingerprints.of(new FingerprintSet());
+    // When
+    final IllegalStateException result = assertThrows(IllegalStateException.class,
+        () -> sortedFingerprints.valuesMissingFrom(sortedFingerprints));
+    // Then
+    assertThat(result.getMessage(), equalTo("Fingerprints have no associated values"));
+  }
+}
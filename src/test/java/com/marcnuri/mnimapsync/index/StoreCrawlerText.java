@@ -20,22 +20,27 @@
  */
 package com.marcnuri.mnimapsync.index;
 
+import static com.marcnuri.mnimapsync.index.StoreCrawler.awaitPopulateFromStore;
 import static com.marcnuri.mnimapsync.index.StoreCrawler.populateFromStore;
+import static com.marcnuri.mnimapsync.index.StoreCrawler.startPopulateFromStore;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import com.marcnuri.mnimapsync.WorkerOptions;
 import com.sun.mail.imap.IMAPFolder;
 import com.sun.mail.imap.IMAPMessage;
 import com.sun.mail.imap.IMAPStore;
+import java.util.concurrent.CompletableFuture;
 import javax.mail.Folder;
 import javax.mail.MessagingException;
 import org.junit.jupiter.api.AfterEach;
@@ -75,7 +80,7 @@ class StoreCrawlerText {
     final Index index = new Index();
     doReturn(1).when(defaultFolder).getMessageCount();
     // When
-    populateFromStore(index, imapStore, 1);
+    populateFromStore(index, imapStore, new WorkerOptions());
     // Then
     verify(defaultFolder, times(1)).expunge();
     assertThat(index.containsFolder("INBOX"), equalTo(true));
@@ -93,7 +98,7 @@ class StoreCrawlerText {
     doReturn(1).when(defaultFolder).getMessageCount();
     // When
     final MessagingException result = assertThrows(MessagingException.class, () -> {
-      populateFromStore(index, imapStore, 1);
+      populateFromStore(index, imapStore, new WorkerOptions());
       fail();
     });
     // Then
@@ -105,6 +110,47 @@ class StoreCrawlerText {
     assertThat(result.getMessage(), equalTo("Indexing tasks went wrong at some point"));
   }
 
+  @Test
+  void populateFromStore_indexWithUnchangedFolderState_shouldKeepMessagesAndSkipCrawl() throws Exception {
+    // Given
+    final Index index = new Index();
+    final MessageId previousMessage = previousMessageId();
+    index.setFolderState("INBOX", new FolderState(1337L, 2L, 1));
+    index.getFolderMessages("INBOX").add(previousMessage);
+    doReturn(1).when(defaultFolder).getMessageCount();
+    doReturn(1337L).when(defaultFolder).getUIDValidity();
+    doReturn(2L).when(defaultFolder).getUIDNext();
+    // When
+    populateFromStore(index, imapStore, new WorkerOptions());
+    // Then
+    verify(defaultFolder, times(0)).getMessagesByUID(anyLong(), anyLong());
+    assertThat(index.getFolderMessages("INBOX").contains(previousMessage), equalTo(true));
+    assertThat(index.getFolderState("INBOX"), equalTo(new FolderState(1337L, 2L, 1)));
+  }
+
+  @Test
+  void populateFromStore_indexWithInvalidatedFolderState_shouldResetFolder() throws Exception {
+    // Given
+    final Index index = new Index();
+    final MessageId previousMessage = previousMessageId();
+    index.setFolderState("INBOX", new FolderState(1L, 2L, 1));
+    index.getFolderMessages("INBOX").add(previousMessage);
+    doReturn(1).when(defaultFolder).getMessageCount();
+    doReturn(1337L).when(defaultFolder).getUIDValidity();
+    doReturn(2L).when(defaultFolder).getUIDNext();
+    // When
+    populateFromStore(index, imapStore, new WorkerOptions());
+    // Then
+    assertThat(index.getFolderMessages("INBOX").contains(previousMessage), equalTo(false));
+    assertThat(index.getFolderState("INBOX"), equalTo(new FolderState(1337L, 2L, 1)));
+  }
+
+  private static MessageId previousMessageId() throws Exception {
+    final IMAPMessage message = Mockito.mock(IMAPMessage.class);
+    doReturn(new String[]{"1337"}).when(message).getHeader("Message-Id");
+    return new MessageId(message);
+  }
+
   private static IMAPFolder mockFolder(String name) throws MessagingException {
     final IMAPFolder mockFolder = Mockito.mock(IMAPFolder.class);
     doReturn(name).when(mockFolder).getFullName();
@@ -114,4 +160,35 @@ class StoreCrawlerText {
     doReturn(new IMAPMessage[0]).when(mockFolder).getMessages(anyInt(), anyInt());
     return mockFolder;
   }
+
+  @Test
+  void startPopulateFromStore_storeHasFolders_shouldAllowAwaitingEachFolder() throws Exception {
+    // Given
+    final Index index = new Index();
+    doReturn(1).when(defaultFolder).getMessageCount();
+    // When
+    final CompletableFuture<Index> result = startPopulateFromStore(index, imapStore,
+        new WorkerOptions());
+    // Then
+    assertThat(index.containsFolder("Folder 1"), equalTo(true));
+    index.awaitFolderCrawl("INBOX");
+    index.awaitFolderCrawl("Non Existent Folder");
+    assertThat(awaitPopulateFromStore(result), equalTo(index));
+  }
+
+  @Test
+  void startPopulateFromStore_indexHasExceptions_shouldThrowExceptionWhenAwaitingFolder() throws Exception {
+    // Given
+    final Index index = new Index();
+    index.addCrawlException(new MessagingException("Indexing tasks went wrong at some point"));
+    doReturn(1).when(defaultFolder).getMessageCount();
+    startPopulateFromStore(index, imapStore, new WorkerOptions());
+    // When
+    final MessagingException result = assertThrows(MessagingException.class, () -> {
+      index.awaitFolderCrawl("INBOX");
+      fail();
+    });
+    // Then
+    assertThat(result.getMessage(), equalTo("Indexing tasks went wrong at some point"));
+  }
 }
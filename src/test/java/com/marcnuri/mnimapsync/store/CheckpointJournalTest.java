@@ -0,0 +1,142 @@
+/*
+ * CheckpointJournalTest.java
+ *
+ * Created on 2026-10-17, 21:05
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.store;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+
+import com.marcnuri.mnimapsync.index.MessageId;
+import com.marcnuri.mnimapsync.store.CheckpointJournal.CompletedUnit;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+class CheckpointJournalTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void load_journalWithRecords_shouldRestoreCompletedUnitsAndAppendedMessages() throws Exception {
+    // Given
+    final File file = tempDir.resolve("copy.journal").toFile();
+    try (CheckpointJournal journal = new CheckpointJournal(file)) {
+      journal.appended("Target", Collections.singletonList(MessageId.fromFingerprint(1L, 1L)));
+      journal.unitCompleted("INBOX", 1337L, 20L, 30L, Arrays.asList(
+          MessageId.fromFingerprint(1L, 1L), MessageId.fromFingerprint(2L, 2L)));
+      journal.unitCompleted("INBOX", 1337L, 1L, 10L, Collections.emptyList());
+      journal.unitCompleted("INBOX", 1L, 40L, 50L, Collections.emptyList());
+    }
+    // When
+    try (CheckpointJournal result = new CheckpointJournal(file)) {
+      // Then
+      final List<CompletedUnit> completedUnits = result.getCompletedUnits("INBOX", 1337L);
+      assertThat(completedUnits, hasSize(2));
+      assertThat(completedUnits.get(0).getFirstUid(), is(1L));
+      assertThat(completedUnits.get(1).getFirstUid(), is(20L));
+      assertThat(completedUnits.get(1).contains(30L), is(true));
+      assertThat(completedUnits.get(1).contains(31L), is(false));
+      assertThat(completedUnits.get(1).getMessageIds(), contains(
+          MessageId.fromFingerprint(1L, 1L), MessageId.fromFingerprint(2L, 2L)));
+      assertThat(result.isAppended("Target", MessageId.fromFingerprint(1L, 1L)), is(true));
+      assertThat(result.isAppended("Other", MessageId.fromFingerprint(1L, 1L)), is(false));
+    }
+  }
+
+  @Test
+  void load_incompleteLastRecord_shouldDiscardRecordAndKeepAppending() throws Exception {
+    // Given
+    final File file = tempDir.resolve("copy.journal").toFile();
+    try (CheckpointJournal journal = new CheckpointJournal(file)) {
+      journal.unitCompleted("INBOX", 1337L, 1L, 10L, Collections.emptyList());
+      journal.unitCompleted("INBOX", 1337L, 11L, 20L, Collections.emptyList());
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(raf.length() - 3);
+    }
+    // When
+    try (CheckpointJournal journal = new CheckpointJournal(file)) {
+      journal.unitCompleted("INBOX", 1337L, 21L, 30L, Collections.emptyList());
+    }
+    // Then
+    try (CheckpointJournal result = new CheckpointJournal(file)) {
+      final List<CompletedUnit> completedUnits = result.getCompletedUnits("INBOX", 1337L);
+      assertThat(completedUnits, hasSize(2));
+      assertThat(completedUnits.get(0).getLastUid(), is(10L));
+      assertThat(completedUnits.get(1).getFirstUid(), is(21L));
+    }
+  }
+
+  @Test
+  void load_unknownRecordType_shouldTruncateJournalAndKeepAppending() throws Exception {
+    // Given
+    final File file = tempDir.resolve("copy.journal").toFile();
+    final long validLength;
+    try (CheckpointJournal journal = new CheckpointJournal(file)) {
+      journal.unitCompleted("INBOX", 1337L, 1L, 10L, Collections.emptyList());
+      validLength = file.length();
+      journal.unitCompleted("INBOX", 1337L, 11L, 20L, Collections.emptyList());
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.seek(validLength);
+      raf.writeByte('X');
+    }
+    // When
+    try (CheckpointJournal journal = new CheckpointJournal(file)) {
+      journal.unitCompleted("INBOX", 1337L, 21L, 30L, Collections.emptyList());
+    }
+    // Then
+    try (CheckpointJournal result = new CheckpointJournal(file)) {
+      final List<CompletedUnit> completedUnits = result.getCompletedUnits("INBOX", 1337L);
+      assertThat(completedUnits, hasSize(2));
+      assertThat(completedUnits.get(0).getLastUid(), is(10L));
+      assertThat(completedUnits.get(1).getFirstUid(), is(21L));
+    }
+  }
+
+  @Test
+  void reset_journalWithRecords_shouldDiscardEveryRecord() throws Exception {
+    // Given
+    final File file = tempDir.resolve("copy.journal").toFile();
+    try (CheckpointJournal journal = new CheckpointJournal(file)) {
+      journal.unitCompleted("INBOX", 1337L, 1L, 10L, Collections.emptyList());
+      journal.appended("INBOX", Collections.singletonList(MessageId.fromFingerprint(1L, 1L)));
+      // When
+      journal.reset();
+    }
+    // Then
+    try (CheckpointJournal result = new CheckpointJournal(file)) {
+      assertThat(result.getCompletedUnits("INBOX", 1337L), empty());
+      assertThat(result.isAppended("INBOX", MessageId.fromFingerprint(1L, 1L)), is(false));
+    }
+  }
+}
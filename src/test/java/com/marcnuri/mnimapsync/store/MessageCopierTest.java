@@ -21,11 +21,14 @@
 package com.marcnuri.mnimapsync.store;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.times;
@@ -36,8 +39,14 @@ import com.marcnuri.mnimapsync.index.MessageId;
 import com.sun.mail.imap.IMAPFolder;
 import com.sun.mail.imap.IMAPMessage;
 import com.sun.mail.imap.IMAPStore;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import javax.mail.Folder;
 import javax.mail.Message;
 import javax.mail.MessagingException;
 import org.junit.jupiter.api.AfterEach;
@@ -66,7 +75,8 @@ public class MessageCopierTest {
     doReturn(imapFolder).when(imapStore).getDefaultFolder();
     sourceIndex = Mockito.spy(new Index());
     targetIndex = Mockito.spy(new Index());
-    storeCopier = Mockito.spy(new StoreCopier(imapStore, sourceIndex, imapStore, targetIndex, 1));
+    storeCopier = Mockito.spy(new StoreCopier(imapStore, sourceIndex, imapStore, targetIndex,
+        new CopyOptions()));
   }
 
   @AfterEach
@@ -144,8 +154,234 @@ public class MessageCopierTest {
     messageCopier.run();
     // Then
     assertThat(storeCopier.getCopyExceptions(), hasSize(1));
+    assertThat(storeCopier.isSourceIndexComplete(), equalTo(false));
     verify(storeCopier, times(1)).updatedMessagesCopiedCount(eq(0L));
     verify(storeCopier, times(1)).updateMessagesSkippedCount(eq(0L));
     verify(sourceIndex, times(1)).updatedIndexedMessageCount(eq(0L));
   }
+
+  @Test
+  void run_targetFolderCrawlFailed_shouldNotCopy() throws Exception {
+    // Given
+    final MessageCopier messageCopier = new MessageCopier(
+        storeCopier, "Source Folder", "Target Folder", 0, 100, new HashSet<>());
+    final IMAPMessage newMessage = Mockito.mock(IMAPMessage.class);
+    doReturn(new String[]{"313373"}).when(newMessage).getHeader("Message-Id");
+    doReturn(new Message[]{newMessage}).when(imapFolder).getMessages(eq(0), eq(100));
+    doThrow(new MessagingException("Target crawl failed"))
+        .when(targetIndex).awaitFolderCrawl("Target Folder");
+    // When
+    messageCopier.run();
+    // Then
+    verify(imapFolder, times(0)).appendMessages(ArgumentMatchers.any());
+    assertThat(storeCopier.getCopyExceptions(), hasSize(1));
+    verify(storeCopier, times(1)).updatedMessagesCopiedCount(eq(0L));
+  }
+
+  @Test
+  void run_targetAppendFails_shouldRecordExceptionAndNotRegisterMessage() throws Exception {
+    // Given
+    final Set<MessageId> copiedMessages = new HashSet<>();
+    final MessageCopier messageCopier = new MessageCopier(
+        storeCopier, "Source Folder", "Target Folder", 0, 100, copiedMessages);
+    final IMAPMessage newMessage = Mockito.mock(IMAPMessage.class);
+    doReturn(new String[]{"313373"}).when(newMessage).getHeader("Message-Id");
+    doReturn(new Message[]{newMessage}).when(imapFolder).getMessages(eq(0), eq(100));
+    doThrow(new MessagingException("Append failed"))
+        .when(imapFolder).appendMessages(ArgumentMatchers.any());
+    // When
+    messageCopier.run();
+    // Then
+    assertThat(storeCopier.getCopyExceptions(), hasSize(1));
+    assertThat(storeCopier.getCopyExceptions().get(0).getMessage(), equalTo("Append failed"));
+    assertThat(storeCopier.isSourceIndexComplete(), equalTo(true));
+    assertThat(copiedMessages.contains(new MessageId(newMessage)), equalTo(false));
+    verify(storeCopier, times(1)).updatedMessagesCopiedCount(eq(0L));
+    //Source folder is kept selected for the next batch
+    verify(imapFolder, times(0)).close(ArgumentMatchers.anyBoolean());
+  }
+
+  @Test
+  void run_targetSupportsMultiAppend_shouldAppendBatchWithSingleCommand() throws Exception {
+    // Given
+    final Set<MessageId> copiedMessages = new HashSet<>();
+    final MessageCopier messageCopier = new MessageCopier(
+        storeCopier, "Source Folder", "Target Folder", 0, 100, copiedMessages);
+    final IMAPMessage firstMessage = Mockito.mock(IMAPMessage.class);
+    doReturn(new String[]{"1337"}).when(firstMessage).getHeader("Message-Id");
+    final IMAPMessage secondMessage = Mockito.mock(IMAPMessage.class);
+    doReturn(new String[]{"313373"}).when(secondMessage).getHeader("Message-Id");
+    doReturn(new Message[]{firstMessage, secondMessage}).when(imapFolder).getMessages(eq(0), eq(100));
+    doReturn("Target Folder").when(imapFolder).getFullName();
+    doReturn(true).when(imapStore).hasCapability("MULTIAPPEND");
+    // When
+    messageCopier.run();
+    // Then
+    verify(imapFolder, times(1)).doCommand(ArgumentMatchers.any());
+    verify(imapFolder, times(0)).appendMessages(ArgumentMatchers.any());
+    assertThat(storeCopier.getMessagesCopiedCount(), equalTo(2L));
+    assertThat(copiedMessages, hasSize(2));
+  }
+
+  @Test
+  void run_targetMultiAppendFails_shouldAppendMessagesOneByOne() throws Exception {
+    // Given
+    final Set<MessageId> copiedMessages = new HashSet<>();
+    final MessageCopier messageCopier = new MessageCopier(
+        storeCopier, "Source Folder", "Target Folder", 0, 100, copiedMessages);
+    final IMAPMessage firstMessage = Mockito.mock(IMAPMessage.class);
+    doReturn(new String[]{"1337"}).when(firstMessage).getHeader("Message-Id");
+    final IMAPMessage secondMessage = Mockito.mock(IMAPMessage.class);
+    doReturn(new String[]{"313373"}).when(secondMessage).getHeader("Message-Id");
+    doReturn(new Message[]{firstMessage, secondMessage}).when(imapFolder).getMessages(eq(0), eq(100));
+    doReturn("Target Folder").when(imapFolder).getFullName();
+    doReturn(true).when(imapStore).hasCapability("MULTIAPPEND");
+    doThrow(new MessagingException("MULTIAPPEND failed"))
+        .when(imapFolder).doCommand(ArgumentMatchers.any());
+    // When
+    messageCopier.run();
+    // Then
+    verify(imapFolder, times(2)).appendMessages(ArgumentMatchers.any());
+    assertThat(storeCopier.getCopyExceptions(), hasSize(0));
+    assertThat(storeCopier.getMessagesCopiedCount(), equalTo(2L));
+    assertThat(copiedMessages, hasSize(2));
+  }
+
+  @Test
+  void run_sourceConnectionDropped_shouldRetryUnit() throws Exception {
+    // Given
+    final Set<MessageId> copiedMessages = new HashSet<>();
+    final MessageCopier messageCopier = new MessageCopier(
+        storeCopier, "Source Folder", "Target Folder", 0, 100, copiedMessages);
+    final IMAPMessage newMessage = Mockito.mock(IMAPMessage.class);
+    doReturn(new String[]{"313373"}).when(newMessage).getHeader("Message-Id");
+    doReturn(new Message[]{newMessage}).when(imapFolder).getMessages(eq(0), eq(100));
+    doThrow(new MessagingException("Fetch failed", new SocketException("Connection reset")))
+        .doNothing().when(imapFolder).fetch(ArgumentMatchers.any(), ArgumentMatchers.any());
+    // When
+    messageCopier.run();
+    // Then
+    assertThat(storeCopier.getCopyExceptions(), hasSize(0));
+    assertThat(storeCopier.getMessagesCopiedCount(), equalTo(1L));
+    assertThat(copiedMessages.contains(new MessageId(newMessage)), equalTo(true));
+    //Source folder is opened by both attempts, target folder by the append worker
+    verify(imapFolder, times(3)).open(anyInt());
+  }
+
+  @Test
+  void run_newMessage_shouldAppendOnSelectedTargetFolder() throws Exception {
+    // Given
+    final MessageCopier messageCopier = new MessageCopier(
+        storeCopier, "Source Folder", "Target Folder", 0, 100, new HashSet<>());
+    final IMAPMessage newMessage = Mockito.mock(IMAPMessage.class);
+    doReturn(new String[]{"313373"}).when(newMessage).getHeader("Message-Id");
+    doReturn(new Message[]{newMessage}).when(imapFolder).getMessages(eq(0), eq(100));
+    // When
+    messageCopier.run();
+    // Then
+    verify(imapStore, times(1)).getFolder("Target Folder");
+    //Source folder and target folder
+    verify(imapFolder, times(2)).open(Folder.READ_WRITE);
+    verify(imapFolder, times(1)).appendMessages(ArgumentMatchers.any());
+    assertThat(storeCopier.getMessagesCopiedCount(), equalTo(1L));
+  }
+
+  @Test
+  void run_targetAppendTransientFailure_shouldRetryMessage() throws Exception {
+    // Given
+    final Set<MessageId> copiedMessages = new HashSet<>();
+    final MessageCopier messageCopier = new MessageCopier(
+        storeCopier, "Source Folder", "Target Folder", 0, 100, copiedMessages);
+    final IMAPMessage newMessage = Mockito.mock(IMAPMessage.class);
+    doReturn(new String[]{"313373"}).when(newMessage).getHeader("Message-Id");
+    doReturn(new Message[]{newMessage}).when(imapFolder).getMessages(eq(0), eq(100));
+    doThrow(new MessagingException("* BYE [UNAVAILABLE] Try again later"))
+        .doReturn(null).when(imapFolder).appendMessages(ArgumentMatchers.any());
+    // When
+    messageCopier.run();
+    // Then
+    verify(imapFolder, times(2)).appendMessages(ArgumentMatchers.any());
+    assertThat(storeCopier.getCopyExceptions(), hasSize(0));
+    assertThat(storeCopier.getMessagesCopiedCount(), equalTo(1L));
+  }
+
+  @Test
+  void run_targetAppendFailsForOneMessage_shouldOnlyFailThatMessage() throws Exception {
+    // Given
+    final Set<MessageId> copiedMessages = new HashSet<>();
+    final MessageCopier messageCopier = new MessageCopier(
+        storeCopier, "Source Folder", "Target Folder", 0, 100, copiedMessages);
+    final Message[] messages = new Message[3];
+    for (int it = 0; it < messages.length; it++) {
+      messages[it] = Mockito.mock(IMAPMessage.class);
+      doReturn(new String[]{"1337" + it}).when(messages[it]).getHeader("Message-Id");
+    }
+    doReturn(messages).when(imapFolder).getMessages(eq(0), eq(100));
+    doReturn("Target Folder").when(imapFolder).getFullName();
+    doThrow(new MessagingException("Message rejected")).doReturn(null).doReturn(null)
+        .when(imapFolder).appendMessages(ArgumentMatchers.any());
+    // When
+    messageCopier.run();
+    // Then
+    verify(imapFolder, times(3)).appendMessages(ArgumentMatchers.any());
+    assertThat(storeCopier.getCopyExceptions(), hasSize(1));
+    assertThat(storeCopier.getMessagesCopiedCount(), equalTo(2L));
+    assertThat(copiedMessages, hasSize(2));
+    assertThat(storeCopier.isSourceIndexComplete(), equalTo(true));
+  }
+
+  @Test
+  void run_serverSideCopy_shouldCopyWithinSourceStore() throws Exception {
+    // Given
+    final CopyOptions copyOptions = new CopyOptions();
+    copyOptions.setServerSideCopy(true);
+    storeCopier = Mockito.spy(new StoreCopier(imapStore, sourceIndex, imapStore, targetIndex,
+        copyOptions));
+    final Set<MessageId> copiedMessages = new HashSet<>();
+    final MessageCopier messageCopier = new MessageCopier(
+        storeCopier, "Source Folder", "Target Folder", 0, 100, copiedMessages);
+    final IMAPMessage newMessage = Mockito.mock(IMAPMessage.class);
+    doReturn(new String[]{"313373"}).when(newMessage).getHeader("Message-Id");
+    doReturn(new Message[]{newMessage}).when(imapFolder).getMessages(eq(0), eq(100));
+    // When
+    messageCopier.run();
+    // Then
+    verify(imapFolder, times(1)).copyUIDMessages(ArgumentMatchers.any(), eq(imapFolder));
+    verify(imapFolder, times(0)).appendMessages(ArgumentMatchers.any());
+    verify(storeCopier, times(1)).updatedMessagesCopiedCount(eq(1L));
+    assertThat(copiedMessages.contains(new MessageId(newMessage)), equalTo(true));
+  }
+
+  @Test
+  void run_batchFailsWhileStreaming_shouldAwaitStreamBeforeClosingSourceFolder() throws Exception {
+    // Given
+    final MessageCopier messageCopier = new MessageCopier(
+        storeCopier, "Source Folder", "Target Folder", 0, 100, new HashSet<>());
+    final IMAPMessage largeMessage = Mockito.mock(IMAPMessage.class);
+    doReturn(new String[]{"1337"}).when(largeMessage).getHeader("Message-Id");
+    doReturn(2 * 1024 * 1024).when(largeMessage).getSize();
+    final IMAPMessage smallMessage = Mockito.mock(IMAPMessage.class);
+    doReturn(new String[]{"313373"}).when(smallMessage).getHeader("Message-Id");
+    doThrow(new MessagingException("Fetch failed", new SocketException("Connection reset")))
+        .doNothing().when(smallMessage).writeTo(ArgumentMatchers.any());
+    doReturn(new Message[]{largeMessage, smallMessage}).when(imapFolder)
+        .getMessages(eq(0), eq(100));
+    doReturn(true).when(imapFolder).isOpen();
+    final List<String> events = Collections.synchronizedList(new ArrayList<>());
+    doAnswer(invocation -> events.add("close")).when(imapFolder).close(anyBoolean());
+    doAnswer(invocation -> CompletableFuture.supplyAsync(() -> {
+      try {
+        Thread.sleep(100L);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      events.add("append");
+      return 1L;
+    })).when(storeCopier).append(ArgumentMatchers.any());
+    // When
+    messageCopier.run();
+    // Then
+    assertThat(storeCopier.getCopyExceptions(), hasSize(0));
+    assertThat(events.subList(0, 2), contains("append", "close"));
+  }
 }
@@ -22,12 +22,19 @@ package com.marcnuri.mnimapsync.store;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import com.marcnuri.mnimapsync.WorkerOptions;
+import com.marcnuri.mnimapsync.index.FolderUids;
 import com.marcnuri.mnimapsync.index.Index;
 import com.marcnuri.mnimapsync.index.MessageId;
 import com.sun.mail.imap.IMAPFolder;
@@ -37,6 +44,7 @@ import java.util.HashSet;
 import java.util.Set;
 import javax.mail.Flags.Flag;
 import javax.mail.Message;
+import javax.mail.MessagingException;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -63,7 +71,8 @@ class MessageDeleterTest {
     sourceIndex.setFolderSeparator(".");
     targetIndex = Mockito.spy(new Index());
     targetIndex.setFolderSeparator("_");
-    storeDeleter = Mockito.spy(new StoreDeleter(sourceIndex, targetIndex, imapStore, 1));
+    storeDeleter = Mockito.spy(new StoreDeleter(sourceIndex, targetIndex, imapStore,
+        new WorkerOptions()));
   }
 
   @AfterEach
@@ -79,7 +88,7 @@ class MessageDeleterTest {
     // Given
     final MessageDeleter messageDeleter = new MessageDeleter(
         storeDeleter, "Target Folder",
-        0, 100, true, new HashSet<>());
+        0, 100, new HashSet<>());
     doReturn(new Message[0]).when(imapFolder).getMessages(eq(0), eq(100));
     // When
     messageDeleter.run();
@@ -94,7 +103,7 @@ class MessageDeleterTest {
     final Set<MessageId> sourceFolderMessages = new HashSet<>();
     final MessageDeleter messageDeleter = new MessageDeleter(
         storeDeleter, "Target Folder",
-        0, 100, true, sourceFolderMessages);
+        0, 100, sourceFolderMessages);
     final IMAPMessage message = Mockito.mock(IMAPMessage.class);
     doReturn(new String[]{"1337"}).when(message).getHeader("Message-Id");
     sourceFolderMessages.add(new MessageId(message));
@@ -102,7 +111,8 @@ class MessageDeleterTest {
     // When
     messageDeleter.run();
     // Then
-    verify(imapFolder, times(1)).close(eq(true));
+    verify(imapFolder, never()).doCommand(any());
+    verify(storeDeleter, never()).flaggedDeleted(anyString(), any(), any());
     verify(storeDeleter, times(1)).updatedMessagesDeletedCount(eq(0L));
     verify(storeDeleter, times(1)).updateMessagesSkippedCount(eq(1L));
     assertThat(storeDeleter.getMessagesSkippedCount(), equalTo(1L));
@@ -114,20 +124,109 @@ class MessageDeleterTest {
     final Set<MessageId> sourceFolderMessages = new HashSet<>();
     final MessageDeleter messageDeleter = new MessageDeleter(
         storeDeleter, "Target Folder",
-        0, 100, true, sourceFolderMessages);
+        0, 100, sourceFolderMessages);
     final IMAPMessage existingSourceMessage = Mockito.mock(IMAPMessage.class);
     doReturn(new String[]{"1337"}).when(existingSourceMessage).getHeader("Message-Id");
     sourceFolderMessages.add(new MessageId(existingSourceMessage));
     final IMAPMessage deletableMessage = Mockito.mock(IMAPMessage.class);
     doReturn(new String[]{"313373"}).when(deletableMessage).getHeader("Message-Id");
+    doReturn(313373L).when(imapFolder).getUID(deletableMessage);
     doReturn(new Message[]{existingSourceMessage, deletableMessage}).when(imapFolder).getMessages(eq(0), eq(100));
     // When
     messageDeleter.run();
     // Then
-    verify(deletableMessage, times(1)).setFlag(eq(Flag.DELETED), eq(true));
-    verify(imapFolder, times(1)).close(eq(true));
+    verify(deletableMessage, never()).setFlag(any(Flag.class), anyBoolean());
+    verify(imapFolder, times(1)).doCommand(any());
+    verify(imapFolder, never()).close(anyBoolean());
+    verify(storeDeleter, times(1)).flaggedDeleted(eq("Target Folder"), eq(new long[]{313373L}),
+        any());
     verify(storeDeleter, times(1)).updatedMessagesDeletedCount(eq(1L));
     verify(storeDeleter, times(1)).updateMessagesSkippedCount(eq(1L));
     assertThat(storeDeleter.getMessagesSkippedCount(), equalTo(1L));
   }
+
+  @Test
+  void run_deletableMessage_shouldRemoveMessageFromTargetIndex() throws Exception {
+    // Given
+    final MessageDeleter messageDeleter = new MessageDeleter(
+        storeDeleter, "Target Folder",
+        0, 100, new HashSet<>());
+    final IMAPMessage deletableMessage = Mockito.mock(IMAPMessage.class);
+    doReturn(new String[]{"313373"}).when(deletableMessage).getHeader("Message-Id");
+    doReturn(313373L).when(imapFolder).getUID(deletableMessage);
+    doReturn(new Message[]{deletableMessage}).when(imapFolder).getMessages(eq(0), eq(100));
+    targetIndex.getFolderMessages("Target Folder").add(new MessageId(deletableMessage));
+    // When
+    messageDeleter.run();
+    // Then
+    assertThat(targetIndex.getFolderMessages("Target Folder").isEmpty(), equalTo(true));
+  }
+
+  @Test
+  void run_plannedUids_shouldFlagUidsWithoutFetchingHeaders() throws Exception {
+    // Given
+    final MessageDeleter messageDeleter = new MessageDeleter(
+        storeDeleter, "Target Folder", new FolderUids(1L), new long[]{1L, 2L, 3L});
+    // When
+    messageDeleter.run();
+    // Then
+    verify(imapFolder, never()).getMessages(anyInt(), anyInt());
+    verify(imapFolder, never()).fetch(any(), any());
+    verify(imapFolder, times(1)).doCommand(any());
+    verify(storeDeleter, times(1)).flaggedDeleted(eq("Target Folder"),
+        eq(new long[]{1L, 2L, 3L}), any());
+    verify(storeDeleter, times(1)).updatedMessagesDeletedCount(eq(3L));
+    verify(storeDeleter, times(1)).updateMessagesSkippedCount(eq(0L));
+  }
+
+  @Test
+  void run_plannedUids_shouldRemoveFlaggedMessagesFromTargetIndex() throws Exception {
+    // Given
+    final FolderUids folderUids = new FolderUids(1L);
+    folderUids.add(1L, MessageId.fromFingerprint(1L, 1L));
+    folderUids.add(2L, MessageId.fromFingerprint(2L, 2L));
+    targetIndex.getFolderMessages("Target Folder").add(MessageId.fromFingerprint(1L, 1L));
+    targetIndex.getFolderMessages("Target Folder").add(MessageId.fromFingerprint(2L, 2L));
+    final MessageDeleter messageDeleter = new MessageDeleter(
+        storeDeleter, "Target Folder", folderUids, new long[]{2L});
+    // When
+    messageDeleter.run();
+    // Then
+    assertThat(targetIndex.getFolderMessages("Target Folder").size(), equalTo(1));
+    assertThat(targetIndex.getFolderMessages("Target Folder")
+        .contains(MessageId.fromFingerprint(1L, 1L)), equalTo(true));
+  }
+
+  @Test
+  void run_storeFails_shouldDiscardTargetFolder() throws Exception {
+    // Given
+    final MessageDeleter messageDeleter = new MessageDeleter(
+        storeDeleter, "Target Folder", new FolderUids(1L), new long[]{1L});
+    doReturn(true).when(imapFolder).isOpen();
+    doThrow(new MessagingException("Connection lost")).when(imapFolder).doCommand(any());
+    // When
+    messageDeleter.run();
+    // Then
+    verify(imapFolder, times(1)).close(false);
+    verify(storeDeleter, never()).flaggedDeleted(anyString(), any(), any());
+    verify(storeDeleter, times(1)).updatedMessagesDeletedCount(eq(0L));
+  }
+
+  @Test
+  void run_storeFails_shouldKeepMessageInTargetIndex() throws Exception {
+    // Given
+    final MessageDeleter messageDeleter = new MessageDeleter(
+        storeDeleter, "Target Folder",
+        0, 100, new HashSet<>());
+    final IMAPMessage deletableMessage = Mockito.mock(IMAPMessage.class);
+    doReturn(new String[]{"313373"}).when(deletableMessage).getHeader("Message-Id");
+    doReturn(313373L).when(imapFolder).getUID(deletableMessage);
+    doReturn(new Message[]{deletableMessage}).when(imapFolder).getMessages(eq(0), eq(100));
+    targetIndex.getFolderMessages("Target Folder").add(new MessageId(deletableMessage));
+    doThrow(new MessagingException("Connection lost")).when(imapFolder).doCommand(any());
+    // When
+    messageDeleter.run();
+    // Then
+    assertThat(targetIndex.getFolderMessages("Target Folder").size(), equalTo(1));
+  }
 }
@@ -23,13 +23,19 @@ package com.marcnuri.mnimapsync.store;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
+import com.marcnuri.mnimapsync.index.FolderState;
 import com.marcnuri.mnimapsync.index.Index;
 import com.sun.mail.imap.IMAPFolder;
 import com.sun.mail.imap.IMAPStore;
+import com.sun.mail.imap.protocol.Status;
 import javax.mail.Folder;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -74,7 +80,8 @@ class StoreCopierTest {
   void copy_targetEmpty_shouldCopyFoldersAndMessages() throws Exception {
     // Given
     doReturn(true).when(imapFolder).create(eq(Folder.HOLDS_MESSAGES | Folder.HOLDS_FOLDERS));
-    final StoreCopier storeCopier = new StoreCopier(imapStore, sourceIndex, imapStore, targetIndex, 1);
+    final StoreCopier storeCopier = new StoreCopier(imapStore, sourceIndex, imapStore, targetIndex,
+        new CopyOptions());
     // When
     storeCopier.copy();
     // Then
@@ -90,7 +97,8 @@ class StoreCopierTest {
     // Given
     doReturn(true).when(imapFolder).create(eq(Folder.HOLDS_MESSAGES | Folder.HOLDS_FOLDERS));
     targetIndex.addFolder("INBOX");
-    final StoreCopier storeCopier = new StoreCopier(imapStore, sourceIndex, imapStore, targetIndex, 1);
+    final StoreCopier storeCopier = new StoreCopier(imapStore, sourceIndex, imapStore, targetIndex,
+        new CopyOptions());
     // When
     storeCopier.copy();
     // Then
@@ -100,4 +108,25 @@ class StoreCopierTest {
     assertThat(storeCopier.getFoldersSkippedCount(), equalTo(1));
     assertThat(sourceIndex.containsFolder("INBOX"), equalTo(true));
   }
+
+  @Test
+  void copy_sourceFolderUnchangedSincePreviousRun_shouldSkipFolder() throws Exception {
+    // Given
+    targetIndex.addFolder("INBOX");
+    sourceIndex.setFolderState("INBOX", new FolderState(1337L, 2L, 1));
+    final Status status = Mockito.mock(Status.class);
+    status.uidvalidity = 1337L;
+    status.uidnext = 2L;
+    status.total = 1;
+    doReturn(status).when(imapFolder).doCommand(any());
+    final StoreCopier storeCopier = new StoreCopier(imapStore, sourceIndex, imapStore, targetIndex,
+        new CopyOptions());
+    // When
+    storeCopier.copy();
+    // Then
+    verify(imapFolder, times(0)).open(anyInt());
+    assertThat(storeCopier.hasCopyException(), equalTo(false));
+    assertThat(storeCopier.getFoldersUnchangedCount(), equalTo(1));
+    assertThat(sourceIndex.getFolderState("INBOX"), equalTo(new FolderState(1337L, 2L, 1)));
+  }
 }
@@ -22,10 +22,18 @@ package com.marcnuri.mnimapsync.store;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
+import com.marcnuri.mnimapsync.WorkerOptions;
+import com.marcnuri.mnimapsync.index.FolderUids;
 import com.marcnuri.mnimapsync.index.Index;
+import com.marcnuri.mnimapsync.index.MessageId;
 import com.sun.mail.imap.IMAPFolder;
 import com.sun.mail.imap.IMAPStore;
 import javax.mail.Folder;
@@ -70,7 +78,8 @@ class StoreDeleterTest {
   @Test
   void delete_sourceFolderDoesntExistAndTargetExists_shouldDeleteFoldersAndMessages() throws Exception {
     // Given
-    final StoreDeleter storeDeleter = new StoreDeleter(sourceIndex, targetIndex, imapStore, 1);
+    final StoreDeleter storeDeleter = new StoreDeleter(sourceIndex, targetIndex, imapStore,
+        new WorkerOptions());
     // When
     storeDeleter.delete();
     // Then
@@ -84,7 +93,8 @@ class StoreDeleterTest {
   void delete_sourceFolderAndTargetExist_shouldNotDeleteFoldersAndMessages() throws Exception {
     // Given
     sourceIndex.addFolder("MissingFolder");
-    final StoreDeleter storeDeleter = new StoreDeleter(sourceIndex, targetIndex, imapStore, 1);
+    final StoreDeleter storeDeleter = new StoreDeleter(sourceIndex, targetIndex, imapStore,
+        new WorkerOptions());
     // When
     storeDeleter.delete();
     // Then
@@ -93,4 +103,58 @@ class StoreDeleterTest {
     assertThat(storeDeleter.getMessagesDeletedCount(), equalTo(0L));
     assertThat(storeDeleter.getMessagesSkippedCount(), equalTo(0L));
   }
+
+  @Test
+  void delete_targetFolderWithIndexedUids_shouldDeleteMessagesWithoutFetchingHeaders()
+      throws Exception {
+    // Given
+    sourceIndex.addFolder("MissingFolder");
+    sourceIndex.getFolderMessages("MissingFolder").add(MessageId.fromFingerprint(1L, 1L));
+    final FolderUids folderUids = new FolderUids(1337L);
+    folderUids.add(1L, MessageId.fromFingerprint(1L, 1L));
+    folderUids.add(2L, MessageId.fromFingerprint(2L, 2L));
+    doReturn(folderUids).when(targetIndex).getFolderUids("MissingFolder");
+    doReturn(1337L).when(imapFolder).getUIDValidity();
+    doReturn(2).when(imapFolder).getMessageCount();
+    final StoreDeleter storeDeleter = new StoreDeleter(sourceIndex, targetIndex, imapStore,
+        new WorkerOptions());
+    // When
+    storeDeleter.delete();
+    // Then
+    verify(imapFolder, never()).fetch(any(), any());
+    verify(imapFolder, times(1)).doCommand(any());
+    verify(imapFolder, times(2)).expunge();
+    assertThat(storeDeleter.getMessagesDeletedCount(), equalTo(1L));
+    assertThat(storeDeleter.getMessagesSkippedCount(), equalTo(1L));
+  }
+
+  @Test
+  void delete_sourceFolderDoesntExist_shouldRemoveFolderFromTargetIndex() throws Exception {
+    // Given
+    targetIndex.addFolder("MissingFolder");
+    targetIndex.addFolder("MissingFolder_Child");
+    targetIndex.addFolder("OtherFolder");
+    final StoreDeleter storeDeleter = new StoreDeleter(sourceIndex, targetIndex, imapStore,
+        new WorkerOptions());
+    // When
+    storeDeleter.delete();
+    // Then
+    assertThat(targetIndex.containsFolder("MissingFolder"), equalTo(false));
+    assertThat(targetIndex.containsFolder("MissingFolder_Child"), equalTo(false));
+    assertThat(targetIndex.containsFolder("OtherFolder"), equalTo(true));
+  }
+
+  @Test
+  void delete_targetFolderRejectedByFilter_shouldNotOpenFolder() throws Exception {
+    // Given
+    sourceIndex.addFolder("MissingFolder");
+    final StoreDeleter storeDeleter = new StoreDeleter(sourceIndex, targetIndex, imapStore,
+        new WorkerOptions());
+    // When
+    storeDeleter.delete(targetFolderName -> !targetFolderName.equals("MissingFolder"));
+    // Then
+    verify(imapFolder, never()).open(anyInt());
+    assertThat(storeDeleter.getFoldersDeletedCount(), equalTo(0));
+    assertThat(storeDeleter.getMessagesDeletedCount(), equalTo(0L));
+  }
 }
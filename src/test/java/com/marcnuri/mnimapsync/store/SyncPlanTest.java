@@ -0,0 +1,64 @@
+/*
+ * SyncPlanTest.java
+ *
+ * Created on 2026-10-18, 01:00
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.store;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+class SyncPlanTest {
+
+  @Test
+  void getEtaSeconds_messagesToCopyAndDelete_shouldAddCrawlTransferAndDeletion() {
+    // Given
+    final SyncPlan syncPlan = new SyncPlan();
+    syncPlan.folder("INBOX").toCopy(10L, 2048L);
+    syncPlan.folder("Archive").toCopy(1L, 2048L);
+    syncPlan.folder("Archive").toDelete(50L, 1L);
+    syncPlan.setCrawlNanos(TimeUnit.SECONDS.toNanos(10L));
+    syncPlan.setBytesPerSecond(1024D);
+    syncPlan.setTargetMessagesPerSecond(10D);
+    // When
+    final long result = syncPlan.getEtaSeconds();
+    // Then
+    assertThat(result, equalTo(19L));
+    assertThat(syncPlan.getMessagesToCopy(), equalTo(11L));
+    assertThat(syncPlan.getBytesToCopy(), equalTo(4096L));
+    assertThat(syncPlan.getMessagesToDelete(), equalTo(50L));
+    assertThat(syncPlan.getFolders().iterator().next().getName(), equalTo("Archive"));
+  }
+
+  @Test
+  void getEtaSeconds_bytesToCopyWithoutMeasuredRate_shouldReturnUnknown() {
+    // Given
+    final SyncPlan syncPlan = new SyncPlan();
+    syncPlan.folder("INBOX").toCopy(1L, 1L);
+    // When
+    final long result = syncPlan.getEtaSeconds();
+    // Then
+    assertThat(result, equalTo(-1L));
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * SyncPlannerTest.java
+ *
+ * Created on 2026-10-18, 01:05
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.store;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.marcnuri.mnimapsync.HostDefinition;
+import com.marcnuri.mnimapsync.WorkerOptions;
+import com.marcnuri.mnimapsync.index.FolderUids;
+import com.marcnuri.mnimapsync.index.Index;
+import com.marcnuri.mnimapsync.index.MessageId;
+import com.marcnuri.mnimapsync.store.SyncPlan.FolderPlan;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPMessage;
+import com.sun.mail.imap.IMAPStore;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.mail.Folder;
+import javax.mail.Message;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+class SyncPlannerTest {
+
+  private IMAPFolder sourceFolder;
+  private IMAPStore sourceStore;
+  private Index sourceIndex;
+  private IMAPFolder targetFolder;
+  private IMAPStore targetStore;
+  private Index targetIndex;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    sourceFolder = mockFolder();
+    sourceStore = mockStore(sourceFolder);
+    sourceIndex = Mockito.spy(new Index());
+    targetFolder = mockFolder();
+    targetStore = mockStore(targetFolder);
+    targetIndex = Mockito.spy(new Index());
+  }
+
+  @Test
+  void plan_messagesMissingFromEachStore_shouldPlanCopyAndDeleteWithoutModifyingStores()
+      throws Exception {
+    // Given
+    final FolderUids sourceUids = new FolderUids(1L);
+    sourceUids.add(1L, MessageId.fromFingerprint(1L, 1L));
+    sourceUids.add(2L, MessageId.fromFingerprint(2L, 2L));
+    doReturn(sourceUids).when(sourceIndex).getFolderUids("INBOX");
+    doReturn(messages(MessageId.fromFingerprint(1L, 1L), MessageId.fromFingerprint(2L, 2L)))
+        .when(sourceIndex).getFolderMessages("INBOX");
+    final FolderUids targetUids = new FolderUids(1L);
+    targetUids.add(1L, MessageId.fromFingerprint(1L, 1L));
+    targetUids.add(3L, MessageId.fromFingerprint(3L, 3L));
+    doReturn(targetUids).when(targetIndex).getFolderUids("INBOX");
+    doReturn(messages(MessageId.fromFingerprint(1L, 1L), MessageId.fromFingerprint(3L, 3L)))
+        .when(targetIndex).getFolderMessages("INBOX");
+    doReturn(sizedMessages(1000)).when(sourceFolder).getMessagesByUID(new long[]{2L});
+    doReturn(sizedMessages(337)).when(targetFolder).getMessagesByUID(new long[]{3L});
+    final SyncPlanner syncPlanner = new SyncPlanner(
+        sourceStore, sourceIndex, new HostDefinition(), new WorkerOptions(),
+        targetStore, targetIndex, new HostDefinition(), new WorkerOptions(), true);
+    // When
+    final SyncPlan result = syncPlanner.plan();
+    // Then
+    assertThat(result.getFolders().size(), equalTo(1));
+    final FolderPlan folderPlan = result.getFolders().iterator().next();
+    assertThat(folderPlan.getName(), equalTo("INBOX"));
+    assertThat(folderPlan.getMessagesToCopy(), equalTo(1L));
+    assertThat(folderPlan.getBytesToCopy(), equalTo(1000L));
+    assertThat(folderPlan.getMessagesToDelete(), equalTo(1L));
+    assertThat(folderPlan.getBytesToDelete(), equalTo(337L));
+    verify(sourceFolder, never()).open(Folder.READ_WRITE);
+    verify(targetFolder, never()).open(Folder.READ_WRITE);
+    verify(targetFolder, never()).create(Mockito.anyInt());
+    verify(targetFolder, never()).appendMessages(any());
+  }
+
+  @Test
+  void plan_messageLargerThanSample_shouldOnlyDownloadSample() throws Exception {
+    // Given
+    final FolderUids sourceUids = new FolderUids(1L);
+    sourceUids.add(1L, MessageId.fromFingerprint(1L, 1L));
+    doReturn(sourceUids).when(sourceIndex).getFolderUids("INBOX");
+    final long messageSize = SyncPlanner.SAMPLE_BYTES * 4L;
+    final Message[] largeMessage = sizedMessages((int) messageSize);
+    final AtomicLong downloadedBytes = new AtomicLong();
+    doAnswer(invocation -> {
+      final OutputStream contents = invocation.getArgument(0);
+      final byte[] chunk = new byte[64 * 1024];
+      for (long written = 0L; written < messageSize; written += chunk.length) {
+        downloadedBytes.addAndGet(chunk.length);
+        contents.write(chunk);
+      }
+      return null;
+    }).when(largeMessage[0]).writeTo(any());
+    doReturn(largeMessage).when(sourceFolder).getMessagesByUID(new long[]{1L});
+    final SyncPlanner syncPlanner = new SyncPlanner(
+        sourceStore, sourceIndex, new HostDefinition(), new WorkerOptions(),
+        targetStore, targetIndex, new HostDefinition(), new WorkerOptions(), false);
+    // When
+    final SyncPlan result = syncPlanner.plan();
+    // Then
+    assertThat(result.getBytesToCopy(), equalTo(messageSize));
+    assertThat(downloadedBytes.get(), equalTo(SyncPlanner.SAMPLE_BYTES));
+    assertThat(result.getBytesPerSecond(), greaterThan(0D));
+  }
+
+  private static IMAPFolder mockFolder() throws Exception {
+    final IMAPFolder folder = Mockito.mock(IMAPFolder.class);
+    doReturn("INBOX").when(folder).getFullName();
+    doReturn(Folder.HOLDS_MESSAGES).when(folder).getType();
+    doReturn(Folder.READ_ONLY).when(folder).getMode();
+    doReturn('.').when(folder).getSeparator();
+    doReturn(1L).when(folder).getUIDValidity();
+    return folder;
+  }
+
+  private static IMAPStore mockStore(IMAPFolder folder) throws Exception {
+    final IMAPStore store = Mockito.mock(IMAPStore.class);
+    doReturn(folder).when(store).getDefaultFolder();
+    doReturn(folder).when(store).getFolder(anyString());
+    return store;
+  }
+
+  private static Set<MessageId> messages(MessageId... messageIds) {
+    final Set<MessageId> result = new HashSet<>();
+    for (MessageId messageId : messageIds) {
+      result.add(messageId);
+    }
+    return result;
+  }
+
+  private static Message[] sizedMessages(int size) throws Exception {
+    final IMAPMessage message = Mockito.mock(IMAPMessage.class);
+    doReturn(size).when(message).getSize();
+    return new Message[]{message};
+  }
+}